@@ -0,0 +1,59 @@
+package com.pharmacy.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pharmacy.multitenant.TenantAwareCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 参考数据缓存：分类、供应商、角色、系统设置、药品详情。
+ * 每类一个有界 Caffeine 缓存（W-TinyLFU 淘汰 + 写后过期），键按租户隔离，写入时失效；
+ * 命中/未命中统计注册到 Micrometer（/actuator/metrics/cache.gets）。
+ * 规格可在 reference-cache.specs.<名称> 覆盖，格式同 Caffeine spec。
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String CATEGORIES = "categories";
+    public static final String SUPPLIERS = "suppliers";
+    public static final String ROLES = "roles";
+    public static final String SETTINGS = "settings";
+    public static final String MEDICINES = "medicines";
+
+    private static final Map<String, String> DEFAULT_SPECS = new LinkedHashMap<>();
+    static {
+        DEFAULT_SPECS.put(CATEGORIES, "maximumSize=2000,expireAfterWrite=30m");
+        DEFAULT_SPECS.put(SUPPLIERS, "maximumSize=2000,expireAfterWrite=30m");
+        DEFAULT_SPECS.put(ROLES, "maximumSize=200,expireAfterWrite=60m");
+        DEFAULT_SPECS.put(SETTINGS, "maximumSize=100,expireAfterWrite=10m");
+        DEFAULT_SPECS.put(MEDICINES, "maximumSize=20000,expireAfterWrite=10m");
+    }
+
+    @Bean
+    public CacheManager cacheManager(Environment env, ObjectProvider<MeterRegistry> meterRegistry) {
+        List<CaffeineCache> caches = new ArrayList<>();
+        for (Map.Entry<String, String> e : DEFAULT_SPECS.entrySet()) {
+            String spec = env.getProperty("reference-cache.specs." + e.getKey(), e.getValue());
+            com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = Caffeine.from(spec).recordStats().build();
+            caches.add(new CaffeineCache(e.getKey(), nativeCache, false));
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry != null) {
+                CaffeineCacheMetrics.monitor(registry, nativeCache, e.getKey());
+            }
+        }
+        return new TenantAwareCacheManager(caches);
+    }
+}
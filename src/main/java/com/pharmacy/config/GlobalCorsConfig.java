@@ -29,6 +29,8 @@ public class GlobalCorsConfig {
         // 暴露头保证前端可读（可按需增减）
         cfg.addExposedHeader("Set-Cookie");
         cfg.addExposedHeader("X-Request-Id");
+        cfg.addExposedHeader("Idempotent-Replayed");
+        cfg.addExposedHeader("ETag");
         cfg.setMaxAge(3600L);
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", cfg);
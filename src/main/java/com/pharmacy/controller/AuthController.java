@@ -1,6 +1,7 @@
 package com.pharmacy.controller;
 
 import com.pharmacy.service.AuthService;
+import com.pharmacy.service.AuthSessionRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,6 +21,9 @@ public class AuthController {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private AuthSessionRegistry sessionRegistry;
+
     @PostMapping("/login")
     public ResponseEntity<Map<String, Object>> login(@RequestBody Map<String, String> loginRequest) {
         String username = loginRequest.get("username");
@@ -46,7 +50,8 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<Map<String, Object>> logout() {
+    public ResponseEntity<Map<String, Object>> logout(@RequestHeader(value = "Authorization", required = false) String authorization) {
+        sessionRegistry.invalidate(authorization);
         // 使用 HashMap 替代 Map.of (Java 9+ 特性)
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
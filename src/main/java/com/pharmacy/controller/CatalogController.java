@@ -0,0 +1,86 @@
+package com.pharmacy.controller;
+
+import com.pharmacy.entity.Category;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.repository.CategoryRepository;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.repository.MedicineSpecifications;
+import com.pharmacy.service.CatalogVersionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 收银终端目录同步：全量快照 + 按版本增量。
+ * 两个接口都带 ETag，版本未变时直接 304，不查库；响应体由 server.compression 压缩。
+ */
+@RestController
+@RequestMapping("/api/catalog")
+public class CatalogController {
+
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    // 全量快照：全部分类 + 未删除药品，终端首次同步或增量断档时使用
+    @GetMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> snapshot(WebRequest request) {
+        long version = catalogVersionService.currentVersion(); // 先取版本再读数据，保证 <= version 的变更都已包含
+        String etag = "\"catalog-" + TenantContext.currentTenantKey() + "-" + version + "\"";
+        if (request.checkNotModified(etag)) return null;
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("version", version);
+        data.put("categories", categoryRepository.findAll());
+        data.put("medicines", medicineRepository.findAll(MedicineSpecifications.search(null, null, null, null)));
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("code", 200);
+        resp.put("message", "success");
+        resp.put("data", data);
+        return ResponseEntity.ok().eTag(etag).body(resp);
+    }
+
+    // 增量：since 之后变更的分类、药品（含软删除，deleted=true）与硬删除记录
+    @GetMapping("/changes")
+    public ResponseEntity<Map<String, Object>> changes(@RequestParam long since, WebRequest request) {
+        long version = catalogVersionService.currentVersion();
+        String etag = "\"catalog-" + TenantContext.currentTenantKey() + "-" + since + "-" + version + "\"";
+        if (request.checkNotModified(etag)) return null;
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("since", since);
+        data.put("version", version);
+        if (since > version) {
+            // 终端版本比服务端新（库被重置等），要求重新拉取全量快照
+            data.put("reset", true);
+        } else if (since < version) {
+            List<Category> categories = categoryRepository
+                    .findByCatalogVersionGreaterThanAndCatalogVersionLessThanEqualOrderByCatalogVersion(since, version);
+            List<Medicine> medicines = medicineRepository
+                    .findByCatalogVersionGreaterThanAndCatalogVersionLessThanEqualOrderByCatalogVersion(since, version);
+            data.put("categories", categories);
+            data.put("medicines", medicines);
+            data.put("deleted", catalogVersionService.findTombstones(since, version));
+        } else {
+            data.put("categories", List.of());
+            data.put("medicines", List.of());
+            data.put("deleted", List.of());
+        }
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("code", 200);
+        resp.put("message", "success");
+        resp.put("data", data);
+        return ResponseEntity.ok().eTag(etag).body(resp);
+    }
+}
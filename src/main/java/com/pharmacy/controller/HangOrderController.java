@@ -1,5 +1,7 @@
 package com.pharmacy.controller;
 
+import com.pharmacy.service.IdGeneratorService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -10,6 +12,9 @@ import java.util.*;
 // 移除局部 @CrossOrigin，使用全局 CORS 配置
 public class HangOrderController {
 
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
     @GetMapping
     public ResponseEntity<Map<String, Object>> getAllHangOrders() {
         try {
@@ -33,7 +38,7 @@ public class HangOrderController {
     public ResponseEntity<Map<String, Object>> createHangOrder(@RequestBody Map<String, Object> hangOrderData) {
         try {
             // 模拟创建挂单
-            String hangId = "H" + System.currentTimeMillis();
+            String hangId = idGeneratorService.nextId(IdGeneratorService.HANG_ORDER);
 
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -21,9 +22,11 @@ public class HotProductController {
     }
 
     @GetMapping
-    public ResponseEntity<ApiResponse<?>> getHotProducts() {
+    public ResponseEntity<ApiResponse<?>> getHotProducts(@RequestParam(defaultValue = "day") String window,
+                                                         @RequestParam(defaultValue = "units") String metric,
+                                                         @RequestParam(defaultValue = "10") int limit) {
         try {
-            return ResponseEntity.ok(ApiResponse.success("获取热销药品成功", dashboardService.getTodayHotProducts()));
+            return ResponseEntity.ok(ApiResponse.success("获取热销药品成功", dashboardService.getHotProducts(window, metric, limit)));
         } catch (Exception e) {
             return ResponseEntity.ok(ApiResponse.error("获取热销药品失败"));
         }
@@ -1,6 +1,7 @@
 package com.pharmacy.controller;
 
 import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.StockRecord;
 import com.pharmacy.dto.InventoryDTO;
 import com.pharmacy.service.InventoryService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -116,6 +117,39 @@ public class InventoryController {
         }
     }
 
+    // 库存流水（结算、退款等台账），最新在前
+    @GetMapping("/records/{medicineId}")
+    public ResponseEntity<?> getStockRecords(@PathVariable String medicineId,
+                                             @RequestParam(defaultValue = "50") int limit) {
+        try {
+            List<Map<String, Object>> list = new java.util.ArrayList<>();
+            for (StockRecord r : inventoryService.findStockRecords(medicineId, limit)) {
+                Map<String, Object> m = new HashMap<>();
+                m.put("recordId", r.getRecordId());
+                m.put("medicineId", r.getMedicineId());
+                m.put("batchNo", r.getBatchNo());
+                m.put("inventoryId", r.getInventoryId());
+                m.put("changeType", r.getChangeType());
+                m.put("quantity", r.getQuantity());
+                m.put("operatorId", r.getOperatorId());
+                m.put("relatedOrderId", r.getRelatedOrderId());
+                m.put("remark", r.getRemark());
+                m.put("createTime", r.getCreateTime());
+                list.add(m);
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", list);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("message", "获取库存流水失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
     @PostMapping("/replenish")
     public ResponseEntity<?> replenish(@RequestBody Map<String,Object> body) {
         try {
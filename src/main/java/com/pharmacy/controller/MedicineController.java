@@ -5,6 +5,9 @@ import com.pharmacy.dto.MedicineWithStockDTO;
 import com.pharmacy.entity.Medicine;
 import com.pharmacy.service.MedicineService;
 import com.pharmacy.service.InventoryService;
+import com.pharmacy.service.MedicineBarcodeIndex;
+import com.pharmacy.service.MedicineSearchIndex;
+import com.pharmacy.service.StockLevelIndex;
 import com.pharmacy.util.StockStatusUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -28,6 +31,15 @@ public class MedicineController {
     @Autowired
     private InventoryService inventoryService;
 
+    @Autowired
+    private MedicineBarcodeIndex medicineBarcodeIndex;
+
+    @Autowired
+    private StockLevelIndex stockLevelIndex;
+
+    @Autowired
+    private MedicineSearchIndex medicineSearchIndex;
+
     @Autowired
     private com.pharmacy.repository.OrderItemRepository orderItemRepository;
 
@@ -54,12 +66,14 @@ public class MedicineController {
     public ResponseEntity<Map<String, Object>> searchMedicines(
             @RequestParam(required = false) String keyword,
             @RequestParam(required = false) String category,
+            @RequestParam(required = false) Boolean isRx,
+            @RequestParam(required = false) String status,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "100") int size) {
         System.out.println("=== 接收药品搜索请求(标准DTO) ===");
-        System.out.println("keyword="+keyword+", category="+category+", page="+page+", size="+size);
+        System.out.println("keyword="+keyword+", category="+category+", isRx="+isRx+", status="+status+", page="+page+", size="+size);
         try {
-            Page<com.pharmacy.dto.MedicineWithStockDTO> dtoPage = medicineService.searchMedicinesWithStock(keyword, category, page, size);
+            Page<com.pharmacy.dto.MedicineWithStockDTO> dtoPage = medicineService.searchMedicinesWithStock(keyword, category, isRx, status, page, size);
             Map<String,Object> resp = new HashMap<>();
             resp.put("code",200);
             resp.put("message","success");
@@ -165,10 +179,79 @@ public class MedicineController {
         }
     }
 
+    // 输入联想：只返回精简字段，命中与排序全部走内存索引
+    @GetMapping("/suggest")
+    public ResponseEntity<Map<String, Object>> suggest(
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        int k = Math.min(Math.max(limit, 1), 20);
+        List<Map<String, Object>> data = new java.util.ArrayList<>();
+        if (q != null && !q.isBlank()) {
+            List<MedicineSearchIndex.Doc> docs = medicineSearchIndex.suggest(q, k);
+            if (docs != null) {
+                for (MedicineSearchIndex.Doc d : docs) {
+                    data.add(suggestion(d.getMedicineId(), d.getTradeName() != null && !d.getTradeName().isBlank() ? d.getTradeName() : d.getGenericName(),
+                            d.getSpec(), d.getRetailPrice()));
+                }
+            } else {
+                // 索引构建中，临时回退数据库分页查询
+                for (Medicine m : medicineService.searchMedicines(q, null, null, null, 1, k).getContent()) {
+                    data.add(suggestion(m.getMedicineId(), m.getTradeName() != null && !m.getTradeName().isBlank() ? m.getTradeName() : m.getGenericName(),
+                            m.getSpec(), m.getRetailPrice()));
+                }
+            }
+        }
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("code", 200);
+        resp.put("data", data);
+        return ResponseEntity.ok(resp);
+    }
+
+    private Map<String, Object> suggestion(String id, String name, String spec, java.math.BigDecimal price) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("id", id);
+        item.put("name", name);
+        item.put("spec", spec);
+        item.put("price", price);
+        item.put("inStock", stockLevelIndex.totalStock(id) > 0);
+        return item;
+    }
+
+    // 扫码查询：条码 -> 药品、售价与当前库存，全程走内存索引，未命中才回查数据库
+    @GetMapping("/barcode/{code}")
+    public ResponseEntity<Map<String, Object>> findByBarcode(@PathVariable String code) {
+        MedicineBarcodeIndex.Entry entry = medicineBarcodeIndex.get(code);
+        if (entry == null) {
+            return ResponseEntity.status(404).body(Map.of("code", 404, "message", "未找到条码对应的药品: " + code));
+        }
+        StockLevelIndex.Level level = stockLevelIndex.get(entry.getMedicineId());
+        Map<String, Object> data = new HashMap<>();
+        data.put("medicineId", entry.getMedicineId());
+        data.put("barcode", entry.getBarcode());
+        data.put("genericName", entry.getGenericName());
+        data.put("tradeName", entry.getTradeName());
+        data.put("spec", entry.getSpec());
+        data.put("unit", entry.getUnit());
+        data.put("retailPrice", entry.getRetailPrice());
+        data.put("memberPrice", entry.getMemberPrice());
+        data.put("isRx", entry.getIsRx());
+        data.put("status", entry.getStatus());
+        data.put("stockQuantity", level.getTotalStock());
+        data.put("earliestExpiryDate", level.getEarliestExpiry());
+        data.put("stockStatus", StockStatusUtil.calcStockStatus(level.getTotalStock(), level.getMinStock()));
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("code", 200);
+        resp.put("message", "success");
+        resp.put("data", data);
+        return ResponseEntity.ok(resp);
+    }
+
     @GetMapping("/search-with-stock")
     public ResponseEntity<Map<String, Object>> searchMedicinesWithStock(
             @RequestParam(required = false) String keyword,
             @RequestParam(required = false) String category,
+            @RequestParam(required = false) Boolean isRx,
+            @RequestParam(required = false) String status,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "100") int size) {
 
@@ -179,7 +262,7 @@ public class MedicineController {
         System.out.println("size: " + size);
 
         try {
-            Page<MedicineWithStockDTO> medicinePage = medicineService.searchMedicinesWithStock(keyword, category, page, size);
+            Page<MedicineWithStockDTO> medicinePage = medicineService.searchMedicinesWithStock(keyword, category, isRx, status, page, size);
             List<MedicineWithStockDTO> medicines = medicinePage.getContent();
 
             System.out.println("药品搜索结果数量: " + medicines.size());
@@ -4,6 +4,7 @@ import com.pharmacy.dto.MemberDTO;
 import com.pharmacy.dto.MemberStatsDTO;
 import com.pharmacy.entity.Member;
 import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.service.MemberQueryService;
 import com.pharmacy.service.MemberService;
 import com.pharmacy.service.impl.MemberConsumptionUpdater;
 import com.pharmacy.multitenant.TenantContext; // 新增导入
@@ -32,6 +33,9 @@ public class MemberController {
     @Autowired(required = false)
     private MemberConsumptionUpdater memberConsumptionUpdater;
 
+    @Autowired
+    private MemberQueryService memberQueryService;
+
     // 会员搜索端点
     @GetMapping("/search")
     public ResponseEntity<Map<String, Object>> searchMembers(
@@ -329,18 +333,14 @@ public class MemberController {
             @RequestParam(defaultValue = "10") int size) {
 
         try {
-            List<Member> allMembers = memberService.findAll();
-            int total = allMembers.size();
-            int start = Math.min(page * size, total);
-            int end = Math.min(start + size, total);
-            List<Member> pageMembers = start < end ? allMembers.subList(start, end) : java.util.Collections.emptyList();
-            List<MemberDTO> dtoPage = enrichMembersWithConsumption(pageMembers);
+            org.springframework.data.domain.Page<Member> members = memberService.findPage(page, size);
+            List<MemberDTO> dtoPage = enrichMembersWithConsumption(members.getContent());
 
             Map<String, Object> response = new HashMap<>();
             response.put("data", dtoPage);
             response.put("currentPage", page);
-            response.put("totalItems", total);
-            response.put("totalPages", (int) Math.ceil((double) total / size));
+            response.put("totalItems", members.getTotalElements());
+            response.put("totalPages", members.getTotalPages());
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -364,6 +364,13 @@ public class MemberController {
         ));
     }
 
+    // 诊断端点：会员消费统计缓存的命中率与容量
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String,Object>> cacheStats(){
+        if(memberConsumptionUpdater==null) return ResponseEntity.ok(Map.of("enabled", false));
+        return ResponseEntity.ok(memberConsumptionUpdater.stats());
+    }
+
     // 调试端点：获取当前租户的所有会员及其原始名称
     @GetMapping("/debug-all")
     public ResponseEntity<Map<String,Object>> debugAll(){
@@ -394,7 +401,6 @@ public class MemberController {
     private List<MemberDTO> enrichMembersWithConsumption(List<Member> members){
         if(members==null || members.isEmpty()) return java.util.Collections.emptyList();
         java.util.Map<String, MemberDTO> map = new java.util.LinkedHashMap<>();
-        java.util.Set<String> missingForBatch = new java.util.HashSet<>();
         for(Member m: members){
             MemberDTO dto = new MemberDTO(m.getMemberId(), m.getName(), m.getPhone());
             dto.setCardNo(m.getCardNo());
@@ -406,41 +412,20 @@ public class MemberController {
             dto.setLevelName(MemberDTO.getLevelName(m.getLevel()));
             map.put(m.getMemberId(), dto);
         }
-        // 优先从缓存取值
+        // 缓存命中直接取值，未命中的合并为一次聚合加载
         if(memberConsumptionUpdater!=null){
-            for(String mid: map.keySet()){
-                MemberConsumptionUpdater.MemberStatsSnapshot snap = memberConsumptionUpdater.getCachedStats(mid);
-                if(snap!=null){
-                    MemberDTO dto = map.get(mid);
-                    dto.setConsumptionCount(snap.consumptionCount);
-                    dto.setLastConsumptionDate(snap.lastConsumptionDate);
-                } else {
-                    missingForBatch.add(mid);
+            try {
+                java.util.Map<String, MemberConsumptionUpdater.MemberStatsSnapshot> stats = memberConsumptionUpdater.getStats(map.keySet());
+                for(MemberDTO dto: map.values()){
+                    MemberConsumptionUpdater.MemberStatsSnapshot snap = stats.get(dto.getMemberId());
+                    dto.setConsumptionCount(snap!=null? snap.consumptionCount : 0);
+                    if(snap!=null) dto.setLastConsumptionDate(snap.lastConsumptionDate);
                 }
-            }
-            // 批量数据库聚合填充缺失项并更新缓存
-            if(!missingForBatch.isEmpty()){
-                try {
-                    memberConsumptionUpdater.refreshMembersBatch(missingForBatch); // 刷新缓存
-                    for(String mid: missingForBatch){
-                        MemberConsumptionUpdater.MemberStatsSnapshot snap2 = memberConsumptionUpdater.getCachedStats(mid);
-                        if(snap2!=null){
-                            MemberDTO dto = map.get(mid);
-                            dto.setConsumptionCount(snap2.consumptionCount);
-                            dto.setLastConsumptionDate(snap2.lastConsumptionDate);
-                        } else {
-                            // 缓存仍无，置默认值
-                            MemberDTO dto = map.get(mid);
-                            dto.setConsumptionCount(0);
-                        }
-                    }
-                } catch(Exception e){
-                    System.err.println("批量填充会员消费统计失败: "+e.getMessage());
-                    // 回退：缺失全部置0
-                    for(String mid: missingForBatch){
-                        MemberDTO dto = map.get(mid);
-                        if(dto.getConsumptionCount()==null) dto.setConsumptionCount(0);
-                    }
+            } catch(Exception e){
+                System.err.println("批量填充会员消费统计失败: "+e.getMessage());
+                // 回退：全部置0
+                for(MemberDTO dto: map.values()){
+                    if(dto.getConsumptionCount()==null) dto.setConsumptionCount(0);
                 }
             }
         } else {
@@ -463,7 +448,8 @@ public class MemberController {
         return new java.util.ArrayList<>(map.values());
     }
 
-    // 高级筛选 + 分页 + 排序端点
+    // 高级筛选 + 分页 + 排序端点：筛选、排序、分页与聚合均在数据库完成（member JOIN member_stats）
+    // 传 cursor（上一页返回的 nextCursor）时按 keyset 翻页，否则按 page 定位
     @GetMapping("/advanced")
     public ResponseEntity<Map<String,Object>> advancedMembers(
             @RequestParam(defaultValue = "1") int page,
@@ -475,88 +461,29 @@ public class MemberController {
             @RequestParam(required = false) Integer consumptionMin,
             @RequestParam(required = false) Integer consumptionMax,
             @RequestParam(required = false) String name,
-            @RequestParam(required = false) String phone
+            @RequestParam(required = false) String phone,
+            @RequestParam(required = false) String cursor
     ) {
         Map<String,Object> res = new HashMap<>();
         try {
             if(page < 1) page = 1; if(size < 1) size = 10; if(size > 200) size = 200; // 简单约束
-            List<MemberDTO> all = enrichMembersWithConsumption(memberService.findAll());
-            long nowMillis = System.currentTimeMillis();
-            long activeThreshold = nowMillis - 30L*24*3600*1000; // 最近30天
-            long sleepThreshold  = nowMillis - 90L*24*3600*1000; // 超过90天视为沉睡
-            // 基础过滤
-            List<MemberDTO> filtered = new ArrayList<>();
-            for(MemberDTO m : all){
-                if(name != null && !name.isBlank() && (m.getName()==null || !m.getName().contains(name.trim()))) continue;
-                if(phone != null && !phone.isBlank() && (m.getPhone()==null || !m.getPhone().contains(phone.trim()))) continue;
-                if(pointsMin != null && (m.getPoints()==null || m.getPoints() < pointsMin)) continue;
-                if(pointsMax != null && (m.getPoints()==null || m.getPoints() > pointsMax)) continue;
-                if(consumptionMin != null && (m.getConsumptionCount()==null || m.getConsumptionCount() < consumptionMin)) continue;
-                if(consumptionMax != null && (m.getConsumptionCount()==null || m.getConsumptionCount() > consumptionMax)) continue;
-                // segment 分组筛选
-                if(segment != null && !segment.isBlank()){
-                    boolean keep = true;
-                    switch(segment){
-                        case "vip": keep = m.getLevel()!=null && m.getLevel() >= 4; break;
-                        case "new30": keep = m.getCreateTime()!=null && m.getCreateTime().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli() >= activeThreshold; break;
-                        case "sleep": {
-                            java.time.LocalDateTime last = m.getLastConsumptionDate();
-                            long lastMs = (last==null)?0:last.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                            keep = lastMs == 0 || lastMs < sleepThreshold; break; }
-                        case "highPoints": keep = m.getPoints()!=null && m.getPoints() >= 1000; break;
-                        default: break; // all
-                    }
-                    if(!keep) continue;
-                }
-                filtered.add(m);
-            }
-            // 排序
-            if(sort != null && !sort.isBlank()){
-                String[] parts = sort.split("_");
-                if(parts.length == 2){
-                    String field = parts[0]; String dir = parts[1];
-                    java.util.Comparator<MemberDTO> cmp = java.util.Comparator.comparingInt(a->0); // 默认
-                    switch(field){
-                        case "createTime": cmp = java.util.Comparator.comparing(a-> a.getCreateTime()==null? java.time.LocalDateTime.MIN : a.getCreateTime()); break;
-                        case "points": cmp = java.util.Comparator.comparing(a-> a.getPoints()==null?0:a.getPoints()); break;
-                        case "consumption": cmp = java.util.Comparator.comparing(a-> a.getConsumptionCount()==null?0:a.getConsumptionCount()); break;
-                        case "level": cmp = java.util.Comparator.comparing(a-> a.getLevel()==null?0:a.getLevel()); break;
-                    }
-                    if("desc".equalsIgnoreCase(dir)) cmp = cmp.reversed();
-                    filtered.sort(cmp);
-                }
-            }
-            // 全局聚合指标（基于筛选后的完整集合，不是当前页）
-            int total = filtered.size();
-            double avgPoints = 0.0; int activeCount = 0; int churnCount = 0; long now = System.currentTimeMillis();
-            if(total > 0){
-                for(MemberDTO m: filtered){
-                    avgPoints += (m.getPoints()==null?0:m.getPoints());
-                    Long lastMs = null;
-                    if(m.getLastConsumptionDate()!=null){
-                        lastMs = m.getLastConsumptionDate().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    }
-                    if(lastMs!=null && (now - lastMs) < 30L*24*3600*1000) activeCount++;
-                    if(lastMs==null || (now - lastMs) > 90L*24*3600*1000) churnCount++;
-                }
-                avgPoints = avgPoints / total;
-            }
-            double activeRate = total==0?0.0: (activeCount * 100.0 / total);
-            // 分页切片
-            int start = (page-1)*size;
-            if(start > total) start = total;
-            int end = Math.min(start + size, total);
-            List<MemberDTO> pageList = filtered.subList(start, end);
+            MemberQueryService.Criteria criteria = new MemberQueryService.Criteria(segment, sort, pointsMin, pointsMax,
+                    consumptionMin, consumptionMax, name, phone);
+            MemberQueryService.Page result = memberQueryService.list(criteria, cursor, (page-1)*size, size);
+            MemberQueryService.Summary summary = memberQueryService.summarize(criteria);
+            long total = summary.getTotal();
+            double activeRate = total==0?0.0: (summary.getActiveCount() * 100.0 / total);
             res.put("code", 200);
             res.put("message", "success");
             res.put("currentPage", page);
             res.put("pageSize", size);
             res.put("totalItems", total);
             res.put("totalPages", (int)Math.ceil(total/(double)size));
-            res.put("data", pageList);
-            res.put("avgPoints", Math.round(avgPoints));
+            res.put("data", result.getItems());
+            res.put("nextCursor", result.getNextCursor());
+            res.put("avgPoints", Math.round(summary.getAvgPoints()));
             res.put("activeRate", String.format(java.util.Locale.ROOT, "%.1f%%", activeRate));
-            res.put("churnCount", churnCount);
+            res.put("churnCount", summary.getChurnCount());
             return ResponseEntity.ok(res);
         } catch(Exception e){
             res.put("code", 500);
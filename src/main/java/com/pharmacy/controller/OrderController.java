@@ -3,6 +3,9 @@ package com.pharmacy.controller;
 import com.pharmacy.dto.OrderRequest;
 import com.pharmacy.dto.OrderResponse;
 import com.pharmacy.entity.Order;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.AuthSessionRegistry;
+import com.pharmacy.service.IdempotencyService;
 import com.pharmacy.service.OrderService;
 import com.pharmacy.repository.OrderItemRepository;
 import com.pharmacy.repository.MedicineRepository;
@@ -33,13 +36,32 @@ public class OrderController {
     @Autowired
     private MedicineRepository medicineRepository;
 
+    @Autowired
+    private AuthSessionRegistry sessionRegistry;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     // 修复: 直接使用 Jackson 反序列化 OrderRequest，避免 415 Unsupported Media Type
+    // 携带 Idempotency-Key 时，超时重试直接回放首次结果，不会重复下单/扣库存
     @PostMapping(consumes = {"application/json","application/json;charset=UTF-8"}, produces = "application/json;charset=UTF-8")
-    public ResponseEntity<?> createOrder(@RequestBody OrderRequest orderRequest) {
+    public ResponseEntity<?> createOrder(@RequestBody OrderRequest orderRequest,
+                                         @RequestHeader(value = "Authorization", required = false) String authorization,
+                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("order-create", idempotencyKey, orderRequest,
+                () -> doCreateOrder(orderRequest, authorization));
+    }
+
+    private ResponseEntity<?> doCreateOrder(OrderRequest orderRequest, String authorization) {
         try {
             if (orderRequest == null) {
                 return ResponseEntity.badRequest().body(Map.of("code",400,"message","请求体为空"));
             }
+            // 收银员取自登录会话（会话须属于当前租户）
+            AuthSessionRegistry.Session session = sessionRegistry.resolve(authorization);
+            if (session != null && session.getTenant().equals(TenantContext.currentTenantKey())) {
+                orderRequest.setCashierId(session.getEmployeeId());
+            }
             if (orderRequest.getItems() == null) {
                 orderRequest.setItems(new java.util.ArrayList<>());
             }
@@ -176,7 +198,15 @@ public class OrderController {
 
     // 新增：退单接口
     @PostMapping("/{orderId}/refund")
-    public ResponseEntity<?> refund(@PathVariable String orderId, @RequestBody(required = false) Map<String,Object> body){
+    public ResponseEntity<?> refund(@PathVariable String orderId, @RequestBody(required = false) Map<String,Object> body,
+                                    @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey){
+        Map<String,Object> fingerprint = new HashMap<>();
+        fingerprint.put("orderId", orderId);
+        fingerprint.put("body", body);
+        return idempotencyService.execute("order-refund", idempotencyKey, fingerprint, () -> doRefund(orderId, body));
+    }
+
+    private ResponseEntity<?> doRefund(String orderId, Map<String,Object> body){
         try {
             String reason = body!=null && body.get("reason")!=null? String.valueOf(body.get("reason")) : "无";
             OrderResponse resp = orderService.refundOrder(orderId, reason);
@@ -2,12 +2,16 @@ package com.pharmacy.controller;
 
 import com.pharmacy.entity.StockIn;
 import com.pharmacy.entity.StockInItem;
+import com.pharmacy.event.StockChangedEvent;
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.repository.InventoryRepository;
 import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.repository.StockInItemRepository;
 import com.pharmacy.repository.StockInRepository;
 import com.pharmacy.repository.SupplierRepository;
+import com.pharmacy.service.IdGeneratorService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -37,6 +41,12 @@ public class StockInController {
     @Autowired
     private InventoryRepository inventoryRepository;
 
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @GetMapping
     public ResponseEntity<Page<StockIn>> getStockIns(
             @RequestParam(defaultValue = "0") int page,
@@ -120,29 +130,35 @@ public class StockInController {
             stockIn.calculateTotalAmount();
             StockIn saved = stockInRepository.save(stockIn);
             System.out.println("[StockInController] 入库单保存成功 ID="+saved.getStockInId()+" 总金额="+saved.getTotalAmount());
-            // 更新库存
+            // 更新库存：一次取出本单涉及药品的全部批次，按 药品+批号 合并后 saveAll（flush 时批量 INSERT/UPDATE）
+            java.util.Set<String> medIds = new java.util.HashSet<>();
+            for (StockInItem item : stockIn.getItems()) medIds.add(item.getMedicine().getMedicineId());
+            java.util.Map<String, com.pharmacy.entity.Inventory> byMedBatch = new java.util.LinkedHashMap<>();
+            for (com.pharmacy.entity.Inventory inv : inventoryRepository.findByMedicineIdIn(medIds)) {
+                byMedBatch.putIfAbsent(inv.getMedicineId() + "|" + inv.getBatchNo(), inv);
+            }
+            java.util.Map<String, com.pharmacy.entity.Inventory> touched = new java.util.LinkedHashMap<>();
             for (StockInItem item : stockIn.getItems()) {
-                try {
-                    String medId = item.getMedicine().getMedicineId();
-                    String batch = item.getBatchNumber();
-                    Integer qty = item.getQuantity();
-                    java.time.LocalDate expiry = item.getExpiryDate();
-                    var invs = inventoryRepository.findByMedicineId(medId);
-                    com.pharmacy.entity.Inventory matched = null;
-                    for (com.pharmacy.entity.Inventory inv : invs) {
-                        if (batch.equals(inv.getBatchNo())) { matched = inv; break; }
-                    }
-                    if (matched != null) {
-                        matched.setStockQuantity(matched.getStockQuantity() + qty);
-                        inventoryRepository.save(matched);
-                    } else {
-                        com.pharmacy.entity.Inventory newInv = new com.pharmacy.entity.Inventory(medId, batch, qty, expiry);
-                        newInv.setPurchasePrice(item.getUnitPrice()!=null? java.math.BigDecimal.valueOf(item.getUnitPrice()) : null);
-                        inventoryRepository.save(newInv);
-                    }
-                } catch (Exception updEx) {
-                    System.err.println("[StockInController] 更新库存失败: "+updEx.getMessage());
+                String medId = item.getMedicine().getMedicineId();
+                String batch = item.getBatchNumber();
+                Integer qty = item.getQuantity();
+                String key = medId + "|" + batch;
+                com.pharmacy.entity.Inventory matched = byMedBatch.get(key);
+                if (matched != null) {
+                    matched.setStockQuantity(matched.getStockQuantity() + qty);
+                } else {
+                    matched = new com.pharmacy.entity.Inventory(medId, batch, qty, item.getExpiryDate());
+                    matched.setPurchasePrice(item.getUnitPrice()!=null? java.math.BigDecimal.valueOf(item.getUnitPrice()) : null);
+                    byMedBatch.put(key, matched);
                 }
+                touched.put(key, matched);
+            }
+            try {
+                inventoryRepository.saveAll(touched.values());
+                eventPublisher.publishEvent(new StockChangedEvent(TenantContext.currentTenantKey(), medIds,
+                        StockChangedEvent.SOURCE_STOCK_IN, saved.getStockInNo()));
+            } catch (Exception updEx) {
+                System.err.println("[StockInController] 更新库存失败: "+updEx.getMessage());
             }
             return ResponseEntity.ok(saved);
         } catch (Exception e) {
@@ -239,6 +255,6 @@ public class StockInController {
 
     // 生成入库单号
     private String generateStockInNo() {
-        return "SI" + System.currentTimeMillis();
+        return idGeneratorService.nextId(IdGeneratorService.STOCK_IN);
     }
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.pharmacy.dto;
+
+import java.time.LocalDate;
+
+/**
+ * 药品库存汇总投影（InventoryRepository.summarizeByMedicineIds），一页药品一次分组查询取回。
+ */
+public interface MedicineStockSummary {
+
+    String getMedicineId();
+
+    /** 全部批次在库总量 */
+    Integer getTotalStock();
+
+    /** 最早未过期效期 */
+    LocalDate getEarliestExpiry();
+
+    /** 最小正安全库存，均未设置时为 null */
+    Integer getMinStock();
+}
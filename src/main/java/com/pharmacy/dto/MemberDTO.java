@@ -21,6 +21,7 @@ public class MemberDTO {
 
     private Integer consumptionCount; // 已支付订单次数
     private java.time.LocalDateTime lastConsumptionDate; // 最近一次支付订单时间
+    private java.math.BigDecimal totalSpent; // 已支付订单累计实付（member_stats）
 
     // 构造器
     public MemberDTO() {}
@@ -69,6 +70,8 @@ public class MemberDTO {
     public void setConsumptionCount(Integer consumptionCount){ this.consumptionCount = consumptionCount; }
     public java.time.LocalDateTime getLastConsumptionDate(){ return lastConsumptionDate; }
     public void setLastConsumptionDate(java.time.LocalDateTime lastConsumptionDate){ this.lastConsumptionDate = lastConsumptionDate; }
+    public java.math.BigDecimal getTotalSpent(){ return totalSpent; }
+    public void setTotalSpent(java.math.BigDecimal totalSpent){ this.totalSpent = totalSpent; }
 
     // 等级名称映射
     public static String getLevelName(Integer level) {
@@ -1,5 +1,6 @@
 package com.pharmacy.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.math.BigDecimal;
@@ -15,6 +16,9 @@ public class OrderRequest {
     private BigDecimal totalAmount; // 总金额
     private BigDecimal discountAmount; // 折扣金额
     private BigDecimal originalAmount; // 原始金额
+    private Integer usedPoints; // 本单抵扣积分
+    @JsonIgnore
+    private Integer cashierId; // 收银员：仅由服务端根据登录会话填充，不接受请求体传入
 
     // 默认构造函数
     public OrderRequest() {}
@@ -69,6 +73,14 @@ public class OrderRequest {
         this.totalAmount = totalAmount;
     }
 
+    public Integer getUsedPoints() {
+        return usedPoints;
+    }
+
+    public void setUsedPoints(Integer usedPoints) {
+        this.usedPoints = usedPoints;
+    }
+
     public BigDecimal getDiscountAmount() {
         return discountAmount;
     }
@@ -84,4 +96,12 @@ public class OrderRequest {
     public void setOriginalAmount(BigDecimal originalAmount) {
         this.originalAmount = originalAmount;
     }
+
+    public Integer getCashierId() {
+        return cashierId;
+    }
+
+    public void setCashierId(Integer cashierId) {
+        this.cashierId = cashierId;
+    }
 }
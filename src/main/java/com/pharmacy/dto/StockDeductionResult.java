@@ -0,0 +1,69 @@
+package com.pharmacy.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单库存扣减结果：包含实际落到各批次的分配明细，以及按订单行的缺货信息。
+ * shortages 非空时表示扣减失败，调用方需回滚事务。
+ */
+public class StockDeductionResult {
+
+    private final List<Allocation> allocations = new ArrayList<>();
+    private final List<Shortage> shortages = new ArrayList<>();
+
+    public boolean isSuccess() {
+        return shortages.isEmpty();
+    }
+
+    public List<Allocation> getAllocations() {
+        return allocations;
+    }
+
+    public List<Shortage> getShortages() {
+        return shortages;
+    }
+
+    /** 单个批次上的扣减分配 */
+    public static class Allocation {
+        private final int lineIndex;
+        private final String medicineId;
+        private final Long inventoryId;
+        private final String batchNo;
+        private final int quantity;
+
+        public Allocation(int lineIndex, String medicineId, Long inventoryId, String batchNo, int quantity) {
+            this.lineIndex = lineIndex;
+            this.medicineId = medicineId;
+            this.inventoryId = inventoryId;
+            this.batchNo = batchNo;
+            this.quantity = quantity;
+        }
+
+        public int getLineIndex() { return lineIndex; }
+        public String getMedicineId() { return medicineId; }
+        public Long getInventoryId() { return inventoryId; }
+        public String getBatchNo() { return batchNo; }
+        public int getQuantity() { return quantity; }
+    }
+
+    /** 订单行缺货信息：requested 为需求数量，available 为当时可分配的有效库存 */
+    public static class Shortage {
+        private final int lineIndex;
+        private final String medicineId;
+        private final int requested;
+        private final int available;
+
+        public Shortage(int lineIndex, String medicineId, int requested, int available) {
+            this.lineIndex = lineIndex;
+            this.medicineId = medicineId;
+            this.requested = requested;
+            this.available = available;
+        }
+
+        public int getLineIndex() { return lineIndex; }
+        public String getMedicineId() { return medicineId; }
+        public int getRequested() { return requested; }
+        public int getAvailable() { return available; }
+    }
+}
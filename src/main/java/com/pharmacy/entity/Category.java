@@ -24,6 +24,10 @@ public class Category {
     @Column(name = "create_time")
     private LocalDateTime createTime;
 
+    // 目录版本号，终端增量同步用（CatalogVersionService 分配）
+    @Column(name = "catalog_version", nullable = false)
+    private Long catalogVersion = 0L;
+
     // 构造方法
     public Category() {}
 
@@ -47,6 +51,9 @@ public class Category {
     public LocalDateTime getCreateTime() { return createTime; }
     public void setCreateTime(LocalDateTime createTime) { this.createTime = createTime; }
 
+    public Long getCatalogVersion() { return catalogVersion; }
+    public void setCatalogVersion(Long catalogVersion) { this.catalogVersion = catalogVersion; }
+
     @PrePersist
     public void prePersist() {
         this.createTime = LocalDateTime.now();
@@ -1,11 +1,13 @@
 package com.pharmacy.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "hang_order")
-public class HangOrder {
+public class HangOrder implements Persistable<String> {
     @Id
     @Column(name = "hang_id", length = 32)
     private String hangId;
@@ -27,6 +29,9 @@ public class HangOrder {
     @JoinColumn(name = "cashier_id", insertable = false, updatable = false)
     private Employee cashier;
 
+    @Transient
+    private boolean isNew = true;
+
     // 构造方法、Getter和Setter
     public HangOrder() {}
 
@@ -48,6 +53,18 @@ public class HangOrder {
     public Employee getCashier() { return cashier; }
     public void setCashier(Employee cashier) { this.cashier = cashier; }
 
+    @Override
+    @JsonIgnore
+    public String getId() { return hangId; }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() { return isNew; }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+
     @PrePersist
     public void prePersist() {
         if (this.hangTime == null) {
@@ -7,7 +7,9 @@ import java.math.BigDecimal;
 @Table(name = "hang_order_item")
 public class HangOrderItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "hang_order_item_gen")
+    @TableGenerator(name = "hang_order_item_gen", table = "id_sequence", pkColumnName = "seq_name", valueColumnName = "next_val",
+            pkColumnValue = "hang_order_item", initialValue = 1, allocationSize = 50)
     private Integer id;
 
     @Column(name = "hang_id", nullable = false, length = 32)
@@ -9,7 +9,9 @@ import java.time.LocalDateTime;
 @Table(name = "inventory")
 public class Inventory {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "inventory_gen")
+    @TableGenerator(name = "inventory_gen", table = "id_sequence", pkColumnName = "seq_name", valueColumnName = "next_val",
+            pkColumnValue = "inventory", initialValue = 1, allocationSize = 50)
     @Column(name = "inventory_id")
     private Long id;
 
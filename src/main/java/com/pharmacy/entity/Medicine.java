@@ -2,6 +2,7 @@ package com.pharmacy.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.pharmacy.util.PinyinUtil;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -58,6 +59,7 @@ public class Medicine {
     @JsonIgnore
     private Supplier supplier;
 
+    // 唯一性只约束未删除的药品（库上 uk_medicine_active_barcode）
     @Column(name = "barcode", length = 64)
     private String barcode;
 
@@ -73,6 +75,15 @@ public class Medicine {
     @Column(name = "deleted", nullable = false)
     private Boolean deleted = false;
 
+    // 通用名/商品名的全拼与首字母检索码，保存时自动生成
+    @Column(name = "pinyin_code", length = 500)
+    @JsonIgnore
+    private String pinyinCode;
+
+    // 目录版本号，终端增量同步用（CatalogVersionService 分配）
+    @Column(name = "catalog_version", nullable = false)
+    private Long catalogVersion = 0L;
+
     // 构造方法、Getter和Setter保持不变
     public Medicine() {}
 
@@ -141,6 +152,12 @@ public class Medicine {
     public Boolean getDeleted() { return deleted; }
     public void setDeleted(Boolean deleted) { this.deleted = deleted; }
 
+    public String getPinyinCode() { return pinyinCode; }
+    public void setPinyinCode(String pinyinCode) { this.pinyinCode = pinyinCode; }
+
+    public Long getCatalogVersion() { return catalogVersion; }
+    public void setCatalogVersion(Long catalogVersion) { this.catalogVersion = catalogVersion; }
+
     @PrePersist
     public void prePersist() {
         this.createTime = LocalDateTime.now();
@@ -151,6 +168,7 @@ public class Medicine {
         if (this.deleted == null) {
             this.deleted = false;
         }
+        this.pinyinCode = PinyinUtil.keys(genericName, tradeName);
     }
 
     @PreUpdate
@@ -159,5 +177,6 @@ public class Medicine {
         if (this.status == null || this.status.isBlank()) {
             this.status = "ACTIVE";
         }
+        this.pinyinCode = PinyinUtil.keys(genericName, tradeName);
     }
 }
\ No newline at end of file
@@ -22,7 +22,8 @@ public class Member {
     @Column(name = "level")
     private Integer level = 0;
 
-    @Column(name = "points")
+    // 积分余额只由 MemberPointsService 的条件 UPDATE 维护，实体保存不写该列
+    @Column(name = "points", updatable = false)
     private Integer points = 0;
 
     @Column(name = "allergic_history", columnDefinition = "TEXT")
@@ -6,6 +6,12 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "member_point")
 public class MemberPoint {
+    /** 变动类型：消费获得 / 积分抵扣 / 积分兑换 / 人工调整 */
+    public static final int TYPE_EARN = 1;
+    public static final int TYPE_REDEEM = 2;
+    public static final int TYPE_EXCHANGE = 3;
+    public static final int TYPE_ADJUST = 4;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
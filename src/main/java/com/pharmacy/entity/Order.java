@@ -1,11 +1,13 @@
 package com.pharmacy.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "`order`") // 使用反引号，因为order是SQL关键字
-public class Order {
+public class Order implements Persistable<String> {
     @Id
     @Column(name = "order_id", length = 32)
     private String orderId;
@@ -56,6 +58,10 @@ public class Order {
     @Column(name = "remark")
     private String remark;
 
+    // 订单号由应用生成：标记新建实体，save 时直接 INSERT，避免 merge 先 SELECT 一次
+    @Transient
+    private boolean isNew = true;
+
     // 构造方法
     public Order() {}
 
@@ -109,6 +115,18 @@ public class Order {
     public String getRemark() { return remark; }
     public void setRemark(String remark) { this.remark = remark; }
 
+    @Override
+    @JsonIgnore
+    public String getId() { return orderId; }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() { return isNew; }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+
     @PrePersist
     public void prePersist() {
         if (this.orderTime == null) {
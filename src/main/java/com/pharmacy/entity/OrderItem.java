@@ -6,7 +6,9 @@ import jakarta.persistence.*;
 @Table(name = "order_item")
 public class OrderItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_item_gen")
+    @TableGenerator(name = "order_item_gen", table = "id_sequence", pkColumnName = "seq_name", valueColumnName = "next_val",
+            pkColumnValue = "order_item", initialValue = 1, allocationSize = 50) // 号段分配(pooled-lo)代替 IDENTITY，Hibernate 才能批量插入
     @Column(name = "item_id")
     private Long itemId;
 
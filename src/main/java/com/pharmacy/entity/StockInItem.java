@@ -9,7 +9,9 @@ import jakarta.persistence.*;
 @Table(name = "stock_in_item")
 public class StockInItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "stock_in_item_gen")
+    @TableGenerator(name = "stock_in_item_gen", table = "id_sequence", pkColumnName = "seq_name", valueColumnName = "next_val",
+            pkColumnValue = "stock_in_item", initialValue = 1, allocationSize = 50)
     @Column(name = "item_id")
     private Long itemId;
 
@@ -6,6 +6,12 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "stock_record")
 public class StockRecord {
+    /** 变动类型（与建库脚本一致）：1 入库 / 2 出库（销售）/ 3 盘点调整 / 4 退货入库；quantity 正数为增加，负数为减少 */
+    public static final int CHANGE_STOCK_IN = 1;
+    public static final int CHANGE_SALE = 2;
+    public static final int CHANGE_ADJUST = 3;
+    public static final int CHANGE_REFUND = 4;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "record_id")
@@ -17,6 +23,13 @@ public class StockRecord {
     @Column(name = "batch_no", length = 50)
     private String batchNo;
 
+    // 具体库存批次，退款据此原路回补
+    @Column(name = "inventory_id")
+    private Long inventoryId;
+
+    @Column(name = "order_item_id")
+    private Long orderItemId;
+
     @Column(name = "change_type", nullable = false)
     private Integer changeType;
 
@@ -57,6 +70,12 @@ public class StockRecord {
     public String getBatchNo() { return batchNo; }
     public void setBatchNo(String batchNo) { this.batchNo = batchNo; }
 
+    public Long getInventoryId() { return inventoryId; }
+    public void setInventoryId(Long inventoryId) { this.inventoryId = inventoryId; }
+
+    public Long getOrderItemId() { return orderItemId; }
+    public void setOrderItemId(Long orderItemId) { this.orderItemId = orderItemId; }
+
     public Integer getChangeType() { return changeType; }
     public void setChangeType(Integer changeType) { this.changeType = changeType; }
 
@@ -0,0 +1,133 @@
+package com.pharmacy.event;
+
+import com.pharmacy.multitenant.TenantContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 领域事件订阅方的异步执行器。
+ * 固定线程数 + 有界队列，队列满时丢弃任务并计数（不在提交线程上执行，避免高峰期把订阅方的库操作带回请求线程）。
+ * 只用于可重算的派生数据（缓存、索引、汇总），丢弃的更新由提交方自己的定时对账 / 全量重建补齐，这里不做任何补偿；
+ * 不可丢失的工作（如审计日志）不要经过这里，应在调用线程上同步完成。
+ * 提交时捕获 TenantContext 并在工作线程中恢复，使仓储路由到正确的租户库。
+ * executeCoalesced 按 (租户, key) 合并：同一会员/药品在排队期间的重复事件只执行一次，
+ * 任务开始执行前即释放 key，执行过程中到达的新事件会再排一次，不会漏掉最新状态。
+ */
+@Component
+public class DomainEventDispatcher {
+
+    @Value("${domain-events.pool-size:4}")
+    private int poolSize;
+
+    @Value("${domain-events.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        int threads = poolSize > 0 ? poolSize : 4;
+        int capacity = queueCapacity > 0 ? queueCapacity : 1000;
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                r -> {
+                    Thread t = new Thread(r, "domain-event-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** 在当前租户下异步执行；队列已满被丢弃时返回 false */
+    public boolean execute(Runnable task) {
+        submitted.incrementAndGet();
+        try {
+            executor.execute(wrap(TenantContext.getTenant(), task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            onDropped();
+            return false;
+        }
+    }
+
+    /** 在当前租户下异步执行；相同 key 已在排队时直接合并 */
+    public void executeCoalesced(String key, Runnable task) {
+        String tenant = TenantContext.getTenant();
+        String fullKey = TenantContext.currentTenantKey() + ":" + key;
+        if (!pendingKeys.add(fullKey)) {
+            coalesced.incrementAndGet();
+            return;
+        }
+        submitted.incrementAndGet();
+        Runnable wrapped = wrap(tenant, task);
+        try {
+            executor.execute(() -> {
+                pendingKeys.remove(fullKey);
+                wrapped.run();
+            });
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(fullKey);
+            onDropped();
+        }
+    }
+
+    // 队列已满（或已关闭）：计数并按 1、2、4… 次抽样打印，避免高峰期刷屏
+    private void onDropped() {
+        long n = dropped.incrementAndGet();
+        if (Long.bitCount(n) == 1) {
+            System.err.println("[DomainEvent] 队列已满，丢弃订阅任务 累计丢弃=" + n);
+        }
+    }
+
+    private Runnable wrap(String tenant, Runnable task) {
+        return () -> {
+            String previous = TenantContext.getTenant();
+            TenantContext.setTenant(tenant);
+            try {
+                task.run();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.err.println("[DomainEvent] 订阅任务执行失败 租户=" + tenant + " err=" + e.getMessage());
+            } finally {
+                if (previous == null) TenantContext.clear(); else TenantContext.setTenant(previous);
+            }
+        };
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("poolSize", executor.getPoolSize());
+        m.put("active", executor.getActiveCount());
+        m.put("queued", executor.getQueue().size());
+        m.put("pendingKeys", pendingKeys.size());
+        m.put("submitted", submitted.get());
+        m.put("coalesced", coalesced.get());
+        m.put("failed", failed.get());
+        m.put("dropped", dropped.get());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try { executor.awaitTermination(3, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+    }
+}
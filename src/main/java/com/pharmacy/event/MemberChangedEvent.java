@@ -0,0 +1,41 @@
+package com.pharmacy.event;
+
+import java.time.LocalDateTime;
+
+/** 会员新增、修改、删除或积分变动；before 为 null 表示新增，after 为 null 表示删除 */
+public class MemberChangedEvent {
+
+    private final String tenant;
+    private final String memberId;
+    private final Snapshot before;
+    private final Snapshot after;
+
+    public MemberChangedEvent(String tenant, String memberId, Snapshot before, Snapshot after) {
+        this.tenant = tenant;
+        this.memberId = memberId;
+        this.before = before;
+        this.after = after;
+    }
+
+    public String getTenant() { return tenant; }
+    public String getMemberId() { return memberId; }
+    public Snapshot getBefore() { return before; }
+    public Snapshot getAfter() { return after; }
+
+    /** 统计所需的会员字段快照 */
+    public static class Snapshot {
+        private final int level;
+        private final long points;
+        private final LocalDateTime createTime;
+
+        public Snapshot(Integer level, Integer points, LocalDateTime createTime) {
+            this.level = level == null ? 0 : level;
+            this.points = points == null ? 0 : points;
+            this.createTime = createTime;
+        }
+
+        public int getLevel() { return level; }
+        public long getPoints() { return points; }
+        public LocalDateTime getCreateTime() { return createTime; }
+    }
+}
@@ -0,0 +1,22 @@
+package com.pharmacy.event;
+
+/** 会员积分原子增减（结算累积 / 抵扣、退款冲回、人工调整）；delta 为实际写入的净变动 */
+public class MemberPointsChangedEvent {
+
+    private final String tenant;
+    private final String memberId;
+    private final long delta;
+    private final String orderId;
+
+    public MemberPointsChangedEvent(String tenant, String memberId, long delta, String orderId) {
+        this.tenant = tenant;
+        this.memberId = memberId;
+        this.delta = delta;
+        this.orderId = orderId;
+    }
+
+    public String getTenant() { return tenant; }
+    public String getMemberId() { return memberId; }
+    public long getDelta() { return delta; }
+    public String getOrderId() { return orderId; }
+}
@@ -0,0 +1,35 @@
+package com.pharmacy.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * 订单与库存变动审计日志（logger 名 audit，可在日志配置中单独落盘）。
+ * 仅记录已提交的变更；回滚的结算不会出现在审计中。
+ * 在提交后的回调线程上同步写出：审计不可丢失，不经过会在高峰期丢弃任务的 DomainEventDispatcher。
+ */
+@Component
+public class OrderAuditListener {
+
+    private static final Logger audit = LoggerFactory.getLogger("audit");
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderPlaced(OrderPlacedEvent e) {
+        audit.info("ORDER_PLACED tenant={} order={} member={} amount={} lines={}",
+                e.getTenant(), e.getOrderId(), e.getMemberId(), e.getAmount(), e.getLines().size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderRefunded(OrderRefundedEvent e) {
+        audit.info("ORDER_REFUNDED tenant={} order={} member={} amount={} reason={}",
+                e.getTenant(), e.getOrderId(), e.getMemberId(), e.getAmount(), e.getReason());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent e) {
+        audit.info("STOCK_CHANGED tenant={} source={} ref={} medicines={}",
+                e.getTenant(), e.getSource(), e.getReferenceId(), e.getMedicineIds());
+    }
+}
@@ -0,0 +1,65 @@
+package com.pharmacy.event;
+
+import com.pharmacy.multitenant.TenantContext;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单领域事件基类：在事务内发布，订阅方在提交后（AFTER_COMMIT）收到。
+ * 只携带订阅方需要的不可变快照，订阅方不应再回查订单实体。
+ */
+public abstract class OrderEvent {
+
+    private final String tenant;
+    private final String orderId;
+    private final String memberId;
+    private final double amount;
+    private final LocalDateTime orderTime;
+    private final List<Line> lines;
+
+    protected OrderEvent(String tenant, String orderId, String memberId, double amount,
+                         LocalDateTime orderTime, List<Line> lines) {
+        this.tenant = tenant;
+        this.orderId = orderId;
+        this.memberId = memberId;
+        this.amount = amount;
+        this.orderTime = orderTime;
+        this.lines = lines == null ? Collections.emptyList() : Collections.unmodifiableList(lines);
+    }
+
+    public String getTenant() { return tenant; }
+    /** 按租户分区的内存结构使用的键：以事件携带的租户为准，异步投递时线程上下文可能已不是下单租户 */
+    public String tenantKey() {
+        return tenant == null || tenant.isBlank() ? TenantContext.currentTenantKey() : tenant;
+    }
+    public String getOrderId() { return orderId; }
+    public String getMemberId() { return memberId; }
+    /** 实付金额 */
+    public double getAmount() { return amount; }
+    /** 下单时间（退款事件同样为原订单时间，便于按原时段冲减） */
+    public LocalDateTime getOrderTime() { return orderTime; }
+    public List<Line> getLines() { return lines; }
+
+    public boolean hasMember() {
+        return memberId != null && !memberId.isBlank();
+    }
+
+    /** 订单行快照 */
+    public static class Line {
+        private final String medicineId;
+        private final int quantity;
+        private final double subtotal;
+
+        public Line(String medicineId, int quantity, double subtotal) {
+            this.medicineId = medicineId;
+            this.quantity = quantity;
+            this.subtotal = subtotal;
+        }
+
+        public String getMedicineId() { return medicineId; }
+        public int getQuantity() { return quantity; }
+        public double getSubtotal() { return subtotal; }
+    }
+}
@@ -0,0 +1,13 @@
+package com.pharmacy.event;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/** 订单已支付并提交 */
+public class OrderPlacedEvent extends OrderEvent {
+
+    public OrderPlacedEvent(String tenant, String orderId, String memberId, double amount,
+                            LocalDateTime orderTime, List<Line> lines) {
+        super(tenant, orderId, memberId, amount, orderTime, lines);
+    }
+}
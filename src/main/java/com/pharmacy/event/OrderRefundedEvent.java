@@ -0,0 +1,22 @@
+package com.pharmacy.event;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/** 订单已整单退款 */
+public class OrderRefundedEvent extends OrderEvent {
+
+    private final LocalDateTime refundTime;
+    private final String reason;
+
+    public OrderRefundedEvent(String tenant, String orderId, String memberId, double amount,
+                              LocalDateTime orderTime, List<Line> lines,
+                              LocalDateTime refundTime, String reason) {
+        super(tenant, orderId, memberId, amount, orderTime, lines);
+        this.refundTime = refundTime;
+        this.reason = reason;
+    }
+
+    public LocalDateTime getRefundTime() { return refundTime; }
+    public String getReason() { return reason; }
+}
@@ -0,0 +1,33 @@
+package com.pharmacy.event;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/** 一批药品的库存发生变化（结算扣减、退款回补、入库、手工调整） */
+public class StockChangedEvent {
+
+    public static final String SOURCE_ORDER = "ORDER";
+    public static final String SOURCE_REFUND = "REFUND";
+    public static final String SOURCE_STOCK_IN = "STOCK_IN";
+    public static final String SOURCE_ADJUST = "ADJUST";
+
+    private final String tenant;
+    private final Set<String> medicineIds;
+    private final String source;
+    private final String referenceId;
+
+    public StockChangedEvent(String tenant, Collection<String> medicineIds, String source, String referenceId) {
+        this.tenant = tenant;
+        this.medicineIds = Collections.unmodifiableSet(new LinkedHashSet<>(medicineIds));
+        this.source = source;
+        this.referenceId = referenceId;
+    }
+
+    public String getTenant() { return tenant; }
+    public Set<String> getMedicineIds() { return medicineIds; }
+    public String getSource() { return source; }
+    /** 来源单号（订单号 / 入库单号） */
+    public String getReferenceId() { return referenceId; }
+}
@@ -12,6 +12,10 @@ import java.util.*;
 @Configuration
 public class MultiTenantSchemaInitializer {
 
+    // 未删除药品的条码（生成列，MySQL 未指定 STORED 时即为 VIRTUAL），唯一索引建在此列上，软删除的行不占用条码
+    private static final String ACTIVE_BARCODE_EXPR =
+            "GENERATED ALWAYS AS (CASE WHEN deleted = 0 THEN NULLIF(barcode, '') END)";
+
     @Bean
     public ApplicationRunner stockInTablesInitializer(MultiTenantDataSourceConfig dataSourceConfig) {
         return args -> {
@@ -21,24 +25,18 @@ public class MultiTenantSchemaInitializer {
             for (String tenantId : dsMap.keySet()) {
                 DataSource ds = dsMap.get(tenantId);
                 try (Connection conn = ds.getConnection()) {
-                    String catalog = conn.getCatalog();
-                    System.out.println("[SchemaInit] 租户=" + tenantId + " 库=" + catalog);
-                    // 新增：保证核心业务表存在（避免 member / category 不存在导致 1146 错误）
-                    ensureCategoryTable(conn, catalog);
-                    ensureRoleTable(conn, catalog);
-                    ensureMemberTable(conn, catalog);
-                    ensureEmployeeTable(conn, catalog);
-                    ensureMedicineTable(conn, catalog);
-                    ensureInventoryTable(conn, catalog);
-                    ensureOrderTable(conn, catalog);
-                    ensureOrderItemTable(conn, catalog);
-                    // 已有：供应商与入库相关
-                    ensureSupplierTable(conn, catalog);
-                    ensureStockInTable(conn, catalog);
-                    ensureStockInItemTable(conn, catalog);
+                    System.out.println("[SchemaInit] 租户=" + tenantId + " 库=" + conn.getCatalog());
+                    ensureTenantTables(conn);
                 } catch (Exception ex) {
                     System.err.println("[SchemaInit] 租户="+tenantId+" 初始化入库/供应商表失败: " + ex.getMessage());
                 }
+                // 号段主键表单独执行：需在业务表之后按现有最大ID播种，但前面任一步失败都不能让它缺失，
+                // 否则该租户所有 @TableGenerator 实体的插入都会失败
+                try (Connection conn = ds.getConnection()) {
+                    ensureIdSequenceTable(conn);
+                } catch (Exception ex) {
+                    System.err.println("[SchemaInit] 租户="+tenantId+" 初始化号段表 id_sequence 失败: " + ex.getMessage());
+                }
             }
             // 基准租户表结构复制（rzt 作为基准，如果存在）
             if (dsMap.containsKey("rzt")) {
@@ -85,6 +83,33 @@ public class MultiTenantSchemaInitializer {
         };
     }
 
+    /**
+     * 补齐单个租户库的业务表、列与索引（不含号段表 id_sequence）。
+     * 启动时对每个租户执行；测试用同一入口在内存库上建表，避免手写 DDL 与线上结构不一致。
+     */
+    public void ensureTenantTables(Connection conn) throws SQLException {
+        String catalog = conn.getCatalog();
+        // 新增：保证核心业务表存在（避免 member / category 不存在导致 1146 错误）
+        ensureCategoryTable(conn, catalog);
+        ensureRoleTable(conn, catalog);
+        ensureMemberTable(conn, catalog);
+        ensureEmployeeTable(conn, catalog);
+        ensureMedicineTable(conn, catalog);
+        ensureInventoryTable(conn, catalog);
+        ensureOrderTable(conn, catalog);
+        ensureOrderItemTable(conn, catalog);
+        ensureMemberStatsTable(conn, catalog);
+        ensureMemberPointTable(conn, catalog);
+        ensureSalesRollupTable(conn, catalog);
+        ensureStockRecordTable(conn, catalog);
+        // 已有：供应商与入库相关
+        ensureSupplierTable(conn, catalog);
+        ensureStockInTable(conn, catalog);
+        ensureStockInItemTable(conn, catalog);
+        ensureIdempotencyTable(conn, catalog);
+        ensureCatalogTombstoneTable(conn, catalog);
+    }
+
     private Set<String> listTables(Connection conn, String catalog) throws SQLException {
         Set<String> set = new HashSet<>();
         try (ResultSet rs = conn.getMetaData().getTables(catalog, null, "%", new String[]{"TABLE"})) {
@@ -205,7 +230,11 @@ public class MultiTenantSchemaInitializer {
                     "allergic_history TEXT, " +
                     "medical_card_no VARCHAR(50), " +
                     "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                    "UNIQUE KEY uk_phone(phone)" +
+                    "UNIQUE KEY uk_phone(phone), " +
+                    "KEY idx_member_card_no(card_no), " +
+                    "KEY idx_member_points(points), " +
+                    "KEY idx_member_level(level), " +
+                    "KEY idx_member_create_time(create_time)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
             try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 member"); }
         } else {
@@ -213,6 +242,10 @@ public class MultiTenantSchemaInitializer {
             addColumnIfMissing(conn, "member", "card_no", "VARCHAR(50)");
             addColumnIfMissing(conn, "member", "allergic_history", "TEXT");
             addColumnIfMissing(conn, "member", "medical_card_no", "VARCHAR(50)");
+            addIndexIfMissing(conn, "member", "idx_member_card_no", "card_no");
+            addIndexIfMissing(conn, "member", "idx_member_points", "points");
+            addIndexIfMissing(conn, "member", "idx_member_level", "level");
+            addIndexIfMissing(conn, "member", "idx_member_create_time", "create_time");
         }
     }
     private void ensureCategoryTable(Connection conn, String catalog) throws SQLException {
@@ -223,9 +256,14 @@ public class MultiTenantSchemaInitializer {
                     "parent_id INT DEFAULT 0, " +
                     "sort INT DEFAULT 0, " +
                     "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                    "UNIQUE KEY uk_name(category_name)" +
+                    "catalog_version BIGINT NOT NULL DEFAULT 0, " +
+                    "UNIQUE KEY uk_name(category_name), " +
+                    "KEY idx_category_catalog_version(catalog_version)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
             try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 category"); }
+        } else {
+            addColumnIfMissing(conn, "category", "catalog_version", "BIGINT NOT NULL DEFAULT 0");
+            addIndexIfMissing(conn, "category", "idx_category_catalog_version", "catalog_version");
         }
     }
     private void ensureRoleTable(Connection conn, String catalog) throws SQLException {
@@ -277,9 +315,15 @@ public class MultiTenantSchemaInitializer {
                     "unit VARCHAR(20), " +
                     "description TEXT, " +
                     "supplier_id INT, " +
+                    "pinyin_code VARCHAR(500), " +
+                    "catalog_version BIGINT NOT NULL DEFAULT 0, " +
                     "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                     "update_time DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, " +
-                    "KEY idx_category(category_id)" +
+                    "active_barcode VARCHAR(64) " + ACTIVE_BARCODE_EXPR + ", " +
+                    "KEY idx_category(category_id), " +
+                    "KEY idx_medicine_barcode(barcode), " +
+                    "UNIQUE KEY uk_medicine_active_barcode(active_barcode), " +
+                    "KEY idx_medicine_catalog_version(catalog_version)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
             try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 medicine"); }
         } else {
@@ -292,6 +336,18 @@ public class MultiTenantSchemaInitializer {
             addColumnIfMissing(conn, "medicine", "unit", "VARCHAR(20)");
             addColumnIfMissing(conn, "medicine", "description", "TEXT");
             addColumnIfMissing(conn, "medicine", "supplier_id", "INT");
+            addColumnIfMissing(conn, "medicine", "pinyin_code", "VARCHAR(500)");
+            // 扫码按 barcode 精确查找：空串先归一为 NULL，再建唯一索引（存在重复条码时建索引失败并打印，需人工清理）
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("UPDATE medicine SET barcode = NULL WHERE barcode = ''");
+            }
+            // 条码只在未删除的药品间唯一：软删除保留原条码（可恢复），同条码可重新建档
+            addColumnIfMissing(conn, "medicine", "active_barcode", "VARCHAR(64) " + ACTIVE_BARCODE_EXPR);
+            addIndexIfMissing(conn, "medicine", "idx_medicine_barcode", "barcode");
+            addUniqueIndexIfMissing(conn, "medicine", "uk_medicine_active_barcode", "active_barcode");
+            dropIndexIfExists(conn, "medicine", "uk_medicine_barcode");
+            addColumnIfMissing(conn, "medicine", "catalog_version", "BIGINT NOT NULL DEFAULT 0");
+            addIndexIfMissing(conn, "medicine", "idx_medicine_catalog_version", "catalog_version");
         }
     }
     private void ensureInventoryTable(Connection conn, String catalog) throws SQLException {
@@ -338,11 +394,81 @@ public class MultiTenantSchemaInitializer {
                     "created_points INT, " +
                     "remark VARCHAR(200), " +
                     "KEY idx_member(member_id), " +
-                    "KEY idx_cashier(cashier_id)" +
+                    "KEY idx_cashier(cashier_id), " +
+                    "KEY idx_order_time(order_time)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
             try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 order"); }
+        } else {
+            addIndexIfMissing(conn, "order", "idx_order_time", "order_time");
+        }
+    }
+    /**
+     * member_stats：会员消费读模型（已支付订单数 / 累计实付 / 最近下单时间），由 MemberStatsService 随订单提交、退款刷新。
+     * 新建时按现有已支付订单一次性回填。
+     */
+    private void ensureMemberStatsTable(Connection conn, String catalog) throws SQLException {
+        if (tableExists(conn, catalog, "member_stats")) return;
+        String ddl = "CREATE TABLE member_stats (" +
+                "member_id VARCHAR(32) PRIMARY KEY, " +
+                "order_count INT NOT NULL DEFAULT 0, " +
+                "total_spent DECIMAL(14,2) NOT NULL DEFAULT 0, " +
+                "last_order_time DATETIME NULL, " +
+                "update_time DATETIME NOT NULL, " +
+                "KEY idx_member_stats_count(order_count), " +
+                "KEY idx_member_stats_last(last_order_time)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate(ddl);
+            System.out.println("[SchemaInit] 已创建表 member_stats");
+            int rows = st.executeUpdate("INSERT INTO member_stats(member_id, order_count, total_spent, last_order_time, update_time) " +
+                    "SELECT member_id, COUNT(*), COALESCE(SUM(actual_payment), 0), MAX(order_time), NOW() FROM `order` " +
+                    "WHERE payment_status = 1 AND member_id IS NOT NULL GROUP BY member_id");
+            System.out.println("[SchemaInit] member_stats 已回填会员数=" + rows);
+        }
+    }
+    // 会员积分流水：MemberPointLedger 提交后批量追加，按会员 / 订单查询
+    private void ensureMemberPointTable(Connection conn, String catalog) throws SQLException {
+        if (!tableExists(conn, catalog, "member_point")) {
+            String ddl = "CREATE TABLE member_point (" +
+                    "id INT PRIMARY KEY AUTO_INCREMENT, " +
+                    "member_id VARCHAR(32) NOT NULL, " +
+                    "point INT NOT NULL, " +
+                    "type TINYINT NOT NULL, " +
+                    "related_order_id VARCHAR(32), " +
+                    "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                    "KEY idx_member_point_member(member_id), " +
+                    "KEY idx_member_point_order(related_order_id)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+            try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 member_point"); }
+        } else {
+            addIndexIfMissing(conn, "member_point", "idx_member_point_order", "related_order_id");
         }
     }
+
+    // 按小时的销售汇总：SalesRollupService 随订单 / 退款重算对应小时，首次启动回填历史
+    private void ensureSalesRollupTable(Connection conn, String catalog) throws SQLException {
+        // 历史回填水位：已回填完成的最后一天，重启后从水位次日续跑
+        if (!tableExists(conn, catalog, "sales_rollup_watermark")) {
+            String ddl = "CREATE TABLE sales_rollup_watermark (" +
+                    "id TINYINT PRIMARY KEY, " +
+                    "done_through DATE NOT NULL, " +
+                    "update_time DATETIME NOT NULL" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+            try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 sales_rollup_watermark"); }
+        }
+        if (tableExists(conn, catalog, "sales_rollup_hourly")) return;
+        String ddl = "CREATE TABLE sales_rollup_hourly (" +
+                "bucket_hour DATETIME PRIMARY KEY, " +
+                "paid_count INT NOT NULL DEFAULT 0, " +
+                "gross_amount DECIMAL(14,2) NOT NULL DEFAULT 0, " +
+                "discount_amount DECIMAL(14,2) NOT NULL DEFAULT 0, " +
+                "net_amount DECIMAL(14,2) NOT NULL DEFAULT 0, " +
+                "member_sketch VARBINARY(1024) NULL, " +
+                "update_time DATETIME NOT NULL" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+        try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 sales_rollup_hourly"); }
+    }
+
     private void ensureOrderItemTable(Connection conn, String catalog) throws SQLException {
         if (!tableExists(conn, catalog, "order_item")) {
             String ddl = "CREATE TABLE order_item (" +
@@ -353,12 +479,103 @@ public class MultiTenantSchemaInitializer {
                     "unit_price DECIMAL(10,2) NOT NULL, " +
                     "subtotal DECIMAL(10,2) NOT NULL, " +
                     "KEY idx_order(order_id), " +
-                    "KEY idx_med(medicine_id)" +
+                    "KEY idx_order_item_med(medicine_id)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
             try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 order_item"); }
         }
     }
 
+    // 库存流水台账：结算按批次记录 SALE，退款按 related_order_id 取回后原路回补
+    private void ensureStockRecordTable(Connection conn, String catalog) throws SQLException {
+        if (!tableExists(conn, catalog, "stock_record")) {
+            String ddl = "CREATE TABLE stock_record (" +
+                    "record_id INT PRIMARY KEY AUTO_INCREMENT, " +
+                    "medicine_id VARCHAR(32) NOT NULL, " +
+                    "batch_no VARCHAR(50), " +
+                    "inventory_id BIGINT, " +
+                    "order_item_id BIGINT, " +
+                    "change_type TINYINT NOT NULL COMMENT '变动类型：1-入库，2-出库（销售），3-盘点调整，4-退货入库', " +
+                    "quantity INT NOT NULL COMMENT '变动数量（正数为增加，负数为减少）', " +
+                    "operator_id INT NOT NULL, " +
+                    "related_order_id VARCHAR(32), " +
+                    "remark VARCHAR(200), " +
+                    "create_time DATETIME, " +
+                    "KEY idx_related_order(related_order_id), " +
+                    "KEY idx_med_time(medicine_id, create_time)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+            try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 stock_record"); }
+        } else {
+            addColumnIfMissing(conn, "stock_record", "inventory_id", "BIGINT");
+            addColumnIfMissing(conn, "stock_record", "order_item_id", "BIGINT");
+            addIndexIfMissing(conn, "stock_record", "idx_related_order", "related_order_id");
+            addIndexIfMissing(conn, "stock_record", "idx_med_time", "medicine_id, create_time");
+        }
+    }
+
+    /**
+     * id_sequence：OrderItem / Inventory / StockInItem / HangOrderItem 的 @TableGenerator 号段表；
+     * 另有 seq_name='member' 一行供 MemberIdSequence 分配会员号（首次分配时播种）。
+     * 每行 next_val 为下一个号段起点(pooled-lo)；缺行时按业务表 MAX(主键)+1 播种，避免与历史自增ID冲突。
+     */
+    public void ensureIdSequenceTable(Connection conn) throws SQLException {
+        String catalog = conn.getCatalog();
+        if (!tableExists(conn, catalog, "id_sequence")) {
+            String ddl = "CREATE TABLE id_sequence (" +
+                    "seq_name VARCHAR(64) PRIMARY KEY, " +
+                    "next_val BIGINT NOT NULL" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+            try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 id_sequence"); }
+        }
+        seedIdSequence(conn, catalog, "order_item", "item_id");
+        seedIdSequence(conn, catalog, "inventory", "inventory_id");
+        seedIdSequence(conn, catalog, "stock_in_item", "item_id");
+        seedIdSequence(conn, catalog, "hang_order_item", "id");
+    }
+
+    // 写接口幂等记录（Idempotency-Key），按 scope+key 唯一，create_time 索引用于过期清理
+    private void ensureIdempotencyTable(Connection conn, String catalog) throws SQLException {
+        if (tableExists(conn, catalog, "idempotency_record")) return;
+        String ddl = "CREATE TABLE idempotency_record (" +
+                "scope VARCHAR(32) NOT NULL, " +
+                "idem_key VARCHAR(128) NOT NULL, " +
+                "request_hash CHAR(64) NOT NULL, " +
+                "status TINYINT NOT NULL DEFAULT 0, " +
+                "http_status INT NULL, " +
+                "response_body MEDIUMTEXT NULL, " +
+                "create_time DATETIME NOT NULL, " +
+                "PRIMARY KEY (scope, idem_key), " +
+                "KEY idx_idempotency_create_time (create_time)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+        try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 idempotency_record"); }
+    }
+
+    private void ensureCatalogTombstoneTable(Connection conn, String catalog) throws SQLException {
+        if (tableExists(conn, catalog, "catalog_tombstone")) return;
+        String ddl = "CREATE TABLE catalog_tombstone (" +
+                "id BIGINT PRIMARY KEY AUTO_INCREMENT, " +
+                "entity VARCHAR(20) NOT NULL, " +
+                "entity_id VARCHAR(32) NOT NULL, " +
+                "catalog_version BIGINT NOT NULL, " +
+                "create_time DATETIME NOT NULL, " +
+                "KEY idx_tombstone_version (catalog_version)" +
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci";
+        try (Statement st = conn.createStatement()) { st.executeUpdate(ddl); System.out.println("[SchemaInit] 已创建表 catalog_tombstone"); }
+    }
+
+    private void seedIdSequence(Connection conn, String catalog, String table, String idColumn) {
+        if (!tableExists(conn, catalog, table)) return;
+        String sql = "INSERT INTO id_sequence(seq_name, next_val) " +
+                "SELECT '" + table + "', COALESCE(MAX(" + idColumn + "), 0) + 1 FROM " + table +
+                " WHERE NOT EXISTS (SELECT 1 FROM id_sequence WHERE seq_name = '" + table + "')";
+        try (Statement st = conn.createStatement()) {
+            if (st.executeUpdate(sql) > 0) {
+                System.out.println("[SchemaInit] 已播种号段 " + table);
+            }
+        } catch (SQLException e) {
+            System.err.println("[SchemaInit] 播种号段失败 table=" + table + " msg=" + e.getMessage());
+        }
+    }
+
     private boolean tableExists(Connection conn, String catalog, String table) {
         try (ResultSet rs = conn.getMetaData().getTables(catalog, null, table, null)) {
             return rs.next();
@@ -385,6 +602,46 @@ public class MultiTenantSchemaInitializer {
         }
     }
 
+    private void addIndexIfMissing(Connection conn, String table, String index, String columns) {
+        addIndexIfMissing(conn, table, index, columns, false);
+    }
+
+    private void dropIndexIfExists(Connection conn, String table, String index) {
+        try {
+            String sqlCheck = "SELECT COUNT(*) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA='" + escape(conn.getCatalog()) + "' AND TABLE_NAME='" + table + "' AND INDEX_NAME='" + index + "'";
+            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sqlCheck)) {
+                if (rs.next() && rs.getInt(1) > 0) {
+                    try (Statement stAlter = conn.createStatement()) {
+                        stAlter.executeUpdate("ALTER TABLE `" + table + "` DROP INDEX " + index);
+                        System.out.println("[SchemaInit] 表 " + table + " 已删除索引 " + index);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[SchemaInit] 检测/删除索引失败 table="+table+" index="+index+" msg="+e.getMessage());
+        }
+    }
+
+    private void addUniqueIndexIfMissing(Connection conn, String table, String index, String columns) {
+        addIndexIfMissing(conn, table, index, columns, true);
+    }
+
+    private void addIndexIfMissing(Connection conn, String table, String index, String columns, boolean unique) {
+        try {
+            String sqlCheck = "SELECT COUNT(*) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA='" + escape(conn.getCatalog()) + "' AND TABLE_NAME='" + table + "' AND INDEX_NAME='" + index + "'";
+            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sqlCheck)) {
+                if (rs.next() && rs.getInt(1) == 0) {
+                    try (Statement stAlter = conn.createStatement()) {
+                        stAlter.executeUpdate("ALTER TABLE `" + table + "`" + (unique ? " ADD UNIQUE INDEX " : " ADD INDEX ") + index + " (" + columns + ")");
+                        System.out.println("[SchemaInit] 表 " + table + " 已补充索引 " + index);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[SchemaInit] 检测/添加索引失败 table="+table+" index="+index+" msg="+e.getMessage());
+        }
+    }
+
     private String escape(String s){
         return s == null ? "" : s.replace("'", "''");
     }
@@ -0,0 +1,102 @@
+package com.pharmacy.multitenant;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+/**
+ * 按租户隔离键空间的缓存管理器：所有 @Cacheable/@CacheEvict 的键自动加上 TenantContext 当前租户，
+ * 不同店铺库的同一主键不会串读；clear()（allEntries=true）只清当前租户的条目。
+ */
+public class TenantAwareCacheManager implements CacheManager {
+
+    private final Map<String, TenantAwareCache> caches = new LinkedHashMap<>();
+
+    public TenantAwareCacheManager(Collection<CaffeineCache> delegates) {
+        for (CaffeineCache c : delegates) {
+            caches.put(c.getName(), new TenantAwareCache(c));
+        }
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.get(name);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /** 租户 + 业务键 */
+    static final class TenantKey {
+        final String tenant;
+        final Object key;
+
+        TenantKey(String tenant, Object key) {
+            this.tenant = tenant;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TenantKey)) return false;
+            TenantKey other = (TenantKey) o;
+            return tenant.equals(other.tenant) && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tenant.hashCode() + Objects.hashCode(key);
+        }
+
+        @Override
+        public String toString() {
+            return tenant + ":" + key;
+        }
+    }
+
+    public static final class TenantAwareCache implements Cache {
+        private final CaffeineCache delegate;
+
+        TenantAwareCache(CaffeineCache delegate) {
+            this.delegate = delegate;
+        }
+
+        private static TenantKey wrap(Object key) {
+            return new TenantKey(TenantContext.currentTenantKey(), key);
+        }
+
+        @Override public String getName() { return delegate.getName(); }
+        /** 底层 Caffeine 缓存（含全部租户），用于统计 */
+        @Override public com.github.benmanes.caffeine.cache.Cache<Object, Object> getNativeCache() { return delegate.getNativeCache(); }
+        @Override public ValueWrapper get(Object key) { return delegate.get(wrap(key)); }
+        @Override public <T> T get(Object key, Class<T> type) { return delegate.get(wrap(key), type); }
+        @Override public <T> T get(Object key, Callable<T> valueLoader) { return delegate.get(wrap(key), valueLoader); }
+        @Override public void put(Object key, Object value) { delegate.put(wrap(key), value); }
+        @Override public ValueWrapper putIfAbsent(Object key, Object value) { return delegate.putIfAbsent(wrap(key), value); }
+        @Override public void evict(Object key) { delegate.evict(wrap(key)); }
+        @Override public boolean evictIfPresent(Object key) { return delegate.evictIfPresent(wrap(key)); }
+
+        @Override
+        public void clear() {
+            String tenant = TenantContext.currentTenantKey();
+            delegate.getNativeCache().asMap().keySet()
+                    .removeIf(k -> k instanceof TenantKey && ((TenantKey) k).tenant.equals(tenant));
+        }
+
+        @Override
+        public boolean invalidate() {
+            clear();
+            return true;
+        }
+    }
+}
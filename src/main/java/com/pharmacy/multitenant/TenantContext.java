@@ -21,4 +21,9 @@ public final class TenantContext {
     public static String getCurrentTenant(){
         return getTenant();
     }
+    /** 与 StoreRoutingDataSource 一致的租户键：未设置时为 default，用于按租户分区的内存结构 */
+    public static String currentTenantKey(){
+        String tenant = TENANT_HOLDER.get();
+        return tenant == null || tenant.isBlank() ? "default" : tenant;
+    }
 }
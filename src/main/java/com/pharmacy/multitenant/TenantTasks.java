@@ -0,0 +1,29 @@
+package com.pharmacy.multitenant;
+
+/**
+ * 逐个租户执行后台任务（预热、对账、定时清理）：执行期间切换 TenantContext，结束后清除。
+ * 单个租户失败只记日志，不影响其余租户；未启用多租户配置（config 为 null）时不执行。
+ */
+public final class TenantTasks {
+
+    private TenantTasks() {
+    }
+
+    /**
+     * @param tag    日志前缀，如 [SearchIndex]
+     * @param action 失败时的描述，如 构建失败
+     */
+    public static void forEach(MultiTenantDataSourceConfig config, String tag, String action, Runnable task) {
+        if (config == null) return;
+        for (String tenant : config.getTenantIds()) {
+            try {
+                TenantContext.setTenant(tenant);
+                task.run();
+            } catch (Exception e) {
+                System.err.println(tag + " 租户=" + tenant + " " + action + " err=" + e.getMessage());
+            } finally {
+                TenantContext.clear();
+            }
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.pharmacy.repository;
 
+import com.pharmacy.config.CacheConfig;
 import com.pharmacy.entity.Category;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -10,6 +14,30 @@ import java.util.Optional;
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Integer> {
 
+    // 参考数据缓存（按租户隔离），写入前后各失效一次，避免并发读回填旧值
+    @Override
+    @Cacheable(value = CacheConfig.CATEGORIES, key = "'all'")
+    List<Category> findAll();
+
+    @Override
+    @Cacheable(value = CacheConfig.CATEGORIES, key = "#p0", unless = "#result == null")
+    Optional<Category> findById(Integer id);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.CATEGORIES, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.CATEGORIES, allEntries = true)})
+    <S extends Category> S save(S entity);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.CATEGORIES, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.CATEGORIES, allEntries = true)})
+    <S extends Category> List<S> saveAll(Iterable<S> entities);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.CATEGORIES, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.CATEGORIES, allEntries = true)})
+    void deleteById(Integer id);
+
     // 根据分类名称查找（精确匹配）
     Optional<Category> findByCategoryName(String categoryName);
 
@@ -22,6 +50,9 @@ public interface CategoryRepository extends JpaRepository<Category, Integer> {
     // 根据分类名称查找（忽略大小写）
     Optional<Category> findByCategoryNameIgnoreCase(String categoryName);
 
+    // 目录增量同步：版本区间内变更的分类
+    List<Category> findByCatalogVersionGreaterThanAndCatalogVersionLessThanEqualOrderByCatalogVersion(Long since, Long upTo);
+
     // 查找所有活跃的分类（如果有状态字段的话）
     // List<Category> findByStatus(Integer status);
 }
\ No newline at end of file
@@ -16,6 +16,9 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     // 根据药品ID查找库存
     List<Inventory> findByMedicineId(String medicineId);
 
+    // 批量：一次取出多个药品的全部批次（入库单按单处理，避免逐行查询）
+    List<Inventory> findByMedicineIdIn(java.util.Collection<String> medicineIds);
+
     // 查找低库存（库存量 <= 最小库存）- 修复：使用 stockQuantity
     @Query("SELECT i FROM Inventory i WHERE i.stockQuantity <= i.minStock")
     List<Inventory> findLowStock();
@@ -32,10 +35,6 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     // 根据批号查找
     List<Inventory> findByBatchNo(String batchNo);
 
-    // 修复：返回当前每个药品的库存汇总（medicine_id, total_stock）
-    @Query(value = "SELECT medicine_id, COALESCE(SUM(stock_quantity), 0) FROM inventory GROUP BY medicine_id", nativeQuery = true)
-    List<Object[]> getCurrentStockByMedicine();
-
     // 获取低库存数量（stock_quantity <= min_stock）
     @Query(value = "SELECT COUNT(*) FROM inventory WHERE stock_quantity <= min_stock", nativeQuery = true)
     Integer getLowStockCount();
@@ -71,6 +70,19 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
            "from Inventory i join i.medicine m where i.medicineId = :medicineId")
     List<InventoryDTO> findDTOByMedicineId(@Param("medicineId") String medicineId);
 
+    // 一页药品的库存汇总：总量、最早未过期效期、最小正安全库存，一次分组查询
+    @Query(value = "SELECT i.medicine_id AS medicineId, COALESCE(SUM(i.stock_quantity), 0) AS totalStock, " +
+            "MIN(CASE WHEN i.expiry_date >= CURRENT_DATE THEN i.expiry_date END) AS earliestExpiry, " +
+            "MIN(CASE WHEN i.min_stock > 0 THEN i.min_stock END) AS minStock " +
+            "FROM inventory i WHERE i.medicine_id IN (:medicineIds) GROUP BY i.medicine_id", nativeQuery = true)
+    List<com.pharmacy.dto.MedicineStockSummary> summarizeByMedicineIds(@Param("medicineIds") java.util.Collection<String> medicineIds);
+
+    // 一页药品的去重批号（medicine_id, batch_no）按行返回，不拼接字符串，批号含逗号或批次很多时也完整
+    @Query(value = "SELECT DISTINCT i.medicine_id, i.batch_no FROM inventory i " +
+            "WHERE i.medicine_id IN (:medicineIds) AND i.batch_no IS NOT NULL AND i.batch_no <> '' " +
+            "ORDER BY i.medicine_id, i.batch_no", nativeQuery = true)
+    List<Object[]> findBatchNosByMedicineIds(@Param("medicineIds") java.util.Collection<String> medicineIds);
+
     // 新增：获取各药品最早未过期的有效期日期（仅取 >= 当前日期）
     @Query(value = "SELECT medicine_id, MIN(expiry_date) FROM inventory WHERE expiry_date >= CURRENT_DATE GROUP BY medicine_id", nativeQuery = true)
     List<Object[]> getEarliestNonExpiredExpiryByMedicine();
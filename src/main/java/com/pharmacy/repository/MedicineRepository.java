@@ -4,6 +4,7 @@ import com.pharmacy.entity.Medicine;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -11,7 +12,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface MedicineRepository extends JpaRepository<Medicine, String> {
+public interface MedicineRepository extends JpaRepository<Medicine, String>, JpaSpecificationExecutor<Medicine> {
 
     // 多字段搜索 - 使用 CONCAT 确保字符集正确
     @Query("SELECT m FROM Medicine m WHERE " +
@@ -68,6 +69,9 @@ public interface MedicineRepository extends JpaRepository<Medicine, String> {
     @Query("SELECT m FROM Medicine m WHERE m.deleted = false AND m.medicineId IN :ids")
     List<Medicine> findActiveByMedicineIdIn(@Param("ids") List<String> ids);
 
+    // 目录增量同步：版本区间内变更的药品（含软删除）
+    List<Medicine> findByCatalogVersionGreaterThanAndCatalogVersionLessThanEqualOrderByCatalogVersion(Long since, Long upTo);
+
     @Query("SELECT m FROM Medicine m WHERE m.deleted = false AND (m.genericName LIKE CONCAT('%', :keyword, '%') OR m.tradeName LIKE CONCAT('%', :keyword, '%') OR m.description LIKE CONCAT('%', :keyword, '%') OR m.manufacturer LIKE CONCAT('%', :keyword, '%') OR m.spec LIKE CONCAT('%', :keyword, '%'))")
     List<Medicine> searchActiveByKeyword(@Param("keyword") String keyword);
 }
\ No newline at end of file
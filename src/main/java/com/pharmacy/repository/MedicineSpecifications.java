@@ -0,0 +1,67 @@
+package com.pharmacy.repository;
+
+import com.pharmacy.entity.Category;
+import com.pharmacy.entity.Medicine;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 药品列表/搜索的查询条件，全部下推到数据库（配合 Pageable 生成 LIMIT/OFFSET 与独立 COUNT）。
+ * category 兼容前端的几种取值：分类ID数字、prescription/otc（按处方药标记）、chinese 或分类名称。
+ */
+public final class MedicineSpecifications {
+
+    private MedicineSpecifications() {}
+
+    /** 非数字的 category 取值对应的分类名称关键字（chinese 对应“中药”类） */
+    public static String categoryName(String category) {
+        return "chinese".equalsIgnoreCase(category) ? "中药" : category;
+    }
+
+    public static Specification<Medicine> search(String keyword, String category, Boolean isRx, String status) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.isFalse(root.get("deleted")));
+
+            if (keyword != null && !keyword.trim().isEmpty()) {
+                String like = "%" + keyword.trim() + "%";
+                predicates.add(cb.or(
+                        cb.like(root.get("genericName"), like),
+                        cb.like(root.get("tradeName"), like),
+                        cb.like(root.get("description"), like),
+                        cb.like(root.get("manufacturer"), like),
+                        cb.like(root.get("spec"), like)));
+            }
+
+            if (category != null && !category.trim().isEmpty()) {
+                String c = category.trim();
+                if (c.chars().allMatch(Character::isDigit)) {
+                    predicates.add(cb.equal(root.get("categoryId"), Integer.valueOf(c)));
+                } else if ("prescription".equalsIgnoreCase(c) || "rx".equalsIgnoreCase(c)) {
+                    predicates.add(cb.isTrue(root.get("isRx")));
+                } else if ("otc".equalsIgnoreCase(c)) {
+                    predicates.add(cb.isFalse(root.get("isRx")));
+                } else {
+                    String name = categoryName(c);
+                    Subquery<Integer> sub = query.subquery(Integer.class);
+                    var cat = sub.from(Category.class);
+                    sub.select(cat.get("categoryId")).where(cb.like(cat.get("categoryName"), "%" + name + "%"));
+                    predicates.add(root.get("categoryId").in(sub));
+                }
+            }
+
+            if (isRx != null) {
+                predicates.add(cb.equal(root.get("isRx"), isRx));
+            }
+
+            if (status != null && !status.trim().isEmpty()) {
+                predicates.add(cb.equal(cb.upper(root.get("status")), status.trim().toUpperCase()));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+}
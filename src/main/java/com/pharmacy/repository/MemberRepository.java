@@ -19,6 +19,11 @@ public interface MemberRepository extends JpaRepository<Member, String> {
     // 根据会员卡号查找
     Optional<Member> findByCardNo(String cardNo);
 
+    // 手机号 / 卡号包含（会员检索索引未就绪时的回退）
+    List<Member> findByPhoneContaining(String phone);
+
+    List<Member> findByCardNoContaining(String cardNo);
+
     // 根据等级查找会员
     List<Member> findByLevel(Integer level);
 
@@ -30,17 +30,6 @@ public interface OrderRepository extends JpaRepository<Order, String> { // ID 
     @Query("SELECT COUNT(o) FROM Order o WHERE o.orderTime BETWEEN :start AND :end AND o.paymentStatus = 1")
     Long getOrderCountByDateRange(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
-    // 所有订单的总销售额（不考虑支付状态）
-    @Query("SELECT COALESCE(SUM(o.totalAmount), 0) FROM Order o WHERE o.orderTime BETWEEN :start AND :end")
-    Double getTotalSalesByTimeRange(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
-
-    // 所有订单的平均金额
-    @Query("SELECT COALESCE(AVG(o.totalAmount), 0) FROM Order o WHERE o.orderTime BETWEEN :start AND :end")
-    Double getAverageOrderValueByTimeRange(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
-
-    // 时间段内的订单数量
-    Long countByOrderTimeBetween(LocalDateTime start, LocalDateTime end);
-
     // 每日销售额统计
     @Query("SELECT DATE(o.orderTime), COALESCE(SUM(o.totalAmount), 0) FROM Order o WHERE o.orderTime BETWEEN :start AND :end GROUP BY DATE(o.orderTime) ORDER BY DATE(o.orderTime)")
     List<Object[]> getDailySales(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
@@ -81,14 +70,4 @@ public interface OrderRepository extends JpaRepository<Order, String> { // ID 
     // 新增：当日按小时销售额（已支付），返回 hour(0-23), sum(totalAmount)
     @Query("SELECT FUNCTION('HOUR', o.orderTime) as hr, COALESCE(SUM(o.totalAmount),0) FROM Order o WHERE o.orderTime BETWEEN :start AND :end AND o.paymentStatus = 1 GROUP BY FUNCTION('HOUR', o.orderTime) ORDER BY hr")
     List<Object[]> getHourlySales(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
-
-    @Query(value = "SELECT m.medicine_id, m.generic_name, m.trade_name, m.spec, m.retail_price, " +
-            "SUM(oi.quantity) as total_sold, SUM(oi.quantity * oi.unit_price) as total_amount " +
-            "FROM order_item oi " +
-            "JOIN medicine m ON oi.medicine_id = m.medicine_id " +
-            "JOIN `order` o ON oi.order_id = o.order_id " +
-            "WHERE o.payment_status = 1 AND o.order_time >= :start AND o.order_time < :end " +
-            "GROUP BY m.medicine_id, m.generic_name, m.trade_name, m.spec, m.retail_price " +
-            "ORDER BY total_sold DESC LIMIT 10", nativeQuery = true)
-    List<Object[]> getHotProductsBetween(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 }
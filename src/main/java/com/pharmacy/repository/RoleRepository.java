@@ -1,9 +1,40 @@
 package com.pharmacy.repository;
 
+import com.pharmacy.config.CacheConfig;
 import com.pharmacy.entity.Role;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface RoleRepository extends JpaRepository<Role, Integer> {
+
+    // 参考数据缓存（按租户隔离），写入前后各失效一次，避免并发读回填旧值
+    @Override
+    @Cacheable(value = CacheConfig.ROLES, key = "'all'")
+    List<Role> findAll();
+
+    @Override
+    @Cacheable(value = CacheConfig.ROLES, key = "#p0", unless = "#result == null")
+    Optional<Role> findById(Integer id);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.ROLES, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.ROLES, allEntries = true)})
+    <S extends Role> S save(S entity);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.ROLES, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.ROLES, allEntries = true)})
+    <S extends Role> List<S> saveAll(Iterable<S> entities);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.ROLES, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.ROLES, allEntries = true)})
+    void deleteById(Integer id);
 }
\ No newline at end of file
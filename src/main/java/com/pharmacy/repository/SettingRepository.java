@@ -1,7 +1,11 @@
 // SettingRepository.java
 package com.pharmacy.repository;
 
+import com.pharmacy.config.CacheConfig;
 import com.pharmacy.entity.Setting;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -10,5 +14,12 @@ import org.springframework.stereotype.Repository;
 public interface SettingRepository extends JpaRepository<Setting, Long> {
 
     @Query("SELECT s FROM Setting s WHERE s.id = (SELECT MAX(s2.id) FROM Setting s2)")
+    @Cacheable(value = CacheConfig.SETTINGS, key = "'latest'", unless = "#result == null")
     Setting findLatestSettings();
+
+    // 写入前后各失效一次，避免并发读回填旧值
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.SETTINGS, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.SETTINGS, allEntries = true)})
+    <S extends Setting> S save(S entity);
 }
\ No newline at end of file
@@ -14,6 +14,9 @@ public interface StockRecordRepository extends JpaRepository<StockRecord, Intege
 
     List<StockRecord> findByMedicineId(String medicineId);
 
+    // 药品库存流水，按 (medicine_id, create_time) 索引倒序分页
+    List<StockRecord> findByMedicineIdOrderByCreateTimeDesc(String medicineId, org.springframework.data.domain.Pageable pageable);
+
     @Query("SELECT sr FROM StockRecord sr WHERE sr.createTime BETWEEN :startTime AND :endTime")
     List<StockRecord> findByCreateTimeBetween(@Param("startTime") LocalDateTime startTime,
                                               @Param("endTime") LocalDateTime endTime);
@@ -1,6 +1,10 @@
 package com.pharmacy.repository;
 
+import com.pharmacy.config.CacheConfig;
 import com.pharmacy.entity.Supplier;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -11,6 +15,30 @@ import java.util.Optional;
 @Repository
 public interface SupplierRepository extends JpaRepository<Supplier, Integer> {
 
+    // 参考数据缓存（按租户隔离），写入前后各失效一次，避免并发读回填旧值
+    @Override
+    @Cacheable(value = CacheConfig.SUPPLIERS, key = "'all'")
+    List<Supplier> findAll();
+
+    @Override
+    @Cacheable(value = CacheConfig.SUPPLIERS, key = "#p0", unless = "#result == null")
+    Optional<Supplier> findById(Integer id);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.SUPPLIERS, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.SUPPLIERS, allEntries = true)})
+    <S extends Supplier> S save(S entity);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.SUPPLIERS, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.SUPPLIERS, allEntries = true)})
+    <S extends Supplier> List<S> saveAll(Iterable<S> entities);
+
+    @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.SUPPLIERS, allEntries = true, beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.SUPPLIERS, allEntries = true)})
+    void deleteById(Integer id);
+
     Optional<Supplier> findBySupplierName(String supplierName);
 
     List<Supplier> findByContactPersonContaining(String contactPerson);
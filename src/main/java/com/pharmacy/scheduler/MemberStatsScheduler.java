@@ -1,5 +1,8 @@
 package com.pharmacy.scheduler;
 
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
 import com.pharmacy.service.impl.MemberConsumptionUpdater;
 import com.pharmacy.repository.OrderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +15,7 @@ import java.util.Set;
 /**
  * 定时任务：
  * 1. 定期清理过期会员消费缓存
- * 2. 定期批量刷新最近活跃会员的消费统计
+ * 2. 定期按租户批量刷新最近活跃会员的消费统计
  */
 @Component
 public class MemberStatsScheduler {
@@ -23,6 +26,9 @@ public class MemberStatsScheduler {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
     // 每 20 分钟清理过期缓存 (由配置 application.yaml 指定，亦可直接写 cron)
     @Scheduled(cron = "${member.cache.evict-cron:0 */20 * * * *}")
     public void evictExpired(){
@@ -33,25 +39,25 @@ public class MemberStatsScheduler {
         }
     }
 
-    // 每 15 分钟批量刷新最近活跃会员（订单参与过的 + 最近缓存命中的）
+    // 每 15 分钟批量刷新最近活跃会员（订单参与过的 + 最近缓存命中的），逐个租户执行
     @Scheduled(cron = "${member.cache.batch-refresh-cron:0 */15 * * * *}")
     public void batchRefresh(){
         if(updater==null) return;
-        try {
-            Set<String> recent = updater.snapshotRecentActive(200);
-            java.util.List<String> todayMembers = orderRepository.getTodayActiveMembers();
-            if(todayMembers!=null){
-                for(String mid: todayMembers){
-                    if(mid!=null) recent.add(mid);
-                    if(recent.size()>=300) break;
-                }
-            }
-            if(!recent.isEmpty()){
-                updater.refreshMembersBatch(recent);
-                System.out.println("[MemberStatsScheduler] 批量刷新会员消费统计 size="+recent.size());
+        TenantTasks.forEach(dataSourceConfig, "[MemberStatsScheduler]", "批量刷新失败", this::refreshCurrentTenant);
+    }
+
+    private void refreshCurrentTenant(){
+        Set<String> recent = updater.snapshotRecentActive(200);
+        java.util.List<String> todayMembers = orderRepository.getTodayActiveMembers();
+        if(todayMembers!=null){
+            for(String mid: todayMembers){
+                if(recent.size()>=300) break;
+                if(mid!=null) recent.add(mid);
             }
-        } catch(Exception e){
-            System.err.println("[MemberStatsScheduler] 批量刷新失败:"+e.getMessage());
+        }
+        if(!recent.isEmpty()){
+            updater.refreshMembersBatch(recent);
+            System.out.println("[MemberStatsScheduler] 租户="+TenantContext.currentTenantKey()+" 批量刷新会员消费统计 size="+recent.size());
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.pharmacy.service;
 
 import com.pharmacy.entity.Employee;
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.repository.EmployeeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -16,6 +17,12 @@ public class AuthService {
     @Autowired
     private EmployeeRepository employeeRepository;
 
+    @Autowired
+    private AuthSessionRegistry sessionRegistry;
+
+    @Autowired
+    private EmployeeDirectory employeeDirectory;
+
     public Map<String, Object> login(String username, String password) {
         Map<String, Object> result = new HashMap<>();
 
@@ -50,7 +57,9 @@ public class AuthService {
         userInfo.put("phone", employee.getPhone());
 
         result.put("user", userInfo);
-        result.put("token", "pharmacy-token-" + System.currentTimeMillis());
+        // 会话绑定租户与员工，结算时由 token 确定收银员；同时预热本租户员工目录
+        result.put("token", sessionRegistry.create(TenantContext.currentTenantKey(), employee.getEmployeeId()));
+        employeeDirectory.refresh();
 
         return result;
     }
@@ -0,0 +1,79 @@
+package com.pharmacy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 登录会话登记：token -> (租户, 员工ID)。
+ * 前端在 Authorization: Bearer &lt;token&gt; 中携带登录返回的 token，服务端据此确定收银员。
+ */
+@Service
+public class AuthSessionRegistry {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Value("${auth.session.ttl-hours:12}")
+    private int ttlHours;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public static class Session {
+        private final String tenant;
+        private final Integer employeeId;
+        private final long expiresAt;
+
+        Session(String tenant, Integer employeeId, long expiresAt) {
+            this.tenant = tenant;
+            this.employeeId = employeeId;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getTenant() { return tenant; }
+        public Integer getEmployeeId() { return employeeId; }
+    }
+
+    public String create(String tenant, Integer employeeId) {
+        byte[] bytes = new byte[24];
+        RANDOM.nextBytes(bytes);
+        String token = "pharmacy-token-" + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long ttl = (ttlHours > 0 ? ttlHours : 12) * 3_600_000L;
+        sessions.put(token, new Session(tenant, employeeId, System.currentTimeMillis() + ttl));
+        return token;
+    }
+
+    /** 解析 Authorization 头（支持带或不带 Bearer 前缀），无效或过期返回 null */
+    public Session resolve(String authorization) {
+        String token = extractToken(authorization);
+        if (token == null) return null;
+        Session s = sessions.get(token);
+        if (s == null) return null;
+        if (s.expiresAt < System.currentTimeMillis()) {
+            sessions.remove(token);
+            return null;
+        }
+        return s;
+    }
+
+    public void invalidate(String authorization) {
+        String token = extractToken(authorization);
+        if (token != null) sessions.remove(token);
+    }
+
+    @Scheduled(fixedDelay = 600_000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        sessions.entrySet().removeIf(e -> e.getValue().expiresAt < now);
+    }
+
+    private String extractToken(String authorization) {
+        if (authorization == null || authorization.isBlank()) return null;
+        String v = authorization.trim();
+        if (v.regionMatches(true, 0, "Bearer ", 0, 7)) v = v.substring(7).trim();
+        return v.isEmpty() ? null : v;
+    }
+}
@@ -0,0 +1,130 @@
+package com.pharmacy.service;
+
+import com.pharmacy.multitenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * 目录（分类、药品）版本号：每个租户一个单调递增计数器，每次写入分配新版本并记入行的 catalog_version，
+ * 硬删除另记一条 catalog_tombstone。收银终端按 since 版本增量同步。
+ * 计数器在内存中，首次使用时按库内最大版本播种（单实例部署）。
+ * 已分配但尚未写完的版本记为“在途”，对外只公布最小在途版本之前的版本，避免终端跳过晚提交的小版本。
+ */
+@Service
+public class CatalogVersionService {
+
+    public static final String ENTITY_MEDICINE = "medicine";
+    public static final String ENTITY_CATEGORY = "category";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentHashMap<String, Counter> tenants = new ConcurrentHashMap<>();
+
+    private static final class Counter {
+        final AtomicLong last;
+        final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+
+        Counter(long seed) {
+            this.last = new AtomicLong(seed);
+        }
+    }
+
+    /** 已删除的目录行 */
+    public static class Tombstone {
+        private final String entity;
+        private final String entityId;
+        private final long version;
+
+        Tombstone(String entity, String entityId, long version) {
+            this.entity = entity;
+            this.entityId = entityId;
+            this.version = version;
+        }
+
+        public String getEntity() { return entity; }
+        public String getEntityId() { return entityId; }
+        public long getVersion() { return version; }
+    }
+
+    /**
+     * 分配一个版本号执行写入。处于事务中时在事务结束（提交或回滚）后才解除在途标记，
+     * 否则终端可能在行可见之前就把同步水位推过该版本；无事务时写入结束即解除
+     * @param write 接收新版本号，返回写入结果
+     */
+    public <T> T write(LongFunction<T> write) {
+        Counter counter = counter();
+        long version;
+        synchronized (counter) {
+            version = counter.last.incrementAndGet();
+            counter.inFlight.add(version);
+        }
+        boolean deferred = false;
+        try {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        counter.inFlight.remove(version);
+                    }
+                });
+                deferred = true;
+            }
+            return write.apply(version);
+        } finally {
+            if (!deferred) counter.inFlight.remove(version);
+        }
+    }
+
+    /** 记录硬删除 */
+    public void recordDelete(String entity, Object entityId) {
+        write(version -> jdbcTemplate.update(
+                "INSERT INTO catalog_tombstone(entity, entity_id, catalog_version, create_time) VALUES (?,?,?,?)",
+                entity, String.valueOf(entityId), version, Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    /** 当前可安全公布的版本：不大于任何在途版本 */
+    public long currentVersion() {
+        Counter counter = counter();
+        synchronized (counter) {
+            Long oldest = counter.inFlight.isEmpty() ? null : counter.inFlight.first();
+            return oldest != null ? oldest - 1 : counter.last.get();
+        }
+    }
+
+    public List<Tombstone> findTombstones(long since, long upTo) {
+        return jdbcTemplate.query(
+                "SELECT entity, entity_id, catalog_version FROM catalog_tombstone WHERE catalog_version > ? AND catalog_version <= ? " +
+                "ORDER BY catalog_version",
+                (rs, n) -> new Tombstone(rs.getString("entity"), rs.getString("entity_id"), rs.getLong("catalog_version")),
+                since, upTo);
+    }
+
+    private Counter counter() {
+        return tenants.computeIfAbsent(TenantContext.currentTenantKey(), k -> new Counter(loadMaxVersion()));
+    }
+
+    private long loadMaxVersion() {
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT (SELECT COALESCE(MAX(catalog_version), 0) FROM medicine) AS m, " +
+                "(SELECT COALESCE(MAX(catalog_version), 0) FROM category) AS c, " +
+                "(SELECT COALESCE(MAX(catalog_version), 0) FROM catalog_tombstone) AS t");
+        long max = 0;
+        for (Object v : row.values()) {
+            if (v instanceof Number) max = Math.max(max, ((Number) v).longValue());
+        }
+        return max;
+    }
+}
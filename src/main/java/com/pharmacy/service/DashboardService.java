@@ -31,6 +31,14 @@ public interface DashboardService {
      */
     List<Map<String, Object>> getTodayHotProducts();
 
+    /**
+     * 获取热销药品榜
+     * @param window 统计窗口：day（今日）, week（近 7 天）
+     * @param metric 排序指标：units（销量）, revenue（销售额）
+     * @param limit 返回条数
+     */
+    List<Map<String, Object>> getHotProducts(String window, String metric, int limit);
+
     /**
      * 获取近效期药品
      */
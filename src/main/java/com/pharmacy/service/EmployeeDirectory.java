@@ -0,0 +1,102 @@
+package com.pharmacy.service;
+
+import com.pharmacy.entity.Employee;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import com.pharmacy.repository.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按租户缓存的在职员工目录（status=1）。
+ * 收银校验在内存中完成，结算事务内不再查询 employee 表；启动与登录时预热，员工增删改后整租户刷新。
+ */
+@Service
+public class EmployeeDirectory {
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    private final ConcurrentHashMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /** 员工只读视图，不持有密码等敏感字段 */
+    public static class EmployeeView {
+        private final Integer employeeId;
+        private final String username;
+        private final String name;
+        private final Integer roleId;
+
+        EmployeeView(Employee e) {
+            this.employeeId = e.getEmployeeId();
+            this.username = e.getUsername();
+            this.name = e.getName();
+            this.roleId = e.getRoleId();
+        }
+
+        public Integer getEmployeeId() { return employeeId; }
+        public String getUsername() { return username; }
+        public String getName() { return name; }
+        public Integer getRoleId() { return roleId; }
+    }
+
+    private static class Snapshot {
+        final Map<Integer, EmployeeView> active;
+        final Integer defaultCashierId;
+
+        Snapshot(List<Employee> employees) {
+            Map<Integer, EmployeeView> map = new LinkedHashMap<>();
+            for (Employee e : employees) {
+                if (e.getEmployeeId() != null) map.put(e.getEmployeeId(), new EmployeeView(e));
+            }
+            this.active = Collections.unmodifiableMap(map);
+            this.defaultCashierId = map.isEmpty() ? null : map.keySet().iterator().next();
+        }
+    }
+
+    /** 启动完成后为所有租户预热目录，首单结算无需加载 */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[EmployeeDirectory]", "预热失败", this::refresh);
+    }
+
+    /** 当前租户中该员工是否在职 */
+    public boolean isActive(Integer employeeId) {
+        return employeeId != null && snapshot().active.containsKey(employeeId);
+    }
+
+    public Optional<EmployeeView> find(Integer employeeId) {
+        return Optional.ofNullable(employeeId == null ? null : snapshot().active.get(employeeId));
+    }
+
+    /** 未携带登录会话的旧客户端兜底：当前租户第一个在职员工 */
+    public Integer defaultCashierId() {
+        return snapshot().defaultCashierId;
+    }
+
+    /** 重新加载当前租户目录（员工写操作后调用） */
+    public void refresh() {
+        String tenant = TenantContext.currentTenantKey();
+        Snapshot snapshot = new Snapshot(employeeRepository.findAllActive());
+        snapshots.put(tenant, snapshot);
+        System.out.println("[EmployeeDirectory] 租户=" + tenant + " 在职员工=" + snapshot.active.size());
+    }
+
+    private Snapshot snapshot() {
+        String tenant = TenantContext.currentTenantKey();
+        Snapshot s = snapshots.get(tenant);
+        if (s == null) {
+            refresh();
+            s = snapshots.get(tenant);
+        }
+        return s;
+    }
+}
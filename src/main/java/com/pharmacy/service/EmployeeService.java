@@ -14,6 +14,9 @@ public class EmployeeService {
     @Autowired
     private EmployeeRepository employeeRepository;
 
+    @Autowired
+    private EmployeeDirectory employeeDirectory;
+
     public List<Employee> findAll() {
         return employeeRepository.findAllActive();
     }
@@ -30,11 +33,14 @@ public class EmployeeService {
             // 如果密码不是BCrypt加密格式，进行MD5加密
             employee.setPassword(md5(employee.getPassword()));
         }
-        return employeeRepository.save(employee);
+        Employee saved = employeeRepository.save(employee);
+        employeeDirectory.refresh(); // 收银员目录随员工变更刷新
+        return saved;
     }
 
     public void delete(Integer id) {
         employeeRepository.deleteById(id);
+        employeeDirectory.refresh();
     }
 
     public boolean existsByUsername(String username) {
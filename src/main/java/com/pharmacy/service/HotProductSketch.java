@@ -0,0 +1,274 @@
+package com.pharmacy.service;
+
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import com.pharmacy.util.SpaceSaving;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 热销药品的流式 Top-K：每个租户按天保存两份 Space-Saving 草图（销量件数、销售额分），保留最近 7 天。
+ * 今日榜直接读当天草图，近 7 天榜按需合并 7 份草图；读取开销只与草图容量有关，与当天订单量无关。
+ * 订单 / 退款提交后增量更新，首次读取时加载最近 7 天，定时全量重载纠正退款带来的偏差。
+ * 重载先挂上新的草图再查库，期间的事件同时计入新旧两份；查询结果与事件按订单号去重，查完整体替换。
+ */
+@Service
+public class HotProductSketch {
+
+    public enum Window { DAY, WEEK }
+
+    public enum Metric { UNITS, REVENUE }
+
+    private static final int WEEK_DAYS = 7;
+
+    // 按订单号排序，同一订单的明细连续到达，整单计入
+    private static final String LOAD_SQL =
+            "SELECT o.order_id, o.order_time, oi.medicine_id, oi.quantity, oi.subtotal " +
+            "FROM order_item oi JOIN `order` o ON o.order_id = oi.order_id " +
+            "WHERE o.payment_status = 1 AND o.order_time >= ? AND o.order_time < ? " +
+            "ORDER BY o.order_id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    @Value("${hot-products.capacity:200}")
+    private int capacity = 200;
+
+    @Value("${hot-products.zone:Asia/Shanghai}")
+    private String zone = "Asia/Shanghai";
+
+    private Clock clock = Clock.system(ZoneId.of("Asia/Shanghai"));
+
+    private final ConcurrentHashMap<String, State> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * 榜单中的一项。所排指标为草图估计值（上界，error 为其误差上界）；
+     * 另一指标取自同一计数器，只含该药品进入监控之后的部分（下界），不会因另一份草图淘汰该键而变成 0。
+     */
+    public static final class Item {
+        private final String medicineId;
+        private final long units;
+        private final long amountCents;
+        private final long error;
+
+        Item(String medicineId, long units, long amountCents, long error) {
+            this.medicineId = medicineId;
+            this.units = units;
+            this.amountCents = amountCents;
+            this.error = error;
+        }
+
+        public String getMedicineId() { return medicineId; }
+        public long getUnits() { return units; }
+        public double getAmount() { return amountCents / 100.0; }
+        public long getError() { return error; }
+    }
+
+    /** 一天的两份草图，每份的计数器同时附带另一指标 */
+    private static final class Day {
+        final SpaceSaving units;
+        final SpaceSaving revenue;
+
+        Day(int capacity) {
+            this.units = new SpaceSaving(capacity);
+            this.revenue = new SpaceSaving(capacity);
+        }
+
+        void apply(String medicineId, long qty, long cents, int sign) {
+            if (sign > 0) {
+                units.offer(medicineId, qty, cents);
+                revenue.offer(medicineId, cents, qty);
+            } else {
+                units.decrement(medicineId, qty, cents);
+                revenue.decrement(medicineId, cents, qty);
+            }
+        }
+    }
+
+    /** 单个租户：在线的按天草图；重载期间 loading 为正在加载的新草图（事件与切换均在 State 锁内） */
+    private static final class State {
+        volatile ConcurrentSkipListMap<LocalDate, Day> days = new ConcurrentSkipListMap<>();
+        volatile boolean ready; // 首次加载完成前读取方自行加载
+        Loading loading;
+    }
+
+    /** 重载中的草图，按订单号记账：查询行与事件对同一订单只计一次，退款以已退款记录为准 */
+    private static final class Loading {
+        final int capacity;
+        final ConcurrentSkipListMap<LocalDate, Day> days = new ConcurrentSkipListMap<>();
+        final Set<String> loaded = new HashSet<>();
+        final Set<String> placed = new HashSet<>();
+        final Set<String> refunded = new HashSet<>();
+
+        Loading(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void row(String orderId, LocalDate date, List<OrderEvent.Line> lines) {
+            if (placed.contains(orderId) || refunded.contains(orderId) || !loaded.add(orderId)) return;
+            apply(days, date, lines, 1, capacity);
+        }
+
+        synchronized void event(String orderId, LocalDate date, List<OrderEvent.Line> lines, boolean refund) {
+            if (refund) {
+                boolean counted = loaded.contains(orderId) || placed.contains(orderId);
+                if (refunded.add(orderId) && counted) apply(days, date, lines, -1, capacity);
+            } else if (!loaded.contains(orderId) && !refunded.contains(orderId) && placed.add(orderId)) {
+                apply(days, date, lines, 1, capacity);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        clock = Clock.system(ZoneId.of(zone));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[HotProducts]", "加载失败", this::reload);
+    }
+
+    /** 定时全量重载：退款只能回退仍在监控中的键，重载后草图与订单表一致 */
+    @Scheduled(fixedDelayString = "${hot-products.reload-ms:900000}", initialDelayString = "${hot-products.reload-ms:900000}")
+    public void reloadAllTenants() {
+        TenantTasks.forEach(dataSourceConfig, "[HotProducts]", "加载失败", this::reload);
+    }
+
+    /** 订单 / 整单退款提交后按订单日计入（超出 7 天窗口的忽略） */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        if (event.getOrderTime() == null || event.getLines().isEmpty()) return;
+        State s = tenants.get(event.tenantKey());
+        if (s == null) return; // 尚未加载，首次读取时按 SQL 加载
+        LocalDate date = event.getOrderTime().toLocalDate();
+        LocalDate today = LocalDate.now(clock);
+        if (date.isAfter(today) || !date.isAfter(today.minusDays(WEEK_DAYS))) return;
+        boolean refund = event instanceof OrderRefundedEvent;
+        synchronized (s) {
+            apply(s.days, date, event.getLines(), refund ? -1 : 1, capacity);
+            if (s.loading != null) s.loading.event(event.getOrderId(), date, event.getLines(), refund);
+            prune(s.days, today);
+        }
+    }
+
+    /** 当前租户的热销榜（按指标降序，最多 limit 项） */
+    public List<Item> top(Window window, Metric metric, int limit) {
+        ConcurrentSkipListMap<LocalDate, Day> days = days();
+        LocalDate today = LocalDate.now(clock);
+        prune(days, today);
+        Day view;
+        if (window == Window.WEEK) {
+            view = new Day(capacity);
+            for (Day d : days.values()) {
+                view.units.merge(d.units);
+                view.revenue.merge(d.revenue);
+            }
+        } else {
+            view = days.get(today);
+            if (view == null) return List.of();
+        }
+        boolean byRevenue = metric == Metric.REVENUE;
+        SpaceSaving ranked = byRevenue ? view.revenue : view.units;
+        List<Item> items = new ArrayList<>();
+        for (SpaceSaving.Entry e : ranked.top(limit)) {
+            long units = byRevenue ? e.getAux() : e.getCount();
+            long amountCents = byRevenue ? e.getCount() : e.getAux();
+            items.add(new Item(e.getKey(), units, amountCents, e.getError()));
+        }
+        return items;
+    }
+
+    /**
+     * 按订单表重建当前租户最近 7 天的草图，整体替换。
+     * 新草图在查询前挂上，查询期间到达的事件同时计入；查询行与事件按订单号去重
+     */
+    public void reload() {
+        LocalDate today = LocalDate.now(clock);
+        LocalDate from = today.minusDays(WEEK_DAYS - 1);
+        State s = tenants.computeIfAbsent(TenantContext.currentTenantKey(), k -> new State());
+        Loading loading = new Loading(capacity);
+        synchronized (s) {
+            s.loading = loading;
+        }
+        try {
+            jdbcTemplate.query(LOAD_SQL, (ResultSetExtractor<Void>) rs -> {
+                String orderId = null;
+                LocalDate date = null;
+                List<OrderEvent.Line> lines = new ArrayList<>();
+                while (rs.next()) {
+                    String id = rs.getString("order_id");
+                    if (!id.equals(orderId)) {
+                        if (orderId != null) loading.row(orderId, date, lines);
+                        orderId = id;
+                        date = rs.getTimestamp("order_time").toLocalDateTime().toLocalDate();
+                        lines = new ArrayList<>();
+                    }
+                    BigDecimal subtotal = rs.getBigDecimal("subtotal");
+                    lines.add(new OrderEvent.Line(rs.getString("medicine_id"), rs.getInt("quantity"),
+                            subtotal == null ? 0 : subtotal.doubleValue()));
+                }
+                if (orderId != null) loading.row(orderId, date, lines);
+                return null;
+            }, Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(today.plusDays(1).atStartOfDay()));
+            synchronized (s) {
+                s.days = loading.days;
+                s.ready = true;
+            }
+        } finally {
+            synchronized (s) {
+                if (s.loading == loading) s.loading = null;
+            }
+        }
+    }
+
+    private ConcurrentSkipListMap<LocalDate, Day> days() {
+        String tenant = TenantContext.currentTenantKey();
+        State s = tenants.get(tenant);
+        if (s == null || !s.ready) {
+            reload();
+            s = tenants.get(tenant);
+        }
+        return s.days;
+    }
+
+    private static void apply(ConcurrentSkipListMap<LocalDate, Day> days, LocalDate date, List<OrderEvent.Line> lines, int sign, int capacity) {
+        Day day = days.computeIfAbsent(date, d -> new Day(capacity));
+        for (OrderEvent.Line line : lines) {
+            day.apply(line.getMedicineId(), line.getQuantity(), cents(BigDecimal.valueOf(line.getSubtotal())), sign);
+        }
+    }
+
+    // 跨日后丢弃窗口外的天
+    private static void prune(ConcurrentSkipListMap<LocalDate, Day> days, LocalDate today) {
+        days.headMap(today.minusDays(WEEK_DAYS - 1)).clear();
+    }
+
+    private static long cents(BigDecimal v) {
+        return v == null ? 0L : v.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+}
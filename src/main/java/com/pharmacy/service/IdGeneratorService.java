@@ -0,0 +1,24 @@
+package com.pharmacy.service;
+
+/**
+ * 业务单号生成器（订单 / 入库单 / 挂单 / 处方）。
+ * 生成的单号按时间递增、可读，同一租户内不重复；多实例部署时依赖各实例配置不同的节点号。
+ */
+public interface IdGeneratorService {
+
+    /** 订单号前缀 */
+    String ORDER = "O";
+    /** 入库单号前缀 */
+    String STOCK_IN = "SI";
+    /** 挂单号前缀 */
+    String HANG_ORDER = "H";
+    /** 处方号前缀 */
+    String PRESCRIPTION = "P";
+
+    /**
+     * 为当前租户生成下一个单号
+     * @param prefix 单号前缀
+     * @return 形如 O20241027123456789010000 的单号（时间戳 + 节点号 + 序号）
+     */
+    String nextId(String prefix);
+}
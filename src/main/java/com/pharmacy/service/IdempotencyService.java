@@ -0,0 +1,268 @@
+package com.pharmacy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 写接口幂等：客户端在 Idempotency-Key 头中携带同一个键重试时，直接回放首次结果，不再执行业务。
+ * 首次结果持久化在各租户库的 idempotency_record 表（主键 scope+idem_key），并在内存 LRU 中缓存；
+ * 同一实例内的并发重复请求等待正在执行的那一次，跨实例靠先插入 PENDING 行抢占。
+ * 5xx 结果不保存，释放键后客户端可以重试。
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int MAX_KEY_LENGTH = 128;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    @Value("${idempotency.cache-size:2000}")
+    private int cacheSize;
+
+    @Value("${idempotency.wait-seconds:30}")
+    private int waitSeconds;
+
+    @Value("${idempotency.lease-seconds:120}")
+    private int leaseSeconds;
+
+    @Value("${idempotency.retention-hours:48}")
+    private int retentionHours;
+
+    private Map<String, StoredResponse> recent;
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /** 已完成请求的响应快照 */
+    static class StoredResponse {
+        final String requestHash;
+        final int httpStatus;
+        final String body;
+        final boolean replayable;
+
+        StoredResponse(String requestHash, int httpStatus, String body, boolean replayable) {
+            this.requestHash = requestHash;
+            this.httpStatus = httpStatus;
+            this.body = body;
+            this.replayable = replayable;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int max = cacheSize > 0 ? cacheSize : 2000;
+        recent = Collections.synchronizedMap(new LinkedHashMap<String, StoredResponse>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+                return size() > max;
+            }
+        });
+    }
+
+    /**
+     * 以幂等方式执行写操作
+     * @param scope 接口范围（如 order-create / order-refund），不同接口的键互不冲突
+     * @param key 客户端提供的幂等键，为空时直接执行
+     * @param request 用于校验重试请求体是否一致的参数
+     */
+    public ResponseEntity<?> execute(String scope, String key, Object request, Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) return action.get();
+        String idemKey = key.trim();
+        if (idemKey.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of("code", 400, "message", HEADER + " 长度不能超过 " + MAX_KEY_LENGTH));
+        }
+        String hash = fingerprint(request);
+        String cacheKey = TenantContext.currentTenantKey() + "|" + scope + "|" + idemKey;
+
+        StoredResponse cached = recent.get(cacheKey);
+        if (cached != null) return replay(cached, hash);
+
+        CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(cacheKey, mine);
+        if (running != null) return awaitInFlight(running, hash);
+        try {
+            // 抢到执行权后再看一次：同键请求可能恰好在我们查询 LRU 之后完成
+            cached = recent.get(cacheKey);
+            if (cached == null) cached = claimOrLoad(scope, idemKey, hash);
+            if (cached != null) {
+                if (cached.replayable) recent.put(cacheKey, cached);
+                mine.complete(cached);
+                return replay(cached, hash);
+            }
+            ResponseEntity<?> result;
+            try {
+                result = action.get();
+            } catch (RuntimeException e) {
+                release(scope, idemKey);
+                throw e;
+            }
+            StoredResponse outcome = new StoredResponse(hash, result.getStatusCode().value(), toJson(result.getBody()),
+                    !result.getStatusCode().is5xxServerError());
+            if (outcome.replayable) {
+                persist(scope, idemKey, outcome);
+                recent.put(cacheKey, outcome);
+            } else {
+                release(scope, idemKey);
+            }
+            mine.complete(outcome);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    private ResponseEntity<?> awaitInFlight(CompletableFuture<StoredResponse> running, String hash) {
+        try {
+            return replay(running.get(waitSeconds > 0 ? waitSeconds : 30, TimeUnit.SECONDS), hash);
+        } catch (TimeoutException e) {
+            return conflict();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return conflict();
+        } catch (ExecutionException e) {
+            String msg = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            return ResponseEntity.internalServerError().body(Map.of("code", 500, "message", "请求失败: " + msg));
+        }
+    }
+
+    /** 插入 PENDING 行抢占键；返回 null 表示由当前请求执行，否则为已完成结果或冲突响应 */
+    private StoredResponse claimOrLoad(String scope, String key, String hash) {
+        long deadline = System.currentTimeMillis() + (waitSeconds > 0 ? waitSeconds : 30) * 1000L;
+        try {
+            while (true) {
+                LocalDateTime now = LocalDateTime.now();
+                try {
+                    jdbcTemplate.update("INSERT INTO idempotency_record(scope, idem_key, request_hash, status, create_time) VALUES (?,?,?,?,?)",
+                            scope, key, hash, PENDING, Timestamp.valueOf(now));
+                    return null;
+                } catch (DuplicateKeyException dup) {
+                    // 已有记录，读取后判断
+                }
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT request_hash, status, http_status, response_body, create_time FROM idempotency_record WHERE scope=? AND idem_key=?",
+                        scope, key);
+                if (!rows.isEmpty()) {
+                    Map<String, Object> row = rows.get(0);
+                    if (((Number) row.get("status")).intValue() == DONE) {
+                        return new StoredResponse((String) row.get("request_hash"),
+                                ((Number) row.get("http_status")).intValue(), (String) row.get("response_body"), true);
+                    }
+                    // 另一实例执行中；租约过期视为其已崩溃，接管
+                    Timestamp created = (Timestamp) row.get("create_time");
+                    if (created != null && created.toLocalDateTime().isBefore(now.minusSeconds(leaseSeconds > 0 ? leaseSeconds : 120))) {
+                        int taken = jdbcTemplate.update("UPDATE idempotency_record SET request_hash=?, create_time=? WHERE scope=? AND idem_key=? AND status=? AND create_time=?",
+                                hash, Timestamp.valueOf(now), scope, key, PENDING, created);
+                        if (taken == 1) return null;
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    return new StoredResponse(hash, 409, toJson(conflict().getBody()), false);
+                }
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new StoredResponse(hash, 409, toJson(conflict().getBody()), false);
+        } catch (DataAccessException e) {
+            // 表不可用时退化为仅进程内去重
+            System.err.println("[Idempotency] 读取/抢占幂等记录失败 scope=" + scope + " err=" + e.getMessage());
+            return null;
+        }
+    }
+
+    private void persist(String scope, String key, StoredResponse outcome) {
+        try {
+            jdbcTemplate.update("UPDATE idempotency_record SET status=?, http_status=?, response_body=? WHERE scope=? AND idem_key=?",
+                    DONE, outcome.httpStatus, outcome.body, scope, key);
+        } catch (DataAccessException e) {
+            System.err.println("[Idempotency] 保存幂等结果失败 scope=" + scope + " err=" + e.getMessage());
+        }
+    }
+
+    private void release(String scope, String key) {
+        try {
+            jdbcTemplate.update("DELETE FROM idempotency_record WHERE scope=? AND idem_key=? AND status=?", scope, key, PENDING);
+        } catch (DataAccessException e) {
+            System.err.println("[Idempotency] 释放幂等键失败 scope=" + scope + " err=" + e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String hash) {
+        if (!stored.replayable) {
+            return ResponseEntity.status(stored.httpStatus).contentType(MediaType.APPLICATION_JSON).body(stored.body);
+        }
+        if (!stored.requestHash.equals(hash)) {
+            return ResponseEntity.unprocessableEntity().body(Map.of("code", 422, "message", HEADER + " 已用于不同的请求内容"));
+        }
+        return ResponseEntity.status(stored.httpStatus)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(REPLAYED_HEADER, "true")
+                .body(stored.body);
+    }
+
+    private static ResponseEntity<Map<String, Object>> conflict() {
+        return ResponseEntity.status(409).body(Map.of("code", 409, "message", "相同 " + HEADER + " 的请求仍在处理中，请稍后重试"));
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (Exception e) {
+            return "{\"code\":500,\"message\":\"响应序列化失败\"}";
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /** 每日清理过期记录，保留窗口内客户端重试仍可命中 */
+    @Scheduled(cron = "0 40 3 * * ?")
+    public void purgeExpired() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusHours(retentionHours > 0 ? retentionHours : 48));
+        TenantTasks.forEach(dataSourceConfig, "[Idempotency]", "清理失败", () -> {
+            int removed = jdbcTemplate.update("DELETE FROM idempotency_record WHERE create_time < ?", cutoff);
+            if (removed > 0) System.out.println("[Idempotency] 租户=" + TenantContext.currentTenantKey() + " 清理过期记录 " + removed);
+        });
+    }
+}
@@ -2,6 +2,10 @@ package com.pharmacy.service;
 
 import com.pharmacy.entity.Inventory;
 import com.pharmacy.dto.InventoryDTO;
+import com.pharmacy.dto.OrderItemRequest;
+import com.pharmacy.dto.StockDeductionResult;
+import com.pharmacy.entity.OrderItem;
+import com.pharmacy.entity.StockRecord;
 import java.util.List;
 
 public interface InventoryService {
@@ -21,6 +25,34 @@ public interface InventoryService {
      */
     boolean updateStockForOrder(String medicineId, Integer quantity, String orderId);
 
+    /**
+     * 整单扣减库存：按 FEFO 跨批次分配（跳过过期批次），条件更新批量执行，不会超卖
+     * @param orderId 订单ID
+     * @param items 订单明细
+     * @return 扣减结果；存在缺货时 shortages 按行列出，调用方需回滚事务
+     */
+    StockDeductionResult deductStockForOrder(String orderId, List<OrderItemRequest> items);
+
+    /**
+     * 记录结算的批次分配台账（订单项已分配ID后调用）
+     * @param operatorId 收银员ID
+     * @param deduction deductStockForOrder 的结果
+     * @param orderItems 与请求明细同序的订单项
+     */
+    void recordSaleLedger(String orderId, Integer operatorId, StockDeductionResult deduction, List<OrderItem> orderItems);
+
+    /**
+     * 整单退款回补库存：按结算台账原路回补到原批次；无台账的历史订单逐行回退到 restoreStock
+     * @param items 订单项
+     * @param reason 退款原因（写入台账备注）
+     */
+    void restoreStockForOrder(String orderId, Integer operatorId, List<OrderItem> items, String reason);
+
+    /**
+     * 药品库存流水（最新在前）
+     */
+    List<StockRecord> findStockRecords(String medicineId, int limit);
+
     /**
      * 恢复库存（用于退单）
      * @param medicineId 药品ID
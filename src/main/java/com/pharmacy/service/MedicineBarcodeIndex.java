@@ -0,0 +1,150 @@
+package com.pharmacy.service;
+
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按租户缓存的条码 -> 药品售价快照，供收银扫码走一次哈希查找。
+ * 启动时预热，MedicineServiceImpl 写入时同步，未命中时回查数据库（barcode 唯一索引）并补入；
+ * 库存不在这里缓存，由调用方从 StockLevelIndex 读取（随库存变动事件刷新）。
+ */
+@Service
+public class MedicineBarcodeIndex {
+
+    private static final String SELECT_SQL =
+            "SELECT medicine_id, barcode, generic_name, trade_name, spec, unit, retail_price, member_price, is_rx, status " +
+            "FROM medicine WHERE deleted = 0 AND barcode IS NOT NULL AND barcode <> ''";
+
+    private static final RowMapper<Entry> ROW_MAPPER = (rs, n) -> new Entry(
+            rs.getString("medicine_id"), rs.getString("barcode"), rs.getString("generic_name"), rs.getString("trade_name"),
+            rs.getString("spec"), rs.getString("unit"), rs.getBigDecimal("retail_price"), rs.getBigDecimal("member_price"),
+            rs.getBoolean("is_rx"), rs.getString("status"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    // 租户 -> 条码 -> 快照
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Entry>> tenants = new ConcurrentHashMap<>();
+
+    /** 扫码所需的药品快照（不可变，整体替换） */
+    public static final class Entry {
+        private final String medicineId;
+        private final String barcode;
+        private final String genericName;
+        private final String tradeName;
+        private final String spec;
+        private final String unit;
+        private final BigDecimal retailPrice;
+        private final BigDecimal memberPrice;
+        private final Boolean isRx;
+        private final String status;
+
+        Entry(String medicineId, String barcode, String genericName, String tradeName, String spec, String unit,
+              BigDecimal retailPrice, BigDecimal memberPrice, Boolean isRx, String status) {
+            this.medicineId = medicineId;
+            this.barcode = barcode;
+            this.genericName = genericName;
+            this.tradeName = tradeName;
+            this.spec = spec;
+            this.unit = unit;
+            this.retailPrice = retailPrice;
+            this.memberPrice = memberPrice;
+            this.isRx = isRx;
+            this.status = status;
+        }
+
+        public String getMedicineId() { return medicineId; }
+        public String getBarcode() { return barcode; }
+        public String getGenericName() { return genericName; }
+        public String getTradeName() { return tradeName; }
+        public String getSpec() { return spec; }
+        public String getUnit() { return unit; }
+        public BigDecimal getRetailPrice() { return retailPrice; }
+        public BigDecimal getMemberPrice() { return memberPrice; }
+        public Boolean getIsRx() { return isRx; }
+        public String getStatus() { return status; }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[BarcodeIndex]", "加载失败",
+                () -> System.out.println("[BarcodeIndex] 租户=" + TenantContext.currentTenantKey() + " 预热条码数=" + reload()));
+    }
+
+    /** 定时全量重载，兜底未经 MedicineServiceImpl 的直接改库 */
+    @Scheduled(fixedDelayString = "${medicine-index.rebuild-ms:600000}", initialDelayString = "${medicine-index.rebuild-ms:600000}")
+    public void reconcile() {
+        TenantTasks.forEach(dataSourceConfig, "[BarcodeIndex]", "加载失败", this::reload);
+    }
+
+    /** 按条码查找，未命中时回查数据库；查不到返回 null */
+    public Entry get(String barcode) {
+        if (barcode == null || barcode.isBlank()) return null;
+        String code = barcode.trim();
+        Map<String, Entry> map = entries();
+        Entry entry = map.get(code);
+        if (entry != null) return entry;
+        List<Entry> rows = jdbcTemplate.query(SELECT_SQL + " AND barcode = ?", ROW_MAPPER, code);
+        if (rows.isEmpty()) return null;
+        entry = rows.get(0);
+        map.put(code, entry);
+        return entry;
+    }
+
+    /** 药品新增/修改后同步；条码变更时移除旧条码，软删除则整体移除 */
+    public void put(Medicine medicine) {
+        if (medicine == null || medicine.getMedicineId() == null) return;
+        Map<String, Entry> map = entries();
+        map.values().removeIf(e -> e.medicineId.equals(medicine.getMedicineId()));
+        String code = medicine.getBarcode() == null ? null : medicine.getBarcode().trim();
+        if (Boolean.TRUE.equals(medicine.getDeleted()) || code == null || code.isEmpty()) return;
+        map.put(code, new Entry(medicine.getMedicineId(), code, medicine.getGenericName(), medicine.getTradeName(),
+                medicine.getSpec(), medicine.getUnit(), medicine.getRetailPrice(), medicine.getMemberPrice(),
+                medicine.getIsRx(), medicine.getStatus()));
+    }
+
+    public void remove(String medicineId) {
+        if (medicineId == null) return;
+        entries().values().removeIf(e -> e.medicineId.equals(medicineId));
+    }
+
+    /** 全量重建当前租户的条码表 */
+    public int reload() {
+        ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+        for (Entry e : jdbcTemplate.query(SELECT_SQL, ROW_MAPPER)) {
+            Entry prev = map.put(e.barcode, e);
+            if (prev != null) {
+                System.err.println("[BarcodeIndex] 租户=" + TenantContext.currentTenantKey() + " 条码重复 barcode=" + e.barcode
+                        + " medicine=" + prev.medicineId + "," + e.medicineId);
+            }
+        }
+        tenants.put(TenantContext.currentTenantKey(), map);
+        return map.size();
+    }
+
+    private ConcurrentHashMap<String, Entry> entries() {
+        ConcurrentHashMap<String, Entry> map = tenants.get(TenantContext.currentTenantKey());
+        if (map == null) {
+            reload();
+            map = tenants.get(TenantContext.currentTenantKey());
+        }
+        return map;
+    }
+}
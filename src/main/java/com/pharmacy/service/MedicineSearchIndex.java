@@ -0,0 +1,467 @@
+package com.pharmacy.service;
+
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import com.pharmacy.util.PinyinUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 按租户缓存的药品检索倒排索引，覆盖通用名、商品名、描述、厂家、规格，以及名称的拼音检索码（全拼/首字母）。
+ * 中文按单字 + 相邻二元组切分，英文/数字与拼音码按连续串切分，放在有序词表（跳表）上按前缀区间查找；
+ * 英文/数字词项另把各后缀登记到后缀词表，同样按前缀区间查找即得到子串命中，与 LIKE '%kw%' 一致（另加拼音码前缀命中）。
+ * 候选集取各词项倒排的交集，再用原文包含或拼音码前缀校验。
+ * 同分时按近期销量排序，收银台输入 blf / buluofen 即可把常卖的布洛芬排在前面。
+ * 启动时预热，MedicineServiceImpl 写入时增量更新，定时全量重建兜底；索引未就绪时 search 返回 null，由调用方回退 SQL。
+ */
+@Service
+public class MedicineSearchIndex {
+
+    private static final String LOAD_SQL =
+            "SELECT medicine_id, generic_name, trade_name, description, manufacturer, spec, category_id, is_rx, status, retail_price, pinyin_code " +
+            "FROM medicine WHERE deleted = 0";
+
+    private static final String SALES_SQL =
+            "SELECT oi.medicine_id, SUM(oi.quantity) AS qty FROM order_item oi JOIN `order` o ON o.order_id = oi.order_id " +
+            "WHERE o.payment_status = 1 AND o.order_time >= ? GROUP BY oi.medicine_id";
+
+    @Value("${medicine-index.sales-days:30}")
+    private int salesDays = 30;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private DomainEventDispatcher dispatcher;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    private final ConcurrentHashMap<String, Shard> tenants = new ConcurrentHashMap<>();
+    // 正在重建、尚未替换上线的索引；重建期间的增量写入同时落到这里，避免替换后丢失
+    private final ConcurrentHashMap<String, Shard> pending = new ConcurrentHashMap<>();
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    /** 索引中的药品摘要（不可变，整体替换） */
+    public static final class Doc {
+        private final String medicineId;
+        private final String genericName;
+        private final String tradeName;
+        private final Integer categoryId;
+        private final Boolean isRx;
+        private final String status;
+        private final String spec;
+        private final BigDecimal retailPrice;
+        private final String names; // 通用名 + 商品名（小写）
+        private final String text;  // 全部检索字段（小写）
+        private final String[] pinyin;
+
+        Doc(String medicineId, String genericName, String tradeName, String description, String manufacturer,
+            String spec, Integer categoryId, Boolean isRx, String status, BigDecimal retailPrice, String pinyinCode) {
+            this.medicineId = medicineId;
+            this.genericName = genericName;
+            this.tradeName = tradeName;
+            this.categoryId = categoryId;
+            this.isRx = isRx;
+            this.status = status;
+            this.spec = spec;
+            this.retailPrice = retailPrice;
+            this.names = join(genericName, tradeName);
+            this.text = join(genericName, tradeName, description, manufacturer, spec);
+            this.pinyin = pinyinCode == null || pinyinCode.isBlank() ? new String[0] : pinyinCode.trim().split("\\s+");
+        }
+
+        public String getMedicineId() { return medicineId; }
+        public Integer getCategoryId() { return categoryId; }
+        public Boolean getIsRx() { return isRx; }
+        public String getStatus() { return status; }
+        public String getGenericName() { return genericName; }
+        public String getTradeName() { return tradeName; }
+        public String getSpec() { return spec; }
+        public BigDecimal getRetailPrice() { return retailPrice; }
+
+        private static String join(String... fields) {
+            StringBuilder sb = new StringBuilder();
+            for (String f : fields) {
+                if (f == null || f.isEmpty()) continue;
+                if (sb.length() > 0) sb.append('\u0001'); // 分隔符，避免跨字段拼出误命中
+                sb.append(f.toLowerCase(Locale.ROOT));
+            }
+            return sb.toString();
+        }
+    }
+
+    /** 单个租户的索引 */
+    private static final class Shard {
+        final ConcurrentHashMap<String, Doc> docs = new ConcurrentHashMap<>();
+        final ConcurrentSkipListMap<String, Set<String>> postings = new ConcurrentSkipListMap<>();
+        // 英文/数字词项去掉首字符后的各后缀（词项本身在 postings 中）
+        final ConcurrentSkipListMap<String, Set<String>> suffixes = new ConcurrentSkipListMap<>();
+        final ConcurrentHashMap<String, Integer> recentSales = new ConcurrentHashMap<>();
+        // 重建期间被增量写入过的药品，加载时跳过其（可能更旧的）查询行
+        final Set<String> touched = ConcurrentHashMap.newKeySet();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[SearchIndex]", "构建失败",
+                () -> System.out.println("[SearchIndex] 租户=" + TenantContext.currentTenantKey() + " 预热药品数=" + rebuild()));
+    }
+
+    /** 定时全量重建，兜底未经 MedicineServiceImpl 的直接改库 */
+    @Scheduled(fixedDelayString = "${medicine-index.rebuild-ms:600000}", initialDelayString = "${medicine-index.rebuild-ms:600000}")
+    public void reconcile() {
+        TenantTasks.forEach(dataSourceConfig, "[SearchIndex]", "构建失败", this::rebuild);
+    }
+
+    /** 当前租户索引是否可用 */
+    public boolean isReady() {
+        return tenants.containsKey(TenantContext.currentTenantKey());
+    }
+
+    /** 按 ID 取药品摘要；索引未就绪或不存在时返回 null */
+    public Doc get(String medicineId) {
+        Shard shard = tenants.get(TenantContext.currentTenantKey());
+        return shard == null || medicineId == null ? null : shard.docs.get(medicineId);
+    }
+
+    /**
+     * 按相关度排序的命中药品（已排除软删除）
+     * @return 索引尚未就绪时返回 null，调用方应回退 SQL 查询
+     */
+    public List<Doc> search(String keyword) {
+        Shard shard = tenants.get(TenantContext.currentTenantKey());
+        if (shard == null) {
+            buildAsync();
+            return null;
+        }
+        Map<Doc, Integer> scores = match(shard, keyword);
+        List<Doc> hits = new ArrayList<>(scores.keySet());
+        hits.sort(Comparator.<Doc>comparingInt(d -> -scores.get(d))
+                .thenComparingInt(d -> -shard.recentSales.getOrDefault(d.medicineId, 0))
+                .thenComparingInt(d -> d.names.length())
+                .thenComparing(d -> d.medicineId));
+        return hits;
+    }
+
+    /**
+     * 输入联想：取销量最高的前 limit 个命中，名称（含拼音码）前缀命中的排在仅其他字段命中的前面。
+     * 用容量为 limit 的小顶堆选取，不对全部命中排序。
+     * @return 索引尚未就绪时返回 null
+     */
+    public List<Doc> suggest(String keyword, int limit) {
+        Shard shard = tenants.get(TenantContext.currentTenantKey());
+        if (shard == null) {
+            buildAsync();
+            return null;
+        }
+        Map<Doc, Integer> scores = match(shard, keyword);
+        int terms = Math.max(1, keyword.trim().split("\\s+").length);
+        Comparator<Doc> rank = Comparator.<Doc>comparingInt(d -> scores.get(d) >= 50 * terms ? 0 : 1)
+                .thenComparingInt(d -> -shard.recentSales.getOrDefault(d.medicineId, 0))
+                .thenComparingInt(d -> -scores.get(d))
+                .thenComparingInt(d -> d.names.length())
+                .thenComparing(d -> d.medicineId);
+        PriorityQueue<Doc> top = new PriorityQueue<>(limit + 1, rank.reversed());
+        for (Doc doc : scores.keySet()) {
+            top.offer(doc);
+            if (top.size() > limit) top.poll();
+        }
+        List<Doc> result = new ArrayList<>(top);
+        result.sort(rank);
+        return result;
+    }
+
+    /** 命中的药品及相关度得分 */
+    private Map<Doc, Integer> match(Shard shard, String keyword) {
+        Map<Doc, Integer> scores = new HashMap<>();
+        List<String> terms = new ArrayList<>();
+        for (String t : keyword.toLowerCase(Locale.ROOT).trim().split("\\s+")) {
+            if (!t.isEmpty()) terms.add(t);
+        }
+        if (terms.isEmpty()) return scores;
+
+        Set<String> candidates = null;
+        for (String term : terms) {
+            for (String token : tokenize(term, false)) {
+                Set<String> ids = lookup(shard, token);
+                if (candidates == null) {
+                    candidates = new HashSet<>(ids);
+                } else {
+                    candidates.retainAll(ids);
+                }
+                if (candidates.isEmpty()) return scores;
+            }
+        }
+        if (candidates == null) return scores;
+
+        for (String id : candidates) {
+            Doc doc = shard.docs.get(id);
+            if (doc == null) continue;
+            int score = score(doc, terms);
+            if (score > 0) scores.put(doc, score);
+        }
+        return scores;
+    }
+
+    /** 新增或更新单个药品；软删除的药品移出索引 */
+    public void put(Medicine medicine) {
+        if (medicine == null || medicine.getMedicineId() == null) return;
+        if (Boolean.TRUE.equals(medicine.getDeleted())) {
+            remove(medicine.getMedicineId());
+            return;
+        }
+        String pinyinCode = PinyinUtil.keys(medicine.getGenericName(), medicine.getTradeName());
+        Doc doc = new Doc(medicine.getMedicineId(), medicine.getGenericName(), medicine.getTradeName(),
+                medicine.getDescription(), medicine.getManufacturer(), medicine.getSpec(),
+                medicine.getCategoryId(), medicine.getIsRx(), medicine.getStatus(), medicine.getRetailPrice(), pinyinCode);
+        apply(doc.medicineId, doc);
+    }
+
+    public void remove(String medicineId) {
+        if (medicineId == null) return;
+        apply(medicineId, null);
+    }
+
+    /**
+     * 增量写入在线索引和正在重建的索引（doc 为 null 表示移除）。
+     * 先读 pending：读到 null 说明之后开始的重建查询必然晚于本次写入对应的提交，能读到新数据。
+     */
+    private void apply(String medicineId, Doc doc) {
+        String key = TenantContext.currentTenantKey();
+        Shard next = pending.get(key);
+        Shard live = tenants.get(key);
+        if (next != null) write(next, medicineId, doc, true);
+        if (live != null && live != next) write(live, medicineId, doc, false);
+    }
+
+    private static void write(Shard shard, String medicineId, Doc doc, boolean building) {
+        synchronized (shard) {
+            if (building) shard.touched.add(medicineId);
+            unindex(shard, doc == null ? shard.docs.remove(medicineId) : shard.docs.put(medicineId, doc));
+            if (doc != null) index(shard, doc);
+        }
+    }
+
+    /** 近期销量随订单增减，用于同分排序 */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        Shard shard = tenants.get(event.tenantKey());
+        if (shard == null) return;
+        int sign = event instanceof OrderRefundedEvent ? -1 : 1;
+        for (OrderEvent.Line line : event.getLines()) {
+            shard.recentSales.merge(line.getMedicineId(), sign * line.getQuantity(), Integer::sum);
+        }
+    }
+
+    /**
+     * 从数据库全量重建当前租户的索引，完成后整体替换；历史数据缺失的拼音检索码顺带回填。
+     * 重建期间的 put / remove 同时写入新索引，查询行不覆盖这些药品。
+     */
+    public int rebuild() {
+        String key = TenantContext.currentTenantKey();
+        Shard shard = new Shard();
+        pending.put(key, shard);
+        try {
+            load(shard);
+            tenants.put(key, shard);
+            shard.touched.clear();
+        } finally {
+            pending.remove(key, shard);
+        }
+        return shard.docs.size();
+    }
+
+    private void load(Shard shard) {
+        List<Object[]> backfill = new ArrayList<>();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            String medicineId = rs.getString("medicine_id");
+            String genericName = rs.getString("generic_name");
+            String tradeName = rs.getString("trade_name");
+            String pinyinCode = rs.getString("pinyin_code");
+            if (pinyinCode == null) {
+                pinyinCode = PinyinUtil.keys(genericName, tradeName);
+                backfill.add(new Object[]{pinyinCode, medicineId});
+            }
+            Doc doc = new Doc(medicineId, genericName, tradeName,
+                    rs.getString("description"), rs.getString("manufacturer"), rs.getString("spec"),
+                    (Integer) rs.getObject("category_id", Integer.class), rs.getBoolean("is_rx"), rs.getString("status"),
+                    rs.getBigDecimal("retail_price"), pinyinCode);
+            synchronized (shard) {
+                if (shard.touched.contains(medicineId)) return;
+                shard.docs.put(medicineId, doc);
+                index(shard, doc);
+            }
+        });
+        if (!backfill.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE medicine SET pinyin_code = ? WHERE medicine_id = ?", backfill);
+        }
+        loadRecentSales(shard);
+    }
+
+    private void loadRecentSales(Shard shard) {
+        try {
+            jdbcTemplate.query(SALES_SQL, rs -> {
+                shard.recentSales.put(rs.getString("medicine_id"), rs.getInt("qty"));
+            }, Timestamp.valueOf(LocalDateTime.now().minusDays(salesDays)));
+        } catch (DataAccessException e) {
+            System.err.println("[SearchIndex] 租户=" + TenantContext.currentTenantKey() + " 近期销量加载失败 err=" + e.getMessage());
+        }
+    }
+
+    private void buildAsync() {
+        String key = TenantContext.currentTenantKey();
+        if (dispatcher == null || !building.add(key)) return;
+        boolean accepted = dispatcher.execute(() -> {
+            try {
+                System.out.println("[SearchIndex] 租户=" + key + " 按需构建药品数=" + rebuild());
+            } finally {
+                building.remove(key);
+            }
+        });
+        if (!accepted) building.remove(key); // 被丢弃时允许下次读取再触发
+    }
+
+    private static Set<String> lookup(Shard shard, String token) {
+        if (!isAsciiToken(token)) {
+            Set<String> ids = shard.postings.get(token);
+            return ids != null ? ids : Collections.emptySet();
+        }
+        // 词项与拼音码按前缀区间查找，支持边输入边搜索；后缀词表的前缀区间即词中间的子串命中
+        String end = token + Character.MAX_VALUE;
+        Set<String> ids = new HashSet<>();
+        for (Set<String> s : shard.postings.subMap(token, end).values()) {
+            ids.addAll(s);
+        }
+        for (Set<String> s : shard.suffixes.subMap(token, end).values()) {
+            ids.addAll(s);
+        }
+        return ids;
+    }
+
+    private static int score(Doc doc, List<String> terms) {
+        int score = 0;
+        for (String term : terms) {
+            int pinyin = pinyinMatch(doc, term);
+            if (pinyin == 0 && !doc.text.contains(term)) return 0;
+            if (pinyin == 2 || term.equalsIgnoreCase(doc.genericName) || term.equalsIgnoreCase(doc.tradeName)) {
+                score += 100;
+            } else if (pinyin == 1 || startsWith(doc.genericName, term) || startsWith(doc.tradeName, term)) {
+                score += 50;
+            } else if (doc.names.contains(term)) {
+                score += 20;
+            } else {
+                score += 5;
+            }
+        }
+        return score;
+    }
+
+    /** 0 未命中，1 拼音码前缀命中，2 拼音码完全相同 */
+    private static int pinyinMatch(Doc doc, String term) {
+        int match = 0;
+        for (String key : doc.pinyin) {
+            if (key.equals(term)) return 2;
+            if (key.startsWith(term)) match = 1;
+        }
+        return match;
+    }
+
+    private static boolean startsWith(String field, String term) {
+        return field != null && field.toLowerCase(Locale.ROOT).startsWith(term);
+    }
+
+    private static void index(Shard shard, Doc doc) {
+        Set<String> textTokens = tokenize(doc.text, true);
+        add(shard.postings, textTokens, doc.medicineId);
+        add(shard.postings, Arrays.asList(doc.pinyin), doc.medicineId);
+        add(shard.suffixes, suffixes(textTokens), doc.medicineId);
+    }
+
+    private static void unindex(Shard shard, Doc doc) {
+        if (doc == null) return;
+        Set<String> textTokens = tokenize(doc.text, true);
+        remove(shard.postings, textTokens, doc.medicineId);
+        remove(shard.postings, Arrays.asList(doc.pinyin), doc.medicineId);
+        remove(shard.suffixes, suffixes(textTokens), doc.medicineId);
+    }
+
+    private static void add(ConcurrentSkipListMap<String, Set<String>> map, Collection<String> keys, String medicineId) {
+        for (String key : keys) {
+            map.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(medicineId);
+        }
+    }
+
+    private static void remove(ConcurrentSkipListMap<String, Set<String>> map, Collection<String> keys, String medicineId) {
+        for (String key : keys) {
+            map.computeIfPresent(key, (k, ids) -> {
+                ids.remove(medicineId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /** 英文/数字词项的真后缀（拼音码只按前缀匹配，不登记后缀） */
+    private static Set<String> suffixes(Set<String> textTokens) {
+        Set<String> result = new HashSet<>();
+        for (String token : textTokens) {
+            if (!isAsciiToken(token)) continue;
+            for (int k = 1; k < token.length(); k++) result.add(token.substring(k));
+        }
+        return result;
+    }
+
+    /**
+     * 切词：中文连续串产生二元组（单字串产生单字），英文/数字连续串整体作为一个词项。
+     * 建索引时中文额外产生全部单字，使单字查询也能命中。
+     */
+    static Set<String> tokenize(String text, boolean forIndex) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int i = 0, n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < n && isCjk(text.charAt(i))) i++;
+                if (i - start == 1 || forIndex) {
+                    for (int k = start; k < i; k++) tokens.add(String.valueOf(text.charAt(k)));
+                }
+                for (int k = start; k + 1 < i; k++) tokens.add(text.substring(k, k + 2));
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) i++;
+                tokens.add(text.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isCjk(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    private static boolean isAsciiToken(String token) {
+        return !isCjk(token.charAt(0));
+    }
+}
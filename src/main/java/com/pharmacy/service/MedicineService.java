@@ -23,6 +23,8 @@ public interface MedicineService {
 
     // 新增：分页搜索方法（包含分类）
     Page<Medicine> searchMedicines(String keyword, String category, int page, int size);
+    // 关键词 + 分类 + 处方药标记 + 状态，条件与分页均在数据库完成
+    Page<Medicine> searchMedicines(String keyword, String category, Boolean isRx, String status, int page, int size);
 
     // 分类相关方法
     Page<Medicine> findByCategory(String category, Pageable pageable);
@@ -37,6 +39,7 @@ public interface MedicineService {
 
     // 新增：包含库存的搜索方法
     Page<MedicineWithStockDTO> searchMedicinesWithStock(String keyword, String category, int page, int size);
+    Page<MedicineWithStockDTO> searchMedicinesWithStock(String keyword, String category, Boolean isRx, String status, int page, int size);
     Page<MedicineWithStockDTO> getAllMedicinesWithStock(Pageable pageable);
 
     // 其他业务方法
@@ -0,0 +1,218 @@
+package com.pharmacy.service;
+
+import com.pharmacy.dto.MemberStatsDTO;
+import com.pharmacy.event.MemberChangedEvent;
+import com.pharmacy.event.MemberPointsChangedEvent;
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会员统计计数器（/api/members/stats）：每个租户在内存中维护总数、VIP 数、积分合计、会员累计消费，
+ * 以及三组按天分桶的计数——注册日（近 60 天）、最近消费日（近 90 天）、会员订单日（近 2 天）。
+ * 近 30 天新增 / 活跃、90 天流失由分桶求和得到，读取不扫会员表。
+ * 会员写入（MemberChangedEvent）、积分增减（MemberPointsChangedEvent）、订单提交 / 退款、member_stats 重算时增量更新；
+ * 首次读取与夜间对账（MemberStatsService.reconcile 之后）按 SQL 整体重载。
+ */
+@Service
+public class MemberCounters {
+
+    static final int VIP_LEVEL = 3;
+    static final int NEW_DAYS = 30;
+    static final int ACTIVE_DAYS = 30;
+    static final int CHURN_DAYS = 90;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private final ConcurrentHashMap<String, Counters> tenants = new ConcurrentHashMap<>();
+
+    /** 单个租户的计数 */
+    private static final class Counters {
+        final LongAdder total = new LongAdder();
+        final LongAdder vip = new LongAdder();
+        final LongAdder pointsSum = new LongAdder();
+        final LongAdder spentCents = new LongAdder();
+        final ConcurrentHashMap<LocalDate, LongAdder> created = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<LocalDate, LongAdder> lastOrder = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<LocalDate, LongAdder> memberOrders = new ConcurrentHashMap<>();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[MemberCounters]", "加载失败", this::reload);
+    }
+
+    /** 会员新增 / 修改 / 删除 / 积分变动 */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberChanged(MemberChangedEvent event) {
+        Counters c = tenants.get(TenantContext.currentTenantKey());
+        if (c == null) return; // 尚未加载，首次读取时会整体加载
+        apply(c, event.getBefore(), -1);
+        apply(c, event.getAfter(), 1);
+        if (event.getAfter() == null) {
+            // 已删除会员的 member_stats 行保留到夜间对账，这里先从消费相关计数中扣除
+            jdbcTemplate.query("SELECT total_spent, last_order_time FROM member_stats WHERE member_id = ?", rs -> {
+                Timestamp last = rs.getTimestamp("last_order_time");
+                onConsumptionChanged(last == null ? null : last.toLocalDateTime(), null, rs.getBigDecimal("total_spent"), null);
+            }, event.getMemberId());
+        }
+    }
+
+    /** 积分原子增减（结算、退款、人工调整）只影响积分合计 */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPointsChanged(MemberPointsChangedEvent event) {
+        Counters c = tenants.get(TenantContext.currentTenantKey());
+        if (c != null) c.pointsSum.add(event.getDelta());
+    }
+
+    /** 会员订单数按下单日计；退款冲减原下单日 */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        if (!event.hasMember() || event.getOrderTime() == null) return;
+        Counters c = tenants.get(event.tenantKey());
+        if (c == null) return;
+        add(c.memberOrders, event.getOrderTime().toLocalDate(), event instanceof OrderRefundedEvent ? -1 : 1);
+    }
+
+    /** member_stats 单行重算后的变化：最近消费日换桶、累计消费调整 */
+    public void onConsumptionChanged(LocalDateTime oldLast, LocalDateTime newLast, BigDecimal oldSpent, BigDecimal newSpent) {
+        Counters c = tenants.get(TenantContext.currentTenantKey());
+        if (c == null) return;
+        if (oldLast != null) add(c.lastOrder, oldLast.toLocalDate(), -1);
+        if (newLast != null) add(c.lastOrder, newLast.toLocalDate(), 1);
+        c.spentCents.add(cents(newSpent) - cents(oldSpent));
+    }
+
+    /** 按数据库整体重载当前租户 */
+    public void reload() {
+        LocalDate today = LocalDate.now(clock);
+        Counters c = new Counters();
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT COUNT(*) AS total, COALESCE(SUM(CASE WHEN level >= ? THEN 1 ELSE 0 END), 0) AS vip, " +
+                "COALESCE(SUM(points), 0) AS points FROM `member`", VIP_LEVEL);
+        c.total.add(number(row.get("total")));
+        c.vip.add(number(row.get("vip")));
+        c.pointsSum.add(number(row.get("points")));
+        loadBuckets(c.created, "SELECT CAST(create_time AS DATE) AS d, COUNT(*) AS n FROM `member` " +
+                "WHERE create_time >= ? GROUP BY CAST(create_time AS DATE)", today.minusDays(2L * NEW_DAYS));
+        loadBuckets(c.lastOrder, "SELECT CAST(s.last_order_time AS DATE) AS d, COUNT(*) AS n FROM member_stats s " +
+                "JOIN `member` m ON m.member_id = s.member_id WHERE s.last_order_time >= ? " +
+                "GROUP BY CAST(s.last_order_time AS DATE)", today.minusDays(CHURN_DAYS));
+        loadBuckets(c.memberOrders, "SELECT CAST(order_time AS DATE) AS d, COUNT(*) AS n FROM `order` " +
+                "WHERE payment_status = 1 AND member_id IS NOT NULL AND order_time >= ? " +
+                "GROUP BY CAST(order_time AS DATE)", today.minusDays(1));
+        BigDecimal spent = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(s.total_spent), 0) FROM member_stats s " +
+                "JOIN `member` m ON m.member_id = s.member_id", BigDecimal.class);
+        c.spentCents.add(cents(spent));
+        tenants.put(TenantContext.currentTenantKey(), c);
+    }
+
+    /** 读取当前租户的统计（不访问数据库，首次读取除外） */
+    public MemberStatsDTO read() {
+        Counters c = tenants.get(TenantContext.currentTenantKey());
+        if (c == null) {
+            reload();
+            c = tenants.get(TenantContext.currentTenantKey());
+        }
+        LocalDate today = LocalDate.now(clock);
+        prune(c, today);
+        long total = Math.max(0, c.total.sum());
+        long newMembers = sumSince(c.created, today.minusDays(NEW_DAYS), today);
+        long newBefore = sumSince(c.created, today.minusDays(2L * NEW_DAYS), today.minusDays(NEW_DAYS + 1L));
+        long active = sumSince(c.lastOrder, today.minusDays(ACTIVE_DAYS), today);
+        long churn = Math.max(0, total - sumSince(c.lastOrder, today.minusDays(CHURN_DAYS), today));
+        long todayOrders = sumSince(c.memberOrders, today, today);
+        long yesterdayOrders = sumSince(c.memberOrders, today.minusDays(1), today.minusDays(1));
+
+        MemberStatsDTO stats = new MemberStatsDTO();
+        stats.setTotalMembers(total);
+        stats.setVipMembers(Math.max(0, c.vip.sum()));
+        stats.setNewMembers(newMembers);
+        stats.setTodayConsumption(todayOrders);
+        stats.setTotalConsumption(c.spentCents.sum() / 100.0);
+        stats.setSleepingMembers(churn);
+        stats.setTotalGrowth(percent(newMembers, total - newMembers));
+        stats.setNewGrowth(percent(newMembers - newBefore, newBefore));
+        stats.setTodayGrowth(percent(todayOrders - yesterdayOrders, yesterdayOrders));
+        // 未保留 VIP、沉睡、消费金额的历史序列，增长率不做估算
+        stats.setVipGrowth(0);
+        stats.setSleepingGrowth(0);
+        stats.setConsumptionGrowth(0.0);
+        double avg = total == 0 ? 0.0 : c.pointsSum.sum() / (double) total;
+        stats.setAvgPoints(Math.round(avg * 10.0) / 10.0);
+        stats.setActiveRate(String.format(Locale.ROOT, "%.1f%%", total == 0 ? 0.0 : active * 100.0 / total));
+        stats.setChurnCount((int) churn);
+        return stats;
+    }
+
+    private void apply(Counters c, MemberChangedEvent.Snapshot s, int sign) {
+        if (s == null) return;
+        c.total.add(sign);
+        if (s.getLevel() >= VIP_LEVEL) c.vip.add(sign);
+        c.pointsSum.add(sign * s.getPoints());
+        if (s.getCreateTime() != null) add(c.created, s.getCreateTime().toLocalDate(), sign);
+    }
+
+    private void loadBuckets(ConcurrentHashMap<LocalDate, LongAdder> buckets, String sql, LocalDate since) {
+        jdbcTemplate.query(sql, rs -> {
+            Date d = rs.getDate("d");
+            if (d != null) add(buckets, d.toLocalDate(), rs.getLong("n"));
+        }, Date.valueOf(since));
+    }
+
+    private static void add(ConcurrentHashMap<LocalDate, LongAdder> buckets, LocalDate day, long delta) {
+        buckets.computeIfAbsent(day, k -> new LongAdder()).add(delta);
+    }
+
+    private static long sumSince(Map<LocalDate, LongAdder> buckets, LocalDate from, LocalDate to) {
+        long sum = 0;
+        for (Map.Entry<LocalDate, LongAdder> e : buckets.entrySet()) {
+            if (!e.getKey().isBefore(from) && !e.getKey().isAfter(to)) sum += e.getValue().sum();
+        }
+        return sum;
+    }
+
+    // 丢弃窗口外的日桶，每组最多保留几十个
+    private static void prune(Counters c, LocalDate today) {
+        c.created.keySet().removeIf(d -> d.isBefore(today.minusDays(2L * NEW_DAYS)));
+        c.lastOrder.keySet().removeIf(d -> d.isBefore(today.minusDays(CHURN_DAYS)));
+        c.memberOrders.keySet().removeIf(d -> d.isBefore(today.minusDays(1)));
+    }
+
+    private static int percent(long delta, long base) {
+        return base <= 0 ? 0 : (int) Math.round(delta * 100.0 / base);
+    }
+
+    private static long number(Object v) {
+        return v == null ? 0L : ((Number) v).longValue();
+    }
+
+    private static long cents(BigDecimal v) {
+        return v == null ? 0L : v.movePointRight(2).longValue();
+    }
+}
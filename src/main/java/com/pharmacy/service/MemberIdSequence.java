@@ -0,0 +1,62 @@
+package com.pharmacy.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 会员号序列：在 id_sequence 表中维护一行 seq_name='member'，next_val 为下一个可用序号，
+ * 分配时比较并递增（乐观更新），生成形如 M00001 的会员号，不再加载整张会员表取最大值。
+ * 缺行时按现有最大的 M+数字 会员号播种；手工录入的会员号若与序号撞上则跳过继续分配。
+ */
+@Service
+public class MemberIdSequence {
+
+    static final String SEQ_NAME = "member";
+    private static final int MAX_ATTEMPTS = 20;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** 为当前租户分配下一个会员号 */
+    public String nextId() {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long value = allocate();
+            String id = String.format("M%05d", value);
+            Integer taken = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `member` WHERE member_id = ?", Integer.class, id);
+            if (taken == null || taken == 0) return id;
+        }
+        throw new IllegalStateException("会员号分配失败: 连续 " + MAX_ATTEMPTS + " 个序号均已被占用");
+    }
+
+    private long allocate() {
+        while (true) {
+            List<Long> rows = jdbcTemplate.queryForList("SELECT next_val FROM id_sequence WHERE seq_name = ?", Long.class, SEQ_NAME);
+            if (rows.isEmpty()) {
+                seed();
+                continue;
+            }
+            long current = rows.get(0);
+            if (jdbcTemplate.update("UPDATE id_sequence SET next_val = ? WHERE seq_name = ? AND next_val = ?",
+                    current + 1, SEQ_NAME, current) == 1) {
+                return current;
+            }
+        }
+    }
+
+    private void seed() {
+        List<String> ids = jdbcTemplate.queryForList(
+                "SELECT member_id FROM `member` WHERE member_id REGEXP '^M[0-9]+$' " +
+                "ORDER BY CHAR_LENGTH(member_id) DESC, member_id DESC LIMIT 1", String.class);
+        long next = ids.isEmpty() ? 1 : Long.parseLong(ids.get(0).substring(1)) + 1;
+        try {
+            jdbcTemplate.update("INSERT INTO id_sequence(seq_name, next_val) VALUES (?, ?)", SEQ_NAME, next);
+            System.out.println("[MemberIdSequence] 已播种会员号序列 next=" + next);
+        } catch (DuplicateKeyException e) {
+            // 并发播种，已由其他请求写入
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.pharmacy.service;
+
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.multitenant.TenantContext;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会员积分流水（member_point，只追加）。积分余额以 member.points 的条件 UPDATE 为准，
+ * 流水在调用方事务提交后进入按租户划分的缓冲区，攒满 batch-size 或每隔 flush-ms 用一次 JDBC 批量插入落库，
+ * 结算路径上不再为流水单独往返数据库；事务回滚的变动不会入缓冲。订单行上另存 used_points / created_points。
+ */
+@Component
+public class MemberPointLedger {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO member_point(member_id, point, type, related_order_id, create_time) VALUES (?,?,?,?,?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private DomainEventDispatcher dispatcher;
+
+    @Value("${points.ledger.batch-size:200}")
+    private int batchSize = 200;
+
+    private final ConcurrentHashMap<String, Buffer> buffers = new ConcurrentHashMap<>();
+
+    /** 单个租户待写入的流水 */
+    private static final class Buffer {
+        final ConcurrentLinkedQueue<Object[]> rows = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+    }
+
+    /** 记一笔积分变动；在事务内调用时提交后才入缓冲 */
+    public void append(String memberId, int point, int type, String orderId) {
+        if (point == 0) return;
+        String tenant = TenantContext.currentTenantKey();
+        Object[] row = {memberId, point, type, orderId, Timestamp.valueOf(LocalDateTime.now())};
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(tenant, row);
+                }
+            });
+        } else {
+            enqueue(tenant, row);
+        }
+    }
+
+    private void enqueue(String tenant, Object[] row) {
+        Buffer buffer = buffers.computeIfAbsent(tenant, t -> new Buffer());
+        buffer.rows.add(row);
+        if (buffer.size.incrementAndGet() < Math.max(1, batchSize)) return;
+        if (dispatcher == null) {
+            flush(tenant);
+        } else {
+            dispatcher.executeCoalesced("points-ledger:" + tenant, () -> flush(tenant));
+        }
+    }
+
+    /** 定时落库各租户缓冲区中的流水 */
+    @Scheduled(fixedDelayString = "${points.ledger.flush-ms:1000}")
+    public void flushAll() {
+        for (String tenant : new ArrayList<>(buffers.keySet())) {
+            flush(tenant);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+    }
+
+    /** 写入指定租户的全部待写流水，返回写入行数 */
+    public int flush(String tenant) {
+        Buffer buffer = buffers.get(tenant);
+        if (buffer == null) return 0;
+        List<Object[]> batch = new ArrayList<>();
+        for (Object[] row; (row = buffer.rows.poll()) != null; ) {
+            batch.add(row);
+        }
+        if (batch.isEmpty()) return 0;
+        buffer.size.addAndGet(-batch.size());
+        String previous = TenantContext.getTenant();
+        if ("default".equals(tenant)) TenantContext.clear(); else TenantContext.setTenant(tenant);
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+            return batch.size();
+        } catch (Exception e) {
+            // 整批失败时逐行重试，只丢弃写不进去的行（如会员已被删除）
+            System.err.println("[PointLedger] 租户=" + tenant + " 批量写入失败，逐行重试 size=" + batch.size() + " err=" + e.getMessage());
+            int written = 0;
+            for (Object[] row : batch) {
+                try {
+                    written += jdbcTemplate.update(INSERT_SQL, row);
+                } catch (Exception ex) {
+                    System.err.println("[PointLedger] 租户=" + tenant + " 丢弃流水 member=" + row[0] + " point=" + row[1] + " err=" + ex.getMessage());
+                }
+            }
+            return written;
+        } finally {
+            if (previous == null) TenantContext.clear(); else TenantContext.setTenant(previous);
+        }
+    }
+
+    /** 当前租户尚未落库的流水条数 */
+    public int pendingCount() {
+        Buffer buffer = buffers.get(TenantContext.currentTenantKey());
+        return buffer == null ? 0 : buffer.size.get();
+    }
+}
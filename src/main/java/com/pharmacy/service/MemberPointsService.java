@@ -0,0 +1,125 @@
+package com.pharmacy.service;
+
+import com.pharmacy.entity.MemberPoint;
+import com.pharmacy.entity.Setting;
+import com.pharmacy.event.MemberPointsChangedEvent;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.repository.SettingRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 会员积分引擎：余额只通过条件 UPDATE 原子增减（points >= 扣减量 才生效），不做读-改-写，
+ * 结算时抵扣与累积合并为一条语句，与订单同事务；累积规则取租户设置 Setting.pointsRule（每消费 1 元得多少积分，向下取整）。
+ * 每笔变动追加到 MemberPointLedger，并发布 MemberPointsChangedEvent 供会员统计计数器更新积分合计。
+ */
+@Service
+public class MemberPointsService {
+
+    /** 积分抵现：1 积分 = 0.01 元（与收银台一致） */
+    public static final BigDecimal POINT_VALUE = new BigDecimal("0.01");
+
+    private static final String APPLY_SQL =
+            "UPDATE `member` SET points = COALESCE(points, 0) + ? WHERE member_id = ? AND COALESCE(points, 0) >= ?";
+
+    // 退款冲回：累积所得可能已被花掉，余额最低冲到 0
+    private static final String REVERSE_SQL =
+            "UPDATE `member` SET points = GREATEST(COALESCE(points, 0) + ?, 0) WHERE member_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SettingRepository settingRepository;
+
+    @Autowired
+    private MemberPointLedger ledger;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /** 订单积分结果 */
+    public static class Settlement {
+        private final int used;
+        private final int earned;
+
+        public Settlement(int used, int earned) {
+            this.used = used;
+            this.earned = earned;
+        }
+
+        public int getUsed() { return used; }
+        public int getEarned() { return earned; }
+    }
+
+    /**
+     * 结算：抵扣 usedPoints 并按实付累积，须在订单事务内调用
+     * @throws RuntimeException 非会员使用积分或余额不足（调用方事务随之回滚）
+     */
+    public Settlement settleOrder(String memberId, String orderId, int usedPoints, double actualPayment) {
+        if (usedPoints < 0) throw new RuntimeException("使用积分不能为负数");
+        if (memberId == null) {
+            if (usedPoints > 0) throw new RuntimeException("非会员订单不能使用积分");
+            return new Settlement(0, 0);
+        }
+        int earned = earnedPoints(actualPayment);
+        if (earned == 0 && usedPoints == 0) return new Settlement(0, 0);
+        int delta = earned - usedPoints;
+        if (jdbcTemplate.update(APPLY_SQL, delta, memberId, usedPoints) == 0) {
+            throw new RuntimeException("会员积分不足，需要: " + usedPoints);
+        }
+        ledger.append(memberId, -usedPoints, MemberPoint.TYPE_REDEEM, orderId);
+        ledger.append(memberId, earned, MemberPoint.TYPE_EARN, orderId);
+        publish(memberId, delta, orderId);
+        return new Settlement(usedPoints, earned);
+    }
+
+    /** 退款：退回抵扣的积分、扣回累积的积分，返回净变动（余额被截到 0 时计数器的积分合计由夜间对账校正） */
+    public int reverseOrder(String memberId, String orderId, Integer usedPoints, Integer createdPoints) {
+        int used = usedPoints == null ? 0 : usedPoints;
+        int created = createdPoints == null ? 0 : createdPoints;
+        if (memberId == null || (used == 0 && created == 0)) return 0;
+        int delta = used - created;
+        if (jdbcTemplate.update(REVERSE_SQL, delta, memberId) == 0) return 0;
+        ledger.append(memberId, -created, MemberPoint.TYPE_EARN, orderId);
+        ledger.append(memberId, used, MemberPoint.TYPE_REDEEM, orderId);
+        publish(memberId, delta, orderId);
+        return delta;
+    }
+
+    /** 人工增减 / 兑换；扣减时余额不足或会员不存在返回 false */
+    public boolean adjust(String memberId, int delta, int type) {
+        if (memberId == null || delta == 0) return false;
+        if (jdbcTemplate.update(APPLY_SQL, delta, memberId, Math.max(0, -delta)) == 0) return false;
+        ledger.append(memberId, delta, type, null);
+        publish(memberId, delta, null);
+        return true;
+    }
+
+    /** 抵扣后的实付金额（不低于 0），累积积分按此计算 */
+    public static double payableAfterPoints(double amount, int usedPoints) {
+        BigDecimal paid = BigDecimal.valueOf(amount).subtract(POINT_VALUE.multiply(BigDecimal.valueOf(usedPoints)));
+        return paid.signum() > 0 ? paid.setScale(2, RoundingMode.HALF_UP).doubleValue() : 0.0;
+    }
+
+    /** 按当前租户积分规则计算实付可得积分 */
+    public int earnedPoints(double actualPayment) {
+        Setting settings = settingRepository.findLatestSettings();
+        Double rule = settings == null ? null : settings.getPointsRule();
+        double perYuan = rule == null ? 1.0 : rule;
+        if (perYuan <= 0 || actualPayment <= 0) return 0;
+        return BigDecimal.valueOf(actualPayment).multiply(BigDecimal.valueOf(perYuan))
+                .setScale(0, RoundingMode.FLOOR).intValue();
+    }
+
+    private void publish(String memberId, long delta, String orderId) {
+        if (delta != 0) {
+            eventPublisher.publishEvent(new MemberPointsChangedEvent(TenantContext.currentTenantKey(), memberId, delta, orderId));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.pharmacy.service;
+
+import com.pharmacy.dto.MemberDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会员高级筛选列表：member LEFT JOIN member_stats 一条 SQL 完成分组、积分、消费次数筛选与排序，
+ * 按 (排序键, member_id) 做 keyset 分页；总数、平均积分、活跃 / 流失人数另走一条聚合 SQL。
+ * 内存与耗时只与页大小相关，不随会员总数增长。
+ */
+@Service
+public class MemberQueryService {
+
+    private static final String SELECT_SQL =
+            "SELECT m.member_id, m.name, m.phone, m.card_no, m.level, m.points, m.allergic_history, m.medical_card_no, m.create_time, " +
+            "COALESCE(s.order_count, 0) AS order_count, s.last_order_time, COALESCE(s.total_spent, 0) AS total_spent ";
+
+    private static final String FROM_SQL =
+            "FROM `member` m LEFT JOIN member_stats s ON s.member_id = m.member_id WHERE 1=1";
+
+    private static final RowMapper<MemberDTO> ROW_MAPPER = (rs, n) -> {
+        MemberDTO dto = new MemberDTO(rs.getString("member_id"), rs.getString("name"), rs.getString("phone"));
+        dto.setCardNo(rs.getString("card_no"));
+        dto.setLevel((Integer) rs.getObject("level", Integer.class));
+        dto.setPoints((Integer) rs.getObject("points", Integer.class));
+        dto.setAllergicHistory(rs.getString("allergic_history"));
+        dto.setMedicalCardNo(rs.getString("medical_card_no"));
+        Timestamp created = rs.getTimestamp("create_time");
+        dto.setCreateTime(created == null ? null : created.toLocalDateTime());
+        dto.setLevelName(MemberDTO.getLevelName(dto.getLevel()));
+        dto.setConsumptionCount(rs.getInt("order_count"));
+        Timestamp last = rs.getTimestamp("last_order_time");
+        dto.setLastConsumptionDate(last == null ? null : last.toLocalDateTime());
+        dto.setTotalSpent(rs.getBigDecimal("total_spent"));
+        return dto;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** 筛选条件（与 /api/members/advanced 参数一致，空值表示不限） */
+    public static class Criteria {
+        String segment;
+        String sort;
+        Integer pointsMin;
+        Integer pointsMax;
+        Integer consumptionMin;
+        Integer consumptionMax;
+        String name;
+        String phone;
+
+        public Criteria(String segment, String sort, Integer pointsMin, Integer pointsMax,
+                        Integer consumptionMin, Integer consumptionMax, String name, String phone) {
+            this.segment = segment;
+            this.sort = sort;
+            this.pointsMin = pointsMin;
+            this.pointsMax = pointsMax;
+            this.consumptionMin = consumptionMin;
+            this.consumptionMax = consumptionMax;
+            this.name = name;
+            this.phone = phone;
+        }
+    }
+
+    /** 一页结果；nextCursor 为 null 表示没有下一页 */
+    public static class Page {
+        private final List<MemberDTO> items;
+        private final String nextCursor;
+
+        Page(List<MemberDTO> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<MemberDTO> getItems() { return items; }
+        public String getNextCursor() { return nextCursor; }
+    }
+
+    /** 筛选结果整体的聚合指标 */
+    public static class Summary {
+        private final long total;
+        private final double avgPoints;
+        private final long activeCount;
+        private final long churnCount;
+
+        Summary(long total, double avgPoints, long activeCount, long churnCount) {
+            this.total = total;
+            this.avgPoints = avgPoints;
+            this.activeCount = activeCount;
+            this.churnCount = churnCount;
+        }
+
+        public long getTotal() { return total; }
+        public double getAvgPoints() { return avgPoints; }
+        public long getActiveCount() { return activeCount; }
+        public long getChurnCount() { return churnCount; }
+    }
+
+    /** 排序键：字段表达式 + 方向；不指定时按 member_id 升序 */
+    private static final class SortKey {
+        final String field;
+        final String expr;
+        final boolean desc;
+
+        SortKey(String field, String expr, boolean desc) {
+            this.field = field;
+            this.expr = expr;
+            this.desc = desc;
+        }
+
+        static SortKey of(String sort) {
+            if (sort != null) {
+                String[] parts = sort.split("_");
+                if (parts.length == 2) {
+                    boolean desc = "desc".equalsIgnoreCase(parts[1]);
+                    switch (parts[0]) {
+                        case "createTime": return new SortKey("createTime", "COALESCE(m.create_time, TIMESTAMP '1970-01-01 00:00:00')", desc);
+                        case "points": return new SortKey("points", "COALESCE(m.points, 0)", desc);
+                        case "consumption": return new SortKey("consumption", "COALESCE(s.order_count, 0)", desc);
+                        case "level": return new SortKey("level", "COALESCE(m.level, 0)", desc);
+                        default: break;
+                    }
+                }
+            }
+            return new SortKey(null, null, false);
+        }
+
+        Object value(MemberDTO m) {
+            switch (field) {
+                case "createTime": return m.getCreateTime() == null ? "1970-01-01T00:00" : m.getCreateTime().toString();
+                case "points": return m.getPoints() == null ? 0 : m.getPoints();
+                case "consumption": return m.getConsumptionCount();
+                default: return m.getLevel() == null ? 0 : m.getLevel();
+            }
+        }
+
+        Object parse(String raw) {
+            return "createTime".equals(field) ? Timestamp.valueOf(LocalDateTime.parse(raw)) : (Object) Long.parseLong(raw);
+        }
+    }
+
+    /**
+     * 查询一页
+     * @param cursor 上一页返回的 nextCursor；为空时按 offset 定位（兼容页码分页）
+     */
+    public Page list(Criteria criteria, String cursor, int offset, int size) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(SELECT_SQL).append(FROM_SQL);
+        appendFilters(sql, args, criteria);
+        SortKey key = SortKey.of(criteria.sort);
+        String op = key.desc ? "<" : ">";
+        String dir = key.desc ? " DESC" : " ASC";
+        boolean keyset = cursor != null && !cursor.isBlank();
+        if (keyset) {
+            String[] c = decodeCursor(cursor);
+            if (key.field == null) {
+                sql.append(" AND m.member_id ").append(op).append(" ?");
+                args.add(c[1]);
+            } else {
+                Object v = key.parse(c[0]);
+                sql.append(" AND (").append(key.expr).append(' ').append(op).append(" ? OR (")
+                        .append(key.expr).append(" = ? AND m.member_id ").append(op).append(" ?))");
+                args.add(v);
+                args.add(v);
+                args.add(c[1]);
+            }
+        }
+        sql.append(" ORDER BY ");
+        if (key.field != null) sql.append(key.expr).append(dir).append(", ");
+        sql.append("m.member_id").append(dir);
+        sql.append(" LIMIT ?");
+        args.add(size + 1);
+        if (!keyset && offset > 0) {
+            sql.append(" OFFSET ?");
+            args.add(offset);
+        }
+        List<MemberDTO> rows = jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray());
+        String next = null;
+        if (rows.size() > size) {
+            rows = new ArrayList<>(rows.subList(0, size));
+            MemberDTO last = rows.get(size - 1);
+            next = encodeCursor(key.field == null ? "" : String.valueOf(key.value(last)), last.getMemberId());
+        }
+        return new Page(rows, next);
+    }
+
+    /** 筛选结果的总数、平均积分、近 30 天活跃人数、超 90 天未消费（含从未消费）人数 */
+    public Summary summarize(Criteria criteria) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object> args = new ArrayList<>();
+        args.add(Timestamp.valueOf(now.minusDays(30)));
+        args.add(Timestamp.valueOf(now.minusDays(90)));
+        StringBuilder sql = new StringBuilder(
+                "SELECT COUNT(*) AS total, AVG(COALESCE(m.points, 0)) AS avg_points, " +
+                "SUM(CASE WHEN s.last_order_time > ? THEN 1 ELSE 0 END) AS active_count, " +
+                "SUM(CASE WHEN s.last_order_time IS NULL OR s.last_order_time < ? THEN 1 ELSE 0 END) AS churn_count ")
+                .append(FROM_SQL);
+        appendFilters(sql, args, criteria);
+        Map<String, Object> row = jdbcTemplate.queryForMap(sql.toString(), args.toArray());
+        return new Summary(number(row.get("total")), row.get("avg_points") == null ? 0.0 : ((Number) row.get("avg_points")).doubleValue(),
+                number(row.get("active_count")), number(row.get("churn_count")));
+    }
+
+    private static void appendFilters(StringBuilder sql, List<Object> args, Criteria c) {
+        LocalDateTime now = LocalDateTime.now();
+        if (c.name != null && !c.name.isBlank()) {
+            sql.append(" AND m.name LIKE ?");
+            args.add("%" + c.name.trim() + "%");
+        }
+        if (c.phone != null && !c.phone.isBlank()) {
+            sql.append(" AND m.phone LIKE ?");
+            args.add("%" + c.phone.trim() + "%");
+        }
+        if (c.pointsMin != null) {
+            sql.append(" AND m.points >= ?");
+            args.add(c.pointsMin);
+        }
+        if (c.pointsMax != null) {
+            sql.append(" AND m.points <= ?");
+            args.add(c.pointsMax);
+        }
+        if (c.consumptionMin != null) {
+            sql.append(" AND COALESCE(s.order_count, 0) >= ?");
+            args.add(c.consumptionMin);
+        }
+        if (c.consumptionMax != null) {
+            sql.append(" AND COALESCE(s.order_count, 0) <= ?");
+            args.add(c.consumptionMax);
+        }
+        if (c.segment != null) {
+            switch (c.segment) {
+                case "vip": sql.append(" AND m.level >= 4"); break;
+                case "new30":
+                    sql.append(" AND m.create_time >= ?");
+                    args.add(Timestamp.valueOf(now.minusDays(30)));
+                    break;
+                case "sleep":
+                    sql.append(" AND (s.last_order_time IS NULL OR s.last_order_time < ?)");
+                    args.add(Timestamp.valueOf(now.minusDays(90)));
+                    break;
+                case "highPoints": sql.append(" AND m.points >= 1000"); break;
+                default: break; // all
+            }
+        }
+    }
+
+    private static long number(Object v) {
+        return v == null ? 0L : ((Number) v).longValue();
+    }
+
+    static String encodeCursor(String value, String memberId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((value + "\n" + memberId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String[] decodeCursor(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int i = raw.indexOf('\n');
+        if (i < 0) throw new IllegalArgumentException("无效的分页游标");
+        return new String[]{raw.substring(0, i), raw.substring(i + 1)};
+    }
+}
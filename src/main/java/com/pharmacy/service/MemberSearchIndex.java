@@ -0,0 +1,250 @@
+package com.pharmacy.service;
+
+import com.pharmacy.entity.Member;
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按租户缓存的会员检索索引，替代对 member 表的全表加载：
+ * 手机号、卡号按三元组（连续 3 个字符）建倒排，部分号码（如尾号）取最稀疏的三元组作候选再校验包含；
+ * 卡号另有精确映射；姓名归一化（去零宽字符、压缩空白、小写）后按单字 + 二元组建倒排。
+ * 只返回会员ID，调用方按主键批量取实体。启动时预热，MemberService 写入时增量更新，定时全量重建兜底；
+ * 索引未就绪时返回 null，由调用方回退 SQL LIKE 查询。
+ */
+@Service
+public class MemberSearchIndex {
+
+    private static final String LOAD_SQL = "SELECT member_id, name, phone, card_no FROM `member`";
+    private static final int GRAM = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private DomainEventDispatcher dispatcher;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    private final ConcurrentHashMap<String, Shard> tenants = new ConcurrentHashMap<>();
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    /** 索引中的会员检索字段（不可变，整体替换） */
+    private static final class Doc {
+        final String memberId;
+        final String name;   // 归一化小写
+        final String phone;
+        final String cardNo; // 小写
+
+        Doc(String memberId, String name, String phone, String cardNo) {
+            this.memberId = memberId;
+            this.name = normalize(name).toLowerCase(Locale.ROOT);
+            this.phone = phone == null ? "" : phone.trim();
+            this.cardNo = cardNo == null ? "" : cardNo.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** 单个租户的索引 */
+    private static final class Shard {
+        final ConcurrentHashMap<String, Doc> docs = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Set<String>> phoneGrams = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Set<String>> cardGrams = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Set<String>> nameTokens = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, String> cardNos = new ConcurrentHashMap<>();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[MemberIndex]", "构建失败",
+                () -> System.out.println("[MemberIndex] 租户=" + TenantContext.currentTenantKey() + " 预热会员数=" + rebuild()));
+    }
+
+    /** 定时全量重建，兜底未经 MemberService 的直接改库 */
+    @Scheduled(fixedDelayString = "${member-index.rebuild-ms:600000}", initialDelayString = "${member-index.rebuild-ms:600000}")
+    public void reconcile() {
+        TenantTasks.forEach(dataSourceConfig, "[MemberIndex]", "构建失败", this::rebuild);
+    }
+
+    /**
+     * 手机号包含 keyword 的会员ID（keyword 至少 3 位）
+     * @return 索引尚未就绪时返回 null
+     */
+    public Set<String> findByPhoneContaining(String keyword) {
+        Shard shard = shard();
+        if (shard == null) return null;
+        String k = keyword == null ? "" : keyword.trim();
+        return matchGrams(shard, shard.phoneGrams, k, d -> d.phone.contains(k));
+    }
+
+    /**
+     * 归一化姓名包含 keyword 的会员ID
+     * @return 索引尚未就绪时返回 null
+     */
+    public Set<String> findByNameContaining(String keyword) {
+        Shard shard = shard();
+        if (shard == null) return null;
+        String k = normalize(keyword).toLowerCase(Locale.ROOT);
+        Set<String> result = new LinkedHashSet<>();
+        if (k.isEmpty()) return result;
+        Set<String> candidates = null;
+        for (String token : nameTokens(k, false)) {
+            Set<String> ids = shard.nameTokens.getOrDefault(token, Collections.emptySet());
+            if (candidates == null || ids.size() < candidates.size()) candidates = ids;
+        }
+        if (candidates == null) return result;
+        for (String id : candidates) {
+            Doc doc = shard.docs.get(id);
+            if (doc != null && doc.name.contains(k)) result.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * 卡号包含 keyword 的会员ID；不足 3 位时只做精确匹配
+     * @return 索引尚未就绪时返回 null
+     */
+    public Set<String> findByCardNoContaining(String keyword) {
+        Shard shard = shard();
+        if (shard == null) return null;
+        String k = keyword == null ? "" : keyword.trim().toLowerCase(Locale.ROOT);
+        if (k.length() < GRAM) {
+            String id = shard.cardNos.get(k);
+            return id != null ? new LinkedHashSet<>(List.of(id)) : new LinkedHashSet<>();
+        }
+        return matchGrams(shard, shard.cardGrams, k, d -> d.cardNo.contains(k));
+    }
+
+    /** 新增或更新单个会员 */
+    public void put(Member member) {
+        if (member == null || member.getMemberId() == null) return;
+        Shard shard = tenants.get(TenantContext.currentTenantKey());
+        if (shard == null) return; // 尚未建好，重建时会读到
+        Doc doc = new Doc(member.getMemberId(), member.getName(), member.getPhone(), member.getCardNo());
+        synchronized (shard) {
+            unindex(shard, shard.docs.put(doc.memberId, doc));
+            index(shard, doc);
+        }
+    }
+
+    public void remove(String memberId) {
+        Shard shard = tenants.get(TenantContext.currentTenantKey());
+        if (shard == null || memberId == null) return;
+        synchronized (shard) {
+            unindex(shard, shard.docs.remove(memberId));
+        }
+    }
+
+    /** 从数据库全量重建当前租户的索引，完成后整体替换 */
+    public int rebuild() {
+        Shard shard = new Shard();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            Doc doc = new Doc(rs.getString("member_id"), rs.getString("name"), rs.getString("phone"), rs.getString("card_no"));
+            shard.docs.put(doc.memberId, doc);
+            index(shard, doc);
+        });
+        tenants.put(TenantContext.currentTenantKey(), shard);
+        return shard.docs.size();
+    }
+
+    /** 去首尾空白、全角空格、零宽字符，压缩连续空白 */
+    public static String normalize(String s) {
+        if (s == null) return "";
+        String trimmed = s.trim();
+        trimmed = trimmed.replace('\u3000', ' ').replaceAll("\\s+", " ");
+        trimmed = trimmed.replace("\u200B", "") // ZERO WIDTH SPACE
+                         .replace("\u200C", "") // ZERO WIDTH NON-JOINER
+                         .replace("\u200D", "") // ZERO WIDTH JOINER
+                         .replace("\uFEFF", ""); // BOM
+        return trimmed.trim();
+    }
+
+    private Shard shard() {
+        Shard shard = tenants.get(TenantContext.currentTenantKey());
+        if (shard == null) buildAsync();
+        return shard;
+    }
+
+    /** 取查询串中倒排最短的三元组作候选，再逐个校验 */
+    private static Set<String> matchGrams(Shard shard, Map<String, Set<String>> grams, String keyword,
+                                          java.util.function.Predicate<Doc> verify) {
+        Set<String> result = new LinkedHashSet<>();
+        if (keyword.length() < GRAM) return result;
+        Set<String> candidates = null;
+        for (int i = 0; i + GRAM <= keyword.length(); i++) {
+            Set<String> ids = grams.getOrDefault(keyword.substring(i, i + GRAM), Collections.emptySet());
+            if (candidates == null || ids.size() < candidates.size()) candidates = ids;
+            if (candidates.isEmpty()) return result;
+        }
+        for (String id : candidates) {
+            Doc doc = shard.docs.get(id);
+            if (doc != null && verify.test(doc)) result.add(id);
+        }
+        return result;
+    }
+
+    private static void index(Shard shard, Doc doc) {
+        for (String g : grams(doc.phone)) add(shard.phoneGrams, g, doc.memberId);
+        for (String g : grams(doc.cardNo)) add(shard.cardGrams, g, doc.memberId);
+        for (String t : nameTokens(doc.name, true)) add(shard.nameTokens, t, doc.memberId);
+        if (!doc.cardNo.isEmpty()) shard.cardNos.put(doc.cardNo, doc.memberId);
+    }
+
+    private static void unindex(Shard shard, Doc doc) {
+        if (doc == null) return;
+        for (String g : grams(doc.phone)) drop(shard.phoneGrams, g, doc.memberId);
+        for (String g : grams(doc.cardNo)) drop(shard.cardGrams, g, doc.memberId);
+        for (String t : nameTokens(doc.name, true)) drop(shard.nameTokens, t, doc.memberId);
+        if (!doc.cardNo.isEmpty()) shard.cardNos.remove(doc.cardNo, doc.memberId);
+    }
+
+    private static void add(Map<String, Set<String>> postings, String token, String id) {
+        postings.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    private static void drop(Map<String, Set<String>> postings, String token, String id) {
+        postings.computeIfPresent(token, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= value.length(); i++) grams.add(value.substring(i, i + GRAM));
+        return grams;
+    }
+
+    /** 姓名切词：建索引时产生全部单字与二元组；查询单字用单字，多字只用二元组 */
+    static Set<String> nameTokens(String name, boolean forIndex) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (name.length() == 1 || forIndex) {
+            for (int i = 0; i < name.length(); i++) tokens.add(String.valueOf(name.charAt(i)));
+        }
+        for (int i = 0; i + 2 <= name.length(); i++) tokens.add(name.substring(i, i + 2));
+        return tokens;
+    }
+
+    private void buildAsync() {
+        String key = TenantContext.currentTenantKey();
+        if (dispatcher == null || !building.add(key)) return;
+        boolean accepted = dispatcher.execute(() -> {
+            try {
+                System.out.println("[MemberIndex] 租户=" + key + " 按需构建会员数=" + rebuild());
+            } finally {
+                building.remove(key);
+            }
+        });
+        if (!accepted) building.remove(key); // 被丢弃时允许下次读取再触发
+    }
+}
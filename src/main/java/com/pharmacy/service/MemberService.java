@@ -2,15 +2,21 @@ package com.pharmacy.service;
 
 import com.pharmacy.dto.MemberStatsDTO;
 import com.pharmacy.entity.Member;
+import com.pharmacy.entity.MemberPoint;
+import com.pharmacy.event.MemberChangedEvent;
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.repository.MemberRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList; // 添加这个导入
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -25,6 +31,21 @@ public class MemberService {
     @Autowired
     private com.pharmacy.repository.OrderRepository orderRepository; // 新增: 用于消费聚合
 
+    @Autowired
+    private MemberSearchIndex memberSearchIndex;
+
+    @Autowired
+    private MemberIdSequence memberIdSequence;
+
+    @Autowired
+    private MemberCounters memberCounters;
+
+    @Autowired
+    private MemberPointsService memberPointsService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // 改进的搜索方法 - 同时搜索所有条件并去重
     public List<Member> searchMembers(String keyword) {
         try {
@@ -42,36 +63,22 @@ public class MemberService {
             Optional<Member> byPhone = memberRepository.findByPhone(trimmedKeyword);
             byPhone.ifPresent(m -> { System.out.println("手机精确命中: " + m.getName()); results.add(m); });
 
-            // 新增: 部分手机号匹配(包含)
+            // 新增: 部分手机号匹配(包含)，走索引三元组，不再加载全表
             if (trimmedKeyword.chars().allMatch(Character::isDigit) && trimmedKeyword.length() >= 4) {
-                List<Member> partialPhones = memberRepository.findAll().stream()
-                        .filter(m -> m.getPhone() != null && m.getPhone().contains(trimmedKeyword))
-                        .collect(Collectors.toList());
+                List<Member> partialPhones = loadMembers(phoneContaining(trimmedKeyword));
                 if(!partialPhones.isEmpty()) {
                     System.out.println("手机号包含匹配数量: " + partialPhones.size());
                 }
                 results.addAll(partialPhones);
             }
 
-            // 2. 姓名 LIKE（数据库层面）
-            List<Member> nameDbMatches = memberRepository.findByNameContaining(trimmedKeyword);
-            if(!nameDbMatches.isEmpty()) {
-                System.out.println("数据库 LIKE 匹配姓名数量: " + nameDbMatches.size());
-                results.addAll(nameDbMatches);
+            // 2. 姓名包含（索引按归一化姓名匹配，已覆盖编码 / 空格差异；未就绪时数据库 LIKE）
+            List<Member> nameMatches = loadMembers(nameContaining(trimmedKeyword));
+            if(!nameMatches.isEmpty()) {
+                System.out.println("姓名匹配数量: " + nameMatches.size());
+                results.addAll(nameMatches);
             } else {
-                // Fallback：在已加载的全部列表中手动 contains（处理可能的编码 / 空格差异）
-                List<Member> manualNameMatches = memberRepository.findAll().stream()
-                        .filter(m -> {
-                            String n = normalize(m.getName());
-                            return !n.isEmpty() && n.contains(trimmedKeyword);
-                        })
-                        .collect(Collectors.toList());
-                if(!manualNameMatches.isEmpty()) {
-                    System.out.println("手动遍历姓名匹配数量: " + manualNameMatches.size());
-                    results.addAll(manualNameMatches);
-                } else {
-                    System.out.println("姓名匹配为空（数据库+手动），关键词: " + trimmedKeyword);
-                }
+                System.out.println("姓名匹配为空，关键词: " + trimmedKeyword);
             }
 
             // 3. 卡号精确
@@ -89,15 +96,14 @@ public class MemberService {
         }
     }
 
-    // 新增: 更宽松的快速搜索(姓名包含 / 手机包含 / 卡号包含)
+    // 新增: 更宽松的快速搜索(姓名包含 / 手机包含 / 卡号包含)；手机号、卡号至少 3 位才做包含匹配
     public List<Member> quickSearch(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) return new ArrayList<>();
         String k = keyword.trim();
-        return memberRepository.findAll().stream().filter(m -> {
-            return (m.getName() != null && m.getName().contains(k)) ||
-                    (m.getPhone() != null && m.getPhone().contains(k)) ||
-                    (m.getCardNo() != null && m.getCardNo().contains(k));
-        }).collect(Collectors.toList());
+        Set<String> ids = new LinkedHashSet<>(nameContaining(k));
+        ids.addAll(phoneContaining(k));
+        ids.addAll(cardNoContaining(k));
+        return loadMembers(ids);
     }
 
     // 创建新会员
@@ -109,7 +115,7 @@ public class MemberService {
 
         Member member = new Member(memberId, name, phone);
         member.setCreateTime(LocalDateTime.now());
-        return memberRepository.save(member);
+        return save(member, null);
     }
 
     // 根据ID查找会员
@@ -127,43 +133,33 @@ public class MemberService {
         return memberRepository.findAll();
     }
 
+    // 按会员ID分页（数据库分页）
+    public org.springframework.data.domain.Page<Member> findPage(int page, int size) {
+        return memberRepository.findAll(org.springframework.data.domain.PageRequest.of(Math.max(page, 0), Math.max(size, 1),
+                org.springframework.data.domain.Sort.by("memberId")));
+    }
+
     // 更新会员信息
     public Member updateMember(Member member) {
-        if (!memberRepository.existsById(member.getMemberId())) {
-            throw new RuntimeException("会员不存在: " + member.getMemberId());
-        }
-        return memberRepository.save(member);
+        MemberChangedEvent.Snapshot before = memberRepository.findById(member.getMemberId()).map(this::snapshot)
+                .orElseThrow(() -> new RuntimeException("会员不存在: " + member.getMemberId()));
+        member.setPoints((int) before.getPoints()); // 资料编辑不改积分，返回库内余额
+        return save(member, before);
     }
 
     // 删除会员
     public void deleteMember(String memberId) {
-        memberRepository.deleteById(memberId);
+        delete(memberId);
     }
 
     // 增加积分
     public boolean addPoints(String memberId, int points) {
-        Optional<Member> optionalMember = memberRepository.findById(memberId);
-        if (optionalMember.isPresent()) {
-            Member member = optionalMember.get();
-            member.addPoints(points);
-            memberRepository.save(member);
-            return true;
-        }
-        return false;
+        return points > 0 && memberPointsService.adjust(memberId, points, MemberPoint.TYPE_ADJUST);
     }
 
     // 使用积分
     public boolean usePoints(String memberId, int points) {
-        Optional<Member> optionalMember = memberRepository.findById(memberId);
-        if (optionalMember.isPresent()) {
-            Member member = optionalMember.get();
-            boolean success = member.usePoints(points);
-            if (success) {
-                memberRepository.save(member);
-            }
-            return success;
-        }
-        return false;
+        return points > 0 && memberPointsService.adjust(memberId, -points, MemberPoint.TYPE_EXCHANGE);
     }
 
     // 检查手机号是否存在
@@ -171,102 +167,28 @@ public class MemberService {
         return memberRepository.findByPhone(phone).isPresent();
     }
 
-    // 生成下一个会员ID（简单实现）
+    // 生成下一个会员ID（id_sequence 序列分配）
     public String generateNextMemberId() {
-        // 这里可以根据业务规则实现更复杂的ID生成逻辑
-        List<Member> members = memberRepository.findAll();
-        if (members.isEmpty()) {
-            return "M00001";
-        }
-
-        // 获取最大的会员ID并递增
-        String maxId = members.stream()
-                .map(Member::getMemberId)
-                .max(String::compareTo)
-                .orElse("M00000");
-
-        // 提取数字部分并递增
-        int number = Integer.parseInt(maxId.substring(1)) + 1;
-        return String.format("M%05d", number);
+        return memberIdSequence.nextId();
     }
 
     // 在现有的 MemberService 类中添加以下方法：
 
-    // 获取会员统计数据
+    // 获取会员统计数据：读内存计数器（随会员 / 订单事件增量维护，夜间对账），不扫会员表
     public MemberStatsDTO getMemberStats() {
-        MemberStatsDTO stats = new MemberStatsDTO();
-
         try {
-            // 总会员数
-            Long total = memberRepository.countTotalMembers();
-            stats.setTotalMembers(total != null ? total : 0L);
-
-            // VIP会员数（假设等级>=3为VIP）
-            List<Member> vipMembers = memberRepository.findByLevel(3);
-            stats.setVipMembers((long) vipMembers.size());
-
-            // 最近30天新增会员
-            LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-            Long newMembers = memberRepository.countNewMembersSince(thirtyDaysAgo);
-            stats.setNewMembers(newMembers != null ? newMembers : 0L);
-
-            // 设置模拟数据（实际项目中应从订单服务获取）
-            stats.setTodayConsumption(89L);
-            stats.setTotalConsumption(328560.0);
-            stats.setSleepingMembers(128L);
-
-            // 设置增长率（模拟数据）
-            stats.setTotalGrowth(32);
-            stats.setVipGrowth(12);
-            stats.setNewGrowth(15);
-            stats.setTodayGrowth(12);
-            stats.setConsumptionGrowth(15.2);
-            stats.setSleepingGrowth(-18);
-
-            // 计算附加指标：平均积分 / 活跃率 / 流失风险数量 (基于真实订单聚合)
-            List<Member> allMembers = memberRepository.findAll();
-            double sumPoints = 0.0; long totalCount = allMembers.size();
-            java.util.Set<String> allIds = allMembers.stream().map(Member::getMemberId).collect(java.util.stream.Collectors.toSet());
-            java.util.Map<String, java.time.LocalDateTime> lastMap = new java.util.HashMap<>();
-            try {
-                if(!allIds.isEmpty()){
-                    java.util.List<Object[]> rows = orderRepository.aggregateMemberConsumption(allIds); // [memberId, count, last]
-                    for(Object[] r: rows){
-                        String mid = (String) r[0];
-                        java.time.LocalDateTime last = (java.time.LocalDateTime) r[2];
-                        if(mid!=null) lastMap.put(mid,last);
-                    }
-                }
-            } catch(Exception ex){
-                System.err.println("订单聚合失败, 使用 createTime 近似: "+ex.getMessage());
-            }
-            int active = 0; int churn = 0; java.time.LocalDateTime now = java.time.LocalDateTime.now();
-            java.time.LocalDateTime activeThreshold = now.minusDays(30);
-            java.time.LocalDateTime churnThreshold = now.minusDays(90);
-            for(Member m: allMembers){
-                int pts = m.getPoints()!=null? m.getPoints():0; sumPoints += pts;
-                java.time.LocalDateTime last = lastMap.get(m.getMemberId());
-                if(last!=null && last.isAfter(activeThreshold)) active++;
-                if(last==null || last.isBefore(churnThreshold)) churn++;
-            }
-            double avg = totalCount==0?0.0: (sumPoints / totalCount);
-            double activeRate = totalCount==0?0.0: (active * 100.0 / totalCount);
-            stats.setAvgPoints(Math.round(avg*10.0)/10.0); // 一位小数
-            stats.setActiveRate(String.format(java.util.Locale.ROOT, "%.1f%%", activeRate));
-            stats.setChurnCount(churn);
-
+            return memberCounters.read();
         } catch (Exception e) {
             System.err.println("获取会员统计数据失败: " + e.getMessage());
-            // 设置默认值
+            MemberStatsDTO stats = new MemberStatsDTO();
             stats.setTotalMembers(0L);
             stats.setVipMembers(0L);
             stats.setNewMembers(0L);
             stats.setTodayConsumption(0L);
             stats.setTotalConsumption(0.0);
             stats.setSleepingMembers(0L);
+            return stats;
         }
-
-        return stats;
     }
 
     // 批量删除会员
@@ -274,7 +196,7 @@ public class MemberService {
     public boolean deleteMembers(List<String> memberIds) {
         try {
             for (String memberId : memberIds) {
-                memberRepository.deleteById(memberId);
+                delete(memberId);
             }
             return true;
         } catch (Exception e) {
@@ -304,16 +226,64 @@ public class MemberService {
         }
     }
 
+    // 写入后同步检索索引，并发布变更事件（提交后由会员统计计数器订阅）
+    private Member save(Member member, MemberChangedEvent.Snapshot before) {
+        Member saved = memberRepository.save(member);
+        memberSearchIndex.put(saved);
+        eventPublisher.publishEvent(new MemberChangedEvent(TenantContext.currentTenantKey(), saved.getMemberId(), before, snapshot(saved)));
+        return saved;
+    }
+
+    private void delete(String memberId) {
+        Optional<Member> existing = memberRepository.findById(memberId);
+        memberRepository.deleteById(memberId);
+        memberSearchIndex.remove(memberId);
+        existing.ifPresent(m -> eventPublisher.publishEvent(
+                new MemberChangedEvent(TenantContext.currentTenantKey(), memberId, snapshot(m), null)));
+    }
+
+    private MemberChangedEvent.Snapshot snapshot(Member m) {
+        return new MemberChangedEvent.Snapshot(m.getLevel(), m.getPoints(), m.getCreateTime());
+    }
+
+    private Set<String> phoneContaining(String keyword) {
+        Set<String> ids = memberSearchIndex.findByPhoneContaining(keyword);
+        if (ids != null) return ids;
+        if (keyword.length() < 3) return new LinkedHashSet<>();
+        return memberRepository.findByPhoneContaining(keyword).stream().map(Member::getMemberId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Set<String> nameContaining(String keyword) {
+        Set<String> ids = memberSearchIndex.findByNameContaining(keyword);
+        if (ids != null) return ids;
+        return memberRepository.findByNameContaining(normalize(keyword)).stream().map(Member::getMemberId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Set<String> cardNoContaining(String keyword) {
+        Set<String> ids = memberSearchIndex.findByCardNoContaining(keyword);
+        if (ids != null) return ids;
+        List<Member> members = keyword.length() < 3
+                ? memberRepository.findByCardNo(keyword).map(List::of).orElse(List.of())
+                : memberRepository.findByCardNoContaining(keyword);
+        return members.stream().map(Member::getMemberId).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    // 按主键批量取实体，保持索引命中顺序
+    private List<Member> loadMembers(Set<String> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        Map<String, Member> byId = memberRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Member::getMemberId, m -> m));
+        List<Member> members = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Member m = byId.get(id);
+            if (m != null) members.add(m);
+        }
+        return members;
+    }
+
     private String normalize(String s){
-        if(s==null) return "";
-        String trimmed = s.trim();
-        // 全角空格转换为普通空格，再压缩连续空白
-        trimmed = trimmed.replace('\u3000',' ').replaceAll("\\s+"," ");
-        // 去除常见隐藏字符: 零宽空格/零宽不换行/字节顺序标记
-        trimmed = trimmed.replace("\u200B","" ) // ZERO WIDTH SPACE
-                         .replace("\u200C","" ) // ZERO WIDTH NON-JOINER
-                         .replace("\u200D","" ) // ZERO WIDTH JOINER
-                         .replace("\uFEFF","" ); // BOM
-        return trimmed;
+        return MemberSearchIndex.normalize(s);
     }
 }
@@ -0,0 +1,120 @@
+package com.pharmacy.service;
+
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 维护 member_stats 读模型：每个会员的已支付订单数、累计实付、最近下单时间。
+ * 订单提交 / 退款提交后按会员重算一行（走 order.idx_member，同一会员排队中的重算合并），
+ * 每晚按订单表整体对账一次（随后重载 MemberCounters），兜底事件丢失与直接改库。会员列表的筛选、排序与聚合直接 JOIN 该表。
+ */
+@Service
+public class MemberStatsService {
+
+    private static final String RECOUNT_SQL =
+            "SELECT COUNT(*) AS cnt, COALESCE(SUM(actual_payment), 0) AS spent, MAX(order_time) AS last_time " +
+            "FROM `order` WHERE member_id = ? AND payment_status = 1";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO member_stats(member_id, order_count, total_spent, last_order_time, update_time) VALUES (?,?,?,?,NOW()) " +
+            "ON DUPLICATE KEY UPDATE order_count = VALUES(order_count), total_spent = VALUES(total_spent), " +
+            "last_order_time = VALUES(last_order_time), update_time = VALUES(update_time)";
+
+    private static final String RECONCILE_UPSERT_SQL =
+            "INSERT INTO member_stats(member_id, order_count, total_spent, last_order_time, update_time) " +
+            "SELECT member_id, COUNT(*), COALESCE(SUM(actual_payment), 0), MAX(order_time), NOW() FROM `order` " +
+            "WHERE payment_status = 1 AND member_id IS NOT NULL GROUP BY member_id " +
+            "ON DUPLICATE KEY UPDATE order_count = VALUES(order_count), total_spent = VALUES(total_spent), " +
+            "last_order_time = VALUES(last_order_time), update_time = VALUES(update_time)";
+
+    private static final String RECONCILE_DELETE_SQL =
+            "DELETE FROM member_stats WHERE NOT EXISTS (SELECT 1 FROM `order` o " +
+            "WHERE o.member_id = member_stats.member_id AND o.payment_status = 1)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private DomainEventDispatcher dispatcher;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    @Autowired(required = false)
+    private MemberCounters memberCounters;
+
+    /** 订单提交 / 退款提交后重算该会员（事务回滚不会触发） */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        if (!event.hasMember()) return;
+        String memberId = event.getMemberId();
+        if (dispatcher == null) {
+            recount(memberId);
+            return;
+        }
+        dispatcher.executeCoalesced("member-stats-row:" + memberId, () -> recount(memberId));
+    }
+
+    /** 按订单表重算单个会员的统计行；已无有效订单时删除该行。变化同步给会员统计计数器 */
+    public void recount(String memberId) {
+        try {
+            List<Map<String, Object>> old = jdbcTemplate.queryForList(
+                    "SELECT total_spent, last_order_time FROM member_stats WHERE member_id = ?", memberId);
+            Map<String, Object> row = jdbcTemplate.queryForMap(RECOUNT_SQL, memberId);
+            long count = ((Number) row.get("cnt")).longValue();
+            if (count == 0) {
+                jdbcTemplate.update("DELETE FROM member_stats WHERE member_id = ?", memberId);
+            } else {
+                jdbcTemplate.update(UPSERT_SQL, memberId, count, row.get("spent"), row.get("last_time"));
+            }
+            if (memberCounters != null) {
+                Map<String, Object> before = old.isEmpty() ? null : old.get(0);
+                memberCounters.onConsumptionChanged(
+                        before == null ? null : toDateTime(before.get("last_order_time")),
+                        count == 0 ? null : toDateTime(row.get("last_time")),
+                        before == null ? null : toDecimal(before.get("total_spent")),
+                        count == 0 ? null : toDecimal(row.get("spent")));
+            }
+        } catch (Exception e) {
+            System.err.println("[MemberStats] 租户=" + TenantContext.currentTenantKey() + " 重算失败 member=" + memberId + " err=" + e.getMessage());
+        }
+    }
+
+    /** 夜间对账：按订单表整体重算当前租户的 member_stats */
+    public int reconcile() {
+        int upserted = jdbcTemplate.update(RECONCILE_UPSERT_SQL);
+        int deleted = jdbcTemplate.update(RECONCILE_DELETE_SQL);
+        System.out.println("[MemberStats] 租户=" + TenantContext.currentTenantKey() + " 对账完成 upsert=" + upserted + " delete=" + deleted);
+        if (memberCounters != null) memberCounters.reload();
+        return upserted;
+    }
+
+    private static LocalDateTime toDateTime(Object v) {
+        if (v instanceof Timestamp) return ((Timestamp) v).toLocalDateTime();
+        return v instanceof LocalDateTime ? (LocalDateTime) v : null;
+    }
+
+    private static BigDecimal toDecimal(Object v) {
+        if (v instanceof BigDecimal) return (BigDecimal) v;
+        return v instanceof Number ? BigDecimal.valueOf(((Number) v).doubleValue()) : null;
+    }
+
+    @Scheduled(cron = "${member-stats.reconcile-cron:0 40 3 * * *}")
+    public void reconcileAllTenants() {
+        TenantTasks.forEach(dataSourceConfig, "[MemberStats]", "对账失败", this::reconcile);
+    }
+}
@@ -0,0 +1,243 @@
+package com.pharmacy.service;
+
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import com.pharmacy.util.HyperLogLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * 按小时的销售汇总（sales_rollup_hourly，每个租户库一张）：已支付订单数、应收、折扣、实收，以及消费会员的去重草图。
+ * 订单提交 / 退款提交后按订单所在小时从订单表重算该小时（走 order.idx_order_time，同一小时排队中的重算合并）；
+ * 启动时按持久化的回填水位（sales_rollup_watermark）续跑历史回填，每晚重算最近两天兜底事件丢失并推进水位。控制台的今日 / 昨日对比、日 / 周 / 月趋势只读汇总行，不再扫订单。
+ */
+@Service
+public class SalesRollupService {
+
+    private static final String ORDERS_SQL =
+            "SELECT order_time, member_id, total_amount, discount_amount, actual_payment FROM `order` " +
+            "WHERE payment_status = 1 AND order_time >= ? AND order_time < ?";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO sales_rollup_hourly(bucket_hour, paid_count, gross_amount, discount_amount, net_amount, member_sketch, update_time) " +
+            "VALUES (?,?,?,?,?,?,NOW()) ON DUPLICATE KEY UPDATE paid_count = VALUES(paid_count), gross_amount = VALUES(gross_amount), " +
+            "discount_amount = VALUES(discount_amount), net_amount = VALUES(net_amount), member_sketch = VALUES(member_sketch), " +
+            "update_time = VALUES(update_time)";
+
+    private static final String WATERMARK_SQL =
+            "INSERT INTO sales_rollup_watermark(id, done_through, update_time) VALUES (1, ?, NOW()) " +
+            "ON DUPLICATE KEY UPDATE done_through = GREATEST(done_through, VALUES(done_through)), update_time = VALUES(update_time)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = false)
+    private DomainEventDispatcher dispatcher;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    @Value("${sales-rollup.backfill-days:730}")
+    private int backfillDays = 730;
+
+    /** 一个时段的汇总；按天汇总时不带会员草图 */
+    public static class Bucket {
+        private final LocalDateTime start;
+        private long paidCount;
+        private BigDecimal gross = BigDecimal.ZERO;
+        private BigDecimal discount = BigDecimal.ZERO;
+        private BigDecimal net = BigDecimal.ZERO;
+        private final HyperLogLog members = new HyperLogLog();
+
+        public Bucket(LocalDateTime start) {
+            this.start = start;
+        }
+
+        public void merge(Bucket other) {
+            paidCount += other.paidCount;
+            gross = gross.add(other.gross);
+            discount = discount.add(other.discount);
+            net = net.add(other.net);
+            members.merge(other.members);
+        }
+
+        public LocalDateTime getStart() { return start; }
+        public long getPaidCount() { return paidCount; }
+        public BigDecimal getGross() { return gross; }
+        public BigDecimal getDiscount() { return discount; }
+        public BigDecimal getNet() { return net; }
+        public long getDistinctMembers() { return members.estimate(); }
+    }
+
+    /** 订单提交 / 退款提交后重算订单所在小时（事务回滚不会触发） */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        if (event.getOrderTime() == null) return;
+        LocalDateTime hour = event.getOrderTime().truncatedTo(ChronoUnit.HOURS);
+        if (dispatcher == null) {
+            rebuild(hour, hour.plusHours(1));
+            return;
+        }
+        dispatcher.executeCoalesced("sales-rollup:" + hour, () -> rebuild(hour, hour.plusHours(1)));
+    }
+
+    /** 按订单表重算 [from, to) 内各小时（两端按整点），返回写入的小时数 */
+    public int rebuild(LocalDateTime from, LocalDateTime to) {
+        Map<LocalDateTime, Bucket> hours = new TreeMap<>();
+        jdbcTemplate.query(ORDERS_SQL, rs -> {
+            LocalDateTime hour = rs.getTimestamp("order_time").toLocalDateTime().truncatedTo(ChronoUnit.HOURS);
+            Bucket b = hours.computeIfAbsent(hour, Bucket::new);
+            b.paidCount++;
+            b.gross = b.gross.add(orZero(rs.getBigDecimal("total_amount")));
+            b.discount = b.discount.add(orZero(rs.getBigDecimal("discount_amount")));
+            b.net = b.net.add(orZero(rs.getBigDecimal("actual_payment")));
+            b.members.add(rs.getString("member_id"));
+        }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+
+        List<Object[]> rows = new ArrayList<>(hours.size());
+        for (Bucket b : hours.values()) {
+            rows.add(new Object[]{Timestamp.valueOf(b.start), b.paidCount, b.gross, b.discount, b.net,
+                    b.members.isEmpty() ? null : b.members.toBytes()});
+        }
+        if (!rows.isEmpty()) jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        // 该时段已无有效订单的小时（如整小时退款）删除
+        List<Timestamp> existing = jdbcTemplate.queryForList(
+                "SELECT bucket_hour FROM sales_rollup_hourly WHERE bucket_hour >= ? AND bucket_hour < ?",
+                Timestamp.class, Timestamp.valueOf(from), Timestamp.valueOf(to));
+        for (Timestamp t : existing) {
+            if (!hours.containsKey(t.toLocalDateTime())) {
+                jdbcTemplate.update("DELETE FROM sales_rollup_hourly WHERE bucket_hour = ?", t);
+            }
+        }
+        return rows.size();
+    }
+
+    /** 逐日回填 [fromDay, toDay]，每天一次范围查询 */
+    public int backfill(LocalDate fromDay, LocalDate toDay) {
+        int written = 0;
+        for (LocalDate d = fromDay; !d.isAfter(toDay); d = d.plusDays(1)) {
+            written += rebuild(d.atStartOfDay(), d.plusDays(1).atStartOfDay());
+        }
+        return written;
+    }
+
+    /** [from, to) 内的小时汇总，按时间升序 */
+    public List<Bucket> hours(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(
+                "SELECT bucket_hour, paid_count, gross_amount, discount_amount, net_amount, member_sketch FROM sales_rollup_hourly " +
+                "WHERE bucket_hour >= ? AND bucket_hour < ? ORDER BY bucket_hour",
+                (rs, n) -> {
+                    Bucket b = new Bucket(rs.getTimestamp("bucket_hour").toLocalDateTime());
+                    b.paidCount = rs.getLong("paid_count");
+                    b.gross = orZero(rs.getBigDecimal("gross_amount"));
+                    b.discount = orZero(rs.getBigDecimal("discount_amount"));
+                    b.net = orZero(rs.getBigDecimal("net_amount"));
+                    b.members.merge(HyperLogLog.fromBytes(rs.getBytes("member_sketch")));
+                    return b;
+                }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /** [from, to) 合计（含去重会员数） */
+    public Bucket total(LocalDateTime from, LocalDateTime to) {
+        Bucket total = new Bucket(from);
+        for (Bucket b : hours(from, to)) total.merge(b);
+        return total;
+    }
+
+    /** [fromDay, toDay] 按天合计（不含会员草图），缺数据的日期不出现在结果中 */
+    public Map<LocalDate, Bucket> daily(LocalDate fromDay, LocalDate toDay) {
+        Map<LocalDate, Bucket> days = new TreeMap<>();
+        jdbcTemplate.query(
+                "SELECT CAST(bucket_hour AS DATE) AS d, SUM(paid_count) AS cnt, SUM(gross_amount) AS gross, " +
+                "SUM(discount_amount) AS discount, SUM(net_amount) AS net FROM sales_rollup_hourly " +
+                "WHERE bucket_hour >= ? AND bucket_hour < ? GROUP BY CAST(bucket_hour AS DATE)",
+                rs -> {
+                    LocalDate day = rs.getDate("d").toLocalDate();
+                    Bucket b = new Bucket(day.atStartOfDay());
+                    b.paidCount = rs.getLong("cnt");
+                    b.gross = orZero(rs.getBigDecimal("gross"));
+                    b.discount = orZero(rs.getBigDecimal("discount"));
+                    b.net = orZero(rs.getBigDecimal("net"));
+                    days.put(day, b);
+                }, Timestamp.valueOf(fromDay.atStartOfDay()), Timestamp.valueOf(toDay.plusDays(1).atStartOfDay()));
+        return days;
+    }
+
+    /** 各租户从回填水位续跑历史回填（后台执行，不阻塞启动） */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[SalesRollup]", "处理失败", () -> {
+            Runnable job = this::resumeBackfill;
+            if (dispatcher == null) job.run(); else dispatcher.execute(job);
+        });
+    }
+
+    /**
+     * 从水位次日（无水位时从最早已支付订单日，最多回溯 backfill-days 天）逐日回填到今天，每完成一天推进水位。
+     * 中途重启或事件先写入了部分小时都不影响续跑；今天尚未结束，水位最多推进到昨天。返回写入的小时数
+     */
+    public int resumeBackfill() {
+        LocalDate today = LocalDate.now();
+        LocalDate from;
+        List<java.sql.Date> mark = jdbcTemplate.queryForList(
+                "SELECT done_through FROM sales_rollup_watermark WHERE id = 1", java.sql.Date.class);
+        if (!mark.isEmpty() && mark.get(0) != null) {
+            from = mark.get(0).toLocalDate().plusDays(1);
+        } else {
+            Timestamp first = jdbcTemplate.queryForObject("SELECT MIN(order_time) FROM `order` WHERE payment_status = 1", Timestamp.class);
+            if (first == null) {
+                advanceWatermark(today.minusDays(1));
+                return 0;
+            }
+            from = first.toLocalDateTime().toLocalDate();
+        }
+        if (from.isBefore(today.minusDays(backfillDays))) from = today.minusDays(backfillDays);
+        if (from.isAfter(today)) return 0;
+        long t0 = System.currentTimeMillis();
+        int hours = 0;
+        for (LocalDate d = from; !d.isAfter(today); d = d.plusDays(1)) {
+            hours += rebuild(d.atStartOfDay(), d.plusDays(1).atStartOfDay());
+            if (d.isBefore(today)) advanceWatermark(d);
+        }
+        System.out.println("[SalesRollup] 租户=" + TenantContext.currentTenantKey() + " 历史回填完成 从=" + from +
+                " 小时数=" + hours + " 耗时=" + (System.currentTimeMillis() - t0) + "ms");
+        return hours;
+    }
+
+    private void advanceWatermark(LocalDate doneThrough) {
+        jdbcTemplate.update(WATERMARK_SQL, java.sql.Date.valueOf(doneThrough));
+    }
+
+    /** 每晚重算昨天和今天，兜底事件丢失与直接改库；昨天已完整，推进水位 */
+    @Scheduled(cron = "${sales-rollup.reconcile-cron:0 50 3 * * *}")
+    public void reconcileAllTenants() {
+        LocalDate today = LocalDate.now();
+        TenantTasks.forEach(dataSourceConfig, "[SalesRollup]", "处理失败", () -> {
+            backfill(today.minusDays(1), today);
+            // 仅在水位已连续到前天时推进，历史回填未完成的租户由启动续跑负责
+            jdbcTemplate.update("UPDATE sales_rollup_watermark SET done_through = ?, update_time = NOW() " +
+                    "WHERE id = 1 AND done_through >= ? AND done_through < ?",
+                    java.sql.Date.valueOf(today.minusDays(1)), java.sql.Date.valueOf(today.minusDays(2)), java.sql.Date.valueOf(today.minusDays(1)));
+        });
+    }
+
+    private static BigDecimal orZero(BigDecimal v) {
+        return v == null ? BigDecimal.ZERO : v;
+    }
+}
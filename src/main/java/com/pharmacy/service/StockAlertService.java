@@ -25,6 +25,9 @@ public interface StockAlertService {
     // 检查并生成库存预警
     void checkAndGenerateAlerts();
 
+    // 仅检查单个药品（库存变动事件触发）
+    void checkAlertsForMedicine(String medicineId);
+
     // 获取近效期药品（60天内到期）
     List<Map<String, Object>> getExpiringMedicines();
 
@@ -0,0 +1,170 @@
+package com.pharmacy.service;
+
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.event.StockChangedEvent;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按租户缓存的库存水位索引：medicineId -> {在库总量, 最早未过期效期, 最小正安全库存, 批次数}。
+ * 启动时一次分组查询预热；库存变动事件提交后按涉及药品增量重算；定时全量对账纠正漂移。
+ * 全量重建期间的增量重算会记下药品，替换后再按最新库存重算一次，不会被查询前的快照覆盖。
+ * 读路径（getCurrentStock / checkStock / 药品列表）直接读内存，不再查询 inventory。
+ * 结算扣减仍以数据库条件更新为准，索引只服务展示与预判。
+ */
+@Service
+public class StockLevelIndex {
+
+    private static final String AGGREGATE_SQL =
+            "SELECT medicine_id, COALESCE(SUM(stock_quantity), 0) AS total, " +
+            "MIN(CASE WHEN expiry_date >= ? THEN expiry_date END) AS earliest, " +
+            "MIN(CASE WHEN min_stock > 0 THEN min_stock END) AS min_stock, " +
+            "COUNT(*) AS batches FROM inventory";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DomainEventDispatcher dispatcher;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Level>> tenants = new ConcurrentHashMap<>();
+    // 正在全量重建的租户 -> 重建期间增量重算过的药品
+    private final ConcurrentHashMap<String, Set<String>> pending = new ConcurrentHashMap<>();
+
+    /** 单个药品的库存水位（不可变，整体替换） */
+    public static final class Level {
+        public static final Level EMPTY = new Level(0, Long.MIN_VALUE, 0, 0);
+
+        private final int totalStock;
+        private final long earliestExpiryEpochDay; // Long.MIN_VALUE 表示无有效效期
+        private final int minStock;                // 0 表示未设置
+        private final int batchCount;
+
+        Level(int totalStock, long earliestExpiryEpochDay, int minStock, int batchCount) {
+            this.totalStock = totalStock;
+            this.earliestExpiryEpochDay = earliestExpiryEpochDay;
+            this.minStock = minStock;
+            this.batchCount = batchCount;
+        }
+
+        public int getTotalStock() { return totalStock; }
+        public LocalDate getEarliestExpiry() {
+            return earliestExpiryEpochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(earliestExpiryEpochDay);
+        }
+        public int getMinStock() { return minStock; }
+        public int getBatchCount() { return batchCount; }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[StockIndex]", "加载失败",
+                () -> System.out.println("[StockIndex] 租户=" + TenantContext.currentTenantKey() + " 预热药品数=" + reload().size()));
+    }
+
+    /** 定时全量对账，纠正未经事件的直接改库与跨日效期变化 */
+    @Scheduled(fixedDelayString = "${stock-index.reconcile-ms:300000}", initialDelayString = "${stock-index.reconcile-ms:300000}")
+    public void reconcile() {
+        TenantTasks.forEach(dataSourceConfig, "[StockIndex]", "加载失败", () -> {
+            Map<String, Level> before = tenants.get(TenantContext.currentTenantKey());
+            Map<String, Level> after = reload();
+            if (before != null) {
+                int drift = 0;
+                for (Map.Entry<String, Level> e : after.entrySet()) {
+                    Level old = before.get(e.getKey());
+                    if (old == null || old.totalStock != e.getValue().totalStock) drift++;
+                }
+                if (drift > 0) System.out.println("[StockIndex] 租户=" + TenantContext.currentTenantKey() + " 对账修正 " + drift + " 个药品");
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        Set<String> ids = event.getMedicineIds();
+        if (ids.isEmpty()) return;
+        dispatcher.execute(() -> refresh(ids));
+    }
+
+    public Level get(String medicineId) {
+        if (medicineId == null) return Level.EMPTY;
+        Level level = levels().get(medicineId);
+        return level != null ? level : Level.EMPTY;
+    }
+
+    public int totalStock(String medicineId) {
+        return get(medicineId).totalStock;
+    }
+
+    /** 按药品从数据库重算当前租户的水位 */
+    public void refresh(Collection<String> medicineIds) {
+        if (medicineIds == null || medicineIds.isEmpty()) return;
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(medicineIds));
+        // 先登记再查库：重建的快照可能早于本次查询，替换后由重建方补算
+        Set<String> touched = pending.get(TenantContext.currentTenantKey());
+        if (touched != null) touched.addAll(ids);
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        List<Object> params = new ArrayList<>(ids.size() + 1);
+        params.add(Date.valueOf(LocalDate.now()));
+        params.addAll(ids);
+        Map<String, Level> loaded = query(AGGREGATE_SQL + " WHERE medicine_id IN (" + placeholders + ") GROUP BY medicine_id", params.toArray());
+        ConcurrentHashMap<String, Level> map = levels();
+        for (String id : ids) {
+            Level level = loaded.get(id);
+            if (level != null) map.put(id, level); else map.remove(id);
+        }
+    }
+
+    /** 全量重建当前租户的索引；重建期间增量重算过的药品在替换后重算 */
+    public Map<String, Level> reload() {
+        String key = TenantContext.currentTenantKey();
+        Set<String> touched = ConcurrentHashMap.newKeySet();
+        pending.put(key, touched);
+        ConcurrentHashMap<String, Level> map;
+        try {
+            map = new ConcurrentHashMap<>(query(AGGREGATE_SQL + " GROUP BY medicine_id", Date.valueOf(LocalDate.now())));
+            tenants.put(key, map);
+        } finally {
+            pending.remove(key, touched);
+        }
+        refresh(touched);
+        return map;
+    }
+
+    private ConcurrentHashMap<String, Level> levels() {
+        ConcurrentHashMap<String, Level> map = tenants.get(TenantContext.currentTenantKey());
+        if (map == null) {
+            reload();
+            map = tenants.get(TenantContext.currentTenantKey());
+        }
+        return map;
+    }
+
+    private Map<String, Level> query(String sql, Object... params) {
+        Map<String, Level> result = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            Date earliest = rs.getDate("earliest");
+            result.put(rs.getString("medicine_id"), new Level(
+                    rs.getInt("total"),
+                    earliest != null ? earliest.toLocalDate().toEpochDay() : Long.MIN_VALUE,
+                    rs.getInt("min_stock"),
+                    rs.getInt("batches")));
+        }, params);
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+package com.pharmacy.service;
+
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.multitenant.MultiTenantDataSourceConfig;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.multitenant.TenantTasks;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 控制台头部数字（今日实收、今日订单数、今日消费会员数，以及昨日对比）的内存计数器。
+ * 每个租户一份：LongAdder 计订单数与实收（分），会员 -> 今日有效订单数 的并发 Map 作为去重会员集合（退款减到 0 时移除）。
+ * 按订单号记账（已计入 / 已退款），同一订单的事件与 SQL 结果重复到达只生效一次。
+ * 订单 / 退款提交后增量更新，按 today-counters.zone（默认 Asia/Shanghai）零点滚动，昨日数取滚动前的当日计数或按小时汇总表；
+ * 每隔 reconcile-ms 重算今日：先挂上新的当日计数再查库，期间的事件同时计入新旧两份，查完整体替换，读取不查库。
+ */
+@Service
+public class TodaySalesCounters {
+
+    private static final String TODAY_SQL =
+            "SELECT order_id, member_id, actual_payment FROM `order` " +
+            "WHERE payment_status = 1 AND order_time >= ? AND order_time < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Autowired(required = false)
+    private MultiTenantDataSourceConfig dataSourceConfig;
+
+    @Value("${today-counters.zone:Asia/Shanghai}")
+    private String zone = "Asia/Shanghai";
+
+    private Clock clock = Clock.system(ZoneId.of("Asia/Shanghai"));
+
+    private final ConcurrentHashMap<String, State> tenants = new ConcurrentHashMap<>();
+
+    /** 一天的汇总数 */
+    public static final class Totals {
+        public static final Totals EMPTY = new Totals(0, 0, 0);
+
+        private final long orders;
+        private final long netCents;
+        private final long members;
+
+        Totals(long orders, long netCents, long members) {
+            this.orders = orders;
+            this.netCents = netCents;
+            this.members = members;
+        }
+
+        public long getOrders() { return orders; }
+        public double getSales() { return netCents / 100.0; }
+        public long getMembers() { return members; }
+    }
+
+    /** 已计入的订单 */
+    private static final class Counted {
+        final String memberId;
+        final long cents;
+
+        Counted(String memberId, long cents) {
+            this.memberId = memberId;
+            this.cents = cents;
+        }
+    }
+
+    /** 当天的可变计数（按订单号幂等） */
+    private static final class Day {
+        final LocalDate date;
+        final LongAdder orders = new LongAdder();
+        final LongAdder netCents = new LongAdder();
+        final ConcurrentHashMap<String, Integer> members = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Counted> counted = new ConcurrentHashMap<>();
+        final Set<String> refunded = ConcurrentHashMap.newKeySet();
+
+        Day(LocalDate date) {
+            this.date = date;
+        }
+
+        void place(String orderId, String memberId, long cents) {
+            if (refunded.contains(orderId)) return;
+            Counted c = new Counted(memberId, cents);
+            if (counted.putIfAbsent(orderId, c) != null) return;
+            apply(c, 1);
+        }
+
+        void refund(String orderId) {
+            refunded.add(orderId);
+            Counted c = counted.remove(orderId);
+            if (c != null) apply(c, -1);
+        }
+
+        private void apply(Counted c, int sign) {
+            orders.add(sign);
+            netCents.add(sign * c.cents);
+            if (c.memberId != null) {
+                members.compute(c.memberId, (k, v) -> {
+                    int n = (v == null ? 0 : v) + sign;
+                    return n <= 0 ? null : n;
+                });
+            }
+        }
+
+        Totals totals() {
+            return new Totals(Math.max(0, orders.sum()), Math.max(0, netCents.sum()), members.mappingCount());
+        }
+    }
+
+    /** 单个租户：今日计数 + 昨日定值；对账期间 loading 为正在加载的新计数 */
+    private static final class State {
+        volatile Day today;
+        volatile Totals yesterday;
+        volatile Day loading;
+        volatile boolean ready; // 首次加载完成前读取方自行对账
+
+        State(Day today, Totals yesterday) {
+            this.today = today;
+            this.yesterday = yesterday;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        clock = Clock.system(ZoneId.of(zone));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        TenantTasks.forEach(dataSourceConfig, "[TodayCounters]", "对账失败", this::reconcile);
+    }
+
+    /** 订单提交 / 整单退款提交后计入当日（只计下单日为今天的订单，事务回滚不会触发） */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        if (event.getOrderTime() == null) return;
+        State s = tenants.get(event.tenantKey());
+        if (s == null) return; // 尚未加载，首次读取时按 SQL 加载
+        LocalDate date = event.getOrderTime().toLocalDate();
+        apply(current(s), date, event);
+        apply(s.loading, date, event);
+    }
+
+    private static void apply(Day day, LocalDate date, OrderEvent event) {
+        if (day == null || !day.date.equals(date)) return;
+        if (event instanceof OrderRefundedEvent) {
+            day.refund(event.getOrderId());
+        } else {
+            day.place(event.getOrderId(), event.hasMember() ? event.getMemberId() : null, cents(BigDecimal.valueOf(event.getAmount())));
+        }
+    }
+
+    /** 今日汇总（不查库，首次读取除外） */
+    public Totals today() {
+        return current(state()).totals();
+    }
+
+    /** 昨日汇总 */
+    public Totals yesterday() {
+        State s = state();
+        current(s);
+        return s.yesterday;
+    }
+
+    /**
+     * 按 SQL 重算当前租户今日计数（一条查询）与昨日汇总（按小时汇总表，至多 24 行），整体替换。
+     * 新计数在查询前挂上，查询期间到达的事件同时计入；查询结果与事件按订单号去重，退款以已退款记录为准
+     */
+    public void reconcile() {
+        LocalDate date = LocalDate.now(clock);
+        String tenant = TenantContext.currentTenantKey();
+        Day fresh = new Day(date);
+        // 首次加载同样先挂上状态，加载期间的事件不会丢
+        State s = tenants.computeIfAbsent(tenant, k -> new State(new Day(date), Totals.EMPTY));
+        s.loading = fresh;
+        try {
+            loadDay(fresh);
+            Totals yesterday = loadYesterday(date);
+            synchronized (s) {
+                Totals before = s.ready && s.today.date.equals(date) ? s.today.totals() : null;
+                Totals after = fresh.totals();
+                if (before != null && (before.orders != after.orders || before.netCents != after.netCents || before.members != after.members)) {
+                    System.out.println("[TodayCounters] 租户=" + tenant + " 对账校正 orders " + before.orders + "->" + after.orders +
+                            " netCents " + before.netCents + "->" + after.netCents + " members " + before.members + "->" + after.members);
+                }
+                if (fresh.date.equals(LocalDate.now(clock))) {
+                    s.today = fresh;
+                    s.yesterday = yesterday;
+                    s.ready = true;
+                }
+            }
+        } finally {
+            if (s.loading == fresh) s.loading = null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${today-counters.reconcile-ms:180000}", initialDelayString = "${today-counters.reconcile-ms:180000}")
+    public void reconcileAllTenants() {
+        TenantTasks.forEach(dataSourceConfig, "[TodayCounters]", "对账失败", this::reconcile);
+    }
+
+    private State state() {
+        String tenant = TenantContext.currentTenantKey();
+        State s = tenants.get(tenant);
+        if (s == null || !s.ready) {
+            reconcile();
+            s = tenants.get(tenant);
+        }
+        return s;
+    }
+
+    // 跨过零点时滚动：刚结束的一天即昨日；隔了多天则按汇总表取昨日
+    private Day current(State s) {
+        LocalDate date = LocalDate.now(clock);
+        Day day = s.today;
+        if (day.date.equals(date)) return day;
+        synchronized (s) {
+            if (!s.today.date.equals(date)) {
+                Day closing = s.today;
+                s.today = new Day(date);
+                s.yesterday = closing.date.equals(date.minusDays(1)) ? closing.totals() : loadYesterday(date);
+            }
+            return s.today;
+        }
+    }
+
+    private void loadDay(Day day) {
+        jdbcTemplate.query(TODAY_SQL, rs -> {
+            String memberId = rs.getString("member_id");
+            day.place(rs.getString("order_id"), memberId == null || memberId.isBlank() ? null : memberId,
+                    cents(rs.getBigDecimal("actual_payment")));
+        }, Timestamp.valueOf(day.date.atStartOfDay()), Timestamp.valueOf(day.date.plusDays(1).atStartOfDay()));
+    }
+
+    private Totals loadYesterday(LocalDate today) {
+        LocalDateTime start = today.minusDays(1).atStartOfDay();
+        SalesRollupService.Bucket b = salesRollupService.total(start, start.plusDays(1));
+        return new Totals(b.getPaidCount(), cents(b.getNet()), b.getDistinctMembers());
+    }
+
+    private static long cents(BigDecimal v) {
+        return v == null ? 0L : v.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+}
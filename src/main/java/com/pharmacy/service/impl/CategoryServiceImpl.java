@@ -2,6 +2,7 @@ package com.pharmacy.service.impl;
 
 import com.pharmacy.entity.Category;
 import com.pharmacy.repository.CategoryRepository;
+import com.pharmacy.service.CatalogVersionService;
 import com.pharmacy.service.CategoryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -15,6 +16,9 @@ public class CategoryServiceImpl implements CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
     @Override
     public List<Category> findAll() {
         return categoryRepository.findAll();
@@ -28,12 +32,16 @@ public class CategoryServiceImpl implements CategoryService {
 
     @Override
     public Category save(Category category) {
-        return categoryRepository.save(category);
+        return catalogVersionService.write(version -> {
+            category.setCatalogVersion(version);
+            return categoryRepository.save(category);
+        });
     }
 
     @Override
     public void deleteById(Integer id) {
         categoryRepository.deleteById(id);
+        catalogVersionService.recordDelete(CatalogVersionService.ENTITY_CATEGORY, id);
     }
 
     @Override
@@ -1,11 +1,19 @@
 package com.pharmacy.service.impl;
 
+import com.pharmacy.event.OrderEvent;
 import com.pharmacy.repository.OrderRepository;
 import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.entity.Medicine;
 import com.pharmacy.service.DashboardService;
+import com.pharmacy.service.HotProductSketch;
+import com.pharmacy.service.MedicineSearchIndex;
+import com.pharmacy.service.StockLevelIndex;
+import com.pharmacy.service.SalesRollupService;
+import com.pharmacy.service.TodaySalesCounters;
 import com.pharmacy.service.StockAlertService;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -18,60 +26,50 @@ import java.util.ArrayList;
 @Service
 public class DashboardServiceImpl implements DashboardService {
 
+    static final String VIEW_STATS = "stats";
+
     private final OrderRepository orderRepository;
     private final MedicineRepository medicineRepository;
     private final InventoryRepository inventoryRepository;
     private final StockAlertService stockAlertService;
+    private final DashboardSnapshotCache snapshotCache; // 按租户的控制台快照（单飞 + 提前刷新 + 失败返回旧值）
+    private final SalesRollupService salesRollupService; // 按小时销售汇总，趋势只读汇总行
+    private final TodaySalesCounters todaySalesCounters; // 今日 / 昨日头部数字的内存计数器
+    private final HotProductSketch hotProductSketch; // 今日 / 近 7 天热销 Top-K 草图
+    private final MedicineSearchIndex medicineSearchIndex;
+    private final StockLevelIndex stockLevelIndex;
 
     public DashboardServiceImpl(OrderRepository orderRepository,
                                 MedicineRepository medicineRepository,
                                 InventoryRepository inventoryRepository,
-                                StockAlertService stockAlertService) {
+                                StockAlertService stockAlertService,
+                                DashboardSnapshotCache snapshotCache,
+                                SalesRollupService salesRollupService,
+                                TodaySalesCounters todaySalesCounters,
+                                HotProductSketch hotProductSketch,
+                                MedicineSearchIndex medicineSearchIndex,
+                                StockLevelIndex stockLevelIndex) {
         this.orderRepository = orderRepository;
         this.medicineRepository = medicineRepository;
         this.inventoryRepository = inventoryRepository;
         this.stockAlertService = stockAlertService;
+        this.snapshotCache = snapshotCache;
+        this.salesRollupService = salesRollupService;
+        this.todaySalesCounters = todaySalesCounters;
+        this.hotProductSketch = hotProductSketch;
+        this.medicineSearchIndex = medicineSearchIndex;
+        this.stockLevelIndex = stockLevelIndex;
     }
 
-    // 缓存控制台数据
-    private Map<String, Object> dashboardCache = new HashMap<>();
-    private LocalDateTime lastCacheUpdate;
-    private static final long CACHE_DURATION_MINUTES = 5;
-
     @Override
     public Map<String, Object> getDashboardStats() {
-        if (isCacheValid()) {
-            return dashboardCache;
-        }
-        Map<String, Object> stats = new HashMap<>();
         try {
-            Double todaySales = getTodaySales();
-            // 使用区间查询获取昨日数据
-            LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime todayEnd = todayStart.plusDays(1);
-            LocalDateTime yStart = todayStart.minusDays(1);
-            LocalDateTime yEnd = todayStart;
-            Double yesterdaySales = orderRepository.getPaidSalesBetween(yStart, yEnd);
-            Double salesChange = yesterdaySales != null && yesterdaySales > 0 ? ((todaySales - yesterdaySales) / yesterdaySales) * 100 : 0.0;
-            Integer todayOrders = getTodayOrders();
-            Long yesterdayOrders = orderRepository.countPaidOrdersBetween(yStart, yEnd);
-            Double ordersChange = yesterdayOrders != null && yesterdayOrders > 0 ? ((todayOrders - yesterdayOrders) / (double) yesterdayOrders) * 100 : 0.0;
-            Integer memberConsumption = getMemberConsumption();
-            Integer yesterdayMembers = orderRepository.countDistinctMembersPaidBetween(yStart, yEnd);
-            Double memberChange = yesterdayMembers != null && yesterdayMembers > 0 ? ((memberConsumption - yesterdayMembers) / (double) yesterdayMembers) * 100 : 0.0;
-            Integer lowStockCount = getLowStockCount();
-            stats.put("todaySales", todaySales);
-            stats.put("salesChange", Math.round(salesChange * 10) / 10.0);
-            stats.put("todayOrders", todayOrders);
-            stats.put("ordersChange", Math.round(ordersChange * 10) / 10.0);
-            stats.put("memberConsumption", memberConsumption);
-            stats.put("memberChange", Math.round(memberChange * 10) / 10.0);
-            stats.put("lowStockCount", lowStockCount);
-            stats.put("stockAlerts", lowStockCount);
-            dashboardCache = stats;
-            lastCacheUpdate = LocalDateTime.now();
+            Map<String, Object> stats = new HashMap<>(snapshotCache.get(VIEW_STATS, this::computeDashboardStats));
+            putHeadline(stats);
+            return stats;
         } catch (Exception e) {
             System.err.println("获取统计数据失败(返回空置0): " + e.getMessage());
+            Map<String, Object> stats = new HashMap<>();
             stats.put("todaySales", 0.0);
             stats.put("salesChange", 0.0);
             stats.put("todayOrders", 0);
@@ -80,43 +78,60 @@ public class DashboardServiceImpl implements DashboardService {
             stats.put("memberChange", 0.0);
             stats.put("lowStockCount", 0);
             stats.put("stockAlerts", 0);
+            return stats;
         }
+    }
+
+    // 快照只含库存预警数；任一查询失败即抛出，由快照缓存决定是否沿用旧快照
+    private Map<String, Object> computeDashboardStats() {
+        Integer lowStock = inventoryRepository.getLowStockCount();
+        int lowStockCount = lowStock != null ? lowStock : 0;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lowStockCount", lowStockCount);
+        stats.put("stockAlerts", lowStockCount);
         return stats;
     }
 
+    // 头部数字直接读内存计数器，随订单提交实时变化，不查库
+    private void putHeadline(Map<String, Object> stats) {
+        TodaySalesCounters.Totals today = todaySalesCounters.today();
+        TodaySalesCounters.Totals yesterday = todaySalesCounters.yesterday();
+        stats.put("todaySales", today.getSales());
+        stats.put("salesChange", Math.round(changePercent(today.getSales(), yesterday.getSales()) * 10) / 10.0);
+        stats.put("todayOrders", (int) today.getOrders());
+        stats.put("ordersChange", Math.round(changePercent(today.getOrders(), yesterday.getOrders()) * 10) / 10.0);
+        stats.put("memberConsumption", (int) today.getMembers());
+        stats.put("memberChange", Math.round(changePercent(today.getMembers(), yesterday.getMembers()) * 10) / 10.0);
+    }
+
+    private static double changePercent(double current, double previous) {
+        return previous > 0 ? ((current - previous) / previous) * 100 : 0.0;
+    }
+
     @Override
     public Map<String, Object> getSalesTrend(String period) {
         Map<String, Object> trendData = new HashMap<>();
         try {
-            LocalDateTime now = LocalDateTime.now();
+            LocalDate today = LocalDate.now();
             switch (period) {
                 case "day" -> {
-                    LocalDateTime startDate = now.withHour(0).withMinute(0).withSecond(0).withNano(0);
-                    LocalDateTime endDate = startDate.plusDays(1);
-                    // 直接拉取当天已支付订单，使用 Java 按小时聚合再映射 3 小时桶，避免 HOUR 函数方言差异
-                    java.util.List<com.pharmacy.entity.Order> orders = orderRepository.findByOrderTimeBetween(startDate, endDate);
+                    // 当天各小时汇总（至多 24 行）映射到 3 小时桶
+                    LocalDateTime startDate = today.atStartOfDay();
                     int[] buckets = new int[8];
-                    for (com.pharmacy.entity.Order o : orders) {
-                        if (o.getPaymentStatus() != null && o.getPaymentStatus() == 1 && o.getOrderTime() != null) {
-                            int hour = o.getOrderTime().getHour();
-                            int bucket = hour / 3; // 0..7
-                            double amt = o.getTotalAmount();
-                            buckets[bucket] += (int)Math.round(amt);
-                        }
+                    for (SalesRollupService.Bucket hour : salesRollupService.hours(startDate, startDate.plusDays(1))) {
+                        buckets[hour.getStart().getHour() / 3] += (int) Math.round(hour.getGross().doubleValue());
                     }
                     Integer[] hours = java.util.Arrays.stream(buckets).boxed().toArray(Integer[]::new);
                     trendData.put("labels", new String[]{"00:00", "03:00", "06:00", "09:00", "12:00", "15:00", "18:00", "21:00"});
                     trendData.put("data", hours);
                 }
                 case "month" -> {
-                    LocalDateTime startDate = now.minusDays(29).withHour(0).withMinute(0).withSecond(0).withNano(0);
-                    List<Object[]> salesData = orderRepository.getDailySales(startDate, now);
+                    Map<LocalDate, SalesRollupService.Bucket> salesData = salesRollupService.daily(today.minusDays(29), today);
                     trendData.put("labels", new String[]{"第1周", "第2周", "第3周", "第4周"});
                     trendData.put("data", processMonthlySalesData(salesData));
                 }
                 default -> {
-                    LocalDateTime startDate = now.minusDays(6).withHour(0).withMinute(0).withSecond(0).withNano(0);
-                    List<Object[]> salesData = orderRepository.getDailySales(startDate, now);
+                    Map<LocalDate, SalesRollupService.Bucket> salesData = salesRollupService.daily(today.minusDays(6), today);
                     trendData.put("labels", new String[]{"周一", "周二", "周三", "周四", "周五", "周六", "周日"});
                     trendData.put("data", processWeeklySalesData(salesData));
                 }
@@ -130,44 +145,28 @@ public class DashboardServiceImpl implements DashboardService {
     }
 
     /**
-     * 处理周销售数据
+     * 处理周销售数据（按星期几落位）
      */
-    private Integer[] processWeeklySalesData(List<Object[]> salesData) {
+    private Integer[] processWeeklySalesData(Map<LocalDate, SalesRollupService.Bucket> salesData) {
         Integer[] weeklyData = new Integer[7];
         java.util.Arrays.fill(weeklyData, 0);
-        if (salesData != null && !salesData.isEmpty()) {
-            for (Object[] data : salesData) {
-                if (data.length >= 2 && data[0] instanceof java.sql.Date) {
-                    LocalDate localDate = ((java.sql.Date) data[0]).toLocalDate();
-                    int index = localDate.getDayOfWeek().getValue() - 1;
-                    if (index < 7) { // index >=0 总为真，简化条件
-                        Double sales = (Double) data[1];
-                        weeklyData[index] = sales != null ? sales.intValue() : 0;
-                    }
-                }
-            }
-        }
+        salesData.forEach((day, bucket) ->
+                weeklyData[day.getDayOfWeek().getValue() - 1] = bucket.getGross().intValue());
         return weeklyData;
     }
 
     /**
      * 处理月销售数据（按周分组）
      */
-    private Integer[] processMonthlySalesData(List<Object[]> salesData) {
+    private Integer[] processMonthlySalesData(Map<LocalDate, SalesRollupService.Bucket> salesData) {
         Integer[] monthlyData = new Integer[4];
         java.util.Arrays.fill(monthlyData, 0);
-        if (salesData != null && !salesData.isEmpty()) {
-            for (Object[] data : salesData) {
-                if (data.length >= 2 && data[0] instanceof java.sql.Date) {
-                    LocalDate localDate = ((java.sql.Date) data[0]).toLocalDate();
-                    int weekOfMonth = (localDate.getDayOfMonth() - 1) / 7;
-                    if (weekOfMonth < 4) { // weekOfMonth>=0 恒真，省略
-                        Double sales = (Double) data[1];
-                        monthlyData[weekOfMonth] += sales != null ? sales.intValue() : 0;
-                    }
-                }
+        salesData.forEach((day, bucket) -> {
+            int weekOfMonth = (day.getDayOfMonth() - 1) / 7;
+            if (weekOfMonth < 4) {
+                monthlyData[weekOfMonth] += bucket.getGross().intValue();
             }
-        }
+        });
         return monthlyData;
     }
 
@@ -204,53 +203,68 @@ public class DashboardServiceImpl implements DashboardService {
 
     @Override
     public List<Map<String, Object>> getTodayHotProducts() {
+        return getHotProducts("day", "units", 10);
+    }
+
+    // 榜单来自内存草图，只为返回的 K 个药品补名称（药品索引，缺失时按 ID 查一次）与库存（库存水位索引）
+    @Override
+    public List<Map<String, Object>> getHotProducts(String window, String metric, int limit) {
         List<Map<String, Object>> hotProducts = new ArrayList<>();
         try {
-            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime end = start.plusDays(1);
-            List<Object[]> hotProductData = orderRepository.getHotProductsBetween(start, end);
-            if (hotProductData != null && !hotProductData.isEmpty()) {
-                List<Object[]> stockData = inventoryRepository.getCurrentStockByMedicine();
-                Map<String, Integer> stockMap = new HashMap<>();
-                if (stockData != null) {
-                    for (Object[] stock : stockData) {
-                        stockMap.put((String) stock[0], ((Long) stock[1]).intValue());
-                    }
-                }
-                for (Object[] data : hotProductData) {
-                    Map<String, Object> product = new HashMap<>();
-                    String medicineId = (String) data[0];
-                    product.put("id", medicineId);
-                    product.put("medicineId", medicineId);
-                    product.put("medicineName", data[1]);
-                    product.put("name", data[1]);
-                    product.put("tradeName", data[2]);
-                    product.put("specification", data[3]);
-                    product.put("spec", data[3]);
-                    product.put("unitPrice", data[4]);
-                    product.put("price", data[4]);
-                    product.put("todaySales", data[5]);
-                    product.put("sales", data[5]);
-                    product.put("todayAmount", data[6]);
-                    product.put("amount", data[6]);
-                    Integer currentStock = stockMap.get(medicineId);
-                    boolean inInventory = currentStock != null;
-                    currentStock = currentStock != null ? currentStock : 0;
-                    product.put("currentStock", currentStock);
-                    int safetyStock = inInventory ? 30 : 1;
-                    product.put("safetyStock", safetyStock);
-                    product.put("minStock", safetyStock);
-                    product.put("inInventory", inInventory);
-                    String stockStatus;
-                    double ratio = currentStock * 1.0 / safetyStock;
-                    if (currentStock == 0) stockStatus = "OUT";
-                    else if (ratio <= 0.1) stockStatus = "CRITICAL";
-                    else if (ratio <= 0.3) stockStatus = "LOW";
-                    else if (ratio <= 0.8) stockStatus = "MEDIUM";
-                    else stockStatus = "HIGH";
-                    product.put("stockStatus", stockStatus);
-                    hotProducts.add(product);
-                }
+            HotProductSketch.Window w = "week".equalsIgnoreCase(window) ? HotProductSketch.Window.WEEK : HotProductSketch.Window.DAY;
+            HotProductSketch.Metric m = "revenue".equalsIgnoreCase(metric) || "amount".equalsIgnoreCase(metric)
+                    ? HotProductSketch.Metric.REVENUE : HotProductSketch.Metric.UNITS;
+            List<HotProductSketch.Item> items = hotProductSketch.top(w, m, Math.max(1, Math.min(limit, 50)));
+            if (items.isEmpty()) return hotProducts;
+            Map<String, Medicine> missing = new HashMap<>();
+            List<String> missingIds = new ArrayList<>();
+            for (HotProductSketch.Item item : items) {
+                if (medicineSearchIndex.get(item.getMedicineId()) == null) missingIds.add(item.getMedicineId());
+            }
+            if (!missingIds.isEmpty()) {
+                for (Medicine med : medicineRepository.findAllById(missingIds)) missing.put(med.getMedicineId(), med);
+            }
+            for (HotProductSketch.Item item : items) {
+                String medicineId = item.getMedicineId();
+                MedicineSearchIndex.Doc doc = medicineSearchIndex.get(medicineId);
+                Medicine med = missing.get(medicineId);
+                String name = doc != null ? doc.getGenericName() : med != null ? med.getGenericName() : null;
+                String tradeName = doc != null ? doc.getTradeName() : med != null ? med.getTradeName() : null;
+                String spec = doc != null ? doc.getSpec() : med != null ? med.getSpec() : null;
+                Object price = doc != null ? doc.getRetailPrice() : med != null ? med.getRetailPrice() : null;
+                double amount = Math.round(item.getAmount() * 100) / 100.0;
+                Map<String, Object> product = new HashMap<>();
+                product.put("id", medicineId);
+                product.put("medicineId", medicineId);
+                product.put("medicineName", name);
+                product.put("name", name);
+                product.put("tradeName", tradeName);
+                product.put("specification", spec);
+                product.put("spec", spec);
+                product.put("unitPrice", price);
+                product.put("price", price);
+                product.put("todaySales", item.getUnits());
+                product.put("sales", item.getUnits());
+                product.put("todayAmount", amount);
+                product.put("amount", amount);
+                product.put("window", w.name().toLowerCase());
+                StockLevelIndex.Level level = stockLevelIndex.get(medicineId);
+                boolean inInventory = level.getBatchCount() > 0;
+                int currentStock = level.getTotalStock();
+                product.put("currentStock", currentStock);
+                int safetyStock = inInventory ? 30 : 1;
+                product.put("safetyStock", safetyStock);
+                product.put("minStock", safetyStock);
+                product.put("inInventory", inInventory);
+                String stockStatus;
+                double ratio = currentStock * 1.0 / safetyStock;
+                if (currentStock == 0) stockStatus = "OUT";
+                else if (ratio <= 0.1) stockStatus = "CRITICAL";
+                else if (ratio <= 0.3) stockStatus = "LOW";
+                else if (ratio <= 0.8) stockStatus = "MEDIUM";
+                else stockStatus = "HIGH";
+                product.put("stockStatus", stockStatus);
+                hotProducts.add(product);
             }
         } catch (Exception e) {
             System.err.println("获取热销药品数据异常(返回空列表): " + e.getMessage());
@@ -267,10 +281,7 @@ public class DashboardServiceImpl implements DashboardService {
     @Override
     public Double getTodaySales() {
         try {
-            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime end = start.plusDays(1);
-            Double sales = orderRepository.getPaidSalesBetween(start, end);
-            return sales != null ? sales : 0.0;
+            return todaySalesCounters.today().getSales();
         } catch (Exception e) {
             System.err.println("获取今日销售额失败: " + e.getMessage());
             return 0.0;
@@ -281,10 +292,7 @@ public class DashboardServiceImpl implements DashboardService {
     @Override
     public Integer getTodayOrders() {
         try {
-            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime end = start.plusDays(1);
-            Long orders = orderRepository.countPaidOrdersBetween(start, end);
-            return orders != null ? orders.intValue() : 0;
+            return (int) todaySalesCounters.today().getOrders();
         } catch (Exception e) {
             System.err.println("获取今日订单数失败: " + e.getMessage());
             return 0;
@@ -294,10 +302,7 @@ public class DashboardServiceImpl implements DashboardService {
     @Override
     public Integer getMemberConsumption() {
         try {
-            LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime end = start.plusDays(1);
-            Integer members = orderRepository.countDistinctMembersPaidBetween(start, end);
-            return members != null ? members : 0;
+            return (int) todaySalesCounters.today().getMembers();
         } catch (Exception e) {
             System.err.println("获取会员消费人数失败: " + e.getMessage());
             return 0;
@@ -318,46 +323,34 @@ public class DashboardServiceImpl implements DashboardService {
     @Override
     public Double getSalesChangePercent() {
         try {
-            LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime todayEnd = todayStart.plusDays(1);
-            LocalDateTime yStart = todayStart.minusDays(1);
-            LocalDateTime yEnd = todayStart;
-            Double todaySales = orderRepository.getPaidSalesBetween(todayStart, todayEnd);
-            Double yesterdaySales = orderRepository.getPaidSalesBetween(yStart, yEnd);
-            return yesterdaySales != null && yesterdaySales > 0 ? ((todaySales - yesterdaySales) / yesterdaySales) * 100 : 0.0;
+            return changePercent(todaySalesCounters.today().getSales(), todaySalesCounters.yesterday().getSales());
         } catch (Exception e) { return 0.0; }
     }
 
     @Override
     public Double getOrdersChangePercent() {
         try {
-            LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime todayEnd = todayStart.plusDays(1);
-            LocalDateTime yStart = todayStart.minusDays(1);
-            LocalDateTime yEnd = todayStart;
-            Long todayOrders = orderRepository.countPaidOrdersBetween(todayStart, todayEnd);
-            Long yesterdayOrders = orderRepository.countPaidOrdersBetween(yStart, yEnd);
-            return yesterdayOrders != null && yesterdayOrders > 0 ? ((todayOrders - yesterdayOrders) / (double) yesterdayOrders) * 100 : 0.0;
+            return changePercent(todaySalesCounters.today().getOrders(), todaySalesCounters.yesterday().getOrders());
         } catch (Exception e) { return 0.0; }
     }
 
     @Override
     public Double getMemberChangePercent() {
         try {
-            LocalDateTime todayStart = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-            LocalDateTime todayEnd = todayStart.plusDays(1);
-            LocalDateTime yStart = todayStart.minusDays(1);
-            LocalDateTime yEnd = todayStart;
-            Integer todayMembers = orderRepository.countDistinctMembersPaidBetween(todayStart, todayEnd);
-            Integer yesterdayMembers = orderRepository.countDistinctMembersPaidBetween(yStart, yEnd);
-            return yesterdayMembers != null && yesterdayMembers > 0 ? ((todayMembers - yesterdayMembers) / (double) yesterdayMembers) * 100 : 0.0;
+            return changePercent(todaySalesCounters.today().getMembers(), todaySalesCounters.yesterday().getMembers());
         } catch (Exception e) { return 0.0; }
     }
 
+    /** 订单/退款提交后标记本租户快照（库存预警数）过期：下次访问先返回旧值并在后台重算，不在事件线程里查询 */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event) {
+        snapshotCache.markStale(VIEW_STATS);
+    }
+
+    /** 丢弃本租户的统计快照，下次访问同步重算 */
     @Override
     public void refreshDashboardCache() {
-        dashboardCache.clear();
-        lastCacheUpdate = null;
+        snapshotCache.invalidate(VIEW_STATS);
     }
 
     @Override
@@ -392,16 +385,4 @@ public class DashboardServiceImpl implements DashboardService {
 
         return exportData;
     }
-
-    /**
-     * 检查缓存是否有效
-     */
-    private boolean isCacheValid() {
-        if (lastCacheUpdate == null || dashboardCache.isEmpty()) {
-            return false;
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        return lastCacheUpdate.plusMinutes(CACHE_DURATION_MINUTES).isAfter(now);
-    }
 }
@@ -0,0 +1,155 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.multitenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 控制台快照缓存，键为 (租户, 视图)，各店铺互不可见。
+ * <ul>
+ *   <li>单飞：同一键同时只有一次重算，其余请求等待同一结果；</li>
+ *   <li>提前刷新：超过 ttl 的 refresh-ahead 比例后，读取直接返回旧快照并在后台重算；</li>
+ *   <li>失败兜底：重算出错时继续返回上一份快照（最长 stale-max-ms），没有快照才向上抛出；</li>
+ *   <li>失效：invalidate 按键丢弃快照；markStale 只标记过期，下次读取时后台重算（间隔不少于 min-refresh-ms）。</li>
+ * </ul>
+ * 因此每个店铺在一个窗口内只付出一次重算，与打开的屏幕数量无关。
+ */
+@Component
+public class DashboardSnapshotCache {
+
+    @Autowired(required = false)
+    private DomainEventDispatcher dispatcher;
+
+    @Value("${dashboard.cache.ttl-ms:300000}")
+    private long ttlMs = 300_000;
+
+    @Value("${dashboard.cache.refresh-ahead:0.8}")
+    private double refreshAhead = 0.8;
+
+    @Value("${dashboard.cache.min-refresh-ms:15000}")
+    private long minRefreshMs = 15_000;
+
+    @Value("${dashboard.cache.stale-max-ms:1800000}")
+    private long staleMaxMs = 1_800_000;
+
+    @Value("${dashboard.cache.load-timeout-ms:30000}")
+    private long loadTimeoutMs = 30_000;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private final ConcurrentHashMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+    // 每次 invalidate 递增；失效前开始的重算结果不再写回
+    private final ConcurrentHashMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    /** 一份快照 */
+    private static final class Snapshot {
+        final Map<String, Object> value;
+        final long loadedAt;
+        volatile boolean stale;
+        volatile long lastAttempt; // 最近一次后台重算的发起时间，重算持续失败时限制频率
+
+        Snapshot(Map<String, Object> value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.lastAttempt = loadedAt;
+        }
+    }
+
+    /** 取当前租户某视图的快照，必要时用 loader 重算（loader 在当前租户下执行） */
+    public Map<String, Object> get(String view, Supplier<Map<String, Object>> loader) {
+        String key = key(view);
+        Snapshot snapshot = snapshots.get(key);
+        long now = clock.millis();
+        if (snapshot != null) {
+            long age = now - snapshot.loadedAt;
+            if (age < ttlMs) {
+                boolean due = age >= ttlMs * refreshAhead || snapshot.stale;
+                if (due && now - snapshot.lastAttempt >= minRefreshMs) {
+                    snapshot.lastAttempt = now;
+                    refreshAsync(key, loader);
+                }
+                return snapshot.value;
+            }
+        }
+        try {
+            return load(key, loader).get(loadTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            if (snapshot != null && now - snapshot.loadedAt < staleMaxMs) {
+                System.err.println("[DashboardCache] key=" + key + " 重算失败，返回旧快照 age=" + (now - snapshot.loadedAt) + "ms err=" + cause.getMessage());
+                return snapshot.value;
+            }
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** 丢弃当前租户某视图的快照，下次读取同步重算 */
+    public void invalidate(String view) {
+        String key = key(view);
+        generations.merge(key, 1L, Long::sum);
+        snapshots.remove(key);
+        inFlight.remove(key);
+    }
+
+    /** 标记当前租户某视图已过期：仍可读，下次读取触发后台重算 */
+    public void markStale(String view) {
+        Snapshot snapshot = snapshots.get(key(view));
+        if (snapshot != null) snapshot.stale = true;
+    }
+
+    /** 诊断信息：各键快照年龄 */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long now = clock.millis();
+        snapshots.forEach((k, s) -> m.put(k, Collections.singletonMap("ageMs", now - s.loadedAt)));
+        m.put("inFlight", inFlight.size());
+        return m;
+    }
+
+    private void refreshAsync(String key, Supplier<Map<String, Object>> loader) {
+        if (inFlight.containsKey(key)) return;
+        if (dispatcher == null) {
+            load(key, loader);
+            return;
+        }
+        dispatcher.execute(() -> load(key, loader));
+    }
+
+    // 单飞：抢到占位的线程执行 loader，其余线程拿到同一个 future
+    private CompletableFuture<Map<String, Object>> load(String key, Supplier<Map<String, Object>> loader) {
+        CompletableFuture<Map<String, Object>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) return existing;
+        long generation = generations.getOrDefault(key, 0L);
+        try {
+            Map<String, Object> value = Collections.unmodifiableMap(loader.get());
+            if (generations.getOrDefault(key, 0L) == generation) {
+                snapshots.put(key, new Snapshot(value, clock.millis()));
+            }
+            mine.complete(value);
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+        } finally {
+            inFlight.remove(key, mine);
+        }
+        return mine;
+    }
+
+    private static String key(String view) {
+        return TenantContext.currentTenantKey() + ":" + view;
+    }
+}
@@ -6,14 +6,15 @@ import com.pharmacy.entity.HangOrderItem;
 import com.pharmacy.repository.HangOrderRepository;
 import com.pharmacy.repository.HangOrderItemRepository;
 import com.pharmacy.service.HangOrderService;
+import com.pharmacy.service.IdGeneratorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 @Service
 @Transactional
@@ -25,6 +26,9 @@ public class HangOrderServiceImpl implements HangOrderService {
     @Autowired
     private HangOrderItemRepository hangOrderItemRepository;
 
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
     @Override
     public List<HangOrder> findAll() {
         return hangOrderRepository.findAll();
@@ -49,7 +53,7 @@ public class HangOrderServiceImpl implements HangOrderService {
     @Transactional
     @SuppressWarnings("unchecked")  // 添加这个注解
     public HangOrder createHangOrder(Map<String, Object> hangOrderData) {
-        String hangId = "H" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 8);
+        String hangId = idGeneratorService.nextId(IdGeneratorService.HANG_ORDER);
 
         HangOrder hangOrder = new HangOrder();
         hangOrder.setHangId(hangId);
@@ -62,6 +66,7 @@ public class HangOrderServiceImpl implements HangOrderService {
         // 保存挂单项
         List<Map<String, Object>> items = (List<Map<String, Object>>) hangOrderData.get("items");
         if (items != null) {
+            List<HangOrderItem> hangOrderItems = new ArrayList<>(items.size());
             for (Map<String, Object> item : items) {
                 HangOrderItem hangOrderItem = new HangOrderItem();
                 hangOrderItem.setHangId(hangId);
@@ -69,8 +74,9 @@ public class HangOrderServiceImpl implements HangOrderService {
                 hangOrderItem.setQuantity(((Number) item.get("quantity")).intValue());
                 hangOrderItem.setUnitPrice(new java.math.BigDecimal(item.get("unitPrice").toString()));
 
-                hangOrderItemRepository.save(hangOrderItem);
+                hangOrderItems.add(hangOrderItem);
             }
+            hangOrderItemRepository.saveAll(hangOrderItems);
         }
 
         return savedHangOrder;
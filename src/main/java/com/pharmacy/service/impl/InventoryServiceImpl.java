@@ -2,12 +2,23 @@ package com.pharmacy.service.impl;
 
 import com.pharmacy.entity.Inventory;
 import com.pharmacy.dto.InventoryDTO;
+import com.pharmacy.dto.OrderItemRequest;
+import com.pharmacy.dto.StockDeductionResult;
+import com.pharmacy.entity.OrderItem;
+import com.pharmacy.entity.StockRecord;
+import com.pharmacy.event.StockChangedEvent;
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.StockRecordRepository;
 import com.pharmacy.service.InventoryService;
+import com.pharmacy.service.StockLevelIndex;
 import com.pharmacy.util.StockStatusUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.time.LocalDate;
 import java.util.Comparator;
@@ -20,68 +31,81 @@ public class InventoryServiceImpl implements InventoryService {
     @Autowired
     private InventoryRepository inventoryRepository;
 
-    @Override
-    @Transactional
-    public boolean updateStockForOrder(String medicineId, Integer quantity, String orderId) {
-        System.out.println("=== 开始更新库存 ===");
-        System.out.println("药品ID: " + medicineId + ", 数量: " + quantity + ", 订单ID: " + orderId);
-
-        try {
-            // 1. 获取该药品的所有库存批次
-            List<Inventory> inventories = inventoryRepository.findByMedicineId(medicineId);
-            System.out.println("找到库存批次数量: " + inventories.size());
-
-            if (inventories.isEmpty()) {
-                System.err.println("❌ 没有找到药品 " + medicineId + " 的库存记录");
-                return false;
-            }
-
-            // 2. 按先进先出原则排序：先按过期日期（近的优先），再按创建时间
-            List<Inventory> sortedInventories = inventories.stream()
-                    .filter(inv -> inv.getStockQuantity() > 0) // 使用 getStockQuantity()
-                    .sorted(Comparator
-                            .comparing(Inventory::getExpiryDate, Comparator.nullsFirst(Comparator.naturalOrder()))
-                            .thenComparing(Inventory::getCreateTime))
-                    .collect(Collectors.toList());
+    @Autowired
+    private StockDeductionEngine stockDeductionEngine;
 
-            int remainingToDeduct = quantity;
+    @Autowired
+    private StockLedger stockLedger;
 
-            // 3. 逐个批次扣减库存
-            for (Inventory inventory : sortedInventories) {
-                if (remainingToDeduct <= 0) break;
+    @Autowired
+    private StockRecordRepository stockRecordRepository;
 
-                int availableInBatch = inventory.getStockQuantity(); // 使用 getStockQuantity()
-                int deductAmount = Math.min(remainingToDeduct, availableInBatch);
+    @Autowired
+    private StockLevelIndex stockLevelIndex;
 
-                System.out.println("批次 " + inventory.getBatchNo() +
-                        " 当前库存: " + availableInBatch +
-                        ", 扣减: " + deductAmount);
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
-                // 扣减库存
-                inventory.setStockQuantity(availableInBatch - deductAmount); // 使用 setStockQuantity()
-                inventoryRepository.save(inventory);
+    @Override
+    @Transactional
+    public boolean updateStockForOrder(String medicineId, Integer quantity, String orderId) {
+        OrderItemRequest line = new OrderItemRequest(medicineId, quantity, null);
+        StockDeductionResult result = deductStockForOrder(orderId, List.of(line));
+        if (!result.isSuccess()) {
+            StockDeductionResult.Shortage s = result.getShortages().get(0);
+            System.err.println("❌ 库存不足，药品ID: " + medicineId +
+                    ", 需求: " + s.getRequested() + ", 可用: " + s.getAvailable());
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+        return true;
+    }
 
-                remainingToDeduct -= deductAmount;
+    @Override
+    @Transactional
+    public StockDeductionResult deductStockForOrder(String orderId, List<OrderItemRequest> items) {
+        String[] medicineIds = new String[items.size()];
+        int[] quantities = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            OrderItemRequest item = items.get(i);
+            medicineIds[i] = item.getProductId();
+            quantities[i] = item.getQuantity() != null ? item.getQuantity() : 0;
+        }
+        StockDeductionResult result = stockDeductionEngine.deduct(medicineIds, quantities);
+        System.out.println("[StockDeduction] 订单 " + orderId + " 行数=" + items.size() +
+                " 批次分配=" + result.getAllocations().size() + " 缺货行=" + result.getShortages().size());
+        return result;
+    }
 
-                System.out.println("扣减后库存: " + inventory.getStockQuantity() + // 使用 getStockQuantity()
-                        ", 剩余需扣减: " + remainingToDeduct);
-            }
+    @Override
+    @Transactional
+    public void recordSaleLedger(String orderId, Integer operatorId, StockDeductionResult deduction, List<OrderItem> orderItems) {
+        List<Long> itemIds = orderItems.stream().map(OrderItem::getItemId).collect(Collectors.toList());
+        stockLedger.recordSale(orderId, operatorId, deduction.getAllocations(), itemIds);
+    }
 
-            // 4. 检查是否完全扣减
-            if (remainingToDeduct > 0) {
-                System.err.println("❌ 库存不足，药品ID: " + medicineId +
-                        ", 需求: " + quantity + ", 实际扣减: " + (quantity - remainingToDeduct));
-                return false;
+    @Override
+    @Transactional
+    public void restoreStockForOrder(String orderId, Integer operatorId, List<OrderItem> items, String reason) {
+        List<StockLedger.Entry> entries = stockLedger.findSaleEntries(orderId);
+        if (entries.isEmpty()) {
+            // 台账上线前的历史订单：逐行回退
+            for (OrderItem it : items) {
+                restoreStock(it.getMedicineId(), it.getQuantity(), orderId);
             }
-
-            System.out.println("✅ 库存更新成功，药品ID: " + medicineId + ", 扣减数量: " + quantity);
-            return true;
-
-        } catch (Exception e) {
-            System.err.println("❌ 更新库存失败: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            return;
         }
+        List<StockLedger.Entry> missing = stockLedger.restore(orderId, operatorId, entries, reason);
+        for (StockLedger.Entry e : missing) {
+            System.err.println("[StockLedger] 订单 " + orderId + " 原批次 " + e.getBatchNo() + " 已不存在，改为按药品回补");
+            restoreStock(e.getMedicineId(), e.getQuantity(), orderId);
+        }
+        System.out.println("[StockLedger] 订单 " + orderId + " 按台账回补 " + (entries.size() - missing.size()) + " 个批次");
+    }
+
+    @Override
+    public List<StockRecord> findStockRecords(String medicineId, int limit) {
+        return stockRecordRepository.findByMedicineIdOrderByCreateTimeDesc(medicineId, PageRequest.of(0, Math.max(1, Math.min(limit, 500))));
     }
 
     @Override
@@ -94,37 +118,13 @@ public class InventoryServiceImpl implements InventoryService {
         return sufficient;
     }
 
-    // 只保留一个 getCurrentStock 方法
+    // 读内存水位索引，O(1)；索引由库存变动事件增量维护并定时对账
     @Override
     public Integer getCurrentStock(String medicineId) {
         try {
-            System.out.println("=== InventoryService.getCurrentStock 被调用 ===");
-            System.out.println("药品ID: '" + medicineId + "'");
-
-            // 方法1: 使用修复后的Repository查询
-            Integer totalStock = inventoryRepository.getTotalStockByMedicineId(medicineId);
-            System.out.println("Repository查询结果: " + totalStock);
-
-            // 方法2: 备用查询 - 直接使用findByMedicineId手动计算
-            List<Inventory> inventories = inventoryRepository.findByMedicineId(medicineId);
-            int manualSum = inventories.stream()
-                    .mapToInt(Inventory::getStockQuantity)  // 使用 getStockQuantity()
-                    .sum();
-            System.out.println("手动计算库存: " + manualSum);
-            System.out.println("找到的库存记录数: " + inventories.size());
-
-            inventories.forEach(inv -> {
-                System.out.println("批次: " + inv.getBatchNo() + ", 数量: " + inv.getStockQuantity()); // 使用 getStockQuantity()
-            });
-
-            // 优先使用Repository结果，如果为null则使用手动计算
-            Integer result = totalStock != null ? totalStock : manualSum;
-            System.out.println("最终返回库存: " + result);
-
-            return result;
+            return stockLevelIndex.totalStock(medicineId);
         } catch (Exception e) {
             System.err.println("查询库存失败: " + e.getMessage());
-            e.printStackTrace();
             return 0;
         }
     }
@@ -214,12 +214,23 @@ public class InventoryServiceImpl implements InventoryService {
 
     @Override
     public Inventory save(Inventory inventory) {
-        return inventoryRepository.save(inventory);
+        Inventory saved = inventoryRepository.save(inventory);
+        publishStockChanged(saved.getMedicineId());
+        return saved;
     }
 
     @Override
     public void deleteById(Long id) {
+        String medicineId = inventoryRepository.findById(id).map(Inventory::getMedicineId).orElse(null);
         inventoryRepository.deleteById(id);
+        publishStockChanged(medicineId);
+    }
+
+    // 手工调整库存后通知水位索引、库存预警等订阅方
+    private void publishStockChanged(String medicineId) {
+        if (medicineId == null) return;
+        eventPublisher.publishEvent(new StockChangedEvent(TenantContext.currentTenantKey(), List.of(medicineId),
+                StockChangedEvent.SOURCE_ADJUST, null));
     }
 
     @Override
@@ -331,7 +342,9 @@ public class InventoryServiceImpl implements InventoryService {
         inv.setPurchasePrice(purchasePrice);
         inv.setExpiryDate(expiryDate);
         inv.setSupplier(supplier);
-        return inventoryRepository.save(inv);
+        Inventory saved = inventoryRepository.save(inv);
+        publishStockChanged(medicineId);
+        return saved;
     }
 
     @Override
@@ -360,7 +373,9 @@ public class InventoryServiceImpl implements InventoryService {
         if (minStock != null) {
             target.setMinStock(minStock);
         }
-        return inventoryRepository.save(target);
+        Inventory saved = inventoryRepository.save(target);
+        publishStockChanged(medicineId);
+        return saved;
     }
 
     // 原有三个参数补货改为委托新实现
@@ -1,21 +1,40 @@
 // MedicineServiceImpl.java - 修复版本
 package com.pharmacy.service.impl;
 
+import com.pharmacy.config.CacheConfig;
+import com.pharmacy.dto.MedicineStockSummary;
 import com.pharmacy.dto.MedicineWithStockDTO;
+import com.pharmacy.entity.Category;
 import com.pharmacy.entity.Medicine;
+import com.pharmacy.repository.CategoryRepository;
+import com.pharmacy.repository.InventoryRepository;
 import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.repository.MedicineSpecifications;
+import com.pharmacy.service.CatalogVersionService;
+import com.pharmacy.service.MedicineBarcodeIndex;
+import com.pharmacy.service.MedicineSearchIndex;
 import com.pharmacy.service.MedicineService;
-import com.pharmacy.service.InventoryService;
 import com.pharmacy.util.StockStatusUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,7 +44,19 @@ public class MedicineServiceImpl implements MedicineService {
     private MedicineRepository medicineRepository;
 
     @Autowired
-    private InventoryService inventoryService;
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private MedicineSearchIndex medicineSearchIndex;
+
+    @Autowired
+    private MedicineBarcodeIndex medicineBarcodeIndex;
+
+    @Autowired
+    private CatalogVersionService catalogVersionService;
 
     // 基本 CRUD 方法
     @Override
@@ -34,18 +65,53 @@ public class MedicineServiceImpl implements MedicineService {
     }
 
     @Override
+    @Cacheable(value = CacheConfig.MEDICINES, key = "#medicineId", unless = "#result == null")
     public Optional<Medicine> findById(String medicineId) {
         return medicineRepository.findById(medicineId);
     }
 
     @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.MEDICINES, key = "#medicine.medicineId", condition = "#medicine.medicineId != null", beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.MEDICINES, key = "#medicine.medicineId", condition = "#medicine.medicineId != null")})
     public Medicine save(Medicine medicine) {
-        return medicineRepository.save(medicine);
+        if (medicine.getBarcode() != null && medicine.getBarcode().isBlank()) {
+            medicine.setBarcode(null); // barcode 有唯一索引，空串统一存 NULL
+        }
+        Medicine saved = catalogVersionService.write(version -> {
+            medicine.setCatalogVersion(version);
+            return medicineRepository.save(medicine);
+        });
+        afterCommit(() -> {
+            medicineSearchIndex.put(saved);
+            medicineBarcodeIndex.put(saved);
+        });
+        return saved;
     }
 
     @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.MEDICINES, key = "#medicineId", beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.MEDICINES, key = "#medicineId")})
     public void deleteById(String medicineId) {
         medicineRepository.deleteById(medicineId);
+        catalogVersionService.recordDelete(CatalogVersionService.ENTITY_MEDICINE, medicineId);
+        afterCommit(() -> {
+            medicineSearchIndex.remove(medicineId);
+            medicineBarcodeIndex.remove(medicineId);
+        });
+    }
+
+    // 内存索引在事务提交后再更新，回滚不会留下幽灵条目；无事务时立即执行
+    private static void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
     }
 
     // 搜索方法
@@ -56,49 +122,81 @@ public class MedicineServiceImpl implements MedicineService {
 
     @Override
     public Page<Medicine> searchMedicines(String keyword, Pageable pageable) {
-        // 简化实现，实际应该使用分页查询
-        List<Medicine> medicines = medicineRepository.searchByKeyword(keyword);
-        return new PageImpl<>(medicines, pageable, medicines.size());
+        return medicineRepository.findAll(MedicineSpecifications.search(keyword, null, null, null), pageable);
     }
 
     // 新增：分页搜索方法（包含分类）
     @Override
     public Page<Medicine> searchMedicines(String keyword, String category, int page, int size) {
-        Pageable pageable = PageRequest.of(page - 1, size);
+        return searchMedicines(keyword, category, null, null, page, size);
+    }
+
+    // 过滤与 LIMIT/OFFSET 都在数据库完成，总数走独立 COUNT，不再整表加载后在内存分页
+    @Override
+    public Page<Medicine> searchMedicines(String keyword, String category, Boolean isRx, String status, int page, int size) {
         if (keyword != null && !keyword.trim().isEmpty()) {
-            List<Medicine> medicines = medicineRepository.searchActiveByKeyword(keyword);
-
-            // 如果指定了分类，进行过滤
-            if (category != null && !category.trim().isEmpty()) {
-                medicines = medicines.stream()
-                        .filter(medicine -> {
-                            // 这里需要根据您的分类逻辑进行过滤
-                            // 暂时返回所有，您可以根据需要实现具体逻辑
-                            return true;
-                        })
-                        .collect(Collectors.toList());
+            List<MedicineSearchIndex.Doc> hits = medicineSearchIndex.search(keyword);
+            if (hits != null) {
+                return pageFromIndex(hits, category, isRx, status, page, size);
             }
+        }
+        Pageable pageable = PageRequest.of(Math.max(page, 1) - 1, Math.max(size, 1), Sort.by("medicineId"));
+        return medicineRepository.findAll(MedicineSpecifications.search(keyword, category, isRx, status), pageable);
+    }
 
-            int start = (int) pageable.getOffset();
-            int end = Math.min((start + pageable.getPageSize()), medicines.size());
-            return new PageImpl<>(medicines.subList(start, end), pageable, medicines.size());
-        } else {
-            // 如果没有关键词，返回所有药品
-            return medicineRepository.findAllActive(pageable);
+    // 关键词命中来自内存索引（已按相关度排序），过滤与分页在内存完成，只按当前页ID回表
+    private Page<Medicine> pageFromIndex(List<MedicineSearchIndex.Doc> hits, String category, Boolean isRx, String status,
+                                         int page, int size) {
+        Pageable pageable = PageRequest.of(Math.max(page, 1) - 1, Math.max(size, 1));
+        Predicate<MedicineSearchIndex.Doc> filter = categoryFilter(category);
+        List<String> ids = new ArrayList<>();
+        for (MedicineSearchIndex.Doc doc : hits) {
+            if (isRx != null && !isRx.equals(doc.getIsRx())) continue;
+            if (status != null && !status.trim().isEmpty() && !status.trim().equalsIgnoreCase(doc.getStatus())) continue;
+            if (!filter.test(doc)) continue;
+            ids.add(doc.getMedicineId());
+        }
+        int start = (int) Math.min(pageable.getOffset(), ids.size());
+        int end = Math.min(start + pageable.getPageSize(), ids.size());
+        List<String> pageIds = ids.subList(start, end);
+        if (pageIds.isEmpty()) return new PageImpl<>(new ArrayList<>(), pageable, ids.size());
+
+        Map<String, Medicine> byId = new HashMap<>();
+        for (Medicine m : medicineRepository.findActiveByMedicineIdIn(new ArrayList<>(pageIds))) {
+            byId.put(m.getMedicineId(), m);
+        }
+        List<Medicine> content = new ArrayList<>(pageIds.size());
+        for (String id : pageIds) {
+            Medicine m = byId.get(id);
+            if (m != null) content.add(m);
         }
+        return new PageImpl<>(content, pageable, ids.size());
+    }
+
+    // 与 MedicineSpecifications 的 category 取值约定一致
+    private Predicate<MedicineSearchIndex.Doc> categoryFilter(String category) {
+        if (category == null || category.trim().isEmpty()) return doc -> true;
+        String c = category.trim();
+        if (c.chars().allMatch(Character::isDigit)) {
+            Integer id = Integer.valueOf(c);
+            return doc -> id.equals(doc.getCategoryId());
+        }
+        if ("prescription".equalsIgnoreCase(c) || "rx".equalsIgnoreCase(c)) return doc -> Boolean.TRUE.equals(doc.getIsRx());
+        if ("otc".equalsIgnoreCase(c)) return doc -> !Boolean.TRUE.equals(doc.getIsRx());
+        Set<Integer> ids = categoryRepository.findByCategoryNameContaining(MedicineSpecifications.categoryName(c)).stream()
+                .map(Category::getCategoryId).collect(Collectors.toSet());
+        return doc -> ids.contains(doc.getCategoryId());
     }
 
     // 分类相关方法
     @Override
     public Page<Medicine> findByCategory(String category, Pageable pageable) {
-        // 简化实现，您需要根据实际分类逻辑来实现
-        return medicineRepository.findAll(pageable);
+        return medicineRepository.findAll(MedicineSpecifications.search(null, category, null, null), pageable);
     }
 
     @Override
     public List<Medicine> getMedicinesByCategory(String category) {
-        // 简化实现，您需要根据实际分类逻辑来实现
-        return medicineRepository.findAll();
+        return medicineRepository.findAll(MedicineSpecifications.search(null, category, null, null), Sort.by("medicineId"));
     }
 
     // 获取所有药品
@@ -121,63 +219,22 @@ public class MedicineServiceImpl implements MedicineService {
     // 包含库存的搜索方法 - 修复：确保只有一个定义
     @Override
     public Page<MedicineWithStockDTO> searchMedicinesWithStock(String keyword, String category, int page, int size) {
+        return searchMedicinesWithStock(keyword, category, null, null, page, size);
+    }
+
+    @Override
+    public Page<MedicineWithStockDTO> searchMedicinesWithStock(String keyword, String category, Boolean isRx, String status, int page, int size) {
         System.out.println("=== 开始搜索药品（包含库存） ===");
-        System.out.println("搜索参数 - keyword: " + keyword + ", category: " + category + ", page: " + page + ", size: " + size);
+        System.out.println("搜索参数 - keyword: " + keyword + ", category: " + category + ", isRx: " + isRx + ", status: " + status + ", page: " + page + ", size: " + size);
 
-        Pageable pageable = PageRequest.of(page - 1, size);
-        Page<Medicine> medicinePage = searchMedicines(keyword, category, page, size);
+        Page<Medicine> medicinePage = searchMedicines(keyword, category, isRx, status, page, size);
 
         System.out.println("找到药品数量: " + medicinePage.getNumberOfElements());
 
-        List<MedicineWithStockDTO> dtos = medicinePage.getContent().stream()
-                .map(medicine -> {
-                    MedicineWithStockDTO dto = new MedicineWithStockDTO();
-                    dto.setMedicineId(medicine.getMedicineId());
-                    dto.setGenericName(medicine.getGenericName());
-                    dto.setTradeName(medicine.getTradeName());
-                    dto.setSpec(medicine.getSpec());
-                    dto.setManufacturer(medicine.getManufacturer());
-                    // 新增字段填充
-                    dto.setApprovalNo(medicine.getApprovalNo());
-                    dto.setBarcode(medicine.getBarcode());
-                    dto.setProductionDate(medicine.getProductionDate());
-                    dto.setExpiryDate(medicine.getExpiryDate());
-                    dto.setStatus(medicine.getStatus());
-                    dto.setRetailPrice(medicine.getRetailPrice());
-                    dto.setMemberPrice(medicine.getMemberPrice());
-                    dto.setIsRx(medicine.getIsRx());
-                    dto.setUnit(medicine.getUnit());
-                    dto.setDescription(medicine.getDescription());
-
-                    // 获取库存信息 - 添加详细调试
-                    System.out.println("正在查询药品 " + medicine.getMedicineId() + " 的库存...");
-                    Integer stockQuantity = inventoryService.getCurrentStock(medicine.getMedicineId());
-                    System.out.println("药品 " + medicine.getMedicineId() + " 的库存结果: " + stockQuantity);
-
-                    dto.setStockQuantity(stockQuantity);
-
-                    // 新增：批号与最早效期
-                    java.util.List<com.pharmacy.dto.InventoryDTO> invList = inventoryService.findDTOByMedicineId(medicine.getMedicineId());
-                    java.util.List<String> batchNos = invList.stream().map(com.pharmacy.dto.InventoryDTO::getBatchNo).filter(java.util.Objects::nonNull).distinct().toList();
-                    dto.setBatchNos(batchNos);
-                    java.time.LocalDate earliest = invList.stream().map(com.pharmacy.dto.InventoryDTO::getExpiryDate)
-                            .filter(d -> d != null && !d.isBefore(java.time.LocalDate.now()))
-                            .sorted().findFirst().orElse(null);
-                    dto.setEarliestExpiryDate(earliest);
-
-                    // 计算库存状态与效期状态
-                    Integer safeBase = invList.stream().map(com.pharmacy.dto.InventoryDTO::getMinStock).filter(ms->ms!=null && ms>0).sorted().findFirst().orElse(1);
-                    String stockStatus = StockStatusUtil.calcStockStatus(stockQuantity, safeBase);
-                    dto.setStockStatus(stockStatus);
-                    String expiryStatus = StockStatusUtil.calcExpiryStatus(medicine.getExpiryDate());
-                    dto.setExpiryStatus(expiryStatus);
-
-                    return dto;
-                })
-                .collect(Collectors.toList());
+        List<MedicineWithStockDTO> dtos = toStockDtos(medicinePage.getContent());
 
         System.out.println("=== 搜索完成，返回 " + dtos.size() + " 个结果 ===");
-        return new PageImpl<>(dtos, pageable, medicinePage.getTotalElements());
+        return new PageImpl<>(dtos, medicinePage.getPageable(), medicinePage.getTotalElements());
     }
 
     // 修复：添加缺失的 getAllMedicinesWithStock 方法实现
@@ -189,65 +246,70 @@ public class MedicineServiceImpl implements MedicineService {
 
         System.out.println("找到药品数量: " + medicinePage.getNumberOfElements());
 
-        List<MedicineWithStockDTO> dtos = medicinePage.getContent().stream()
-                .map(medicine -> {
-                    MedicineWithStockDTO dto = new MedicineWithStockDTO();
-                    dto.setMedicineId(medicine.getMedicineId());
-                    dto.setGenericName(medicine.getGenericName());
-                    dto.setTradeName(medicine.getTradeName());
-                    dto.setSpec(medicine.getSpec());
-                    dto.setManufacturer(medicine.getManufacturer());
-                    // 新增字段填充
-                    dto.setApprovalNo(medicine.getApprovalNo());
-                    dto.setBarcode(medicine.getBarcode());
-                    dto.setProductionDate(medicine.getProductionDate());
-                    dto.setExpiryDate(medicine.getExpiryDate());
-                    dto.setStatus(medicine.getStatus());
-                    dto.setRetailPrice(medicine.getRetailPrice());
-                    dto.setMemberPrice(medicine.getMemberPrice());
-                    dto.setIsRx(medicine.getIsRx());
-                    dto.setUnit(medicine.getUnit());
-                    dto.setDescription(medicine.getDescription());
-
-                    // 获取库存信息
-                    System.out.println("正在查询药品 " + medicine.getMedicineId() + " 的库存...");
-                    Integer stockQuantity = inventoryService.getCurrentStock(medicine.getMedicineId());
-                    System.out.println("药品 " + medicine.getMedicineId() + " 的库存结果: " + stockQuantity);
-
-                    dto.setStockQuantity(stockQuantity);
-
-                    java.util.List<com.pharmacy.dto.InventoryDTO> invList = inventoryService.findDTOByMedicineId(medicine.getMedicineId());
-                    java.util.List<String> batchNos = invList.stream().map(com.pharmacy.dto.InventoryDTO::getBatchNo).filter(java.util.Objects::nonNull).distinct().toList();
-                    dto.setBatchNos(batchNos);
-                    java.time.LocalDate earliest = invList.stream().map(com.pharmacy.dto.InventoryDTO::getExpiryDate)
-                            .filter(d -> d != null && !d.isBefore(java.time.LocalDate.now()))
-                            .sorted().findFirst().orElse(null);
-                    dto.setEarliestExpiryDate(earliest);
-
-                    // 计算库存与效期状态
-                    Integer safeBase2 = invList.stream().map(com.pharmacy.dto.InventoryDTO::getMinStock).filter(ms->ms!=null && ms>0).sorted().findFirst().orElse(1);
-                    String stockStatus2 = StockStatusUtil.calcStockStatus(stockQuantity, safeBase2);
-                    dto.setStockStatus(stockStatus2);
-                    String expiryStatus2 = StockStatusUtil.calcExpiryStatus(medicine.getExpiryDate());
-                    dto.setExpiryStatus(expiryStatus2);
-
-                    return dto;
-                })
-                .collect(Collectors.toList());
+        List<MedicineWithStockDTO> dtos = toStockDtos(medicinePage.getContent());
 
         System.out.println("=== 获取完成，返回 " + dtos.size() + " 个结果 ===");
         return new PageImpl<>(dtos, pageable, medicinePage.getTotalElements());
     }
 
+    // 一页药品的库存信息一次分组查询取回，查询次数不随页大小增长
+    private List<MedicineWithStockDTO> toStockDtos(List<Medicine> medicines) {
+        if (medicines.isEmpty()) return new ArrayList<>();
+        Map<String, MedicineStockSummary> summaries = new HashMap<>();
+        List<String> ids = medicines.stream().map(Medicine::getMedicineId).collect(Collectors.toList());
+        for (MedicineStockSummary s : inventoryRepository.summarizeByMedicineIds(ids)) {
+            summaries.put(s.getMedicineId(), s);
+        }
+        Map<String, List<String>> batchNos = new HashMap<>();
+        for (Object[] row : inventoryRepository.findBatchNosByMedicineIds(ids)) {
+            batchNos.computeIfAbsent((String) row[0], k -> new ArrayList<>()).add((String) row[1]);
+        }
+        List<MedicineWithStockDTO> dtos = new ArrayList<>(medicines.size());
+        for (Medicine medicine : medicines) {
+            MedicineWithStockDTO dto = new MedicineWithStockDTO();
+            dto.setMedicineId(medicine.getMedicineId());
+            dto.setGenericName(medicine.getGenericName());
+            dto.setTradeName(medicine.getTradeName());
+            dto.setSpec(medicine.getSpec());
+            dto.setManufacturer(medicine.getManufacturer());
+            dto.setApprovalNo(medicine.getApprovalNo());
+            dto.setBarcode(medicine.getBarcode());
+            dto.setProductionDate(medicine.getProductionDate());
+            dto.setExpiryDate(medicine.getExpiryDate());
+            dto.setStatus(medicine.getStatus());
+            dto.setRetailPrice(medicine.getRetailPrice());
+            dto.setMemberPrice(medicine.getMemberPrice());
+            dto.setIsRx(medicine.getIsRx());
+            dto.setUnit(medicine.getUnit());
+            dto.setDescription(medicine.getDescription());
+
+            MedicineStockSummary summary = summaries.get(medicine.getMedicineId());
+            int stockQuantity = summary != null && summary.getTotalStock() != null ? summary.getTotalStock() : 0;
+            dto.setStockQuantity(stockQuantity);
+            dto.setBatchNos(batchNos.getOrDefault(medicine.getMedicineId(), new ArrayList<>()));
+            dto.setEarliestExpiryDate(summary != null ? summary.getEarliestExpiry() : null);
+
+            // 计算库存状态与效期状态
+            Integer safeBase = summary != null && summary.getMinStock() != null ? summary.getMinStock() : 1;
+            dto.setStockStatus(StockStatusUtil.calcStockStatus(stockQuantity, safeBase));
+            dto.setExpiryStatus(StockStatusUtil.calcExpiryStatus(medicine.getExpiryDate()));
+            dtos.add(dto);
+        }
+        return dtos;
+    }
+
     // 其他业务方法
     @Override
+    @Cacheable(value = CacheConfig.MEDICINES, key = "#id", unless = "#result == null")
     public Medicine getMedicineById(String id) {
         return medicineRepository.findById(id).orElse(null);
     }
 
     @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.MEDICINES, key = "#medicine.medicineId", condition = "#medicine.medicineId != null", beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.MEDICINES, key = "#medicine.medicineId", condition = "#medicine.medicineId != null")})
     public Medicine createMedicine(Medicine medicine) {
-        return medicineRepository.save(medicine);
+        return save(medicine);
     }
 
     @Override
@@ -265,12 +327,14 @@ public class MedicineServiceImpl implements MedicineService {
     }
 
     @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.MEDICINES, key = "#id", beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.MEDICINES, key = "#id")})
     public Medicine updateMedicine(String id, Medicine medicine) {
         Medicine existing = medicineRepository.findById(id).orElse(null);
         if (existing == null) {
             medicine.setMedicineId(id);
             medicine.setDeleted(false);
-            return medicineRepository.save(medicine);
+            return save(medicine);
         }
         if(Boolean.TRUE.equals(existing.getDeleted())) {
             // 不允许更新已软删除的记录
@@ -292,28 +356,36 @@ public class MedicineServiceImpl implements MedicineService {
         if (medicine.getProductionDate() != null) existing.setProductionDate(medicine.getProductionDate());
         if (medicine.getExpiryDate() != null) existing.setExpiryDate(medicine.getExpiryDate());
         if (medicine.getStatus() != null) existing.setStatus(medicine.getStatus());
-        return medicineRepository.save(existing);
+        return save(existing);
     }
 
     @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.MEDICINES, key = "#id", beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.MEDICINES, key = "#id")})
     public void deleteMedicine(String id) {
         Medicine existing = medicineRepository.findById(id).orElse(null);
         if (existing != null) {
             existing.setDeleted(true);
             existing.setStatus("INACTIVE");
-            medicineRepository.save(existing);
+            save(existing);
         }
     }
 
     @Override
+    @Caching(evict = {@CacheEvict(value = CacheConfig.MEDICINES, key = "#id", beforeInvocation = true),
+            @CacheEvict(value = CacheConfig.MEDICINES, key = "#id")})
     public void restoreMedicine(String id) {
         Medicine existing = medicineRepository.findById(id).orElse(null);
         if (existing != null && Boolean.TRUE.equals(existing.getDeleted())) {
+            MedicineBarcodeIndex.Entry holder = medicineBarcodeIndex.get(existing.getBarcode());
+            if (holder != null && !holder.getMedicineId().equals(id)) {
+                throw new RuntimeException("条码 " + existing.getBarcode() + " 已被药品 " + holder.getMedicineId() + " 使用，请先修改条码再恢复");
+            }
             existing.setDeleted(false);
             if (existing.getStatus() == null || existing.getStatus().equalsIgnoreCase("INACTIVE")) {
                 existing.setStatus("ACTIVE");
             }
-            medicineRepository.save(existing);
+            save(existing);
         }
     }
 }
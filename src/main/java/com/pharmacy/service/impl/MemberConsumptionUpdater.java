@@ -1,105 +1,164 @@
 package com.pharmacy.service.impl;
 
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.repository.OrderRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import jakarta.annotation.PreDestroy;
-
-import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
- * 会员消费统计增量刷新组件：避免每次接口全量聚合。
- * 若未来引入缓存，可在此写入缓存层；当前仅打印日志（聚合逻辑仍在查询端）。
+ * 会员消费统计缓存（已支付订单数 + 最近消费时间），避免每次接口全量聚合。
+ * 键为 (租户, 会员ID)，不同店铺库的同号会员互不覆盖；Caffeine 有界缓存（W-TinyLFU 淘汰），
+ * 写入后 ttl 过期，过期前（ttl 的 3/4）被读到时后台提前刷新；同一键并发未命中只加载一次，批量未命中走一条聚合 SQL。
+ * 加载总在键所属租户下执行，与调用线程的 TenantContext 无关。命中率等指标注册到 Micrometer（cache=member-consumption）。
+ * 另按租户保留有界、去重的最近活跃会员集合，供定时批量预热。
  */
 @Component
 public class MemberConsumptionUpdater {
 
+    static final String CACHE_NAME = "member-consumption";
+
     @Autowired
     private OrderRepository orderRepository;
 
-    // 替换固定线程池为可伸缩线程池，避免阻塞
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    // 有界、携带租户上下文的事件执行器；同一会员排队中的刷新会被合并
+    @Autowired(required = false)
+    private DomainEventDispatcher dispatcher;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
 
-    // 简单内存缓存：memberId -> CacheEntry
-    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
-    private static final Duration TTL = Duration.ofMinutes(10); // 条目有效期
     @Value("${member.cache.ttl-minutes:10}")
-    private int ttlMinutes;
-    private final ConcurrentLinkedQueue<String> recentActiveMembers = new ConcurrentLinkedQueue<>();
-
-    // 缓存条目结构
-    private class CacheEntry {
-        final int consumptionCount;
-        final LocalDateTime lastConsumption;
-        final long writeEpochMilli;
-        CacheEntry(int count, LocalDateTime last){
-            this.consumptionCount = count;
-            this.lastConsumption = last;
-            this.writeEpochMilli = System.currentTimeMillis();
+    private int ttlMinutes = 10;
+
+    @Value("${member.cache.max-size:50000}")
+    private long maxSize = 50000;
+
+    @Value("${member.cache.recent-per-tenant:300}")
+    private int recentPerTenant = 300;
+
+    private LoadingCache<MemberKey, MemberStatsSnapshot> cache;
+
+    // 租户 -> 最近活跃会员（访问序 LRU，超出容量淘汰最久未活跃）
+    private final ConcurrentHashMap<String, Map<String, Boolean>> recentActive = new ConcurrentHashMap<>();
+
+    /** 租户 + 会员ID */
+    static final class MemberKey {
+        final String tenant;
+        final String memberId;
+
+        MemberKey(String tenant, String memberId) {
+            this.tenant = tenant;
+            this.memberId = memberId;
         }
-        boolean isExpired(){
-            long customTTL = (ttlMinutes > 0 ? ttlMinutes : 10) * 60_000L;
-            return System.currentTimeMillis() - writeEpochMilli > customTTL;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MemberKey)) return false;
+            MemberKey other = (MemberKey) o;
+            return tenant.equals(other.tenant) && memberId.equals(other.memberId);
         }
-    }
 
-    /** 单会员异步刷新并更新缓存 */
-    public void refreshSingleMember(String memberId){
-        if(memberId==null || memberId.isBlank()) return;
-        CompletableFuture.runAsync(() -> doRefreshSingle(memberId), pool)
-            .exceptionally(e->{ System.err.println("[MemberStats] 异步刷新异常:"+e.getMessage()); return null;});
+        @Override
+        public int hashCode() {
+            return 31 * tenant.hashCode() + memberId.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return tenant + ":" + memberId;
+        }
     }
 
-    private void doRefreshSingle(String memberId){
-        try {
-            Long cnt = orderRepository.countPaidOrdersByMember(memberId);
-            LocalDateTime last = orderRepository.findLastPaidOrderTime(memberId);
-            int c = cnt==null?0:cnt.intValue();
-            cache.put(memberId, new CacheEntry(c,last));
-            recentActiveMembers.add(memberId);
-            System.out.println("[MemberStats] 刷新 member="+memberId+" count="+c+" last="+last);
-        } catch(Exception e){
-            System.err.println("[MemberStats] 刷新失败 member="+memberId+" err="+e.getMessage());
+    @PostConstruct
+    public void init() {
+        long ttlMs = TimeUnit.MINUTES.toMillis(ttlMinutes > 0 ? ttlMinutes : 10);
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxSize > 0 ? maxSize : 50000)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .refreshAfterWrite(ttlMs * 3 / 4, TimeUnit.MILLISECONDS)
+                .recordStats();
+        if (dispatcher != null) {
+            builder.executor(dispatcher::execute);
+        }
+        cache = builder.build(new CacheLoader<MemberKey, MemberStatsSnapshot>() {
+            @Override
+            public MemberStatsSnapshot load(MemberKey key) {
+                return inTenant(key.tenant, () -> loadSingle(key.memberId));
+            }
+
+            @Override
+            public Map<MemberKey, MemberStatsSnapshot> loadAll(Set<? extends MemberKey> keys) {
+                Map<String, List<MemberKey>> byTenant = keys.stream().collect(Collectors.groupingBy(k -> k.tenant));
+                Map<MemberKey, MemberStatsSnapshot> result = new HashMap<>();
+                byTenant.forEach((tenant, list) -> result.putAll(inTenant(tenant, () -> loadBatch(list))));
+                return result;
+            }
+        });
+        MeterRegistry registry = meterRegistry == null ? null : meterRegistry.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
         }
     }
 
-    /** 批量刷新（同步执行，可由定时任务调用） */
+    /** 订单提交/退款提交后刷新该会员统计（事务回滚不会触发） */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderEvent(OrderEvent event){
+        if(event.hasMember()) refreshSingleMember(event.getMemberId());
+    }
+
+    /** 单会员后台刷新（同一键并发刷新只执行一次），并记入最近活跃 */
+    public void refreshSingleMember(String memberId){
+        if(memberId==null || memberId.isBlank()) return;
+        MemberKey key = key(memberId);
+        markActive(key);
+        cache.refresh(key);
+    }
+
+    /** 批量刷新（同步执行，可由定时任务调用）：一条聚合 SQL 覆盖写入 */
     public void refreshMembersBatch(Set<String> memberIds){
         if(memberIds==null || memberIds.isEmpty()) return;
         try {
-            // 聚合查询
-            java.util.List<Object[]> agg = orderRepository.aggregateMemberConsumption(memberIds);
-            Map<String,Object[]> map = agg.stream().collect(Collectors.toMap(r->(String)r[0], r->r));
-            for(String mid: memberIds){
-                Object[] row = map.get(mid);
-                int count = 0; LocalDateTime last = null;
-                if(row!=null){
-                    count = ((Long)row[1]).intValue();
-                    last = (LocalDateTime) row[2];
-                }
-                cache.put(mid, new CacheEntry(count,last));
-            }
-            memberIds.forEach(recentActiveMembers::add);
-            System.out.println("[MemberStats] 批量刷新完成 size="+memberIds.size());
+            List<MemberKey> keys = memberIds.stream().map(this::key).collect(Collectors.toList());
+            cache.putAll(loadBatch(keys));
+            System.out.println("[MemberStats] 租户=" + TenantContext.currentTenantKey() + " 批量刷新完成 size=" + keys.size());
         } catch(Exception e){
             System.err.println("[MemberStats] 批量刷新失败:"+e.getMessage());
         }
     }
 
-    /** 获取缓存值（可能为过期或不存在），过期立即返回 null 以便调用方补齐 */
+    /** 取一批会员的统计：命中直接返回，未命中的合并为一次聚合加载 */
+    public Map<String, MemberStatsSnapshot> getStats(Collection<String> memberIds){
+        if(memberIds==null || memberIds.isEmpty()) return Collections.emptyMap();
+        List<MemberKey> keys = memberIds.stream().filter(Objects::nonNull).map(this::key).collect(Collectors.toList());
+        Map<String, MemberStatsSnapshot> result = new LinkedHashMap<>();
+        cache.getAll(keys).forEach((k, v) -> result.put(k.memberId, v));
+        return result;
+    }
+
+    /** 仅读缓存，不触发加载；不存在或已过期返回 null */
     public MemberStatsSnapshot getCachedStats(String memberId){
         if(memberId==null) return null;
-        CacheEntry ce = cache.get(memberId);
-        if(ce==null) return null;
-        if(ce.isExpired()){ cache.remove(memberId); return null; }
-        return new MemberStatsSnapshot(memberId, ce.consumptionCount, ce.lastConsumption);
+        return cache.getIfPresent(key(memberId));
     }
 
     /** 仅用于前端拼装的快照结构 */
@@ -114,29 +173,86 @@ public class MemberConsumptionUpdater {
         }
     }
 
-    /** 清理过期缓存（可由定时器调用） */
+    /** 执行到期清理（Caffeine 平时在读写时顺带清理），返回清理的条目数 */
     public int evictExpired(){
-        int removed = 0;
-        for(Map.Entry<String,CacheEntry> e: cache.entrySet()){
-            if(e.getValue().isExpired()){ cache.remove(e.getKey()); removed++; }
-        }
+        long before = cache.estimatedSize();
+        cache.cleanUp();
+        int removed = (int) Math.max(0, before - cache.estimatedSize());
         if(removed>0) System.out.println("[MemberStats] 过期条目清理: "+removed);
         return removed;
     }
 
-    // 提供获取最近活跃会员集合（截取最多 200 个去重）
+    /** 当前租户最近活跃会员（最近活跃在前，最多 max 个） */
     public Set<String> snapshotRecentActive(int max){
-        java.util.Set<String> set = new java.util.LinkedHashSet<>();
-        for(String id: recentActiveMembers){
-            set.add(id);
-            if(set.size()>=max) break;
+        Map<String, Boolean> recent = recentActive.get(TenantContext.currentTenantKey());
+        Set<String> set = new LinkedHashSet<>();
+        if(recent==null) return set;
+        List<String> ids;
+        synchronized (recent) {
+            ids = new ArrayList<>(recent.keySet());
         }
+        for(int i = ids.size() - 1; i >= 0 && set.size() < max; i--) set.add(ids.get(i));
         return set;
     }
 
-    @PreDestroy
-    public void shutdown(){
-        pool.shutdown();
-        try { pool.awaitTermination(3, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+    /** 命中率等统计，供诊断接口使用 */
+    public Map<String, Object> stats(){
+        CacheStats s = cache.stats();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("size", cache.estimatedSize());
+        m.put("hitCount", s.hitCount());
+        m.put("missCount", s.missCount());
+        m.put("hitRate", s.hitRate());
+        m.put("loadCount", s.loadCount());
+        m.put("evictionCount", s.evictionCount());
+        m.put("recentActiveTenants", recentActive.size());
+        return m;
+    }
+
+    private MemberKey key(String memberId){
+        return new MemberKey(TenantContext.currentTenantKey(), memberId);
+    }
+
+    private void markActive(MemberKey key){
+        Map<String, Boolean> recent = recentActive.computeIfAbsent(key.tenant, t -> new LinkedHashMap<String, Boolean>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > Math.max(1, recentPerTenant);
+            }
+        });
+        synchronized (recent) {
+            recent.put(key.memberId, Boolean.TRUE);
+        }
+    }
+
+    private MemberStatsSnapshot loadSingle(String memberId){
+        Long cnt = orderRepository.countPaidOrdersByMember(memberId);
+        LocalDateTime last = orderRepository.findLastPaidOrderTime(memberId);
+        return new MemberStatsSnapshot(memberId, cnt==null?0:cnt.intValue(), last);
+    }
+
+    private Map<MemberKey, MemberStatsSnapshot> loadBatch(List<MemberKey> keys){
+        Set<String> ids = keys.stream().map(k -> k.memberId).collect(Collectors.toSet());
+        Map<String, Object[]> rows = orderRepository.aggregateMemberConsumption(ids).stream()
+                .collect(Collectors.toMap(r -> (String) r[0], r -> r));
+        Map<MemberKey, MemberStatsSnapshot> result = new HashMap<>();
+        for(MemberKey k: keys){
+            Object[] row = rows.get(k.memberId);
+            int count = row==null ? 0 : ((Number) row[1]).intValue();
+            LocalDateTime last = row==null ? null : (LocalDateTime) row[2];
+            result.put(k, new MemberStatsSnapshot(k.memberId, count, last));
+        }
+        return result;
+    }
+
+    // 在指定租户下执行加载，结束后恢复调用线程原有的租户
+    private static <T> T inTenant(String tenant, Supplier<T> loader){
+        String previous = TenantContext.getTenant();
+        if ("default".equals(tenant)) TenantContext.clear(); else TenantContext.setTenant(tenant);
+        try {
+            return loader.get();
+        } finally {
+            if (previous == null) TenantContext.clear(); else TenantContext.setTenant(previous);
+        }
     }
 }
@@ -4,19 +4,27 @@ import com.pharmacy.dto.OrderResponse;
 import com.pharmacy.dto.OrderItemResponse;
 import com.pharmacy.dto.OrderRequest;
 import com.pharmacy.dto.OrderItemRequest;
+import com.pharmacy.dto.StockDeductionResult;
 import com.pharmacy.entity.Order;
 import com.pharmacy.entity.OrderItem;
 import com.pharmacy.entity.Medicine;
-import com.pharmacy.entity.Employee;
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.event.OrderPlacedEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.event.StockChangedEvent;
+import com.pharmacy.multitenant.TenantContext;
 import com.pharmacy.repository.OrderRepository;
 import com.pharmacy.repository.OrderItemRepository;
 import com.pharmacy.repository.MedicineRepository;
-import com.pharmacy.repository.EmployeeRepository;
+import com.pharmacy.service.EmployeeDirectory;
 import com.pharmacy.service.OrderService;
 import com.pharmacy.service.InventoryService;
+import com.pharmacy.service.IdGeneratorService;
+import com.pharmacy.service.MemberPointsService;
 import com.pharmacy.repository.MemberRepository;
 import com.pharmacy.entity.Member;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -43,13 +51,18 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private InventoryService inventoryService;
 
-    @Autowired(required = false)
-    private MemberConsumptionUpdater memberConsumptionUpdater; // 可选组件，不存在时日志提示
+    @Autowired
+    private ApplicationEventPublisher eventPublisher; // 会员统计、库存预警、控制台、审计在提交后订阅
+
+    @Autowired
+    private IdGeneratorService idGeneratorService;
 
     @Autowired
-    private EmployeeRepository employeeRepository; // 新增: 动态获取收银员
+    private EmployeeDirectory employeeDirectory; // 按租户缓存的在职员工目录
     @Autowired
     private MemberRepository memberRepository; // 新增: 校验会员是否存在
+    @Autowired
+    private MemberPointsService memberPointsService; // 积分抵扣 / 累积，条件 UPDATE 与订单同事务
 
     @Override
     @Transactional
@@ -60,21 +73,16 @@ public class OrderServiceImpl implements OrderService {
         System.out.println("商品数量: " + orderRequest.getItems().size());
 
         try {
-            // 1. 检查库存是否充足
-            for (OrderItemRequest item : orderRequest.getItems()) {
-                boolean stockAvailable = inventoryService.checkStock(item.getProductId(), item.getQuantity());
-                if (!stockAvailable) {
-                    String medicineName = medicineRepository.findById(item.getProductId())
-                            .map(Medicine::getGenericName)
-                            .orElse(item.getProductId());
-                    throw new RuntimeException("药品 " + medicineName + " 库存不足，需求: " + item.getQuantity());
-                }
-            }
-
-            // 2. 生成订单号
+            // 1. 生成订单号
             String orderId = generateOrderId();
             System.out.println("生成的订单号: " + orderId);
 
+            // 2. 整单扣减库存（FEFO + 条件更新，缺货按行汇报，无需预先 checkStock）
+            StockDeductionResult deduction = inventoryService.deductStockForOrder(orderId, orderRequest.getItems());
+            if (!deduction.isSuccess()) {
+                throw new RuntimeException(describeShortages(deduction));
+            }
+
             // 3. 计算订单总金额 - 使用前端传递的金额信息
             double totalAmount = orderRequest.getTotalAmount() != null ?
                     orderRequest.getTotalAmount().doubleValue() :
@@ -96,7 +104,7 @@ public class OrderServiceImpl implements OrderService {
             Order order = new Order();
             order.setOrderId(orderId);
             // 动态解析收银员ID，避免外键失败
-            Integer cashierId = resolveCashierId();
+            Integer cashierId = resolveCashierId(orderRequest);
             if (cashierId == null) {
                 throw new RuntimeException("当前租户没有可用收银员账号，无法创建订单");
             }
@@ -121,7 +129,15 @@ public class OrderServiceImpl implements OrderService {
             order.setCustomerName(orderRequest.getCustomerName());
             order.setTotalAmount(originalAmount);
             order.setDiscountAmount(discountAmount);
-            order.setActualPayment(totalAmount);
+
+            // 积分：抵扣与累积合并为一条条件 UPDATE，余额不足时整单回滚；实付扣除抵现部分，累积只按实付计算
+            int usedPoints = orderRequest.getUsedPoints() == null ? 0 : orderRequest.getUsedPoints();
+            double actualPayment = MemberPointsService.payableAfterPoints(totalAmount, usedPoints);
+            order.setActualPayment(actualPayment);
+            MemberPointsService.Settlement points = memberPointsService.settleOrder(order.getMemberId(), orderId,
+                    usedPoints, actualPayment);
+            order.setUsedPoints(points.getUsed());
+            order.setCreatedPoints(points.getEarned());
 
             // 支付方式转换
             Integer paymentType = convertPaymentMethod(orderRequest.getPaymentMethod());
@@ -135,7 +151,8 @@ public class OrderServiceImpl implements OrderService {
             System.out.println("订单保存成功，ID: " + savedOrder.getOrderId());
             System.out.println("订单会员ID: " + savedOrder.getMemberId());
 
-            // 6. 创建订单项并更新库存
+            // 6. 创建订单项（库存已在第 2 步扣减），saveAll 在 flush 时合并为 JDBC 批量插入
+            List<OrderItem> orderItems = new java.util.ArrayList<>(orderRequest.getItems().size());
             for (OrderItemRequest itemRequest : orderRequest.getItems()) {
                 OrderItem orderItem = new OrderItem();
                 orderItem.setOrderId(savedOrder.getOrderId());
@@ -144,29 +161,21 @@ public class OrderServiceImpl implements OrderService {
                 orderItem.setUnitPrice(itemRequest.getUnitPrice().doubleValue());
                 orderItem.setSubtotal(itemRequest.getUnitPrice().doubleValue() * itemRequest.getQuantity());
 
-                orderItemRepository.save(orderItem);
-                System.out.println("订单项保存成功: " + itemRequest.getProductId() + " x " + itemRequest.getQuantity());
-
-                // 更新库存
-                boolean stockUpdated = inventoryService.updateStockForOrder(
-                        itemRequest.getProductId(),
-                        itemRequest.getQuantity(),
-                        savedOrder.getOrderId()
-                );
-
-                if (!stockUpdated) {
-                    String medicineName = medicineRepository.findById(itemRequest.getProductId())
-                            .map(Medicine::getGenericName)
-                            .orElse(itemRequest.getProductId());
-                    throw new RuntimeException("库存更新失败: " + medicineName);
-                }
+                orderItems.add(orderItem);
             }
-
-            // 7. 构建响应
-            OrderResponse response = convertToOrderResponse(savedOrder);
-            // 新增：订单创建后异步刷新会员消费统计
-            triggerMemberStatsUpdate(savedOrder.getMemberId());
-            System.out.println("✅ 订单创建完成并触发会员消费统计刷新: " + response.getOrderNumber());
+            orderItemRepository.saveAll(orderItems);
+            orderItemRepository.flush(); // 台账经 JDBC 写入，先让订单与订单项落库
+            System.out.println("订单项保存成功: " + orderItems.size() + " 行");
+
+            // 记录每行从哪些批次扣减，退款时原路回补
+            inventoryService.recordSaleLedger(orderId, cashierId, deduction, orderItems);
+
+            // 7. 构建响应；副作用通过事件在提交后异步处理，不计入结算耗时
+            OrderResponse response = convertToOrderResponse(savedOrder, orderItems);
+            publishOrderEvents(new OrderPlacedEvent(TenantContext.currentTenantKey(), savedOrder.getOrderId(),
+                    savedOrder.getMemberId(), savedOrder.getActualPayment(), savedOrder.getOrderTime(),
+                    toEventLines(orderItems)), StockChangedEvent.SOURCE_ORDER);
+            System.out.println("✅ 订单创建完成: " + response.getOrderNumber());
             return response;
 
         } catch (Exception e) {
@@ -176,6 +185,20 @@ public class OrderServiceImpl implements OrderService {
         }
     }
 
+    // 缺货提示：仅在失败路径上一次性查询药品名称
+    private String describeShortages(StockDeductionResult deduction) {
+        List<String> ids = deduction.getShortages().stream()
+                .map(StockDeductionResult.Shortage::getMedicineId)
+                .distinct()
+                .collect(Collectors.toList());
+        java.util.Map<String, String> names = medicineRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Medicine::getMedicineId, Medicine::getGenericName, (a, b) -> a));
+        return deduction.getShortages().stream()
+                .map(s -> "药品 " + names.getOrDefault(s.getMedicineId(), s.getMedicineId()) +
+                        " 库存不足，需求: " + s.getRequested() + "，可用: " + s.getAvailable())
+                .collect(Collectors.joining("；"));
+    }
+
     // 支付方式转换方法
     private Integer convertPaymentMethod(String paymentMethod) {
         if (paymentMethod == null) return 1; // 默认现金
@@ -277,30 +300,37 @@ public class OrderServiceImpl implements OrderService {
         if(order.getPaymentStatus()==null || order.getPaymentStatus()==0){
             throw new RuntimeException("未支付订单不可退款");
         }
-        // 恢复库存(根据订单项)
+        // 恢复库存：按结算台账回补到原批次
         List<OrderItem> items = orderItemRepository.findByOrderId(orderId);
-        for(OrderItem it: items){
-            try { inventoryService.restoreStock(it.getMedicineId(), it.getQuantity(), orderId); } catch (Exception e){ System.err.println("恢复库存失败:"+e.getMessage()); }
-        }
+        inventoryService.restoreStockForOrder(orderId, order.getCashierId(), items, reason);
+        memberPointsService.reverseOrder(order.getMemberId(), orderId, order.getUsedPoints(), order.getCreatedPoints());
         order.setPaymentStatus(2); // 已退款
         order.setRefundTime(LocalDateTime.now());
-        OrderResponse resp = convertToOrderResponse(orderRepository.save(order));
-        triggerMemberStatsUpdate(order.getMemberId());
+        OrderResponse resp = convertToOrderResponse(orderRepository.save(order), items);
+        publishOrderEvents(new OrderRefundedEvent(TenantContext.currentTenantKey(), orderId, order.getMemberId(),
+                order.getActualPayment() == null ? 0.0 : order.getActualPayment(), order.getOrderTime(),
+                toEventLines(items), order.getRefundTime(), reason), StockChangedEvent.SOURCE_REFUND);
         return resp;
     }
 
-    // 异步触发会员统计刷新
-    private void triggerMemberStatsUpdate(String memberId){
-        if(memberId==null || memberId.isBlank()) return;
-        try {
-            if(memberConsumptionUpdater!=null){
-                memberConsumptionUpdater.refreshSingleMember(memberId);
-            } else {
-                System.out.println("[MemberStats] 无成员消费刷新组件，跳过刷新，memberId="+memberId);
-            }
-        } catch(Exception e){
-            System.err.println("[MemberStats] 刷新会员消费统计失败:"+e.getMessage());
+    // 事务内发布，订阅方在提交后收到；回滚时不会触发
+    private void publishOrderEvents(OrderEvent event, String stockSource){
+        eventPublisher.publishEvent(event);
+        java.util.Set<String> medicineIds = new java.util.LinkedHashSet<>();
+        for(OrderEvent.Line line: event.getLines()) medicineIds.add(line.getMedicineId());
+        if(!medicineIds.isEmpty()){
+            eventPublisher.publishEvent(new StockChangedEvent(event.getTenant(), medicineIds, stockSource, event.getOrderId()));
+        }
+    }
+
+    private List<OrderEvent.Line> toEventLines(List<OrderItem> items){
+        List<OrderEvent.Line> lines = new java.util.ArrayList<>(items.size());
+        for(OrderItem it: items){
+            lines.add(new OrderEvent.Line(it.getMedicineId(),
+                    it.getQuantity()==null?0:it.getQuantity(),
+                    it.getSubtotal()==null?0.0:it.getSubtotal()));
         }
+        return lines;
     }
 
     // 辅助方法：获取支付状态文本
@@ -317,12 +347,12 @@ public class OrderServiceImpl implements OrderService {
     // === 私有辅助方法 ===
 
     private String generateOrderId() {
-        // 生成格式如: O20241027123456 的订单号
-        String timestamp = LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        return "O" + timestamp;
+        // 生成格式如: O20241027123456789010000 的订单号（同一秒内多单不再冲突）
+        return idGeneratorService.nextId(IdGeneratorService.ORDER);
     }
 
-    private OrderResponse convertToOrderResponse(Order order) {
+    // 用内存中的订单项构建响应，药品名称一次 findAllById 批量取回
+    private OrderResponse convertToOrderResponse(Order order, List<OrderItem> orderItems) {
         OrderResponse response = new OrderResponse();
         response.setOrderNumber(order.getOrderId());
         response.setCustomerName(order.getCustomerName());
@@ -330,29 +360,21 @@ public class OrderServiceImpl implements OrderService {
         response.setStatus("已完成");
         response.setCreateTime(order.getOrderTime());
 
-        // 获取订单项
-        List<OrderItem> orderItems = orderItemRepository.findByOrderId(order.getOrderId());
+        List<String> medicineIds = orderItems.stream().map(OrderItem::getMedicineId).distinct().collect(Collectors.toList());
+        java.util.Map<String, String> names = medicineRepository.findAllById(medicineIds).stream()
+                .collect(Collectors.toMap(Medicine::getMedicineId, Medicine::getGenericName, (a, b) -> a));
         List<OrderItemResponse> itemResponses = orderItems.stream()
-                .map(this::convertToOrderItemResponse)
+                .map(item -> convertToOrderItemResponse(item, names))
                 .collect(Collectors.toList());
 
         response.setItems(itemResponses);
         return response;
     }
 
-    private OrderItemResponse convertToOrderItemResponse(OrderItem orderItem) {
+    private OrderItemResponse convertToOrderItemResponse(OrderItem orderItem, java.util.Map<String, String> names) {
         OrderItemResponse response = new OrderItemResponse();
         response.setProductId(orderItem.getMedicineId());
-
-        // 获取药品信息
-        Optional<Medicine> medicineOpt = medicineRepository.findById(orderItem.getMedicineId());
-        if (medicineOpt.isPresent()) {
-            Medicine medicine = medicineOpt.get();
-            response.setProductName(medicine.getGenericName());
-        } else {
-            response.setProductName("未知药品");
-        }
-
+        response.setProductName(names.getOrDefault(orderItem.getMedicineId(), "未知药品"));
         response.setQuantity(orderItem.getQuantity());
         response.setUnitPrice(java.math.BigDecimal.valueOf(orderItem.getUnitPrice()));
         response.setSubtotal(java.math.BigDecimal.valueOf(orderItem.getSubtotal()));
@@ -360,27 +382,14 @@ public class OrderServiceImpl implements OrderService {
         return response;
     }
 
-    private Integer resolveCashierId() {
-        // 优先找活动员工
-        return employeeRepository.findAllActive().stream()
-                .map(Employee::getEmployeeId)
-                .findFirst()
-                .orElseGet(() -> {
-                    // 若无活动员工则尝试创建一个默认员工(只在极端情况下执行)
-                    try {
-                        Employee e = new Employee();
-                        e.setUsername("auto_cashier");
-                        e.setPassword("e10adc3949ba59abbe56e057f20f883e"); // 默认 md5(123456)
-                        e.setName("自动收银员");
-                        e.setRoleId(1); // 赋管理员或收银角色，根据实际需要调整
-                        e.setPhone("00000000000");
-                        e.setStatus(1);
-                        Employee saved = employeeRepository.save(e);
-                        return saved.getEmployeeId();
-                    } catch (Exception ex) {
-                        System.err.println("[Order] 自动创建收银员失败: " + ex.getMessage());
-                        return null;
-                    }
-                });
+    private Integer resolveCashierId(OrderRequest orderRequest) {
+        // 登录会话中的收银员，按内存员工目录校验在职状态（不查 employee 表）
+        Integer sessionCashier = orderRequest.getCashierId();
+        if (sessionCashier != null) {
+            if (employeeDirectory.isActive(sessionCashier)) return sessionCashier;
+            System.err.println("[Order] 会话收银员 " + sessionCashier + " 不在职或不属于当前租户，改用默认收银员");
+        }
+        // 兼容未携带登录会话的旧客户端
+        return employeeDirectory.defaultCashierId();
     }
 }
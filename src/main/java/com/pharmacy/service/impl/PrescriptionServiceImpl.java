@@ -2,6 +2,7 @@ package com.pharmacy.service.impl;
 
 import com.pharmacy.entity.Prescription;
 import com.pharmacy.repository.PrescriptionRepository;
+import com.pharmacy.service.IdGeneratorService;
 import com.pharmacy.service.PrescriptionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -9,7 +10,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
-import java.util.UUID;
 
 @Service
 @Transactional
@@ -18,6 +18,9 @@ public class PrescriptionServiceImpl implements PrescriptionService {
     @Autowired
     private PrescriptionRepository prescriptionRepository;
 
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+
     @Override
     public List<Prescription> findAll() {
         return prescriptionRepository.findAll();
@@ -48,7 +51,7 @@ public class PrescriptionServiceImpl implements PrescriptionService {
     public Prescription save(Prescription prescription) {
         if (prescription.getPrescriptionId() == null) {
             // 生成处方ID
-            String prescriptionId = "P" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 8);
+            String prescriptionId = idGeneratorService.nextId(IdGeneratorService.PRESCRIPTION);
             prescription.setPrescriptionId(prescriptionId);
         }
 
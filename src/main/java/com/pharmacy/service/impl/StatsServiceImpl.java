@@ -3,11 +3,13 @@ package com.pharmacy.service.impl;
 import com.pharmacy.entity.Order;
 import com.pharmacy.repository.OrderRepository;
 import com.pharmacy.repository.OrderItemRepository;
+import com.pharmacy.service.SalesRollupService;
 import com.pharmacy.service.StatsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -23,38 +25,29 @@ public class StatsServiceImpl implements StatsService {
     @Autowired
     private OrderItemRepository orderItemRepository;
 
+    @Autowired
+    private SalesRollupService salesRollupService;
+
     @Override
     public Map<String, Object> getSalesStats(LocalDateTime startDate, LocalDateTime endDate) {
         Map<String, Object> stats = new HashMap<>();
 
-        // 总销售额 - 修复类型转换
-        Double totalSalesDouble = orderRepository.getTotalSalesByTimeRange(startDate, endDate);
-        BigDecimal totalSales = totalSalesDouble != null ? BigDecimal.valueOf(totalSalesDouble) : BigDecimal.ZERO;
-        stats.put("totalSales", totalSales);
-
-        // 平均订单金额
-        Double averageOrderValueDouble = orderRepository.getAverageOrderValueByTimeRange(startDate, endDate);
-        BigDecimal averageOrderValue = averageOrderValueDouble != null ? BigDecimal.valueOf(averageOrderValueDouble) : BigDecimal.ZERO;
-        stats.put("averageOrderValue", averageOrderValue);
+        // 合计与每日序列同一口径：按小时销售汇总中已支付订单的应收，按天对齐（每日之和等于总额）
+        SalesRollupService.Bucket total = salesRollupService.total(startDate.toLocalDate().atStartOfDay(),
+                endDate.toLocalDate().plusDays(1).atStartOfDay());
+        stats.put("totalSales", total.getGross());
+        stats.put("averageOrderValue", total.getPaidCount() == 0 ? BigDecimal.ZERO :
+                total.getGross().divide(BigDecimal.valueOf(total.getPaidCount()), 2, RoundingMode.HALF_UP));
+        stats.put("orderCount", total.getPaidCount());
 
-        // 订单数量
-        Long orderCount = orderRepository.countByOrderTimeBetween(startDate, endDate);
-        stats.put("orderCount", orderCount);
-
-        // 每日销售额
-        List<Object[]> dailySales = orderRepository.getDailySales(startDate, endDate);
+        // 每日销售额：读按小时销售汇总（已支付订单的应收），不再按 DATE() 分组扫订单表
         List<Map<String, Object>> dailySalesList = new ArrayList<>();
-        for (Object[] dailySale : dailySales) {
+        salesRollupService.daily(startDate.toLocalDate(), endDate.toLocalDate()).forEach((day, bucket) -> {
             Map<String, Object> dailyData = new HashMap<>();
-            dailyData.put("date", dailySale[0]);
-            // 确保销售额也是BigDecimal
-            Object salesValue = dailySale[1];
-            BigDecimal dailySalesBigDecimal = salesValue instanceof Double ?
-                    BigDecimal.valueOf((Double) salesValue) :
-                    (salesValue instanceof BigDecimal ? (BigDecimal) salesValue : BigDecimal.ZERO);
-            dailyData.put("sales", dailySalesBigDecimal);
+            dailyData.put("date", java.sql.Date.valueOf(day));
+            dailyData.put("sales", bucket.getGross());
             dailySalesList.add(dailyData);
-        }
+        });
         stats.put("dailySales", dailySalesList);
 
         return stats;
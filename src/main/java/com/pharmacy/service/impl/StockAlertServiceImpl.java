@@ -3,6 +3,8 @@ package com.pharmacy.service.impl;
 import com.pharmacy.entity.Inventory;
 import com.pharmacy.entity.Medicine;
 import com.pharmacy.entity.StockAlert;
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.event.StockChangedEvent;
 import com.pharmacy.repository.InventoryRepository;
 import com.pharmacy.repository.MedicineRepository;
 import com.pharmacy.repository.StockAlertRepository;
@@ -10,6 +12,7 @@ import com.pharmacy.service.StockAlertService;
 import com.pharmacy.util.StockStatusUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -31,6 +34,9 @@ public class StockAlertServiceImpl implements StockAlertService {
     @Autowired
     private StockAlertRepository stockAlertRepository;
 
+    @Autowired
+    private DomainEventDispatcher dispatcher;
+
     private static final int EXPIRY_WARNING_DAYS = 60;
 
     @Override
@@ -108,44 +114,14 @@ public class StockAlertServiceImpl implements StockAlertService {
 
         try {
             // 检查低库存
-            List<Inventory> lowStockInventories = inventoryRepository.findLowStock();
-            for (Inventory inventory : lowStockInventories) {
-                // 检查是否已经存在未处理的相同预警
-                List<StockAlert> existingAlerts = stockAlertRepository.findByMedicineIdAndAlertTypeAndIsHandledFalse(
-                        inventory.getMedicineId(), 1); // 1-库存不足
-
-                if (existingAlerts.isEmpty()) {
-                    StockAlert alert = new StockAlert();
-                    alert.setMedicineId(inventory.getMedicineId());
-                    alert.setAlertType(1); // 库存不足
-                    alert.setCurrentStock(inventory.getStockQuantity());
-                    alert.setMinStock(inventory.getMinStock());
-                    alert.setAlertMessage("药品库存低于安全库存");
-                    alert.setIsHandled(false);
-                    stockAlertRepository.save(alert);
-                }
+            for (Inventory inventory : inventoryRepository.findLowStock()) {
+                raiseLowStockAlert(inventory);
             }
 
             // 检查近效期药品
             LocalDate warningDate = LocalDate.now().plusDays(EXPIRY_WARNING_DAYS);
-            List<Inventory> expiringInventories = inventoryRepository.findExpiringSoon(LocalDate.now(), warningDate);
-
-            for (Inventory inventory : expiringInventories) {
-                if (inventory.getExpiryDate() != null) {
-                    List<StockAlert> existingAlerts = stockAlertRepository.findByMedicineIdAndAlertTypeAndIsHandledFalse(
-                            inventory.getMedicineId(), 2); // 2-近效期
-
-                    if (existingAlerts.isEmpty()) {
-                        StockAlert alert = new StockAlert();
-                        alert.setMedicineId(inventory.getMedicineId());
-                        alert.setAlertType(2); // 近效期
-                        alert.setCurrentStock(inventory.getStockQuantity());
-                        alert.setExpiryDate(inventory.getExpiryDate().atStartOfDay());
-                        alert.setAlertMessage("药品即将过期");
-                        alert.setIsHandled(false);
-                        stockAlertRepository.save(alert);
-                    }
-                }
+            for (Inventory inventory : inventoryRepository.findExpiringSoon(LocalDate.now(), warningDate)) {
+                raiseExpiryAlert(inventory);
             }
 
         } catch (Exception e) {
@@ -153,6 +129,68 @@ public class StockAlertServiceImpl implements StockAlertService {
         }
     }
 
+    /** 库存变动提交后按药品合并检查，替代结算后的全表扫描 */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        for (String medicineId : event.getMedicineIds()) {
+            dispatcher.executeCoalesced("stock-alert:" + medicineId, () -> checkAlertsForMedicine(medicineId));
+        }
+    }
+
+    @Override
+    public void checkAlertsForMedicine(String medicineId) {
+        if (medicineId == null) return;
+        LocalDate today = LocalDate.now();
+        LocalDate warningDate = today.plusDays(EXPIRY_WARNING_DAYS);
+        boolean lowRaised = false;
+        boolean expiryRaised = false;
+        for (Inventory inventory : inventoryRepository.findByMedicineId(medicineId)) {
+            Integer qty = inventory.getStockQuantity();
+            Integer min = inventory.getMinStock();
+            if (!lowRaised && qty != null && min != null && qty <= min) {
+                raiseLowStockAlert(inventory);
+                lowRaised = true;
+            }
+            LocalDate expiry = inventory.getExpiryDate();
+            if (!expiryRaised && expiry != null && !expiry.isBefore(today) && !expiry.isAfter(warningDate)) {
+                raiseExpiryAlert(inventory);
+                expiryRaised = true;
+            }
+        }
+    }
+
+    // 同一药品同类型已有未处理预警时不重复生成
+    private void raiseLowStockAlert(Inventory inventory) {
+        List<StockAlert> existingAlerts = stockAlertRepository.findByMedicineIdAndAlertTypeAndIsHandledFalse(
+                inventory.getMedicineId(), 1); // 1-库存不足
+        if (existingAlerts.isEmpty()) {
+            StockAlert alert = new StockAlert();
+            alert.setMedicineId(inventory.getMedicineId());
+            alert.setAlertType(1); // 库存不足
+            alert.setCurrentStock(inventory.getStockQuantity());
+            alert.setMinStock(inventory.getMinStock());
+            alert.setAlertMessage("药品库存低于安全库存");
+            alert.setIsHandled(false);
+            stockAlertRepository.save(alert);
+        }
+    }
+
+    private void raiseExpiryAlert(Inventory inventory) {
+        if (inventory.getExpiryDate() == null) return;
+        List<StockAlert> existingAlerts = stockAlertRepository.findByMedicineIdAndAlertTypeAndIsHandledFalse(
+                inventory.getMedicineId(), 2); // 2-近效期
+        if (existingAlerts.isEmpty()) {
+            StockAlert alert = new StockAlert();
+            alert.setMedicineId(inventory.getMedicineId());
+            alert.setAlertType(2); // 近效期
+            alert.setCurrentStock(inventory.getStockQuantity());
+            alert.setExpiryDate(inventory.getExpiryDate().atStartOfDay());
+            alert.setAlertMessage("药品即将过期");
+            alert.setIsHandled(false);
+            stockAlertRepository.save(alert);
+        }
+    }
+
     @Override
     public List<Map<String, Object>> getExpiringMedicines() {
         List<Map<String, Object>> expiringMedicines = new ArrayList<>();
@@ -0,0 +1,154 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.dto.StockDeductionResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 订单库存扣减引擎：一次查询取出订单涉及药品的全部有效批次，在内存中按 FEFO（最早到期优先，跳过已过期批次）
+ * 分配到各批次，再用带 stock_quantity >= ? 条件的 UPDATE 批量执行，保证并发收银时不会超卖。
+ * 条件更新失败（批次被其它收银台抢先扣减）的部分会重新读取并再分配，最多重试 MAX_ATTEMPTS 次。
+ * 必须在调用方事务内执行；返回缺货时已执行的扣减依赖调用方回滚。
+ */
+@Component
+public class StockDeductionEngine {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final String DEDUCT_SQL =
+            "UPDATE inventory SET stock_quantity = stock_quantity - ?, update_time = ? " +
+            "WHERE inventory_id = ? AND stock_quantity >= ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 扣减整单库存
+     * @param medicineIds 每个订单行的药品ID
+     * @param quantities 每个订单行的需求数量（<=0 的行忽略）
+     */
+    public StockDeductionResult deduct(String[] medicineIds, int[] quantities) {
+        int lines = medicineIds.length;
+        int[] remaining = Arrays.copyOf(quantities, lines);
+        StockDeductionResult result = new StockDeductionResult();
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Set<String> pendingIds = new LinkedHashSet<>();
+            for (int i = 0; i < lines; i++) {
+                if (remaining[i] > 0 && medicineIds[i] != null) pendingIds.add(medicineIds[i]);
+            }
+            if (pendingIds.isEmpty()) return result;
+
+            StockDeductionResult planned = plan(medicineIds, remaining, loadSlots(pendingIds));
+            if (!planned.isSuccess()) {
+                // 缺货按原始需求量汇报，available 为已成功扣减 + 本次可分配
+                for (StockDeductionResult.Shortage s : planned.getShortages()) {
+                    int done = quantities[s.getLineIndex()] - remaining[s.getLineIndex()];
+                    result.getShortages().add(new StockDeductionResult.Shortage(
+                            s.getLineIndex(), s.getMedicineId(), quantities[s.getLineIndex()], done + s.getAvailable()));
+                }
+                return result;
+            }
+
+            List<StockDeductionResult.Allocation> allocations = planned.getAllocations();
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> args = new ArrayList<>(allocations.size());
+            for (StockDeductionResult.Allocation a : allocations) {
+                args.add(new Object[]{a.getQuantity(), now, a.getInventoryId(), a.getQuantity()});
+            }
+            int[] counts = jdbcTemplate.batchUpdate(DEDUCT_SQL, args);
+            for (int k = 0; k < allocations.size(); k++) {
+                StockDeductionResult.Allocation a = allocations.get(k);
+                if (counts[k] == 0) {
+                    System.out.println("[StockDeduction] 批次 " + a.getBatchNo() + " 条件扣减未命中(并发)，第 " + attempt + " 次重新分配");
+                    continue;
+                }
+                remaining[a.getLineIndex()] -= a.getQuantity();
+                result.getAllocations().add(a);
+            }
+        }
+
+        for (int i = 0; i < lines; i++) {
+            if (remaining[i] > 0) {
+                result.getShortages().add(new StockDeductionResult.Shortage(
+                        i, medicineIds[i], quantities[i], quantities[i] - remaining[i]));
+            }
+        }
+        return result;
+    }
+
+    private List<BatchSlot> loadSlots(Collection<String> medicineIds) {
+        String placeholders = String.join(",", Collections.nCopies(medicineIds.size(), "?"));
+        String sql = "SELECT inventory_id, medicine_id, batch_no, stock_quantity, expiry_date FROM inventory " +
+                "WHERE medicine_id IN (" + placeholders + ") AND stock_quantity > 0 " +
+                "AND (expiry_date IS NULL OR expiry_date >= ?)";
+        List<Object> params = new ArrayList<>(medicineIds);
+        params.add(Date.valueOf(LocalDate.now()));
+        return jdbcTemplate.query(sql, (rs, n) -> {
+            Date expiry = rs.getDate("expiry_date");
+            return new BatchSlot(rs.getLong("inventory_id"), rs.getString("medicine_id"), rs.getString("batch_no"),
+                    rs.getInt("stock_quantity"), expiry != null ? expiry.toLocalDate() : null);
+        }, params.toArray());
+    }
+
+    /**
+     * 纯内存 FEFO 分配：同一药品的多行共享批次余量。任一行不足时在 shortages 中返回该行可分配数量。
+     */
+    public static StockDeductionResult plan(String[] medicineIds, int[] quantities, List<BatchSlot> slots) {
+        Map<String, List<BatchSlot>> byMedicine = new HashMap<>();
+        for (BatchSlot s : slots) {
+            byMedicine.computeIfAbsent(s.medicineId, k -> new ArrayList<>()).add(s.copy());
+        }
+        Comparator<BatchSlot> fefo = Comparator
+                .comparing((BatchSlot s) -> s.expiryDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(s -> s.inventoryId);
+        byMedicine.values().forEach(list -> list.sort(fefo));
+
+        StockDeductionResult result = new StockDeductionResult();
+        for (int i = 0; i < medicineIds.length; i++) {
+            int need = quantities[i];
+            if (need <= 0) continue;
+            int taken = 0;
+            for (BatchSlot s : byMedicine.getOrDefault(medicineIds[i], Collections.emptyList())) {
+                if (taken >= need) break;
+                int take = Math.min(need - taken, s.available);
+                if (take <= 0) continue;
+                s.available -= take;
+                taken += take;
+                result.getAllocations().add(new StockDeductionResult.Allocation(i, medicineIds[i], s.inventoryId, s.batchNo, take));
+            }
+            if (taken < need) {
+                result.getShortages().add(new StockDeductionResult.Shortage(i, medicineIds[i], need, taken));
+            }
+        }
+        return result;
+    }
+
+    /** 可扣减批次快照 */
+    public static class BatchSlot {
+        final Long inventoryId;
+        final String medicineId;
+        final String batchNo;
+        int available;
+        final LocalDate expiryDate;
+
+        public BatchSlot(Long inventoryId, String medicineId, String batchNo, int available, LocalDate expiryDate) {
+            this.inventoryId = inventoryId;
+            this.medicineId = medicineId;
+            this.batchNo = batchNo;
+            this.available = available;
+            this.expiryDate = expiryDate;
+        }
+
+        BatchSlot copy() {
+            return new BatchSlot(inventoryId, medicineId, batchNo, available, expiryDate);
+        }
+    }
+}
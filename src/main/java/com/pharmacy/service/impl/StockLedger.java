@@ -0,0 +1,108 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.dto.StockDeductionResult;
+import com.pharmacy.entity.StockRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单-批次分配台账（stock_record，只追加不修改）。
+ * 结算时把 StockDeductionEngine 的每条批次分配记为一行 SALE（数量为负，表示减少），退款时按订单号（related_order_id 索引）取回这些行，
+ * 用一次批量 UPDATE 原路回补到扣减时的批次，并追加对应的 REFUND 行。
+ * 与扣减引擎一样直接走 JdbcTemplate，必须在调用方事务内执行。
+ */
+@Component
+public class StockLedger {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO stock_record(medicine_id, batch_no, inventory_id, order_item_id, change_type, quantity, " +
+            "operator_id, related_order_id, remark, create_time) VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+    private static final String RESTORE_SQL =
+            "UPDATE inventory SET stock_quantity = stock_quantity + ?, update_time = ? WHERE inventory_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** 台账行 */
+    public static class Entry {
+        final String medicineId;
+        final String batchNo;
+        final Long inventoryId;
+        final Long orderItemId;
+        final int quantity;
+
+        Entry(String medicineId, String batchNo, Long inventoryId, Long orderItemId, int quantity) {
+            this.medicineId = medicineId;
+            this.batchNo = batchNo;
+            this.inventoryId = inventoryId;
+            this.orderItemId = orderItemId;
+            this.quantity = quantity;
+        }
+
+        public String getMedicineId() { return medicineId; }
+        public String getBatchNo() { return batchNo; }
+        public int getQuantity() { return quantity; }
+    }
+
+    /**
+     * 记录结算扣减
+     * @param orderItemIds 与订单行下标一一对应的订单项ID
+     */
+    public void recordSale(String orderId, Integer operatorId, List<StockDeductionResult.Allocation> allocations,
+                           List<Long> orderItemIds) {
+        if (allocations.isEmpty()) return;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>(allocations.size());
+        for (StockDeductionResult.Allocation a : allocations) {
+            Long itemId = a.getLineIndex() < orderItemIds.size() ? orderItemIds.get(a.getLineIndex()) : null;
+            args.add(new Object[]{a.getMedicineId(), a.getBatchNo(), a.getInventoryId(), itemId,
+                    StockRecord.CHANGE_SALE, -a.getQuantity(), operatorId, orderId, null, now});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+    }
+
+    /** 订单结算时的批次分配，数量取正（无台账的历史订单返回空列表） */
+    public List<Entry> findSaleEntries(String orderId) {
+        return jdbcTemplate.query(
+                "SELECT medicine_id, batch_no, inventory_id, order_item_id, quantity FROM stock_record " +
+                "WHERE related_order_id = ? AND change_type = ? AND inventory_id IS NOT NULL",
+                (rs, n) -> new Entry(rs.getString("medicine_id"), rs.getString("batch_no"),
+                        rs.getLong("inventory_id"), (Long) rs.getObject("order_item_id", Long.class), -rs.getInt("quantity")),
+                orderId, StockRecord.CHANGE_SALE);
+    }
+
+    /**
+     * 按台账原路回补并追加 REFUND 行
+     * @return 未能回补的台账行（对应批次已被删除），由调用方另行处理
+     */
+    public List<Entry> restore(String orderId, Integer operatorId, List<Entry> entries, String remark) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> updates = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            updates.add(new Object[]{e.quantity, now, e.inventoryId});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(RESTORE_SQL, updates);
+
+        List<Entry> missing = new ArrayList<>();
+        List<Object[]> records = new ArrayList<>(entries.size());
+        String note = remark != null && remark.length() > 200 ? remark.substring(0, 200) : remark;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            if (counts[i] == 0) {
+                missing.add(e);
+                continue;
+            }
+            records.add(new Object[]{e.medicineId, e.batchNo, e.inventoryId, e.orderItemId,
+                    StockRecord.CHANGE_REFUND, e.quantity, operatorId, orderId, note, now});
+        }
+        if (!records.isEmpty()) jdbcTemplate.batchUpdate(INSERT_SQL, records);
+        return missing;
+    }
+}
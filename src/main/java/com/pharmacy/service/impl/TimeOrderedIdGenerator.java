@@ -0,0 +1,75 @@
+package com.pharmacy.service.impl;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.IdGeneratorService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间有序单号生成器：前缀 + yyyyMMddHHmmssSSS(17位) + 节点号(2位) + 毫秒内序号(4位)。
+ * 每个 (租户, 前缀) 维护一个 AtomicLong 状态 = 毫秒时间戳 << SEQ_BITS | 序号，CAS 推进，无锁；
+ * 同一毫秒内序号用尽时借用下一毫秒，时钟回拨时沿用上次时间戳继续递增，保证单调。
+ * 节点号区分多个应用实例（id-generator.node-id，未配置时按主机名派生），字符串按字典序即按时间排序。
+ */
+@Service
+public class TimeOrderedIdGenerator implements IdGeneratorService {
+
+    private static final int SEQ_BITS = 10; // 每毫秒 1024 个
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+    private static final DateTimeFormatter TS_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS").withZone(ZoneId.of("Asia/Shanghai"));
+
+    private final ConcurrentHashMap<String, AtomicLong> states = new ConcurrentHashMap<>();
+
+    @Value("${id-generator.node-id:-1}")
+    private int configuredNodeId;
+
+    private int nodeId;
+
+    @PostConstruct
+    public void init() {
+        nodeId = configuredNodeId >= 0 ? configuredNodeId % 100 : deriveNodeId();
+        System.out.println("[IdGenerator] 节点号=" + nodeId + (configuredNodeId >= 0 ? "(配置)" : "(主机名派生)"));
+    }
+
+    @Override
+    public String nextId(String prefix) {
+        String key = TenantContext.currentTenantKey() + ":" + prefix;
+        AtomicLong state = states.computeIfAbsent(key, k -> new AtomicLong());
+        long next;
+        while (true) {
+            long current = state.get();
+            long now = System.currentTimeMillis();
+            next = (now > (current >>> SEQ_BITS)) ? (now << SEQ_BITS) : current + 1;
+            if (state.compareAndSet(current, next)) break;
+        }
+        return format(prefix, next >>> SEQ_BITS, nodeId, next & SEQ_MASK);
+    }
+
+    static String format(String prefix, long millis, int node, long seq) {
+        StringBuilder sb = new StringBuilder(prefix.length() + 23);
+        sb.append(prefix).append(TS_FORMAT.format(Instant.ofEpochMilli(millis)));
+        if (node < 10) sb.append('0');
+        sb.append(node);
+        String s = Long.toString(seq);
+        for (int i = s.length(); i < 4; i++) sb.append('0');
+        return sb.append(s).toString();
+    }
+
+    private int deriveNodeId() {
+        try {
+            return Math.floorMod(InetAddress.getLocalHost().getHostName().hashCode(), 100);
+        } catch (Exception e) {
+            return Math.floorMod((int) ProcessHandle.current().pid(), 100);
+        }
+    }
+}
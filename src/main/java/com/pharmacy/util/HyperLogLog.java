@@ -0,0 +1,87 @@
+package com.pharmacy.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 去重计数草图（HyperLogLog，2^10 个寄存器，约 1KB）。
+ * 可按小时存储、任意合并（取寄存器最大值），用于“某时段消费会员数”这类不能直接相加的去重统计；
+ * 基数较小时走线性计数，几十人以内基本精确，大基数标准误差约 3%。
+ */
+public final class HyperLogLog {
+
+    public static final int PRECISION = 10;
+    public static final int SIZE = 1 << PRECISION;
+    private static final int MAX_RANK = 64 - PRECISION + 1;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[SIZE];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /** 从存储字节恢复；空或长度不符时返回空草图 */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != SIZE) return new HyperLogLog();
+        return new HyperLogLog(bytes.clone());
+    }
+
+    public void add(String value) {
+        if (value == null) return;
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION) + 1, MAX_RANK);
+        if (rank > registers[index]) registers[index] = (byte) rank;
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other == null) return;
+        for (int i = 0; i < SIZE; i++) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / SIZE);
+        double estimate = alpha * SIZE * SIZE / sum;
+        if (estimate <= 2.5 * SIZE && zeros > 0) {
+            estimate = SIZE * Math.log((double) SIZE / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        for (byte r : registers) {
+            if (r != 0) return false;
+        }
+        return true;
+    }
+
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    // FNV-1a 64 位 + murmur3 fmix64 终混，保证高位分布均匀
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,68 @@
+package com.pharmacy.util;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 药品名称的拼音检索码：每个名称生成全拼与首字母两个键，如 布洛芬 -> "buluofen blf"。
+ * 多音字取第一个读音；英文与数字原样保留（小写）。
+ */
+public final class PinyinUtil {
+    private PinyinUtil() {}
+
+    public static final int MAX_LENGTH = 500;
+
+    private static final HanyuPinyinOutputFormat FORMAT = new HanyuPinyinOutputFormat();
+    static {
+        FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    /** 多个名称的检索码，空格分隔、去重 */
+    public static String keys(String... names) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String name : names) {
+            if (name == null || name.isBlank()) continue;
+            StringBuilder full = new StringBuilder();
+            StringBuilder initials = new StringBuilder();
+            boolean inAscii = false;
+            for (char c : name.toLowerCase(Locale.ROOT).toCharArray()) {
+                String py = toPinyin(c);
+                if (py != null) {
+                    full.append(py);
+                    initials.append(py.charAt(0));
+                    inAscii = false;
+                } else if (Character.isLetterOrDigit(c) && c < 128) {
+                    full.append(c);
+                    if (!inAscii) initials.append(c); // 英文数字串只取首字符
+                    inAscii = true;
+                } else {
+                    inAscii = false;
+                }
+            }
+            if (full.length() > 0) keys.add(full.toString());
+            if (initials.length() > 0) keys.add(initials.toString());
+        }
+        String joined = String.join(" ", keys);
+        return joined.length() > MAX_LENGTH ? joined.substring(0, MAX_LENGTH) : joined;
+    }
+
+    private static String toPinyin(char c) {
+        if (Character.UnicodeScript.of(c) != Character.UnicodeScript.HAN) return null;
+        try {
+            String[] readings = PinyinHelper.toHanyuPinyinStringArray(c, FORMAT);
+            return readings != null && readings.length > 0 ? readings[0] : null;
+        } catch (BadHanyuPinyinOutputFormatCombination e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.pharmacy.util;
+
+import java.util.*;
+
+/**
+ * Space-Saving 热门项草图：最多监控 capacity 个键，超出时顶替当前最小计数的键并继承其计数作为误差上界。
+ * 真实计数落在 [count - error, count] 之间；只要某键真实权重超过 总权重 / capacity，就一定在监控集合中。
+ * 每个键可附带一个次要累计值（aux，如按销售额排名时的销量），随同一计数器进出监控集合：
+ * 它只累计键进入监控之后的部分，是真实值的下界。
+ * 更新与读取都只与 capacity 有关，与流量无关。支持按已监控键回退（退款），回退不会低于 0。线程安全。
+ */
+public final class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final TreeSet<Counter> ordered = new TreeSet<>(
+            Comparator.comparingLong((Counter c) -> c.count).thenComparingLong(c -> c.seq));
+    private long nextSeq;
+    private long total;
+
+    /** 单个监控键的计数快照 */
+    public static final class Entry {
+        private final String key;
+        private final long count;
+        private final long error;
+        private final long aux;
+
+        Entry(String key, long count, long error, long aux) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.aux = aux;
+        }
+
+        public String getKey() { return key; }
+        public long getCount() { return count; }
+        public long getError() { return error; }
+        public long getAux() { return aux; }
+    }
+
+    private static final class Counter {
+        final String key;
+        long count;
+        long error;
+        long aux;
+        long seq;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity 必须大于 0");
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void offer(String key, long weight) {
+        offer(key, weight, 0);
+    }
+
+    /** 计入权重，同时累加该键的附带值；顶替进入的键附带值从本次开始累计 */
+    public synchronized void offer(String key, long weight, long aux) {
+        if (key == null || weight <= 0) return;
+        total += weight;
+        Counter c = counters.get(key);
+        if (c == null) {
+            if (counters.size() < capacity) {
+                c = new Counter(key);
+            } else {
+                Counter min = ordered.pollFirst();
+                counters.remove(min.key);
+                c = new Counter(key);
+                c.count = min.count;
+                c.error = min.count;
+            }
+            counters.put(key, c);
+        } else {
+            ordered.remove(c);
+        }
+        c.count += weight;
+        c.aux += aux;
+        c.seq = nextSeq++;
+        ordered.add(c);
+    }
+
+    public void decrement(String key, long weight) {
+        decrement(key, weight, 0);
+    }
+
+    /** 回退已监控键的计数与附带值（未监控的键忽略） */
+    public synchronized void decrement(String key, long weight, long aux) {
+        if (key == null || weight <= 0) return;
+        Counter c = counters.get(key);
+        if (c == null) return;
+        ordered.remove(c);
+        long applied = Math.min(weight, c.count);
+        c.count -= applied;
+        c.error = Math.min(c.error, c.count);
+        c.aux = Math.max(0, c.aux - aux);
+        total -= applied;
+        ordered.add(c);
+    }
+
+    /** 已监控键的估计计数，未监控返回 0 */
+    public synchronized long estimate(String key) {
+        Counter c = counters.get(key);
+        return c == null ? 0 : c.count;
+    }
+
+    /** 计数最高的 n 个键（降序，计数为 0 的不返回） */
+    public synchronized List<Entry> top(int n) {
+        List<Entry> result = new ArrayList<>(Math.min(n, counters.size()));
+        for (Iterator<Counter> it = ordered.descendingIterator(); it.hasNext() && result.size() < n; ) {
+            Counter c = it.next();
+            if (c.count <= 0) break;
+            result.add(new Entry(c.key, c.count, c.error, c.aux));
+        }
+        return result;
+    }
+
+    /** 把另一个草图的计数并入本草图（按键相加，误差随之累加） */
+    public void merge(SpaceSaving other) {
+        if (other == null || other == this) return;
+        List<Entry> entries;
+        synchronized (other) {
+            entries = new ArrayList<>(other.counters.size());
+            for (Counter c : other.counters.values()) entries.add(new Entry(c.key, c.count, c.error, c.aux));
+        }
+        synchronized (this) {
+            for (Entry e : entries) {
+                offer(e.key, e.count, e.aux);
+                Counter c = counters.get(e.key);
+                if (c != null) c.error = Math.min(c.count, c.error + e.error);
+            }
+        }
+    }
+
+    public synchronized long total() {
+        return total;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
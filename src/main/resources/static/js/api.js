@@ -13,11 +13,13 @@ class PharmacyAPI {
     async request(endpoint, options = {}) {
         const url = `${this.baseURL}${endpoint}`;
         const tenant = this.getTenant();
+        const authToken = localStorage.getItem('authToken');
         const config = {
             method: options.method || 'GET',
             headers: {
                 'Content-Type': 'application/json',
                 [this.tenantHeaderKey]: tenant,
+                ...(authToken ? { 'Authorization': 'Bearer ' + authToken } : {}),
                 ...options.headers,
             },
             ...options,
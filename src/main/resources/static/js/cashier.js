@@ -5,6 +5,7 @@
   const cart = []; // { medicineId, name, spec, price, quantity }
   let selectedMember = null;
   let hangOrders = []; // 简单前端缓存挂单
+  let pendingSubmit = null; // { body, key }：同一购物车重试沿用同一个幂等键，服务端回放首次结果
 
   // 工具函数
   function formatMoney(v){ return '¥' + (Number(v||0).toFixed(2)); }
@@ -117,6 +118,18 @@
     const category = $('medicine-category-filter').value.trim();
     const resultBox = $('medicine-search-result');
     if(!resultBox) return;
+    // 纯数字 8~14 位视为扫码，命中直接加入购物车
+    if(/^\d{8,14}$/.test(keyword)){
+      try {
+        const scan = await medicineAPI.getByBarcode(keyword);
+        if(scan && scan.data){
+          addToCart(scan.data);
+          $('medicine-search-input').value = '';
+          hide(resultBox);
+          return;
+        }
+      } catch(err){ /* 未登记条码，按关键词继续搜索 */ }
+    }
     resultBox.classList.remove('hidden');
     safeInner(resultBox, '<div class="p-3 text-center text-gray-400"><i class="fa fa-spinner fa-spin"></i> 搜索中...</div>');
     try {
@@ -135,6 +148,24 @@
     }
   }
 
+  async function suggestMedicines(){
+    const keyword = $('medicine-search-input').value.trim();
+    const resultBox = $('medicine-search-result');
+    if(!resultBox) return;
+    if(!keyword || /^\d{8,14}$/.test(keyword)){ hide(resultBox); return; }
+    try {
+      const res = await medicineAPI.suggest(keyword, 8);
+      if(keyword !== $('medicine-search-input').value.trim()) return; // 已有更新的输入
+      const list = res && res.data ? res.data : [];
+      if(list.length === 0){ hide(resultBox); return; }
+      resultBox.classList.remove('hidden');
+      safeInner(resultBox, list.map(m => `<div class="px-3 py-2 hover:bg-blue-50 cursor-pointer text-sm" data-id="${m.id}">
+        <div class="flex justify-between"><span>${m.name}</span><span class="text-gray-500">${formatMoney(m.price)}</span></div>
+        <div class="text-xs ${m.inStock ? 'text-gray-400' : 'text-red-400'}">${m.spec || ''}${m.inStock ? '' : ' 缺货'}</div>
+      </div>`).join(''));
+    } catch(err){ /* 联想失败不打断输入 */ }
+  }
+
   function bindMedicineSearchEvents(){
     const resultBox = $('medicine-search-result');
     if(resultBox){
@@ -148,6 +179,12 @@
     }
     $('medicine-search-btn').addEventListener('click', searchMedicines);
     $('medicine-search-input').addEventListener('keydown', e => { if(e.key==='Enter'){ e.preventDefault(); searchMedicines(); }});
+    // 输入时只取联想结果，回车/点击搜索才走完整搜索
+    let suggestTimer = null;
+    $('medicine-search-input').addEventListener('input', () => {
+      clearTimeout(suggestTimer);
+      suggestTimer = setTimeout(suggestMedicines, 150);
+    });
   }
 
   // 会员搜索
@@ -208,12 +245,18 @@
       paymentMethod: $('payment-method').value,
       originalAmount: cart.reduce((s,i)=> s + i.price * i.quantity, 0),
       discountAmount: Number($('discount-amount').value || 0),
+      usedPoints: selectedMember ? Math.max(0, Math.floor(Number($('use-points').value || 0))) : 0,
       totalAmount: cart.reduce((s,i)=> s + i.price * i.quantity, 0), // 后端可再次校验
       items: cart.map(i => ({ medicineId: i.medicineId, quantity: i.quantity, unitPrice: i.price }))
     };
+    const body = JSON.stringify(orderData);
+    if(!pendingSubmit || pendingSubmit.body !== body){
+      pendingSubmit = { body, key: newIdempotencyKey() };
+    }
     feedback('<i class="fa fa-spinner fa-spin"></i> 正在提交订单...', 'info');
     try {
-      const res = await orderAPI.create(orderData);
+      const res = await orderAPI.create(orderData, pendingSubmit.key);
+      pendingSubmit = null;
       feedback(`<i class='fa fa-check-circle text-green-600'></i> 订单创建成功：${res.orderId || (res.data && res.data.orderNumber)||''}`, 'success');
       // 清空购物车
       cart.length = 0; renderCart();
@@ -222,6 +265,11 @@
     }
   }
 
+  function newIdempotencyKey(){
+    if(window.crypto && typeof window.crypto.randomUUID === 'function') return window.crypto.randomUUID();
+    return 'k' + Date.now().toString(36) + Math.random().toString(36).slice(2, 12);
+  }
+
   function feedback(msg, type){
     const box = $('order-feedback');
     if(!box) return;
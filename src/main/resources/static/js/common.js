@@ -15,6 +15,10 @@ async function apiCall(endpoint, options = {}) {
         const url = `${BASE_URL}${endpoint}`;
         const tenant = (typeof localStorage !== 'undefined') ? localStorage.getItem('selectedTenant') : null;
         if(!options.headers) options.headers = {};
+        const authToken = (typeof localStorage !== 'undefined') ? localStorage.getItem('authToken') : null;
+        if(authToken && !options.headers['Authorization']){
+            options.headers['Authorization'] = 'Bearer ' + authToken; // 服务端据此识别收银员
+        }
         if(tenant){
             options.headers['X-Shop-Id'] = tenant;
         } else {
@@ -75,6 +79,10 @@ async function apiCall(endpoint, options = {}) {
 const medicineAPI = {
     getAll: () => apiCall('/medicines'),
     getById: (id) => apiCall(`/medicines/${id}`),
+    // 扫码枪输入的条码
+    getByBarcode: (code) => apiCall(`/medicines/barcode/${encodeURIComponent(code)}`),
+    // 输入联想（精简字段）
+    suggest: (q, limit = 8) => apiCall(`/medicines/suggest?q=${encodeURIComponent(q)}&limit=${limit}`),
     search: (keyword, category = '', page = 1, size = 100) => {
         let url = `/medicines/search?page=${page}&size=${size}`;
         if (keyword) {
@@ -109,8 +117,9 @@ const medicineAPI = {
 
 // 订单相关API
 const orderAPI = {
-    create: (orderData) => apiCall('/orders', {
+    create: (orderData, idempotencyKey) => apiCall('/orders', {
         method: 'POST',
+        headers: idempotencyKey ? { 'Idempotency-Key': idempotencyKey } : {},
         body: JSON.stringify(orderData)
     }),
     getOrders: (filters = {}, page = 1, size = 10) => {
@@ -0,0 +1,87 @@
+package com.pharmacy;
+
+import com.pharmacy.service.CatalogVersionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogVersionServiceTest {
+
+    private static final String INSERT_MEDICINE = "INSERT INTO medicine(medicine_id, generic_name, spec, approval_no, category_id, " +
+            "retail_price, catalog_version) VALUES (?, '布洛芬片', '10片/盒', '国药准字H10900089', 1, 12.50, ?)";
+
+    @Test
+    void testVersionsSeedFromDatabaseAndHideInFlightWrites() throws Exception {
+        JdbcTemplate jdbc = TestSchema.jdbc("catalogver");
+        jdbc.update(INSERT_MEDICINE, "M1", 7);
+        jdbc.update("INSERT INTO category(category_id, category_name, catalog_version) VALUES (1, '解热镇痛', 3)");
+
+        CatalogVersionService service = new CatalogVersionService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbc);
+        assertEquals(7, service.currentVersion());
+
+        // 版本 8 写入未结束时，已完成的版本 9 暂不公布
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<Long> slow = pool.submit(() -> service.write(v -> {
+            started.countDown();
+            try { release.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            return v;
+        }));
+        started.await();
+        assertEquals(Long.valueOf(9), service.<Long>write(v -> v));
+        assertEquals(7, service.currentVersion());
+        release.countDown();
+        assertEquals(8L, slow.get());
+        assertEquals(9, service.currentVersion());
+        pool.shutdown();
+
+        service.recordDelete(CatalogVersionService.ENTITY_MEDICINE, "M1");
+        assertEquals(10, service.currentVersion());
+        List<CatalogVersionService.Tombstone> deleted = service.findTombstones(9, 10);
+        assertEquals(1, deleted.size());
+        assertEquals("M1", deleted.get(0).getEntityId());
+        assertTrue(service.findTombstones(10, 10).isEmpty());
+    }
+
+    @Test
+    void testVersionStaysInFlightUntilTransactionCompletes() {
+        DataSource ds = TestSchema.dataSource("catalogtx");
+        JdbcTemplate jdbc = new JdbcTemplate(ds);
+        CatalogVersionService service = new CatalogVersionService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbc);
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+
+        // 写入返回后事务尚未提交：版本仍在途，不对外公布
+        tx.executeWithoutResult(status -> {
+            long v = service.write(version -> {
+                jdbc.update(INSERT_MEDICINE, "M1", version);
+                return version;
+            });
+            assertEquals(1, v);
+            assertEquals(0, service.currentVersion());
+        });
+        assertEquals(1, service.currentVersion());
+
+        // 回滚同样解除在途标记
+        tx.executeWithoutResult(status -> {
+            service.write(version -> jdbc.update(INSERT_MEDICINE, "M2", version));
+            assertEquals(1, service.currentVersion());
+            status.setRollbackOnly();
+        });
+        assertEquals(2, service.currentVersion());
+    }
+}
@@ -0,0 +1,120 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.impl.DashboardSnapshotCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DashboardSnapshotCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+    }
+
+    private DashboardSnapshotCache newCache() {
+        DashboardSnapshotCache cache = new DashboardSnapshotCache();
+        ReflectionTestUtils.setField(cache, "clock", new Clock() {
+            @Override public ZoneId getZone() { return ZoneId.systemDefault(); }
+            @Override public Clock withZone(ZoneId zone) { return this; }
+            @Override public Instant instant() { return Instant.ofEpochMilli(now.get()); }
+        });
+        return cache;
+    }
+
+    private Supplier<Map<String, Object>> loader(String tenantTag) {
+        return () -> Map.of("tenant", tenantTag, "load", loads.incrementAndGet());
+    }
+
+    @Test
+    void testSingleFlightAcrossConcurrentScreens() throws Exception {
+        DashboardSnapshotCache cache = newCache();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<Map<String, Object>> slow = () -> {
+            loads.incrementAndGet();
+            try { release.await(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) { }
+            return Map.of("v", 1);
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Map<String, Object>>> screens = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            screens.add(pool.submit(() -> {
+                TenantContext.setTenant("bht");
+                try {
+                    return cache.get("stats", slow);
+                } finally {
+                    TenantContext.clear();
+                }
+            }));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<Map<String, Object>> f : screens) assertEquals(1, f.get(5, TimeUnit.SECONDS).get("v"));
+        pool.shutdown();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testTenantIsolationAndRefreshAhead() {
+        DashboardSnapshotCache cache = newCache();
+        TenantContext.setTenant("bht");
+        assertEquals("bht", cache.get("stats", loader("bht")).get("tenant"));
+        TenantContext.setTenant("wx");
+        assertEquals("wx", cache.get("stats", loader("wx")).get("tenant"));
+        assertEquals(2, loads.get());
+
+        // 窗口内命中
+        now.addAndGet(60_000);
+        assertEquals("wx", cache.get("stats", loader("wx")).get("tenant"));
+        assertEquals(2, loads.get());
+
+        // 超过 80% ttl：返回旧快照，同时重算（无调度器时在当前线程执行）
+        now.addAndGet(200_000);
+        assertEquals(2, cache.get("stats", loader("wx")).get("load"));
+        assertEquals(3, loads.get());
+        assertEquals(3, cache.get("stats", loader("wx")).get("load"));
+    }
+
+    @Test
+    void testStaleWhileRevalidateOnErrorsAndInvalidation() {
+        DashboardSnapshotCache cache = newCache();
+        TenantContext.setTenant("rzt");
+        cache.get("stats", loader("rzt"));
+        Supplier<Map<String, Object>> failing = () -> { throw new RuntimeException("db down"); };
+
+        // 过期后重算失败：沿用旧快照
+        now.addAndGet(400_000);
+        assertEquals(1, cache.get("stats", failing).get("load"));
+
+        // 订单事件只标记过期：仍返回旧值，间隔满足后后台重算
+        now.addAndGet(-400_000);
+        cache.get("stats", loader("rzt"));
+        cache.markStale("stats");
+        now.addAndGet(20_000);
+        assertEquals(1, cache.get("stats", loader("rzt")).get("load"));
+        assertEquals(2, cache.get("stats", loader("rzt")).get("load"));
+
+        // 按键失效：没有旧快照可用时失败向上抛出
+        cache.invalidate("stats");
+        assertThrows(RuntimeException.class, () -> cache.get("stats", failing));
+        TenantContext.setTenant("bht");
+        assertThrows(RuntimeException.class, () -> cache.get("stats", failing));
+    }
+}
@@ -0,0 +1,94 @@
+package com.pharmacy;
+
+import com.pharmacy.event.DomainEventDispatcher;
+import com.pharmacy.multitenant.TenantContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainEventDispatcherTest {
+
+    @Test
+    void testTenantIsPropagatedAndDuplicatesCoalesced() throws Exception {
+        DomainEventDispatcher dispatcher = new DomainEventDispatcher();
+        dispatcher.init();
+        try {
+            CountDownLatch gate = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(4);
+            // 占满工作线程，保证后续任务处于排队状态
+            for (int i = 0; i < 4; i++) {
+                dispatcher.execute(() -> {
+                    started.countDown();
+                    try { gate.await(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+                });
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            AtomicInteger runs = new AtomicInteger();
+            AtomicReference<String> seenTenant = new AtomicReference<>();
+            CountDownLatch done = new CountDownLatch(1);
+            TenantContext.setTenant("wx");
+            try {
+                for (int i = 0; i < 5; i++) {
+                    dispatcher.executeCoalesced("member-stats:M1", () -> {
+                        runs.incrementAndGet();
+                        seenTenant.set(TenantContext.getTenant());
+                        done.countDown();
+                    });
+                }
+            } finally {
+                TenantContext.clear();
+            }
+            gate.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(1, runs.get());
+            assertEquals("wx", seenTenant.get());
+            assertEquals(4L, dispatcher.stats().get("coalesced"));
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void testFullQueueDropsInsteadOfRunningOnCaller() throws Exception {
+        DomainEventDispatcher dispatcher = new DomainEventDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "poolSize", 1);
+        ReflectionTestUtils.setField(dispatcher, "queueCapacity", 1);
+        dispatcher.init();
+        try {
+            CountDownLatch gate = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            dispatcher.execute(() -> {
+                started.countDown();
+                try { gate.await(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            dispatcher.execute(() -> { });
+
+            // 工作线程与队列都已占满：后续任务丢弃计数，不在提交线程执行
+            Thread caller = Thread.currentThread();
+            AtomicReference<Thread> ranOn = new AtomicReference<>();
+            dispatcher.execute(() -> ranOn.set(Thread.currentThread()));
+            dispatcher.executeCoalesced("k", () -> ranOn.set(Thread.currentThread()));
+            assertNull(ranOn.get());
+            assertNotSame(caller, ranOn.get());
+            assertEquals(2L, dispatcher.stats().get("dropped"));
+
+            // 被丢弃的合并键已释放，之后可以再次提交
+            gate.countDown();
+            CountDownLatch done = new CountDownLatch(1);
+            Thread.sleep(100);
+            dispatcher.executeCoalesced("k", done::countDown);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+}
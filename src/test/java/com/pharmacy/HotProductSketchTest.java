@@ -0,0 +1,187 @@
+package com.pharmacy;
+
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.event.OrderPlacedEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.HotProductSketch;
+import com.pharmacy.util.SpaceSaving;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotProductSketchTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+    private final LocalDate today = LocalDate.of(2026, 3, 10);
+    private final AtomicReference<LocalDateTime> now = new AtomicReference<>(today.atTime(15, 0));
+    private JdbcTemplate jdbc;
+    private HotProductSketch sketch;
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+    }
+
+    private void setUp(int capacity) {
+        jdbc = TestSchema.jdbc("hotproducts");
+        order("O1", 1, today.atTime(9, 0), "P1", 5, 50.0);
+        order("O2", 1, today.atTime(10, 0), "P2", 2, 200.0);
+        order("O3", 1, today.minusDays(3).atTime(10, 0), "P3", 20, 40.0);
+        order("O4", 2, today.atTime(11, 0), "P3", 99, 99.0);           // 已退款
+        order("O5", 1, today.minusDays(8).atTime(10, 0), "P4", 50, 500.0); // 超出 7 天窗口
+
+        sketch = new HotProductSketch();
+        ReflectionTestUtils.setField(sketch, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(sketch, "capacity", capacity);
+        ReflectionTestUtils.setField(sketch, "clock", new Clock() {
+            @Override public ZoneId getZone() { return ZONE; }
+            @Override public Clock withZone(ZoneId zone) { return this; }
+            @Override public Instant instant() { return now.get().atZone(ZONE).toInstant(); }
+        });
+    }
+
+    private void order(String id, int status, LocalDateTime time, String medicineId, int qty, double subtotal) {
+        jdbc.update("INSERT INTO `order`(order_id, payment_status, order_time) VALUES (?,?,?)", id, status, Timestamp.valueOf(time));
+        jdbc.update("INSERT INTO order_item(order_id, medicine_id, quantity, unit_price, subtotal) VALUES (?,?,?,?,?)",
+                id, medicineId, qty, subtotal / qty, subtotal);
+    }
+
+    private static List<String> ids(List<HotProductSketch.Item> items) {
+        return items.stream().map(HotProductSketch.Item::getMedicineId).toList();
+    }
+
+    @Test
+    void testDayAndWeekRankings() {
+        setUp(50);
+        assertEquals(List.of("P1", "P2"), ids(sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 10)));
+        assertEquals(List.of("P2", "P1"), ids(sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.REVENUE, 10)));
+        List<HotProductSketch.Item> week = sketch.top(HotProductSketch.Window.WEEK, HotProductSketch.Metric.UNITS, 10);
+        assertEquals(List.of("P3", "P1", "P2"), ids(week));
+        assertEquals(40.0, week.get(0).getAmount(), 0.001);
+
+        // 增量：下单计入当天，退款回退
+        sketch.onOrderEvent(new OrderPlacedEvent("default", "O6", null, 30.0, today.atTime(15, 0),
+                List.of(new OrderEvent.Line("P2", 6, 30.0))));
+        List<HotProductSketch.Item> day = sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 1);
+        assertEquals("P2", day.get(0).getMedicineId());
+        assertEquals(8, day.get(0).getUnits());
+        assertEquals(230.0, day.get(0).getAmount(), 0.001);
+        sketch.onOrderEvent(new OrderRefundedEvent("default", "O6", null, 30.0, today.atTime(15, 0),
+                List.of(new OrderEvent.Line("P2", 6, 30.0)), today.atTime(15, 5), "退货"));
+        assertEquals(List.of("P1", "P2"), ids(sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 10)));
+
+        // 跨日：今日榜清空，近 7 天仍保留；窗口外的天被丢弃
+        now.set(today.plusDays(4).atTime(0, 1));
+        assertTrue(sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 10).isEmpty());
+        assertEquals(List.of("P1", "P2"), ids(sketch.top(HotProductSketch.Window.WEEK, HotProductSketch.Metric.UNITS, 10)));
+    }
+
+    @Test
+    void testRevenueRankKeepsUnitsWhenUnitsSketchEvictsKey() {
+        setUp(2);
+        assertEquals(List.of("P2", "P1"), ids(sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.REVENUE, 10)));
+        // 销量草图已满，P5 顶替计数最小的 P2；按销售额排名时 P2 的销量仍取自同一计数器
+        sketch.onOrderEvent(new OrderPlacedEvent("default", "O6", null, 1.0, today.atTime(15, 0),
+                List.of(new OrderEvent.Line("P5", 10, 1.0))));
+        HotProductSketch.Item top = sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.REVENUE, 1).get(0);
+        assertEquals("P2", top.getMedicineId());
+        assertEquals(2, top.getUnits());
+        assertEquals(200.0, top.getAmount(), 1e-9);
+        HotProductSketch.Item byUnits = sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 1).get(0);
+        assertEquals("P5", byUnits.getMedicineId());
+        assertEquals(1.0, byUnits.getAmount(), 1e-9);
+    }
+
+    @Test
+    void testEventsDuringReloadAreNeitherLostNorDoubleCounted() {
+        setUp(50);
+        sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 10);
+        List<Runnable> beforeQuery = new ArrayList<>();
+        List<Runnable> afterQuery = new ArrayList<>();
+        JdbcTemplate hooked = new JdbcTemplate(jdbc.getDataSource()) {
+            @Override
+            public <T> T query(String sql, ResultSetExtractor<T> rse, Object... args) {
+                beforeQuery.forEach(Runnable::run);
+                T result = super.query(sql, rse, args);
+                afterQuery.forEach(Runnable::run);
+                return result;
+            }
+        };
+        ReflectionTestUtils.setField(sketch, "jdbcTemplate", hooked);
+
+        // 查询前已提交、事件在查询期间到达：只计一次
+        order("O6", 1, today.atTime(15, 0), "P2", 6, 30.0);
+        beforeQuery.add(() -> sketch.onOrderEvent(new OrderPlacedEvent("default", "O6", null, 30.0, today.atTime(15, 0),
+                List.of(new OrderEvent.Line("P2", 6, 30.0)))));
+        // 查询之后才提交的订单：不在查询结果里，事件必须保留
+        afterQuery.add(() -> sketch.onOrderEvent(new OrderPlacedEvent("default", "O7", null, 8.0, today.atTime(15, 1),
+                List.of(new OrderEvent.Line("P5", 4, 8.0)))));
+        // 查询时仍为已支付、随后退款：以退款为准
+        afterQuery.add(() -> sketch.onOrderEvent(new OrderRefundedEvent("default", "O1", null, 50.0, today.atTime(9, 0),
+                List.of(new OrderEvent.Line("P1", 5, 50.0)), today.atTime(15, 2), "退货")));
+        sketch.reload();
+
+        List<HotProductSketch.Item> day = sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 10);
+        assertEquals(List.of("P2", "P5"), ids(day));
+        assertEquals(8, day.get(0).getUnits());
+        assertEquals(230.0, day.get(0).getAmount(), 0.001);
+        assertEquals(4, day.get(1).getUnits());
+    }
+
+    @Test
+    void testTenantsAreIsolated() {
+        setUp(50);
+        TenantContext.setTenant("bht");
+        sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 10);
+        sketch.onOrderEvent(new OrderPlacedEvent("bht", "O7", null, 10.0, today.atTime(15, 0),
+                List.of(new OrderEvent.Line("P9", 100, 10.0))));
+        assertEquals("P9", sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 1).get(0).getMedicineId());
+        TenantContext.setTenant("wx");
+        assertEquals("P1", sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 1).get(0).getMedicineId());
+
+        // 事件按其携带的租户计入，与投递线程当前的租户上下文无关
+        sketch.onOrderEvent(new OrderPlacedEvent("bht", "O8", null, 10.0, today.atTime(15, 5),
+                List.of(new OrderEvent.Line("P8", 500, 10.0))));
+        assertEquals("P1", sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 1).get(0).getMedicineId());
+        TenantContext.setTenant("bht");
+        assertEquals("P8", sketch.top(HotProductSketch.Window.DAY, HotProductSketch.Metric.UNITS, 1).get(0).getMedicineId());
+    }
+
+    @Test
+    void testSpaceSavingKeepsHeavyHittersWithBoundedCounters() {
+        SpaceSaving ss = new SpaceSaving(20);
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            if (i % 10 < 3) ss.offer("hot-" + (i % 3), 1);           // 3 个热门项各约 10%
+            else ss.offer("tail-" + random.nextInt(5000), 1);      // 长尾
+        }
+        List<SpaceSaving.Entry> top = ss.top(3);
+        assertEquals(3, top.size());
+        for (SpaceSaving.Entry e : top) {
+            assertTrue(e.getKey().startsWith("hot-"), e.getKey());
+            long trueCount = 2000;
+            assertTrue(e.getCount() >= trueCount && e.getCount() - e.getError() <= trueCount);
+        }
+        assertEquals(20000, ss.total());
+
+        SpaceSaving other = new SpaceSaving(20);
+        other.offer("hot-0", 500);
+        ss.merge(other);
+        assertEquals("hot-0", ss.top(1).get(0).getKey());
+        ss.decrement("hot-0", 1_000_000);
+        assertEquals(0, ss.estimate("hot-0"));
+        assertFalse(ss.top(20).stream().anyMatch(e -> e.getKey().equals("hot-0")));
+    }
+}
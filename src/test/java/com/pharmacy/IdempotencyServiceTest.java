@@ -0,0 +1,85 @@
+package com.pharmacy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharmacy.service.IdempotencyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyServiceTest {
+
+    private IdempotencyService service;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = TestSchema.jdbc("idem");
+        service = new IdempotencyService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "waitSeconds", 5);
+        service.init();
+    }
+
+    @Test
+    void testConcurrentDuplicatesRunActionOnce() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        Map<String, Object> request = Map.of("items", List.of("M1"));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ResponseEntity<?>>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return service.execute("order-create", "K1", request, () -> {
+                    runs.incrementAndGet();
+                    try { Thread.sleep(200); } catch (InterruptedException ignored) {}
+                    return ResponseEntity.ok(Map.of("code", 200, "orderId", "O1"));
+                });
+            }));
+        }
+        start.countDown();
+        for (Future<ResponseEntity<?>> f : futures) {
+            assertEquals(200, f.get(10, TimeUnit.SECONDS).getStatusCode().value());
+        }
+        pool.shutdown();
+        assertEquals(1, runs.get());
+        assertEquals(1, jdbc.queryForObject("SELECT status FROM idempotency_record WHERE idem_key='K1'", Integer.class));
+    }
+
+    @Test
+    void testReplayFromTableAndRejectDifferentBody() {
+        AtomicInteger runs = new AtomicInteger();
+        service.execute("order-refund", "K2", Map.of("orderId", "O1"),
+                () -> { runs.incrementAndGet(); return ResponseEntity.ok(Map.of("code", 200)); });
+        // 模拟重启：清空内存缓存，只剩表记录
+        service.init();
+        ResponseEntity<?> replay = service.execute("order-refund", "K2", Map.of("orderId", "O1"),
+                () -> { runs.incrementAndGet(); return ResponseEntity.ok(Map.of("code", 200)); });
+        assertEquals(1, runs.get());
+        assertEquals("true", replay.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+
+        ResponseEntity<?> mismatch = service.execute("order-refund", "K2", Map.of("orderId", "O2"),
+                () -> { runs.incrementAndGet(); return ResponseEntity.ok(Map.of("code", 200)); });
+        assertEquals(422, mismatch.getStatusCode().value());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testServerErrorReleasesKey() {
+        AtomicInteger runs = new AtomicInteger();
+        service.execute("order-create", "K3", Map.of(), () -> { runs.incrementAndGet(); return ResponseEntity.internalServerError().build(); });
+        ResponseEntity<?> retry = service.execute("order-create", "K3", Map.of(),
+                () -> { runs.incrementAndGet(); return ResponseEntity.ok(Map.of("code", 200)); });
+        assertEquals(2, runs.get());
+        assertEquals(200, retry.getStatusCode().value());
+    }
+}
@@ -0,0 +1,77 @@
+package com.pharmacy;
+
+import com.pharmacy.dto.MedicineStockSummary;
+import com.pharmacy.entity.Inventory;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.repository.InventoryRepository;
+import com.pharmacy.repository.MedicineRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class InventoryStockSummaryTest {
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Test
+    void testSummarizeByMedicineIdsInOneQuery() {
+        medicine("SUM1");
+        medicine("SUM2");
+        LocalDate today = LocalDate.now();
+        Inventory expired = new Inventory("SUM1", "B1", 4, today.minusDays(3));
+        Inventory valid = new Inventory("SUM1", "B2", 6, today.plusDays(20));
+        valid.setMinStock(8);
+        Inventory other = new Inventory("SUM2", "C1", 2, null);
+        Inventory comma = new Inventory("SUM2", "C,2", 1, null);
+        inventoryRepository.saveAll(List.of(expired, valid, other, comma));
+        inventoryRepository.flush();
+
+        Map<String, MedicineStockSummary> rows = inventoryRepository.summarizeByMedicineIds(List.of("SUM1", "SUM2", "NONE"))
+                .stream().collect(Collectors.toMap(MedicineStockSummary::getMedicineId, Function.identity()));
+        assertEquals(2, rows.size());
+        MedicineStockSummary s1 = rows.get("SUM1");
+        assertEquals(10, s1.getTotalStock());
+        assertEquals(today.plusDays(20), s1.getEarliestExpiry());
+        assertEquals(8, s1.getMinStock());
+        assertNull(rows.get("SUM2").getEarliestExpiry());
+
+        // 批号按行返回：含逗号的批号保持完整
+        Map<String, List<String>> batches = inventoryRepository.findBatchNosByMedicineIds(List.of("SUM1", "SUM2")).stream()
+                .collect(Collectors.groupingBy(r -> (String) r[0], Collectors.mapping(r -> (String) r[1], Collectors.toList())));
+        assertEquals(List.of("B1", "B2"), batches.get("SUM1"));
+        assertEquals(List.of("C,2", "C1"), batches.get("SUM2"));
+    }
+
+    private void medicine(String id) {
+        Medicine m = new Medicine();
+        m.setMedicineId(id);
+        m.setGenericName("汇总药品" + id);
+        m.setTradeName("汇总药品" + id);
+        m.setSpec("10片/盒");
+        m.setApprovalNo("APP-" + id);
+        m.setCategoryId(1);
+        m.setManufacturer("测试厂家");
+        m.setRetailPrice(new BigDecimal("9.90"));
+        m.setMemberPrice(new BigDecimal("8.90"));
+        m.setIsRx(false);
+        m.setUnit("盒");
+        m.setStatus("ACTIVE");
+        medicineRepository.save(m);
+    }
+}
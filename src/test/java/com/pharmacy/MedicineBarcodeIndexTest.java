@@ -0,0 +1,51 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.service.MedicineBarcodeIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicineBarcodeIndexTest {
+
+    @Test
+    void testLookupFallbackAndSync() {
+        JdbcTemplate jdbc = TestSchema.jdbc("barcodeidx");
+        String insert = "INSERT INTO medicine(medicine_id, barcode, generic_name, trade_name, spec, approval_no, category_id, unit, " +
+                "retail_price, deleted) VALUES (?,?,?,?,'10片/盒','国药准字H10900089',1,'盒',?,?)";
+        jdbc.update(insert, "B1", "6901234567890", "布洛芬片", "芬必得", new BigDecimal("12.50"), 0);
+        jdbc.update(insert, "B2", "6900000000002", "已删除药品", null, new BigDecimal("1.00"), 1);
+
+        MedicineBarcodeIndex index = new MedicineBarcodeIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+
+        MedicineBarcodeIndex.Entry entry = index.get(" 6901234567890 ");
+        assertEquals("B1", entry.getMedicineId());
+        assertEquals(new BigDecimal("12.50"), entry.getRetailPrice());
+        assertNull(index.get("6900000000002"));
+
+        // 预热之后直接写库的新条码，未命中时回查数据库并补入
+        jdbc.update(insert, "B3", "6903333333333", "维生素C片", null, new BigDecimal("5.00"), 0);
+        assertEquals("B3", index.get("6903333333333").getMedicineId());
+
+        // 条码变更：旧条码失效，新条码可查
+        Medicine m = new Medicine();
+        m.setMedicineId("B1");
+        m.setBarcode("6901111111111");
+        m.setGenericName("布洛芬片");
+        m.setRetailPrice(new BigDecimal("13.00"));
+        m.setDeleted(false);
+        jdbc.update("UPDATE medicine SET barcode = ?, retail_price = ? WHERE medicine_id = 'B1'", "6901111111111", new BigDecimal("13.00"));
+        index.put(m);
+        assertNull(index.get("6901234567890"));
+        assertEquals(new BigDecimal("13.00"), index.get("6901111111111").getRetailPrice());
+
+        index.remove("B3");
+        jdbc.update("UPDATE medicine SET deleted = 1 WHERE medicine_id = 'B3'");
+        assertNull(index.get("6903333333333"));
+    }
+}
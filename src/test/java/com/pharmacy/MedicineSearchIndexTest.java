@@ -0,0 +1,156 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.event.OrderEvent;
+import com.pharmacy.event.OrderPlacedEvent;
+import com.pharmacy.service.MedicineSearchIndex;
+import com.pharmacy.util.PinyinUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicineSearchIndexTest {
+
+    @Test
+    void testRankedSearchAndIncrementalUpdate() {
+        JdbcTemplate jdbc = TestSchema.jdbc("searchidx");
+        String insert = "INSERT INTO medicine(medicine_id, generic_name, trade_name, description, manufacturer, spec, category_id, " +
+                "is_rx, deleted, approval_no, retail_price) VALUES (?,?,?,?,?,?,?,?,?,'国药准字H10900089',9.9)";
+        jdbc.update(insert, "M1", "阿莫西林胶囊", "阿莫仙", "用于敏感菌感染", "珠海联邦", "0.25g*24粒", 2, 1, 0);
+        jdbc.update(insert, "M2", "布洛芬缓释胶囊", "芬必得", "含阿莫西林成分说明（测试）", "中美史克", "0.3g*20粒", 1, 0, 0);
+        jdbc.update(insert, "M3", "阿莫西林", "阿莫西林", null, "测试厂家", "10片/盒", 2, 1, 0);
+        jdbc.update(insert, "M4", "阿莫西林颗粒", "阿莫西林颗粒", null, "测试厂家", "10袋", 2, 1, 1);
+        jdbc.update(insert, "M5", "Vitamin C", "维C片", null, "Bayer", "100mg", 1, 0, 0);
+
+        MedicineSearchIndex index = new MedicineSearchIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+        assertFalse(index.isReady());
+        assertNull(index.search("阿莫西林"));
+        assertEquals(4, index.rebuild());
+
+        // 名称完全相同 > 名称前缀 > 其他字段；已软删除的 M4 不出现
+        assertEquals(List.of("M3", "M1", "M2"), ids(index.search("阿莫西林")));
+        assertEquals(List.of("M1"), ids(index.search("阿莫 珠海")));
+        assertEquals(List.of("M3", "M1"), ids(index.search("阿")).subList(0, 2));
+        assertEquals(List.of("M5"), ids(index.search("vita")));
+        assertEquals(List.of("M5"), ids(index.search("维C")));
+        assertTrue(index.search("青霉素").isEmpty());
+
+        Medicine m = new Medicine();
+        m.setMedicineId("M2");
+        m.setGenericName("布洛芬缓释胶囊");
+        m.setTradeName("芬必得");
+        m.setIsRx(false);
+        m.setStatus("ACTIVE");
+        m.setDeleted(false);
+        index.put(m);
+        assertEquals(List.of("M3", "M1"), ids(index.search("阿莫西林")));
+
+        m.setMedicineId("M6");
+        m.setTradeName("青霉素V钾片");
+        index.put(m);
+        assertEquals(List.of("M6"), ids(index.search("青霉素")));
+        index.remove("M6");
+        assertTrue(index.search("青霉素").isEmpty());
+    }
+
+    @Test
+    void testPinyinSearchRankedByRecentSales() {
+        assertEquals("buluofenhuanshijiaonang blfhsjn fenbide fbd", PinyinUtil.keys("布洛芬缓释胶囊", "芬必得"));
+        assertEquals("weishengsucpian wsscp", PinyinUtil.keys("维生素C片", null));
+
+        JdbcTemplate jdbc = TestSchema.jdbc("pinyinidx");
+        String insert = "INSERT INTO medicine(medicine_id, generic_name, trade_name, spec, approval_no, category_id, retail_price) " +
+                "VALUES (?,?,?,'10片/盒','国药准字H10900089',1,9.9)";
+        jdbc.update(insert, "P1", "布洛芬片", "布洛芬片");
+        jdbc.update(insert, "P2", "布洛芬混悬液", "美林");
+        jdbc.update(insert, "P3", "板蓝根颗粒", "板蓝根颗粒");
+        jdbc.update("INSERT INTO `order`(order_id, payment_status, order_time) VALUES ('O1', 1, CURRENT_TIMESTAMP)");
+        jdbc.update("INSERT INTO order_item(order_id, medicine_id, quantity, unit_price, subtotal) VALUES ('O1', 'P2', 5, 9.9, 49.5)");
+
+        MedicineSearchIndex index = new MedicineSearchIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+        index.rebuild();
+        assertEquals("buluofenpian blfp", jdbc.queryForObject("SELECT pinyin_code FROM medicine WHERE medicine_id = 'P1'", String.class));
+
+        // 同为拼音前缀命中，近期销量高的排前
+        assertEquals(List.of("P2", "P1"), ids(index.search("blf")));
+        assertEquals(List.of("P2", "P1"), ids(index.search("buluofen")));
+        // 拼音全拼 / 首字母均按前缀解析
+        assertEquals(List.of("P2", "P1"), ids(index.search("bul")));
+        assertEquals(List.of("P2", "P1", "P3"), ids(index.search("bl")));
+        assertTrue(index.search("luofen").isEmpty());
+        assertEquals(List.of("P3"), ids(index.search("blg")));
+
+        index.onOrderEvent(new OrderPlacedEvent(null, "O2", null, 10, LocalDateTime.now(),
+                List.of(new OrderEvent.Line("P1", 10, 10))));
+        assertEquals(List.of("P1", "P2"), ids(index.search("blf")));
+        assertEquals(List.of("P2"), ids(index.search("meilin")));
+
+        // 联想：名称前缀命中按销量取前 N
+        jdbc.update(insert, "P4", "布洛芬颗粒", "布洛芬颗粒");
+        index.rebuild();
+        index.onOrderEvent(new OrderPlacedEvent(null, "O3", null, 3, LocalDateTime.now(),
+                List.of(new OrderEvent.Line("P4", 3, 3))));
+        assertEquals(List.of("P2", "P4"), ids(index.suggest("blf", 2)));
+        assertEquals(List.of("P2", "P4", "P1"), ids(index.suggest("布洛芬", 8)));
+        // 联想随逐键输入的部分拼音（全拼 / 首字母）按前缀命中
+        assertEquals(List.of("P2", "P4"), ids(index.suggest("bu", 2)));
+        assertEquals(List.of("P2", "P4", "P1"), ids(index.suggest("bul", 8)));
+        assertEquals(List.of("P4"), ids(index.suggest("blfk", 8)));
+    }
+
+    @Test
+    void testPutsDuringRebuildSurviveSwapAndAsciiMatchesSubstring() {
+        MedicineSearchIndex index = new MedicineSearchIndex();
+        Medicine edited = new Medicine();
+        edited.setMedicineId("R1");
+        edited.setGenericName("Ascorbic Acid");
+        edited.setStatus("ACTIVE");
+        edited.setDeleted(false);
+        Medicine added = new Medicine();
+        added.setMedicineId("R3");
+        added.setGenericName("Cetirizine");
+        added.setStatus("ACTIVE");
+        added.setDeleted(false);
+        // 重建查询进行中收到增量写入：查询行比写入旧，不能覆盖
+        JdbcTemplate jdbc = new JdbcTemplate(TestSchema.dataSource("rebuildidx")) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch) {
+                if (sql.contains("FROM medicine")) {
+                    index.put(edited);
+                    index.put(added);
+                    index.remove("R2");
+                }
+                super.query(sql, rch);
+            }
+        };
+        String insert = "INSERT INTO medicine(medicine_id, generic_name, manufacturer, spec, approval_no, category_id, retail_price, " +
+                "pinyin_code) VALUES (?,?,?,'100mg','国药准字H10900089',1,9.9,'')";
+        jdbc.update(insert, "R1", "Vitamin C", "Bayer");
+        jdbc.update(insert, "R2", "Loratadine", "Schering");
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+
+        assertEquals(2, index.rebuild());
+        assertEquals("Ascorbic Acid", index.get("R1").getGenericName());
+        assertTrue(index.search("vitamin").isEmpty());
+        assertEquals(List.of("R3"), ids(index.search("cetiri")));
+        assertNull(index.get("R2"));
+
+        // 英文串按子串命中，与 LIKE '%kw%' 一致
+        assertEquals(List.of("R1"), ids(index.search("corbic")));
+        assertEquals(List.of("R3"), ids(index.search("rizin")));
+        assertEquals(List.of("R1"), ids(index.search("acid sco")));
+    }
+
+    private List<String> ids(List<MedicineSearchIndex.Doc> docs) {
+        return docs.stream().map(MedicineSearchIndex.Doc::getMedicineId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,76 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Category;
+import com.pharmacy.entity.Medicine;
+import com.pharmacy.repository.CategoryRepository;
+import com.pharmacy.repository.MedicineRepository;
+import com.pharmacy.repository.MedicineSpecifications;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class MedicineSearchSpecificationTest {
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Test
+    void testFiltersAndPagingInQuery() {
+        Category herbal = categoryRepository.save(new Category("中药饮片"));
+        medicine("SP01", "阿莫西林胶囊", 92, true, "ACTIVE", false);
+        medicine("SP02", "阿莫西林颗粒", 92, true, "INACTIVE", false);
+        medicine("SP03", "阿莫西林片", 91, false, "ACTIVE", true);
+        medicine("SP04", "板蓝根", herbal.getCategoryId(), false, "ACTIVE", false);
+        medicine("SP05", "维生素C片", 91, false, "ACTIVE", false);
+        medicineRepository.flush();
+
+        Sort byId = Sort.by("medicineId");
+        Page<Medicine> page = medicineRepository.findAll(MedicineSpecifications.search("阿莫西林", null, null, null), PageRequest.of(0, 1, byId));
+        assertEquals(2, page.getTotalElements()); // 已软删除的 SP03 不计入
+        assertEquals("SP01", page.getContent().get(0).getMedicineId());
+
+        assertEquals(List.of("SP01"), ids(MedicineSpecifications.search("阿莫西林", "prescription", null, "active")));
+        assertEquals(List.of("SP04", "SP05"), ids(MedicineSpecifications.search(null, "otc", null, null)));
+        assertEquals(List.of("SP01", "SP02"), ids(MedicineSpecifications.search(null, "92", null, null)));
+        assertEquals(List.of("SP04"), ids(MedicineSpecifications.search(null, "chinese", null, null)));
+        assertEquals(List.of("SP02"), ids(MedicineSpecifications.search(null, null, true, "INACTIVE")));
+    }
+
+    private List<String> ids(org.springframework.data.jpa.domain.Specification<Medicine> spec) {
+        return medicineRepository.findAll(spec, Sort.by("medicineId")).stream()
+                .map(Medicine::getMedicineId).filter(id -> id.startsWith("SP")).collect(Collectors.toList());
+    }
+
+    private void medicine(String id, String name, Integer categoryId, boolean rx, String status, boolean deleted) {
+        Medicine m = new Medicine();
+        m.setMedicineId(id);
+        m.setGenericName(name);
+        m.setTradeName(name);
+        m.setSpec("10片/盒");
+        m.setApprovalNo("APP-" + id);
+        m.setCategoryId(categoryId);
+        m.setManufacturer("测试厂家");
+        m.setRetailPrice(new BigDecimal("9.90"));
+        m.setMemberPrice(new BigDecimal("8.90"));
+        m.setIsRx(rx);
+        m.setUnit("盒");
+        m.setStatus(status);
+        m.setDeleted(deleted);
+        medicineRepository.save(m);
+    }
+}
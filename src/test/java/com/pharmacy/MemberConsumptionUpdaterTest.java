@@ -0,0 +1,94 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.repository.OrderRepository;
+import com.pharmacy.service.impl.MemberConsumptionUpdater;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class MemberConsumptionUpdaterTest {
+
+    private final Map<String, String> loadedInTenant = new ConcurrentHashMap<>();
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+    }
+
+    private MemberConsumptionUpdater newUpdater(OrderRepository repo, int recentPerTenant) {
+        MemberConsumptionUpdater updater = new MemberConsumptionUpdater();
+        ReflectionTestUtils.setField(updater, "orderRepository", repo);
+        ReflectionTestUtils.setField(updater, "recentPerTenant", recentPerTenant);
+        updater.init();
+        return updater;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testTenantPartitionedBatchLoad() {
+        OrderRepository repo = mock(OrderRepository.class);
+        // 各租户库返回不同的统计，并记录加载时所在租户
+        when(repo.aggregateMemberConsumption(anyCollection())).thenAnswer(inv -> {
+            String tenant = TenantContext.currentTenantKey();
+            List<Object[]> rows = new ArrayList<>();
+            for (String id : (Collection<String>) inv.getArgument(0)) {
+                loadedInTenant.put(tenant + ":" + id, tenant);
+                if (id.equals("M00001")) rows.add(new Object[]{id, "bht".equals(tenant) ? 5L : 2L, LocalDateTime.now()});
+            }
+            return rows;
+        });
+        MemberConsumptionUpdater updater = newUpdater(repo, 10);
+
+        TenantContext.setTenant("bht");
+        Map<String, MemberConsumptionUpdater.MemberStatsSnapshot> bht = updater.getStats(List.of("M00001", "M00002"));
+        assertEquals(5, bht.get("M00001").consumptionCount);
+        assertEquals(0, bht.get("M00002").consumptionCount);
+
+        TenantContext.setTenant("wx");
+        assertNull(updater.getCachedStats("M00001"));
+        assertEquals(2, updater.getStats(List.of("M00001")).get("M00001").consumptionCount);
+
+        // 互不覆盖；第二次读取命中缓存，不再查库
+        TenantContext.setTenant("bht");
+        assertEquals(5, updater.getStats(List.of("M00001")).get("M00001").consumptionCount);
+        verify(repo, times(2)).aggregateMemberConsumption(anyCollection());
+        assertEquals("bht", loadedInTenant.get("bht:M00001"));
+        assertEquals("wx", loadedInTenant.get("wx:M00001"));
+        assertEquals(1L, updater.stats().get("hitCount"));
+    }
+
+    @Test
+    void testLoaderUsesKeyTenantAndRecentSetIsBounded() throws Exception {
+        OrderRepository repo = mock(OrderRepository.class);
+        when(repo.countPaidOrdersByMember(anyString())).thenAnswer(inv -> {
+            loadedInTenant.put(inv.getArgument(0), TenantContext.currentTenantKey());
+            return 3L;
+        });
+        MemberConsumptionUpdater updater = newUpdater(repo, 2);
+
+        TenantContext.setTenant("wx");
+        updater.refreshSingleMember("M00001");
+        updater.refreshSingleMember("M00002");
+        updater.refreshSingleMember("M00001");
+        updater.refreshSingleMember("M00003");
+        // 去重且有界：保留最近活跃的 2 个，最近的在前
+        assertEquals(List.of("M00003", "M00001"), new ArrayList<>(updater.snapshotRecentActive(10)));
+
+        TenantContext.setTenant("bht");
+        assertTrue(updater.snapshotRecentActive(10).isEmpty());
+
+        // 异步刷新在公共线程池执行，仍按键所属租户加载
+        for (int i = 0; i < 50 && !loadedInTenant.containsKey("M00003"); i++) Thread.sleep(20);
+        assertEquals("wx", loadedInTenant.get("M00003"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.pharmacy;
+
+import com.pharmacy.dto.MemberStatsDTO;
+import com.pharmacy.event.MemberChangedEvent;
+import com.pharmacy.event.OrderPlacedEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.MemberCounters;
+import com.pharmacy.service.MemberStatsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemberCountersTest {
+
+    private JdbcTemplate jdbc;
+    private MemberCounters counters;
+    private MemberStatsService stats;
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+    }
+
+    private void setUp() {
+        jdbc = TestSchema.jdbc("membercounters");
+        String member = "INSERT INTO `member`(member_id, name, phone, level, points, create_time) VALUES (?,?,?,?,?,?)";
+        jdbc.update(member, "M00001", "李四", "13800000001", 4, 1500, Timestamp.valueOf(now.minusDays(200)));
+        jdbc.update(member, "M00002", "王五", "13800000002", 1, 300, Timestamp.valueOf(now.minusDays(10)));
+        jdbc.update(member, "M00003", "王小明", "13800000003", 0, 200, Timestamp.valueOf(now.minusDays(100)));
+        String order = "INSERT INTO `order`(order_id, member_id, actual_payment, payment_status, order_time) VALUES (?,?,?,?,?)";
+        jdbc.update(order, "O1", "M00001", new BigDecimal("50.00"), 1, Timestamp.valueOf(now));
+        jdbc.update(order, "O2", "M00001", new BigDecimal("30.00"), 1, Timestamp.valueOf(now.minusDays(40)));
+        jdbc.update(order, "O3", "M00002", new BigDecimal("20.00"), 1, Timestamp.valueOf(now.minusDays(120)));
+
+        counters = new MemberCounters();
+        ReflectionTestUtils.setField(counters, "jdbcTemplate", jdbc);
+        stats = new MemberStatsService();
+        ReflectionTestUtils.setField(stats, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(stats, "memberCounters", counters);
+        stats.reconcile();
+    }
+
+    @Test
+    void testReloadFromDatabase() {
+        setUp();
+        MemberStatsDTO dto = counters.read();
+        assertEquals(3L, dto.getTotalMembers());
+        assertEquals(1L, dto.getVipMembers());
+        assertEquals(1L, dto.getNewMembers());
+        assertEquals(1L, dto.getTodayConsumption());
+        assertEquals(100.0, dto.getTotalConsumption(), 0.001);
+        // 90 天内有消费的只有 M00001
+        assertEquals(2L, dto.getSleepingMembers());
+        assertEquals(2, dto.getChurnCount());
+        assertEquals(666.7, dto.getAvgPoints(), 0.001);
+        assertEquals("33.3%", dto.getActiveRate());
+    }
+
+    @Test
+    void testIncrementalUpdatesMatchReload() {
+        setUp();
+        counters.read();
+
+        // 新增 VIP 会员、M00003 升级并加积分、删除 M00002
+        MemberChangedEvent.Snapshot created = new MemberChangedEvent.Snapshot(3, 100, now);
+        counters.onMemberChanged(new MemberChangedEvent("default", "M00004", null, created));
+        jdbc.update("INSERT INTO `member`(member_id, name, phone, level, points, create_time) " +
+                "VALUES ('M00004', '赵六', '13800000004', 3, 100, ?)", Timestamp.valueOf(now));
+        counters.onMemberChanged(new MemberChangedEvent("default", "M00003",
+                new MemberChangedEvent.Snapshot(0, 200, now.minusDays(100)),
+                new MemberChangedEvent.Snapshot(1, 260, now.minusDays(100))));
+        jdbc.update("UPDATE `member` SET level = 1, points = 260 WHERE member_id = 'M00003'");
+        jdbc.update("DELETE FROM `member` WHERE member_id = 'M00002'");
+        counters.onMemberChanged(new MemberChangedEvent("default", "M00002",
+                new MemberChangedEvent.Snapshot(1, 300, now.minusDays(10)), null));
+
+        // M00003 今日下单，随后 M00001 今日订单退款
+        jdbc.update("INSERT INTO `order`(order_id, member_id, actual_payment, payment_status, order_time) " +
+                "VALUES ('O4', 'M00003', 12.50, 1, ?)", Timestamp.valueOf(now));
+        counters.onOrderEvent(new OrderPlacedEvent("default", "O4", "M00003", 12.5, now, List.of()));
+        stats.recount("M00003");
+        jdbc.update("UPDATE `order` SET payment_status = 2 WHERE order_id = 'O1'");
+        counters.onOrderEvent(new OrderRefundedEvent("default", "O1", "M00001", 50.0, now, List.of(), now, "退货"));
+        stats.recount("M00001");
+
+        MemberStatsDTO incremental = counters.read();
+        assertEquals(3L, incremental.getTotalMembers());
+        assertEquals(2L, incremental.getVipMembers());
+        assertEquals(1L, incremental.getTodayConsumption());
+        assertEquals(42.5, incremental.getTotalConsumption(), 0.001);
+
+        counters.reload();
+        MemberStatsDTO reloaded = counters.read();
+        assertEquals(reloaded.getTotalMembers(), incremental.getTotalMembers());
+        assertEquals(reloaded.getVipMembers(), incremental.getVipMembers());
+        assertEquals(reloaded.getNewMembers(), incremental.getNewMembers());
+        assertEquals(reloaded.getTodayConsumption(), incremental.getTodayConsumption());
+        assertEquals(reloaded.getTotalConsumption(), incremental.getTotalConsumption(), 0.001);
+        assertEquals(reloaded.getSleepingMembers(), incremental.getSleepingMembers());
+        assertEquals(reloaded.getAvgPoints(), incremental.getAvgPoints(), 0.001);
+        assertEquals(reloaded.getActiveRate(), incremental.getActiveRate());
+    }
+
+    @Test
+    void testTenantsAreIsolated() {
+        setUp();
+        counters.read();
+        TenantContext.setTenant("wx");
+        counters.onMemberChanged(new MemberChangedEvent("wx", "M00009", null, new MemberChangedEvent.Snapshot(5, 0, now)));
+        TenantContext.clear();
+        assertEquals(3L, counters.read().getTotalMembers());
+    }
+}
@@ -0,0 +1,130 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.MemberPoint;
+import com.pharmacy.entity.Setting;
+import com.pharmacy.event.MemberPointsChangedEvent;
+import com.pharmacy.repository.SettingRepository;
+import com.pharmacy.service.MemberPointLedger;
+import com.pharmacy.service.MemberPointsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MemberPointsServiceTest {
+
+    private JdbcTemplate jdbc;
+    private MemberPointLedger ledger;
+    private MemberPointsService points;
+    private final List<MemberPointsChangedEvent> events = new CopyOnWriteArrayList<>();
+
+    private void setUp(double rule, int batchSize) {
+        jdbc = TestSchema.jdbc("memberpoints");
+        jdbc.update("INSERT INTO `member`(member_id, name, phone, points) VALUES ('M00001', '李四', '13800000001', 100)");
+        jdbc.update("INSERT INTO `member`(member_id, name, phone, points) VALUES ('M00002', '王五', '13800000002', NULL)");
+
+        Setting settings = new Setting();
+        settings.setPointsRule(rule);
+        SettingRepository settingRepository = mock(SettingRepository.class);
+        when(settingRepository.findLatestSettings()).thenReturn(settings);
+
+        ledger = new MemberPointLedger();
+        ReflectionTestUtils.setField(ledger, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(ledger, "batchSize", batchSize);
+        points = new MemberPointsService();
+        ReflectionTestUtils.setField(points, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(points, "settingRepository", settingRepository);
+        ReflectionTestUtils.setField(points, "ledger", ledger);
+        ReflectionTestUtils.setField(points, "eventPublisher", (ApplicationEventPublisher) e -> events.add((MemberPointsChangedEvent) e));
+    }
+
+    private int balance(String memberId) {
+        return jdbc.queryForObject("SELECT points FROM `member` WHERE member_id = ?", Integer.class, memberId);
+    }
+
+    @Test
+    void testSettleAndReverseOrder() {
+        setUp(2.0, 100);
+        // 应付 25.9 元，抵扣 30 积分（0.3 元）后实付 25.6 元 × 2 = 51 积分（向下取整），抵现部分不再累积
+        double paid = MemberPointsService.payableAfterPoints(25.9, 30);
+        assertEquals(25.6, paid, 0.0001);
+        assertEquals(0.0, MemberPointsService.payableAfterPoints(0.1, 30), 0.0001);
+        MemberPointsService.Settlement s = points.settleOrder("M00001", "O1", 30, paid);
+        assertEquals(30, s.getUsed());
+        assertEquals(51, s.getEarned());
+        assertEquals(121, balance("M00001"));
+
+        // 余额不足：不生效
+        assertThrows(RuntimeException.class, () -> points.settleOrder("M00001", "O2", 500, 10));
+        assertEquals(121, balance("M00001"));
+        assertThrows(RuntimeException.class, () -> points.settleOrder(null, "O3", 1, 10));
+        assertEquals(0, points.settleOrder(null, "O4", 0, 10).getEarned());
+
+        // 退款：退回抵扣、扣回累积
+        assertEquals(-21, points.reverseOrder("M00001", "O1", 30, 51));
+        assertEquals(100, balance("M00001"));
+
+        // 流水在缓冲区，定时落库
+        assertEquals(4, ledger.pendingCount());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM member_point", Integer.class));
+        ledger.flushAll();
+        List<Map<String, Object>> rows = jdbc.queryForList("SELECT point, type FROM member_point WHERE related_order_id = 'O1' ORDER BY id");
+        assertEquals(4, rows.size());
+        assertEquals(-30, ((Number) rows.get(0).get("point")).intValue());
+        assertEquals(MemberPoint.TYPE_REDEEM, ((Number) rows.get(0).get("type")).intValue());
+        assertEquals(51, ((Number) rows.get(1).get("point")).intValue());
+        assertEquals(0, jdbc.queryForObject("SELECT COALESCE(SUM(point), 0) FROM member_point", Integer.class));
+
+        long eventSum = events.stream().mapToLong(MemberPointsChangedEvent::getDelta).sum();
+        assertEquals(0, eventSum);
+    }
+
+    @Test
+    void testReverseNeverGoesNegative() {
+        setUp(1.0, 100);
+        points.settleOrder("M00002", "O1", 0, 80);
+        assertEquals(80, balance("M00002"));
+        assertTrue(points.adjust("M00002", -70, MemberPoint.TYPE_EXCHANGE));
+        points.reverseOrder("M00002", "O1", 0, 80);
+        assertEquals(0, balance("M00002"));
+    }
+
+    @Test
+    void testConcurrentRedemptionNeverOverdraws() throws Exception {
+        setUp(1.0, 5);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                if (points.adjust("M00001", -10, MemberPoint.TYPE_EXCHANGE)) succeeded.incrementAndGet();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(10, succeeded.get());
+        assertEquals(0, balance("M00001"));
+        assertFalse(points.adjust("M00001", -1, MemberPoint.TYPE_EXCHANGE));
+        assertFalse(points.adjust("M99999", 10, MemberPoint.TYPE_ADJUST));
+
+        // 攒满批量阈值即落库，余下的由定时任务补齐
+        ledger.flushAll();
+        assertEquals(10, jdbc.queryForObject("SELECT COUNT(*) FROM member_point", Integer.class));
+        assertEquals(0, ledger.pendingCount());
+    }
+}
@@ -0,0 +1,107 @@
+package com.pharmacy;
+
+import com.pharmacy.dto.MemberDTO;
+import com.pharmacy.service.MemberQueryService;
+import com.pharmacy.service.MemberStatsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemberQueryServiceTest {
+
+    private JdbcTemplate jdbc;
+    private MemberStatsService stats;
+    private MemberQueryService query;
+
+    private void setUp() {
+        jdbc = TestSchema.jdbc("memberquery");
+        LocalDateTime now = LocalDateTime.now();
+        String member = "INSERT INTO `member`(member_id, name, phone, level, points, create_time) VALUES (?,?,?,?,?,?)";
+        jdbc.update(member, "M00001", "李四", "13700137000", 4, 1500, Timestamp.valueOf(now.minusDays(200)));
+        jdbc.update(member, "M00002", "王五", "13600136000", 1, 300, Timestamp.valueOf(now.minusDays(10)));
+        jdbc.update(member, "M00003", "王小明", "18912345678", 0, 300, Timestamp.valueOf(now.minusDays(100)));
+        jdbc.update(member, "M00004", "赵六", "18800001111", 2, 800, Timestamp.valueOf(now.minusDays(5)));
+        String order = "INSERT INTO `order`(order_id, member_id, actual_payment, payment_status, order_time) VALUES (?,?,?,?,?)";
+        jdbc.update(order, "O1", "M00001", new BigDecimal("50.00"), 1, Timestamp.valueOf(now.minusDays(2)));
+        jdbc.update(order, "O2", "M00001", new BigDecimal("30.00"), 1, Timestamp.valueOf(now.minusDays(40)));
+        jdbc.update(order, "O3", "M00002", new BigDecimal("20.00"), 1, Timestamp.valueOf(now.minusDays(120)));
+        jdbc.update(order, "O4", "M00004", new BigDecimal("99.00"), 2, Timestamp.valueOf(now.minusDays(1))); // 已退款
+
+        stats = new MemberStatsService();
+        ReflectionTestUtils.setField(stats, "jdbcTemplate", jdbc);
+        query = new MemberQueryService();
+        ReflectionTestUtils.setField(query, "jdbcTemplate", jdbc);
+    }
+
+    @Test
+    void testRecountAndReconcile() {
+        setUp();
+        stats.recount("M00001");
+        assertEquals(2, jdbc.queryForObject("SELECT order_count FROM member_stats WHERE member_id = 'M00001'", Integer.class));
+        assertEquals(0, new BigDecimal("80.00").compareTo(
+                jdbc.queryForObject("SELECT total_spent FROM member_stats WHERE member_id = 'M00001'", BigDecimal.class)));
+
+        // 退款后重算：无有效订单则删除该行
+        jdbc.update("UPDATE `order` SET payment_status = 2 WHERE member_id = 'M00001'");
+        stats.recount("M00001");
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM member_stats WHERE member_id = 'M00001'", Integer.class));
+
+        // 对账：补齐缺失行、清除无效行
+        jdbc.update("UPDATE `order` SET payment_status = 1 WHERE member_id = 'M00001'");
+        jdbc.update("INSERT INTO member_stats(member_id, order_count, total_spent, update_time) VALUES ('M00004', 1, 99, NOW())");
+        stats.reconcile();
+        assertEquals(List.of("M00001", "M00002"),
+                jdbc.queryForList("SELECT member_id FROM member_stats ORDER BY member_id", String.class));
+    }
+
+    @Test
+    void testKeysetPagingFiltersAndSummary() {
+        setUp();
+        stats.reconcile();
+
+        // 按积分降序翻页，同分按 member_id 降序
+        MemberQueryService.Criteria byPoints = new MemberQueryService.Criteria(null, "points_desc", null, null, null, null, null, null);
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MemberQueryService.Page page = query.list(byPoints, cursor, 0, 3);
+            page.getItems().forEach(m -> ids.add(m.getMemberId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+        assertEquals(2, pages);
+        assertEquals(List.of("M00001", "M00004", "M00003", "M00002"), ids);
+
+        // offset 定位与 keyset 结果一致
+        assertEquals("M00002", query.list(byPoints, null, 3, 3).getItems().get(0).getMemberId());
+
+        MemberQueryService.Criteria consumption = new MemberQueryService.Criteria(null, "consumption_desc", null, null, 1, null, null, null);
+        List<MemberDTO> buyers = query.list(consumption, null, 0, 10).getItems();
+        assertEquals(2, buyers.size());
+        assertEquals("M00001", buyers.get(0).getMemberId());
+        assertEquals(2, buyers.get(0).getConsumptionCount());
+        assertEquals(0, new BigDecimal("80.00").compareTo(buyers.get(0).getTotalSpent()));
+
+        MemberQueryService.Criteria sleep = new MemberQueryService.Criteria("sleep", null, null, null, null, null, "王", null);
+        List<MemberDTO> sleeping = query.list(sleep, null, 0, 10).getItems();
+        assertEquals(List.of("M00002", "M00003"), sleeping.stream().map(MemberDTO::getMemberId).toList());
+
+        MemberQueryService.Summary all = query.summarize(new MemberQueryService.Criteria(null, null, null, null, null, null, null, null));
+        assertEquals(4, all.getTotal());
+        assertEquals(725.0, all.getAvgPoints(), 0.001);
+        assertEquals(1, all.getActiveCount());
+        assertEquals(3, all.getChurnCount());
+
+        MemberQueryService.Summary vip = query.summarize(new MemberQueryService.Criteria("vip", null, null, null, null, null, null, null));
+        assertEquals(1, vip.getTotal());
+    }
+}
@@ -0,0 +1,74 @@
+package com.pharmacy;
+
+import com.pharmacy.entity.Member;
+import com.pharmacy.service.MemberIdSequence;
+import com.pharmacy.service.MemberSearchIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemberSearchIndexTest {
+
+    @Test
+    void testPhoneNameAndCardLookup() {
+        JdbcTemplate jdbc = TestSchema.jdbc("memberidx");
+        String insert = "INSERT INTO `member`(member_id, name, phone, card_no) VALUES (?,?,?,?)";
+        jdbc.update(insert, "M00001", "李四", "13700137000", "VIP8801");
+        jdbc.update(insert, "M00002", "王五", "13600136000", null);
+        jdbc.update(insert, "M00003", " 王\u200B小明 ", "18912345678", "VIP8802");
+
+        MemberSearchIndex index = new MemberSearchIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+        // 未构建时返回 null，由调用方回退 SQL
+        assertNull(index.findByPhoneContaining("5678"));
+        assertEquals(3, index.rebuild());
+
+        assertEquals(Set.of("M00003"), index.findByPhoneContaining("5678"));
+        assertEquals(Set.of("M00001", "M00002"), index.findByPhoneContaining("0013"));
+        assertTrue(index.findByPhoneContaining("99999").isEmpty());
+        assertTrue(index.findByPhoneContaining("13").isEmpty());
+
+        // 姓名归一化：零宽字符与首尾空白不影响匹配
+        assertEquals(Set.of("M00002", "M00003"), index.findByNameContaining("王"));
+        assertEquals(Set.of("M00003"), index.findByNameContaining("王小明"));
+        assertTrue(index.findByNameContaining("王六").isEmpty());
+
+        assertEquals(Set.of("M00001", "M00003"), index.findByCardNoContaining("vip88"));
+        assertEquals(Set.of("M00001"), index.findByCardNoContaining("VIP8801"));
+
+        // 写入后增量更新：改手机号、卡号，旧值不再命中
+        Member m = new Member("M00001", "李四", "13811112222");
+        m.setCardNo("C77");
+        index.put(m);
+        assertTrue(index.findByPhoneContaining("0013").contains("M00002"));
+        assertFalse(index.findByPhoneContaining("0013").contains("M00001"));
+        assertEquals(Set.of("M00001"), index.findByPhoneContaining("2222"));
+        assertEquals(Set.of("M00001"), index.findByCardNoContaining("c77"));
+        assertEquals(Set.of("M00003"), index.findByCardNoContaining("vip88"));
+
+        index.remove("M00003");
+        assertTrue(index.findByNameContaining("小明").isEmpty());
+        assertTrue(index.findByPhoneContaining("5678").isEmpty());
+    }
+
+    @Test
+    void testMemberIdSequence() {
+        JdbcTemplate jdbc = TestSchema.jdbc("memberidx");
+        jdbc.update("INSERT INTO `member`(member_id, name, phone) VALUES ('M00009','a','1'), ('M00010','b','2'), ('GUEST','c','3')");
+        MemberIdSequence sequence = new MemberIdSequence();
+        ReflectionTestUtils.setField(sequence, "jdbcTemplate", jdbc);
+
+        // 按现有最大会员号播种
+        assertEquals("M00011", sequence.nextId());
+        assertEquals("M00012", sequence.nextId());
+
+        // 手工录入占用的号跳过
+        jdbc.update("INSERT INTO `member`(member_id, name, phone) VALUES ('M00013','d','4')");
+        assertEquals("M00014", sequence.nextId());
+        assertEquals(Long.valueOf(15), jdbc.queryForObject("SELECT next_val FROM id_sequence WHERE seq_name = 'member'", Long.class));
+    }
+}
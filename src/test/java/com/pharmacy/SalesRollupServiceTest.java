@@ -0,0 +1,126 @@
+package com.pharmacy;
+
+import com.pharmacy.event.OrderPlacedEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.service.SalesRollupService;
+import com.pharmacy.util.HyperLogLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesRollupServiceTest {
+
+    private final LocalDate today = LocalDate.of(2026, 3, 10);
+    private JdbcTemplate jdbc;
+    private SalesRollupService rollup;
+
+    private void setUp() {
+        jdbc = TestSchema.jdbc("salesrollup");
+        order("O1", "M00001", "100.00", "10.00", 1, today.atTime(9, 5));
+        order("O2", "M00001", "50.00", "0.00", 1, today.atTime(9, 40));
+        order("O3", "M00002", "30.00", "0.00", 1, today.atTime(14, 0));
+        order("O4", null, "20.00", "0.00", 1, today.minusDays(1).atTime(20, 30));
+        order("O5", "M00003", "80.00", "0.00", 2, today.minusDays(1).atTime(20, 45)); // 已退款
+        rollup = new SalesRollupService();
+        ReflectionTestUtils.setField(rollup, "jdbcTemplate", jdbc);
+    }
+
+    private void order(String id, String member, String total, String discount, int status, LocalDateTime time) {
+        BigDecimal gross = new BigDecimal(total);
+        BigDecimal off = new BigDecimal(discount);
+        jdbc.update("INSERT INTO `order`(order_id, member_id, total_amount, discount_amount, actual_payment, payment_status, order_time) " +
+                "VALUES (?,?,?,?,?,?,?)",
+                id, member, gross, off, gross.subtract(off), status, Timestamp.valueOf(time));
+    }
+
+    @Test
+    void testBackfillAndReads() {
+        setUp();
+        assertEquals(3, rollup.backfill(today.minusDays(2), today));
+
+        SalesRollupService.Bucket day = rollup.total(today.atStartOfDay(), today.plusDays(1).atStartOfDay());
+        assertEquals(3, day.getPaidCount());
+        assertEquals(0, new BigDecimal("180.00").compareTo(day.getGross()));
+        assertEquals(0, new BigDecimal("170.00").compareTo(day.getNet()));
+        assertEquals(0, new BigDecimal("10.00").compareTo(day.getDiscount()));
+        assertEquals(2, day.getDistinctMembers());
+
+        List<SalesRollupService.Bucket> hours = rollup.hours(today.atStartOfDay(), today.plusDays(1).atStartOfDay());
+        assertEquals(List.of(9, 14), hours.stream().map(h -> h.getStart().getHour()).toList());
+        assertEquals(2, hours.get(0).getPaidCount());
+
+        Map<LocalDate, SalesRollupService.Bucket> daily = rollup.daily(today.minusDays(6), today);
+        assertEquals(List.of(today.minusDays(1), today), List.copyOf(daily.keySet()));
+        assertEquals(0, new BigDecimal("20.00").compareTo(daily.get(today.minusDays(1)).getGross()));
+        assertEquals(0, rollup.total(today.minusDays(1).atStartOfDay(), today.atStartOfDay()).getDistinctMembers());
+    }
+
+    @Test
+    void testOrderAndRefundRecountTheirHour() {
+        setUp();
+        rollup.backfill(today.minusDays(1), today);
+
+        order("O6", "M00004", "40.00", "0.00", 1, today.atTime(14, 30));
+        rollup.onOrderEvent(new OrderPlacedEvent("default", "O6", "M00004", 40.0, today.atTime(14, 30), List.of()));
+        SalesRollupService.Bucket afternoon = rollup.total(today.atTime(14, 0), today.atTime(15, 0));
+        assertEquals(2, afternoon.getPaidCount());
+        assertEquals(2, afternoon.getDistinctMembers());
+
+        // 退款重算订单所在小时；整小时无有效订单时删除该行
+        jdbc.update("UPDATE `order` SET payment_status = 2 WHERE order_id = 'O4'");
+        rollup.onOrderEvent(new OrderRefundedEvent("default", "O4", null, 20.0, today.minusDays(1).atTime(20, 30),
+                List.of(), today.atTime(15, 0), "退货"));
+        assertTrue(rollup.hours(today.minusDays(1).atStartOfDay(), today.atStartOfDay()).isEmpty());
+        assertEquals(4, rollup.total(today.atStartOfDay(), today.plusDays(1).atStartOfDay()).getPaidCount());
+    }
+
+    @Test
+    void testSketchMergesAcrossHours() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        for (int i = 0; i < 60; i++) a.add("M" + i);
+        for (int i = 40; i < 100; i++) b.add("M" + i);
+        HyperLogLog merged = HyperLogLog.fromBytes(a.toBytes());
+        merged.merge(b);
+        assertEquals(100, merged.estimate(), 5);
+        assertEquals(60, a.estimate(), 3);
+
+        HyperLogLog big = new HyperLogLog();
+        for (int i = 0; i < 20000; i++) big.add("member-" + i);
+        assertEquals(20000, big.estimate(), 20000 * 0.08);
+        assertTrue(HyperLogLog.fromBytes(null).isEmpty());
+    }
+
+    @Test
+    void testResumeBackfillFromWatermark() {
+        setUp();
+        LocalDate now = LocalDate.now();
+        order("H1", "M00001", "10.00", "0.00", 1, now.minusDays(5).atTime(10, 0));
+        order("H2", "M00002", "20.00", "0.00", 1, now.minusDays(3).atTime(10, 0));
+        order("H3", "M00003", "30.00", "0.00", 1, now.atTime(0, 0));
+
+        // 事件先写入了今天的一个小时：汇总表非空也要回填历史
+        rollup.rebuild(now.atStartOfDay(), now.atStartOfDay().plusHours(1));
+        ReflectionTestUtils.setField(rollup, "backfillDays", 4);
+        rollup.resumeBackfill();
+        assertEquals(0, rollup.total(now.minusDays(5).atStartOfDay(), now.minusDays(4).atStartOfDay()).getPaidCount()); // 超出回溯天数
+        assertEquals(1, rollup.total(now.minusDays(3).atStartOfDay(), now.minusDays(2).atStartOfDay()).getPaidCount());
+        assertEquals(now.minusDays(1), jdbc.queryForObject("SELECT done_through FROM sales_rollup_watermark", java.sql.Date.class).toLocalDate());
+
+        // 中途重启：水位之后缺失的天续跑补齐，水位之前的不重算
+        jdbc.update("UPDATE sales_rollup_watermark SET done_through = ?", java.sql.Date.valueOf(now.minusDays(4)));
+        jdbc.update("DELETE FROM sales_rollup_hourly");
+        rollup.resumeBackfill();
+        assertEquals(1, rollup.total(now.minusDays(3).atStartOfDay(), now.minusDays(2).atStartOfDay()).getPaidCount());
+        assertEquals(1, rollup.total(now.atStartOfDay(), now.plusDays(1).atStartOfDay()).getPaidCount());
+    }
+}
@@ -0,0 +1,51 @@
+package com.pharmacy;
+
+import com.pharmacy.dto.StockDeductionResult;
+import com.pharmacy.service.impl.StockDeductionEngine;
+import com.pharmacy.service.impl.StockDeductionEngine.BatchSlot;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockDeductionPlanTest {
+
+    @Test
+    void testEarliestExpiryFirstAcrossBatches() {
+        List<BatchSlot> slots = List.of(
+                new BatchSlot(1L, "M1", "LATE", 10, LocalDate.now().plusDays(60)),
+                new BatchSlot(2L, "M1", "EARLY", 3, LocalDate.now().plusDays(10)),
+                new BatchSlot(3L, "M1", "NODATE", 5, null));
+        StockDeductionResult r = StockDeductionEngine.plan(new String[]{"M1"}, new int[]{8}, slots);
+        assertTrue(r.isSuccess());
+        assertEquals(2, r.getAllocations().size());
+        assertEquals("EARLY", r.getAllocations().get(0).getBatchNo());
+        assertEquals(3, r.getAllocations().get(0).getQuantity());
+        assertEquals("LATE", r.getAllocations().get(1).getBatchNo());
+        assertEquals(5, r.getAllocations().get(1).getQuantity());
+    }
+
+    @Test
+    void testLinesOfSameMedicineShareBatchesAndReportShortage() {
+        List<BatchSlot> slots = List.of(
+                new BatchSlot(1L, "M1", "B1", 4, LocalDate.now().plusDays(30)),
+                new BatchSlot(2L, "M2", "B2", 9, LocalDate.now().plusDays(30)));
+        StockDeductionResult r = StockDeductionEngine.plan(
+                new String[]{"M1", "M2", "M1"}, new int[]{3, 2, 3}, slots);
+        assertFalse(r.isSuccess());
+        assertEquals(1, r.getShortages().size());
+        StockDeductionResult.Shortage s = r.getShortages().get(0);
+        assertEquals(2, s.getLineIndex());
+        assertEquals(3, s.getRequested());
+        assertEquals(1, s.getAvailable());
+    }
+
+    @Test
+    void testUnknownMedicineIsShortage() {
+        StockDeductionResult r = StockDeductionEngine.plan(new String[]{"MX"}, new int[]{1}, List.of());
+        assertFalse(r.isSuccess());
+        assertEquals(0, r.getShortages().get(0).getAvailable());
+    }
+}
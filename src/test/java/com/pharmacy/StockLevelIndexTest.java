@@ -0,0 +1,73 @@
+package com.pharmacy;
+
+import com.pharmacy.service.StockLevelIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockLevelIndexTest {
+
+    @Test
+    void testAggregatesAndIncrementalRefresh() {
+        JdbcTemplate jdbc = TestSchema.jdbc("stockidx");
+        LocalDate today = LocalDate.now();
+        jdbc.update("INSERT INTO inventory(medicine_id, batch_no, stock_quantity, min_stock, expiry_date) VALUES (?,?,?,?,?)",
+                "M1", "B1", 5, 0, today.minusDays(1));
+        jdbc.update("INSERT INTO inventory(medicine_id, batch_no, stock_quantity, min_stock, expiry_date) VALUES (?,?,?,?,?)",
+                "M1", "B2", 7, 10, today.plusDays(30));
+        jdbc.update("INSERT INTO inventory(medicine_id, batch_no, stock_quantity, min_stock, expiry_date) VALUES (?,?,?,?,?)",
+                "M2", "B3", 3, null, null);
+
+        StockLevelIndex index = new StockLevelIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+
+        StockLevelIndex.Level m1 = index.get("M1");
+        assertEquals(12, m1.getTotalStock());
+        assertEquals(today.plusDays(30), m1.getEarliestExpiry());
+        assertEquals(10, m1.getMinStock());
+        assertEquals(2, m1.getBatchCount());
+        assertNull(index.get("M2").getEarliestExpiry());
+        assertEquals(0, index.totalStock("MX"));
+
+        jdbc.update("UPDATE inventory SET stock_quantity = 1 WHERE batch_no = 'B2'");
+        jdbc.update("DELETE FROM inventory WHERE medicine_id = 'M2'");
+        index.refresh(List.of("M1", "M2"));
+        assertEquals(6, index.totalStock("M1"));
+        assertEquals(0, index.get("M2").getBatchCount());
+    }
+
+    @Test
+    void testRefreshDuringReloadIsNotOverwrittenBySnapshot() {
+        StockLevelIndex index = new StockLevelIndex();
+        List<Runnable> afterFullQuery = new ArrayList<>();
+        JdbcTemplate jdbc = new JdbcTemplate(TestSchema.dataSource("stockidxrace")) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) {
+                super.query(sql, rch, args);
+                if (!sql.contains(" IN (")) {
+                    List<Runnable> hooks = new ArrayList<>(afterFullQuery);
+                    afterFullQuery.clear();
+                    hooks.forEach(Runnable::run);
+                }
+            }
+        };
+        jdbc.update("INSERT INTO inventory(medicine_id, batch_no, stock_quantity) VALUES ('M1', 'B1', 10)");
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbc);
+        assertEquals(10, index.totalStock("M1"));
+
+        // 重建查询已读完快照，随后提交的扣减触发增量重算：替换后不能退回快照里的 10
+        afterFullQuery.add(() -> {
+            jdbc.update("UPDATE inventory SET stock_quantity = 4 WHERE batch_no = 'B1'");
+            index.refresh(List.of("M1"));
+        });
+        index.reload();
+        assertEquals(4, index.totalStock("M1"));
+    }
+}
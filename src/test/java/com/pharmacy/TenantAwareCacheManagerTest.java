@@ -0,0 +1,51 @@
+package com.pharmacy;
+
+import com.pharmacy.config.CacheConfig;
+import com.pharmacy.multitenant.TenantContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantAwareCacheManagerTest {
+
+    @AfterEach
+    void clearTenant() {
+        TenantContext.clear();
+    }
+
+    @Test
+    void testKeysAreIsolatedPerTenantAndStatsRecorded() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("meterRegistry", registry);
+        CacheManager manager = new CacheConfig().cacheManager(
+                new MockEnvironment().withProperty("reference-cache.specs.settings", "maximumSize=1,expireAfterWrite=1m"),
+                beans.getBeanProvider(io.micrometer.core.instrument.MeterRegistry.class));
+        Cache categories = manager.getCache(CacheConfig.CATEGORIES);
+
+        TenantContext.setTenant("store_a");
+        categories.put(1, "感冒药-A");
+        TenantContext.setTenant("store_b");
+        assertNull(categories.get(1));
+        categories.put(1, "感冒药-B");
+        categories.put(2, "中药-B");
+
+        // 清空只作用于当前租户
+        categories.clear();
+        assertNull(categories.get(1));
+        TenantContext.setTenant("store_a");
+        assertEquals("感冒药-A", categories.get(1).get());
+
+        categories.evict(1);
+        assertNull(categories.get(1));
+
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", CacheConfig.CATEGORIES).tag("result", "hit").functionCounter().count());
+        assertTrue(registry.get("cache.gets").tag("cache", CacheConfig.CATEGORIES).tag("result", "miss").functionCounter().count() >= 3);
+    }
+}
@@ -0,0 +1,37 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.MultiTenantSchemaInitializer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 单元测试共用的租户库：H2 内存库（MySQL 模式），表结构由 MultiTenantSchemaInitializer 建立，
+ * 与启动时各租户库一致，测试里不再手写 DDL。每次调用得到一个独立的新库，互不干扰。
+ */
+final class TestSchema {
+
+    private TestSchema() {
+    }
+
+    /** 新建一个已建好全部业务表（含 id_sequence）的内存库，name 只用于区分库名、便于排查 */
+    static DataSource dataSource(String name) {
+        DriverManagerDataSource ds = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        MultiTenantSchemaInitializer initializer = new MultiTenantSchemaInitializer();
+        try (Connection conn = ds.getConnection()) {
+            initializer.ensureTenantTables(conn);
+            initializer.ensureIdSequenceTable(conn);
+        } catch (SQLException e) {
+            throw new IllegalStateException("测试库建表失败: " + e.getMessage(), e);
+        }
+        return ds;
+    }
+
+    static JdbcTemplate jdbc(String name) {
+        return new JdbcTemplate(dataSource(name));
+    }
+}
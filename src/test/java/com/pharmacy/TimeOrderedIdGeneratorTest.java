@@ -0,0 +1,43 @@
+package com.pharmacy;
+
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.impl.TimeOrderedIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedIdGeneratorTest {
+
+    @Test
+    void testConcurrentIdsAreUniqueAndSortable() throws Exception {
+        TimeOrderedIdGenerator gen = new TimeOrderedIdGenerator();
+        gen.init();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(pool.submit(() -> {
+                TenantContext.setTenant("bht");
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < 2000; i++) ids.add(gen.nextId("O"));
+                TenantContext.clear();
+                return ids;
+            }));
+        }
+        Set<String> all = new HashSet<>();
+        for (Future<List<String>> f : futures) {
+            List<String> ids = f.get();
+            List<String> sorted = new ArrayList<>(ids);
+            Collections.sort(sorted);
+            assertEquals(sorted, ids, "单线程内生成的单号应按字典序递增");
+            all.addAll(ids);
+        }
+        pool.shutdown();
+        assertEquals(16000, all.size());
+        String sample = all.iterator().next();
+        assertTrue(sample.startsWith("O"));
+        assertEquals(24, sample.length());
+    }
+}
@@ -0,0 +1,174 @@
+package com.pharmacy;
+
+import com.pharmacy.event.OrderPlacedEvent;
+import com.pharmacy.event.OrderRefundedEvent;
+import com.pharmacy.multitenant.TenantContext;
+import com.pharmacy.service.SalesRollupService;
+import com.pharmacy.service.TodaySalesCounters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TodaySalesCountersTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+    private final LocalDate today = LocalDate.of(2026, 3, 10);
+    private final AtomicReference<LocalDateTime> now = new AtomicReference<>(today.atTime(15, 0));
+    private JdbcTemplate jdbc;
+    private TodaySalesCounters counters;
+
+    @AfterEach
+    void tearDown() {
+        TenantContext.clear();
+    }
+
+    private void setUp() {
+        jdbc = TestSchema.jdbc("todaycounters");
+        order("O1", "M00001", "100.00", 1, today.atTime(9, 5));
+        order("O2", "M00001", "50.50", 1, today.atTime(9, 40));
+        order("O3", null, "30.00", 1, today.atTime(14, 0));
+        order("O4", "M00002", "20.00", 1, today.minusDays(1).atTime(20, 30));
+        order("O5", "M00003", "80.00", 2, today.atTime(10, 0)); // 已退款
+
+        SalesRollupService rollup = new SalesRollupService();
+        ReflectionTestUtils.setField(rollup, "jdbcTemplate", jdbc);
+        rollup.backfill(today.minusDays(1), today);
+
+        counters = new TodaySalesCounters();
+        ReflectionTestUtils.setField(counters, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(counters, "salesRollupService", rollup);
+        ReflectionTestUtils.setField(counters, "clock", new Clock() {
+            @Override public ZoneId getZone() { return ZONE; }
+            @Override public Clock withZone(ZoneId zone) { return this; }
+            @Override public Instant instant() { return now.get().atZone(ZONE).toInstant(); }
+        });
+    }
+
+    private void order(String id, String member, String amount, int status, LocalDateTime time) {
+        BigDecimal v = new BigDecimal(amount);
+        jdbc.update("INSERT INTO `order`(order_id, member_id, total_amount, discount_amount, actual_payment, payment_status, order_time) " +
+                "VALUES (?,?,?,?,?,?,?)",
+                id, member, v, BigDecimal.ZERO, v, status, Timestamp.valueOf(time));
+    }
+
+    @Test
+    void testLoadAndIncrementalUpdates() {
+        setUp();
+        TodaySalesCounters.Totals t = counters.today();
+        assertEquals(3, t.getOrders());
+        assertEquals(180.50, t.getSales(), 0.001);
+        assertEquals(1, t.getMembers());
+        assertEquals(1, counters.yesterday().getOrders());
+        assertEquals(20.0, counters.yesterday().getSales(), 0.001);
+
+        // 新会员下单 -> 去重会员 +1；同一会员再下单不重复计
+        counters.onOrderEvent(new OrderPlacedEvent("default", "O6", "M00004", 12.34, today.atTime(15, 0), List.of()));
+        counters.onOrderEvent(new OrderPlacedEvent("default", "O7", "M00004", 10.0, today.atTime(15, 1), List.of()));
+        t = counters.today();
+        assertEquals(5, t.getOrders());
+        assertEquals(202.84, t.getSales(), 0.001);
+        assertEquals(2, t.getMembers());
+
+        // 退掉其一仍有订单，会员保留；两单都退后移出集合
+        counters.onOrderEvent(new OrderRefundedEvent("default", "O6", "M00004", 12.34, today.atTime(15, 0), List.of(), today.atTime(15, 5), "退货"));
+        assertEquals(2, counters.today().getMembers());
+        counters.onOrderEvent(new OrderRefundedEvent("default", "O7", "M00004", 10.0, today.atTime(15, 1), List.of(), today.atTime(15, 6), "退货"));
+        t = counters.today();
+        assertEquals(3, t.getOrders());
+        assertEquals(180.50, t.getSales(), 0.001);
+        assertEquals(1, t.getMembers());
+
+        // 退昨日订单不影响今日
+        counters.onOrderEvent(new OrderRefundedEvent("default", "O4", "M00002", 20.0, today.minusDays(1).atTime(20, 30), List.of(), today.atTime(15, 7), "退货"));
+        assertEquals(3, counters.today().getOrders());
+    }
+
+    @Test
+    void testMidnightRolloverAndReconcile() {
+        setUp();
+        counters.today();
+        counters.onOrderEvent(new OrderPlacedEvent("default", "O6", "M00004", 40.0, today.atTime(23, 59), List.of()));
+
+        // 零点滚动：刚结束的今日成为昨日，今日清零
+        now.set(today.plusDays(1).atTime(0, 0, 1));
+        assertEquals(0, counters.today().getOrders());
+        TodaySalesCounters.Totals y = counters.yesterday();
+        assertEquals(4, y.getOrders());
+        assertEquals(220.50, y.getSales(), 0.001);
+        assertEquals(2, y.getMembers());
+
+        // 漏掉的事件由对账补齐
+        order("O8", "M00005", "9.90", 1, today.plusDays(1).atTime(0, 0));
+        assertEquals(0, counters.today().getOrders());
+        counters.reconcile();
+        TodaySalesCounters.Totals t = counters.today();
+        assertEquals(1, t.getOrders());
+        assertEquals(9.90, t.getSales(), 0.001);
+        assertEquals(1, t.getMembers());
+    }
+
+    @Test
+    void testTenantsAreIsolated() {
+        setUp();
+        TenantContext.setTenant("bht");
+        counters.today();
+        counters.onOrderEvent(new OrderPlacedEvent("bht", "O6", "M00004", 40.0, today.atTime(15, 0), List.of()));
+        assertEquals(4, counters.today().getOrders());
+
+        // 未加载的租户不接收增量，首次读取按 SQL 加载
+        TenantContext.setTenant("wx");
+        counters.onOrderEvent(new OrderPlacedEvent("wx", "O9", "M00009", 5.0, today.atTime(15, 0), List.of()));
+        assertEquals(3, counters.today().getOrders());
+        TenantContext.setTenant("bht");
+        assertEquals(4, counters.today().getOrders());
+    }
+
+    @Test
+    void testEventsDuringReconcileAreNeitherLostNorDoubleCounted() {
+        setUp();
+        counters.today();
+        List<Runnable> beforeQuery = new ArrayList<>();
+        List<Runnable> afterQuery = new ArrayList<>();
+        JdbcTemplate hooked = new JdbcTemplate(jdbc.getDataSource()) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) {
+                beforeQuery.forEach(Runnable::run);
+                super.query(sql, rch, args);
+                afterQuery.forEach(Runnable::run);
+            }
+        };
+        ReflectionTestUtils.setField(counters, "jdbcTemplate", hooked);
+
+        // 查询前已提交、事件在查询期间到达：只计一次
+        order("O6", "M00006", "10.00", 1, today.atTime(15, 0));
+        beforeQuery.add(() -> counters.onOrderEvent(new OrderPlacedEvent("default", "O6", "M00006", 10.0, today.atTime(15, 0), List.of())));
+        // 查询之后才提交的订单：不在查询结果里，事件必须保留
+        afterQuery.add(() -> counters.onOrderEvent(new OrderPlacedEvent("default", "O7", "M00007", 5.0, today.atTime(15, 1), List.of())));
+        // 查询时仍为已支付、随后退款：以退款为准
+        afterQuery.add(() -> counters.onOrderEvent(new OrderRefundedEvent("default", "O2", "M00001", 50.5, today.atTime(9, 40),
+                List.of(), today.atTime(15, 2), "退货")));
+        counters.reconcile();
+
+        // 3 + O6 + O7 - O2
+        TodaySalesCounters.Totals t = counters.today();
+        assertEquals(4, t.getOrders());
+        assertEquals(145.0, t.getSales(), 0.001);
+        assertEquals(3, t.getMembers());
+
+        // 事件重复投递（对账已计入）不重复计数
+        counters.onOrderEvent(new OrderPlacedEvent("default", "O6", "M00006", 10.0, today.atTime(15, 0), List.of()));
+        counters.onOrderEvent(new OrderPlacedEvent("default", "O1", "M00001", 100.0, today.atTime(9, 5), List.of()));
+        assertEquals(4, counters.today().getOrders());
+    }
+}